@@ -0,0 +1,156 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.capture;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.READ;
+import static me.alexand.scat.statistic.collector.capture.CaptureFileWriter.CHUNK_SIZE;
+import static me.alexand.scat.statistic.collector.capture.CaptureFileWriter.FILE_HEADER_LENGTH;
+import static me.alexand.scat.statistic.collector.capture.CaptureFileWriter.MAGIC;
+import static me.alexand.scat.statistic.collector.capture.CaptureFileWriter.MESSAGE_HEADER_LENGTH;
+import static me.alexand.scat.statistic.collector.capture.CaptureFileWriter.VERSION;
+
+/**
+ * Последовательное чтение IPFIX-сообщений из файла захвата, записанного {@link CaptureFileWriter}.
+ * <p>
+ * Файл отображается в память не целиком, а окном по {@link CaptureFileWriter#CHUNK_SIZE} байт, которое сдвигается
+ * по мере чтения, поэтому размер файла не ограничен размером одного отображения (2 ГБ), а в памяти одновременно
+ * находится только текущее окно.
+ *
+ * @author asidorov84@gmail.com
+ */
+public final class CaptureFileReader implements AutoCloseable {
+    private final Path file;
+    private final FileChannel channel;
+    private final long size;
+    private final int windowSize;
+    private MappedByteBuffer window;
+    private long windowStart;
+
+    public CaptureFileReader(Path file) throws IOException {
+        this(file, CHUNK_SIZE);
+    }
+
+    /**
+     * @param file       файл захвата
+     * @param windowSize размер окна отображения, должен вмещать самое длинное сообщение вместе с его длиной
+     * @throws IOException если файл не может быть прочитан или не является файлом захвата
+     */
+    CaptureFileReader(Path file, int windowSize) throws IOException {
+        this.file = file;
+        this.windowSize = windowSize;
+        channel = FileChannel.open(file, READ);
+
+        try {
+            size = channel.size();
+            map(0);
+
+            if (window.remaining() < FILE_HEADER_LENGTH || window.getInt() != MAGIC) {
+                throw new IOException(String.format("%s is not a capture file", file));
+            }
+
+            int version = window.getInt();
+            if (version != VERSION) {
+                throw new IOException(String.format("Unsupported version of capture file %s: %d", file, version));
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Прочитать очередное сообщение.
+     *
+     * @param message массив для сообщения, не короче 65535 байт
+     * @return длина сообщения или -1, если сообщений больше нет
+     * @throws IOException если файл не может быть прочитан или сообщение обрезано
+     */
+    public int next(byte[] message) throws IOException {
+        if (window.remaining() < MESSAGE_HEADER_LENGTH) {
+            map(windowStart + window.position());
+
+            if (window.remaining() < MESSAGE_HEADER_LENGTH) {
+                return -1;
+            }
+        }
+
+        int length = window.getShort(window.position()) & 0xFFFF;
+
+        //Нулевая длина - незаполненный остаток файла, который не был закрыт
+        if (length == 0) {
+            return -1;
+        }
+
+        if (window.remaining() < MESSAGE_HEADER_LENGTH + length) {
+            map(windowStart + window.position());
+
+            if (window.remaining() < MESSAGE_HEADER_LENGTH + length) {
+                throw new IOException(String.format("Truncated message in capture file %s", file));
+            }
+        }
+
+        window.position(window.position() + MESSAGE_HEADER_LENGTH);
+        window.get(message, 0, length);
+        return length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    /**
+     * Прочитать все сообщения из файла.
+     *
+     * @param file файл захвата
+     * @return список сообщений в порядке записи
+     * @throws IOException если файл не может быть прочитан или не является файлом захвата
+     */
+    public static List<byte[]> readAll(Path file) throws IOException {
+        List<byte[]> messages = new ArrayList<>();
+        byte[] message = new byte[0xFFFF];
+
+        try (CaptureFileReader reader = new CaptureFileReader(file)) {
+            int length;
+
+            while ((length = reader.next(message)) >= 0) {
+                messages.add(Arrays.copyOf(message, length));
+            }
+        }
+
+        return messages;
+    }
+
+    private void map(long position) throws IOException {
+        windowStart = position;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(windowSize, size - position));
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.capture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Запись IPFIX-сообщений в файл захвата.
+ * <p>
+ * Формат файла: 4 байта {@link #MAGIC}, 4 байта {@link #VERSION}, затем сообщения подряд, каждое предваряется
+ * своей длиной (2 байта, без знака). Нулевая длина означает конец файла. Запись выполняется через отображение
+ * файла в память участками по {@link #CHUNK_SIZE} байт, при закрытии файл обрезается до фактического размера.
+ * <p>
+ * Методы синхронизированы, запись может выполняться одновременно несколькими потоками приемника.
+ *
+ * @author asidorov84@gmail.com
+ * @see CaptureFileReader
+ */
+public final class CaptureFileWriter implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CaptureFileWriter.class);
+
+    static final int MAGIC = 0x53434150;
+    static final int VERSION = 1;
+    static final int FILE_HEADER_LENGTH = 8;
+    static final int MESSAGE_HEADER_LENGTH = 2;
+    static final int CHUNK_SIZE = 64 * 1024 * 1024;
+
+    private final Path file;
+    private final FileChannel channel;
+    private MappedByteBuffer chunk;
+    private long chunkStart;
+    private long messagesCounter;
+    private boolean closed;
+
+    public CaptureFileWriter(Path file) throws IOException {
+        this.file = file;
+        channel = FileChannel.open(file, CREATE, TRUNCATE_EXISTING, READ, WRITE);
+        mapChunk(0);
+
+        chunk.putInt(MAGIC);
+        chunk.putInt(VERSION);
+
+        LOGGER.info("Capturing received messages to {}", file);
+    }
+
+    /**
+     * Записать сообщение в файл.
+     *
+     * @param message массив с сообщением
+     * @param length  длина сообщения
+     * @throws IOException если не удалось отобразить в память очередной участок файла
+     */
+    public synchronized void write(byte[] message, int length) throws IOException {
+        if (closed) {
+            return;
+        }
+
+        if (length <= 0 || length > 0xFFFF) {
+            throw new IllegalArgumentException(String.format("Illegal length of message: %d", length));
+        }
+
+        if (chunk.remaining() < MESSAGE_HEADER_LENGTH + length) {
+            mapChunk(chunkStart + chunk.position());
+        }
+
+        chunk.putShort((short) length);
+        chunk.put(message, 0, length);
+        messagesCounter++;
+    }
+
+    public synchronized long getMessagesCount() {
+        return messagesCounter;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        long size = chunkStart + chunk.position();
+        chunk.force();
+        chunk = null;
+
+        channel.truncate(size);
+        channel.close();
+
+        LOGGER.info("Captured {} messages ({} bytes) to {}", messagesCounter, size, file);
+    }
+
+    private void mapChunk(long position) throws IOException {
+        if (chunk != null) {
+            chunk.force();
+        }
+
+        chunkStart = position;
+        chunk = channel.map(FileChannel.MapMode.READ_WRITE, position, CHUNK_SIZE);
+    }
+}
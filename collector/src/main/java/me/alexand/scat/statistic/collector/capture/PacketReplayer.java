@@ -0,0 +1,415 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.capture;
+
+import me.alexand.scat.statistic.collector.utils.exceptions.IPFIXParseException;
+import me.alexand.scat.statistic.collector.model.IPFIXMessage;
+import me.alexand.scat.statistic.collector.model.IPFIXSet;
+import me.alexand.scat.statistic.collector.repository.InfoModelRepository;
+import me.alexand.scat.statistic.collector.repository.impls.InMemoryInfoModelRepositoryImpl;
+import me.alexand.scat.statistic.collector.repository.impls.InMemorySCATDataTemplateRepositoryImpl;
+import me.alexand.scat.statistic.collector.service.DataTemplateService;
+import me.alexand.scat.statistic.collector.service.IPFIXParser;
+import me.alexand.scat.statistic.collector.service.impls.DataTemplateServiceImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static me.alexand.scat.statistic.collector.utils.BytesConvertUtils.fourBytesToLong;
+
+/**
+ * Генератор нагрузки: воспроизводит IPFIX-сообщения из файлов захвата ({@link CaptureFileWriter}) в коллектор
+ * по TCP или UDP с заданной частотой либо с максимально возможной скоростью.
+ * <p>
+ * Файлы читаются по одному через {@link CaptureFileReader}, сообщение копируется из окна отображения в один
+ * переиспользуемый массив, поэтому размер файлов не ограничен памятью. При первом проигрывании файла сообщения
+ * декодируются, чтобы определить количество записей данных в каждом из них, при повторных используется
+ * сохраненное количество. Порядковые номера в заголовках переписываются заново для каждого домена наблюдения,
+ * поэтому при многократном проигрывании одних и тех же сообщений коллектор не регистрирует потерянные записи.
+ * <p>
+ * Итоговые показатели (сообщений в секунду и записей в секунду) - скорость отправки. По TCP она ограничена
+ * скоростью чтения из сокета коллектором, но не скоростью обработки: сообщения, отброшенные коллектором при
+ * переполнении внутреннего буфера, тоже учитываются как отправленные. Количество обработанных записей
+ * и потери следует смотреть в отчете статистики коллектора.
+ * <p>
+ * Запуск из командной строки:
+ * <pre>
+ * PacketReplayer [--host 127.0.0.1] [--port 9997] [--protocol tcp|udp] [--rate msgs/s] [--duration seconds] file...
+ * </pre>
+ * Нулевая частота означает отправку с максимальной скоростью, нулевая длительность - однократное проигрывание файлов.
+ *
+ * @author asidorov84@gmail.com
+ */
+public final class PacketReplayer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PacketReplayer.class);
+    private static final long REPORT_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    private final String host;
+    private final int port;
+    private final String protocol;
+    private final long rate;
+    private final long duration;
+    private final List<Path> files;
+    private final IPFIXParser parser;
+    //Количество записей данных в сообщениях файла, определяется при первом проигрывании файла
+    private final Map<Path, int[]> recordsCounts = new HashMap<>();
+    private final byte[] message = new byte[0xFFFF];
+
+    /**
+     * @param host     адрес коллектора
+     * @param port     порт коллектора
+     * @param protocol транспорт: tcp или udp
+     * @param rate     частота отправки, сообщений в секунду (0 - максимальная скорость)
+     * @param duration длительность воспроизведения в секундах (0 - однократное проигрывание сообщений)
+     * @param files    файлы захвата, проигрываемые по порядку; шаблоны должны предшествовать данным
+     * @param parser   парсер для подсчета записей данных в сообщениях
+     */
+    public PacketReplayer(String host,
+                          int port,
+                          String protocol,
+                          long rate,
+                          long duration,
+                          List<Path> files,
+                          IPFIXParser parser) {
+        if (!"tcp".equals(protocol) && !"udp".equals(protocol)) {
+            throw new IllegalArgumentException(String.format("Unknown protocol: %s", protocol));
+        }
+
+        if (rate < 0 || duration < 0) {
+            throw new IllegalArgumentException("rate and duration must not be negative");
+        }
+
+        this.host = host;
+        this.port = port;
+        this.protocol = protocol;
+        this.rate = rate;
+        this.duration = duration;
+        this.files = new ArrayList<>(files);
+        this.parser = parser;
+    }
+
+    /**
+     * Воспроизвести сообщения.
+     *
+     * @return итоги воспроизведения
+     * @throws IOException          при ошибке чтения файла захвата или отправки
+     * @throws InterruptedException если текущий поток был прерван
+     */
+    public Result replay() throws IOException, InterruptedException {
+        try (Sender sender = "tcp".equals(protocol) ? new TcpSender() : new UdpSender()) {
+            Map<Long, Long> sequenceNumbers = new HashMap<>();
+            long period = rate == 0 ? 0 : TimeUnit.SECONDS.toNanos(1) / rate;
+            long deadline = TimeUnit.SECONDS.toNanos(duration);
+
+            long start = System.nanoTime();
+            long nextReport = start + REPORT_INTERVAL;
+            long messagesCounter = 0;
+            long recordsCounter = 0;
+            long reportedMessages = 0;
+            long reportedRecords = 0;
+            long passMessages;
+
+            do {
+                passMessages = messagesCounter;
+
+                for (Path file : files) {
+                    int[] counts = recordsCounts.get(file);
+                    boolean firstPass = counts == null;
+                    int index = 0;
+
+                    if (firstPass) {
+                        counts = new int[1024];
+                    }
+
+                    try (CaptureFileReader reader = new CaptureFileReader(file)) {
+                        int length;
+
+                        while ((length = reader.next(message)) >= 0) {
+                            if (Thread.interrupted()) {
+                                throw new InterruptedException();
+                            }
+
+                            if (firstPass) {
+                                if (index == counts.length) {
+                                    counts = Arrays.copyOf(counts, counts.length * 2);
+                                }
+
+                                counts[index] = countDataRecords(parser, Arrays.copyOf(message, length));
+                            }
+
+                            int records = counts[index++];
+
+                            if (period != 0) {
+                                long sendTime = start + messagesCounter * period;
+                                long now;
+                                while ((now = System.nanoTime()) < sendTime) {
+                                    LockSupport.parkNanos(sendTime - now);
+                                }
+                            }
+
+                            long domainID = fourBytesToLong(message, 12);
+                            long sequenceNumber = sequenceNumbers.getOrDefault(domainID, 0L);
+                            writeSequenceNumber(message, sequenceNumber);
+                            sequenceNumbers.put(domainID, (sequenceNumber + records) & 0xFFFFFFFFL);
+
+                            sender.send(message, length, period != 0);
+                            messagesCounter++;
+                            recordsCounter += records;
+
+                            long now = System.nanoTime();
+                            if (now >= nextReport) {
+                                sender.flush();
+                                LOGGER.info("sent {} msgs/s, {} records/s",
+                                        messagesCounter - reportedMessages,
+                                        recordsCounter - reportedRecords);
+                                reportedMessages = messagesCounter;
+                                reportedRecords = recordsCounter;
+                                nextReport = now + REPORT_INTERVAL;
+                            }
+                        }
+                    }
+
+                    if (firstPass) {
+                        recordsCounts.put(file, Arrays.copyOf(counts, index));
+                    }
+                }
+            } while (messagesCounter > passMessages && System.nanoTime() - start < deadline);
+
+            sender.flush();
+
+            return new Result(messagesCounter, recordsCounter, System.nanoTime() - start);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String host = "127.0.0.1";
+        int port = 9997;
+        String protocol = "tcp";
+        long rate = 0;
+        long duration = 0;
+        List<String> files = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--host":
+                    host = args[++i];
+                    break;
+                case "--port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "--protocol":
+                    protocol = args[++i];
+                    break;
+                case "--rate":
+                    rate = Long.parseLong(args[++i]);
+                    break;
+                case "--duration":
+                    duration = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    files.add(args[i]);
+            }
+        }
+
+        if (files.isEmpty()) {
+            System.err.println("Usage: PacketReplayer [--host 127.0.0.1] [--port 9997] [--protocol tcp|udp] " +
+                    "[--rate msgs/s] [--duration seconds] file...");
+            System.exit(1);
+        }
+
+        List<Path> paths = new ArrayList<>();
+        for (String file : files) {
+            paths.add(Paths.get(file));
+        }
+
+        Result result = new PacketReplayer(host, port, protocol, rate, duration, paths, createParser()).replay();
+
+        LOGGER.info("Replay complete: {}", result);
+    }
+
+    /**
+     * Создает парсер с шаблонами СКАТ, не требующий контекста Spring.
+     */
+    public static IPFIXParser createParser() {
+        InfoModelRepository infoModelRepository = new InMemoryInfoModelRepositoryImpl();
+        DataTemplateService dataTemplateService = new DataTemplateServiceImpl(
+                new InMemorySCATDataTemplateRepositoryImpl(),
+                infoModelRepository);
+        dataTemplateService.load();
+        return new IPFIXParser(dataTemplateService, infoModelRepository);
+    }
+
+    private static int countDataRecords(IPFIXParser parser, byte[] message) {
+        try {
+            IPFIXMessage ipfixMessage = parser.parse(message);
+            int counter = 0;
+
+            for (IPFIXSet set : ipfixMessage.getSets()) {
+                //Наборы с идентификатором от 256 содержат записи данных
+                if (set.getSetID() > 255) {
+                    counter += set.getRecords().size();
+                }
+            }
+
+            return counter;
+        } catch (IPFIXParseException e) {
+            LOGGER.warn("Failed to count records in message: {}", e.getMessage());
+            return 0;
+        }
+    }
+
+    private static void writeSequenceNumber(byte[] message, long sequenceNumber) {
+        message[8] = (byte) (sequenceNumber >>> 24);
+        message[9] = (byte) (sequenceNumber >>> 16);
+        message[10] = (byte) (sequenceNumber >>> 8);
+        message[11] = (byte) sequenceNumber;
+    }
+
+    /**
+     * Итоги воспроизведения: количество и скорость отправки сообщений и записей.
+     */
+    public static final class Result {
+        private final long messagesCount;
+        private final long recordsCount;
+        private final long elapsedNanos;
+
+        Result(long messagesCount, long recordsCount, long elapsedNanos) {
+            this.messagesCount = messagesCount;
+            this.recordsCount = recordsCount;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getMessagesCount() {
+            return messagesCount;
+        }
+
+        public long getRecordsCount() {
+            return recordsCount;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getMessagesPerSecond() {
+            return perSecond(messagesCount);
+        }
+
+        public double getRecordsPerSecond() {
+            return perSecond(recordsCount);
+        }
+
+        private double perSecond(long count) {
+            return elapsedNanos == 0 ? 0 : count * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("sent %d messages, %d records in %.3f s (%.0f msgs/s, %.0f records/s)",
+                    messagesCount,
+                    recordsCount,
+                    elapsedNanos / 1e9,
+                    getMessagesPerSecond(),
+                    getRecordsPerSecond());
+        }
+    }
+
+    private interface Sender extends AutoCloseable {
+        void send(byte[] message, int length, boolean flush) throws IOException;
+
+        void flush() throws IOException;
+
+        @Override
+        void close() throws IOException;
+    }
+
+    private final class TcpSender implements Sender {
+        private final Socket socket;
+        private final OutputStream out;
+
+        TcpSender() throws IOException {
+            socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            out = new BufferedOutputStream(socket.getOutputStream(), 1 << 16);
+        }
+
+        @Override
+        public void send(byte[] message, int length, boolean flush) throws IOException {
+            out.write(message, 0, length);
+            if (flush) {
+                out.flush();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+            socket.close();
+        }
+    }
+
+    private final class UdpSender implements Sender {
+        private final DatagramSocket socket;
+        private final DatagramPacket packet;
+
+        UdpSender() throws IOException {
+            socket = new DatagramSocket();
+            packet = new DatagramPacket(new byte[0], 0, new InetSocketAddress(host, port));
+        }
+
+        @Override
+        public void send(byte[] message, int length, boolean flush) throws IOException {
+            packet.setData(message, 0, length);
+            socket.send(packet);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+            socket.close();
+        }
+    }
+}
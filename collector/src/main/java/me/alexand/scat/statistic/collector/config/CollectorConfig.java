@@ -38,7 +38,9 @@ import org.springframework.context.annotation.PropertySource;
 @PropertySource(value = "file:${conf.dir}/collector.cfg", ignoreResourceNotFound = true)
 @Import({TransitionalBufferConfig.class,
         PersistenceConfig.class,
-        SchedulerConfig.class})
+        SchedulerConfig.class,
+        ReceiverConfig.class,
+        ProcessorConfig.class})
 @ComponentScan("me.alexand.scat.statistic.collector")
 public class CollectorConfig {
 }
\ No newline at end of file
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Конфигурация процессоров IPFIX-сообщений.
+ * <p>
+ * Сеты записей данных сообщений длиной не менее {@code processor.parallel.min.message.length} байт декодируются
+ * параллельно в общем для всех процессоров {@link ForkJoinPool} из {@code processor.parallel.threads} потоков.
+ * Значение 0 длины сообщения отключает параллельное декодирование.
+ *
+ * @author asidorov84@gmail.com
+ */
+@Configuration
+public class ProcessorConfig {
+    private final Environment env;
+
+    public ProcessorConfig(Environment env) {
+        this.env = env;
+    }
+
+    @Bean(destroyMethod = "shutdownNow")
+    public ForkJoinPool setsDecodingPool() {
+        int threads = env.getRequiredProperty("processor.parallel.threads", Integer.class);
+
+        if (threads <= 0) {
+            throw new IllegalArgumentException(String.format("Illegal value of parallel decoding threads count: %d",
+                    threads));
+        }
+
+        return new ForkJoinPool(threads);
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.config;
+
+import me.alexand.scat.statistic.collector.capture.CaptureFileWriter;
+import me.alexand.scat.statistic.collector.network.AbstractPacketsReceiver;
+import me.alexand.scat.statistic.collector.network.BlockingPacketQueue;
+import me.alexand.scat.statistic.collector.network.NioTcpPacketsReceiver;
+import me.alexand.scat.statistic.collector.network.OverflowPolicy;
+import me.alexand.scat.statistic.collector.network.PacketBufferPool;
+import me.alexand.scat.statistic.collector.network.PacketQueue;
+import me.alexand.scat.statistic.collector.network.PacketsReceiver;
+import me.alexand.scat.statistic.collector.network.RingBufferPacketQueue;
+import me.alexand.scat.statistic.collector.network.ShardedPacketQueue;
+import me.alexand.scat.statistic.collector.network.TCPPacketsReceiver;
+import me.alexand.scat.statistic.collector.network.UdpPacketsReceiver;
+import me.alexand.scat.statistic.collector.network.WaitStrategy;
+import me.alexand.scat.statistic.collector.service.StatCollector;
+import me.alexand.scat.statistic.collector.spill.SegmentLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Конфигурация приемника пакетов.
+ * <p>
+ * Реализация приемника выбирается параметром {@code net.receiver.impl}:
+ * <ul>
+ * <li>blocking - {@link TCPPacketsReceiver}, отдельный поток на каждое подключение</li>
+ * <li>nio - {@link NioTcpPacketsReceiver}, фиксированное количество циклов событий ({@code net.receiver.nio.threads})</li>
+ * <li>udp - {@link UdpPacketsReceiver}, прием датаграмм несколькими потоками ({@code net.receiver.udp.threads}),
+ * при необходимости с отдельным сокетом на каждый поток ({@code net.receiver.udp.reuseport}); сессия источника
+ * закрывается, если от него нет датаграмм дольше {@code net.receiver.udp.source.idle.timeout} секунд</li>
+ * </ul>
+ * <p>
+ * Все реализации используют общий пул буферов для пакетов, размер которого задается параметром
+ * {@code packet.pool.capacity}, и общую очередь пакетов емкостью {@code packet.buffer.capacity}. Реализация очереди
+ * выбирается параметром {@code packet.queue.impl}:
+ * <ul>
+ * <li>blocking - {@link BlockingPacketQueue}</li>
+ * <li>ring - {@link RingBufferPacketQueue}, со стратегией ожидания {@code packet.queue.wait.strategy}
+ * (blocking, yielding или busy-spin)</li>
+ * </ul>
+ * Если {@code packet.queue.sharded} равен true, очередь делится на {@code processors.count} сегментов
+ * ({@link ShardedPacketQueue}), и сообщения каждого домена наблюдения обрабатываются одним процессором.
+ * <p>
+ * Поведение приемника при заполненной очереди определяется {@link OverflowPolicy}
+ * ({@code packet.queue.overflow.policy}).
+ * <p>
+ * Если задан параметр {@code capture.file}, все полученные сообщения записываются в указанный файл захвата
+ * ({@link CaptureFileWriter}) для последующего воспроизведения.
+ *
+ * @author asidorov84@gmail.com
+ */
+@Configuration
+public class ReceiverConfig {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReceiverConfig.class);
+
+    private final Environment env;
+
+    public ReceiverConfig(Environment env) {
+        this.env = env;
+    }
+
+    @Bean
+    public PacketBufferPool packetBufferPool(StatCollector statCollector) {
+        PacketBufferPool pool = new PacketBufferPool(
+                Integer.parseInt(env.getRequiredProperty("packet.pool.capacity")),
+                Integer.parseInt(env.getRequiredProperty("packet.pool.max.retained.buffer.size")));
+        statCollector.registerPacketBufferPool(pool);
+        return pool;
+    }
+
+    @Bean
+    public PacketQueue packetQueue() {
+        String impl = env.getRequiredProperty("packet.queue.impl");
+        int bufferCapacity = Integer.parseInt(env.getRequiredProperty("packet.buffer.capacity"));
+        boolean sharded = Boolean.parseBoolean(env.getRequiredProperty("packet.queue.sharded"));
+
+        LOGGER.info("Initializing packet queue: {}, sharded: {}", impl, sharded);
+
+        if (!sharded) {
+            return createPacketQueue(impl, bufferCapacity);
+        }
+
+        //Каждому процессору свой сегмент, общая емкость делится между сегментами поровну
+        int shardsCount = Integer.parseInt(env.getRequiredProperty("processors.count"));
+        int shardCapacity = (bufferCapacity + shardsCount - 1) / shardsCount;
+        PacketQueue[] shards = new PacketQueue[shardsCount];
+
+        for (int i = 0; i < shardsCount; i++) {
+            shards[i] = createPacketQueue(impl, shardCapacity);
+        }
+
+        return new ShardedPacketQueue(shards);
+    }
+
+    @Bean
+    public OverflowPolicy overflowPolicy(PacketQueue packetQueue,
+                                         PacketBufferPool packetBufferPool,
+                                         StatCollector statCollector) throws IOException {
+        String policy = env.getRequiredProperty("packet.queue.overflow.policy");
+
+        LOGGER.info("Initializing packet queue overflow policy: {}", policy);
+
+        switch (policy) {
+            case "drop":
+                return OverflowPolicy.drop();
+            case "block":
+                return OverflowPolicy.block(
+                        Long.parseLong(env.getRequiredProperty("packet.queue.overflow.block.timeout")),
+                        statCollector);
+            case "spill":
+                SegmentLog log = new SegmentLog(Paths.get(env.getRequiredProperty("spill.directory")),
+                        "packets",
+                        Integer.parseInt(env.getRequiredProperty("spill.segment.size")),
+                        Integer.parseInt(env.getRequiredProperty("spill.max.segments")));
+                statCollector.registerSpillLog(log);
+                return OverflowPolicy.spill(log, packetQueue, packetBufferPool);
+            default:
+                throw new IllegalArgumentException(String.format("Unknown overflow policy: %s", policy));
+        }
+    }
+
+    //Остановка приемника выполняется ProcessorController, поэтому метод уничтожения отключен
+    @Bean(destroyMethod = "")
+    public PacketsReceiver packetsReceiver(PacketQueue packetQueue,
+                                           PacketBufferPool packetBufferPool,
+                                           OverflowPolicy overflowPolicy,
+                                           StatCollector statCollector) throws IOException {
+        String impl = env.getRequiredProperty("net.receiver.impl");
+        String address = env.getRequiredProperty("net.address");
+        int port = Integer.parseInt(env.getRequiredProperty("net.port"));
+        int socketReceiveBufferSize = Integer.parseInt(env.getRequiredProperty("socket.receive.buffer.size"));
+
+        LOGGER.info("Initializing packets receiver: {}", impl);
+
+        AbstractPacketsReceiver receiver = createPacketsReceiver(impl, address, port, packetQueue,
+                socketReceiveBufferSize, packetBufferPool, overflowPolicy, statCollector);
+
+        String captureFile = env.getProperty("capture.file", "");
+        if (!captureFile.isEmpty()) {
+            receiver.setCapture(new CaptureFileWriter(Paths.get(captureFile)));
+        }
+
+        return receiver;
+    }
+
+    private AbstractPacketsReceiver createPacketsReceiver(String impl,
+                                                          String address,
+                                                          int port,
+                                                          PacketQueue packetQueue,
+                                                          int socketReceiveBufferSize,
+                                                          PacketBufferPool packetBufferPool,
+                                                          OverflowPolicy overflowPolicy,
+                                                          StatCollector statCollector) throws IOException {
+        switch (impl) {
+            case "blocking":
+                return new TCPPacketsReceiver(address, port, packetQueue, socketReceiveBufferSize, packetBufferPool,
+                        overflowPolicy, statCollector);
+            case "nio":
+                return new NioTcpPacketsReceiver(address, port, packetQueue, socketReceiveBufferSize,
+                        Integer.parseInt(env.getRequiredProperty("net.receiver.nio.threads")),
+                        packetBufferPool,
+                        overflowPolicy,
+                        statCollector);
+            case "udp":
+                return new UdpPacketsReceiver(address, port, packetQueue, socketReceiveBufferSize,
+                        Integer.parseInt(env.getRequiredProperty("net.receiver.udp.threads")),
+                        Boolean.parseBoolean(env.getRequiredProperty("net.receiver.udp.reuseport")),
+                        TimeUnit.SECONDS.toMillis(Long.parseLong(
+                                env.getRequiredProperty("net.receiver.udp.source.idle.timeout"))),
+                        packetBufferPool,
+                        overflowPolicy,
+                        statCollector);
+            default:
+                throw new IllegalArgumentException(String.format("Unknown packets receiver implementation: %s", impl));
+        }
+    }
+
+    private PacketQueue createPacketQueue(String impl, int capacity) {
+        switch (impl) {
+            case "blocking":
+                return new BlockingPacketQueue(capacity);
+            case "ring":
+                return new RingBufferPacketQueue(capacity,
+                        WaitStrategy.of(env.getRequiredProperty("packet.queue.wait.strategy")));
+            default:
+                throw new IllegalArgumentException(String.format("Unknown packet queue implementation: %s", impl));
+        }
+    }
+}
@@ -21,6 +21,10 @@
 
 package me.alexand.scat.statistic.collector.config;
 
+import me.alexand.scat.statistic.collector.repository.TransitionalBufferRepository;
+import me.alexand.scat.statistic.collector.repository.impls.CompactTransitionalBufferRepositoryImpl;
+import me.alexand.scat.statistic.collector.repository.impls.NativeTransitionalBufferRepositoryImpl;
+import me.alexand.scat.statistic.collector.repository.impls.TransitionalBufferRepositoryImpl;
 import org.apache.commons.dbcp2.BasicDataSource;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -36,12 +40,26 @@ import org.springframework.transaction.annotation.EnableTransactionManagement;
 import static me.alexand.scat.statistic.common.utils.DBUtils.databasePopulator;
 
 /**
+ * Конфигурация временного буфера IPFIX-записей.
+ * <p>
+ * Способ хранения значений задается параметром {@code buffer.storage.mode}:
+ * <ul>
+ * <li>object - {@link TransitionalBufferRepositoryImpl}, время хранится как TIMESTAMP, IPv4-адреса - как строки</li>
+ * <li>compact - {@link CompactTransitionalBufferRepositoryImpl}, время хранится как секунды или миллисекунды эпохи,
+ * IPv4-адреса - как 32-битные целые</li>
+ * <li>native - {@link NativeTransitionalBufferRepositoryImpl}, пакеты записей хранятся в памяти процесса
+ * по интервалам времени, база данных буфера не используется</li>
+ * </ul>
+ * Параметр {@code buffer.partition.seconds} задает длину интервала, по которым записи распределяются по секциям
+ * таблиц (object и compact, 0 - таблицы не секционируются) или по интервалам в памяти (native, больше 0).
+ *
  * @author asidorov84@gmail.com
  */
 @Configuration
 @EnableTransactionManagement
 public class TransitionalBufferConfig {
     private static final Resource BUFFER_INIT_SCRIPT = new ClassPathResource("initBuffer.sql");
+    private static final Resource COMPACT_BUFFER_INIT_SCRIPT = new ClassPathResource("initCompactBuffer.sql");
 
     private final Environment env;
 
@@ -60,7 +78,8 @@ public class TransitionalBufferConfig {
         dataSource.setInitialSize(Integer.parseInt(env.getRequiredProperty("processors.count")));
         dataSource.setMaxTotal(Integer.parseInt(env.getRequiredProperty("processors.count")));
 
-        DatabasePopulatorUtils.execute(databasePopulator(BUFFER_INIT_SCRIPT), dataSource);
+        Resource initScript = "compact".equals(getStorageMode()) ? COMPACT_BUFFER_INIT_SCRIPT : BUFFER_INIT_SCRIPT;
+        DatabasePopulatorUtils.execute(databasePopulator(initScript), dataSource);
 
         return dataSource;
     }
@@ -74,4 +93,31 @@ public class TransitionalBufferConfig {
     public PlatformTransactionManager transactionManager() {
         return new DataSourceTransactionManager(bufferDataSource());
     }
-}
\ No newline at end of file
+
+    @Bean
+    public TransitionalBufferRepository transitionalBufferRepository() {
+        int partitionSeconds = Integer.parseInt(env.getRequiredProperty("buffer.partition.seconds"));
+
+        switch (getStorageMode()) {
+            case "compact":
+                return new CompactTransitionalBufferRepositoryImpl(bufferJdbcTemplate(), partitionSeconds);
+            case "native":
+                return new NativeTransitionalBufferRepositoryImpl(partitionSeconds);
+            default:
+                return new TransitionalBufferRepositoryImpl(bufferJdbcTemplate(), partitionSeconds);
+        }
+    }
+
+    private String getStorageMode() {
+        String mode = env.getRequiredProperty("buffer.storage.mode");
+
+        switch (mode) {
+            case "object":
+            case "compact":
+            case "native":
+                return mode;
+            default:
+                throw new IllegalArgumentException(String.format("Unknown buffer storage mode: %s", mode));
+        }
+    }
+}
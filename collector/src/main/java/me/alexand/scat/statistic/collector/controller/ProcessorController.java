@@ -80,6 +80,9 @@ public final class ProcessorController {
         for (int i = 0; i < processorsCount; i++) {
             processorsPool.submit(IPFIXMessageProcessorFactory.getProcessor());
         }
+
+        LOGGER.info("Starting packets receiver");
+        receiver.start();
     }
 
     @PreDestroy
@@ -27,7 +27,7 @@ import static java.sql.Types.*;
 
 /**
  * Типы экспортируемых данных, согласно классификации IANA.
- * Пока включены только используемые АПК "СКАТ". Каждому типу соответствует его длина в байтах,
+ * Каждому типу соответствует его длина в байтах (65535 - для типов переменной длины),
  * и соответствующий тип в SQL
  *
  * @author asidorov84@gmail.com
@@ -45,16 +45,16 @@ public enum IANAAbstractDataTypes {
     SIGNED64(8, DECIMAL),
     FLOAT32(4, DOUBLE),
     FLOAT64(8, DOUBLE),
-    BOOLEAN(0, Types.BOOLEAN),
-    MAC_ADDRESS(0, VARCHAR),
-    OCTET_ARRAY(0, VARCHAR),
+    BOOLEAN(1, Types.BOOLEAN),
+    MAC_ADDRESS(6, VARCHAR),
+    OCTET_ARRAY(65535, VARCHAR),
     STRING(65535, VARCHAR),
     DATE_TIME_SECONDS(4, TIMESTAMP),
     DATE_TIME_MILLISECONDS(8, TIMESTAMP),
     DATE_TIME_MICROSECONDS(8, TIMESTAMP),
     DATE_TIME_NANOSECONDS(8, TIMESTAMP),
     IPV4_ADDRESS(4, CHAR),
-    IPV6_ADDRESS(0, CHAR);
+    IPV6_ADDRESS(16, CHAR);
 
     private int length;
     private int sqlType;
@@ -71,4 +71,33 @@ public enum IANAAbstractDataTypes {
     public int getSqlType() {
         return sqlType;
     }
+
+    /**
+     * Метод для проверки длины поля, объявленной в шаблоне.<br>
+     * Целые числа могут передаваться с уменьшенным размером, float64 - как float32 (RFC 7011, 6.2),
+     * строки и массивы байт - иметь любую длину, в том числе переменную.
+     *
+     * @param fieldLength длина поля в шаблоне
+     * @return true, если значение типа может быть закодировано полем такой длины
+     */
+    public boolean isValidFieldLength(int fieldLength) {
+        switch (this) {
+            case STRING:
+            case OCTET_ARRAY:
+                return true;
+            case UNSIGNED8:
+            case UNSIGNED16:
+            case UNSIGNED32:
+            case UNSIGNED64:
+            case SIGNED8:
+            case SIGNED16:
+            case SIGNED32:
+            case SIGNED64:
+                return fieldLength >= 1 && fieldLength <= length;
+            case FLOAT64:
+                return fieldLength == 4 || fieldLength == 8;
+            default:
+                return fieldLength == length;
+        }
+    }
 }
\ No newline at end of file
@@ -21,8 +21,6 @@
 
 package me.alexand.scat.statistic.collector.model;
 
-import java.util.Objects;
-
 /**
  * IP Flow Information Export (IPFIX) Field Specifier.
  * <pre>
@@ -85,7 +83,11 @@ public final class IPFIXFieldSpecifier {
 
     @Override
     public int hashCode() {
-        return Objects.hash(enterpriseBit, informationElementIdentifier, fieldLength, enterpriseNumber);
+        //Вычисляется без упаковки полей, так как спецификаторы сравниваются при каждом объявлении шаблона
+        int result = enterpriseBit ? 1 : 0;
+        result = 31 * result + informationElementIdentifier;
+        result = 31 * result + fieldLength;
+        return 31 * result + Long.hashCode(enterpriseNumber);
     }
 
     @Override
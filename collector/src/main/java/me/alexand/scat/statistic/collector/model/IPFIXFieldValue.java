@@ -21,10 +21,17 @@
 
 package me.alexand.scat.statistic.collector.model;
 
+import java.math.BigInteger;
 import java.util.Objects;
 
+import static me.alexand.scat.statistic.collector.model.IANAAbstractDataTypes.UNSIGNED64;
+
 /**
- * Единица данных определенного типа, экспортируемых протоколом IPFIX
+ * Единица данных определенного типа, экспортируемых протоколом IPFIX.
+ * <p>
+ * Значения типа UNSIGNED64, не превышающие Long.MAX_VALUE, хранятся как Long, большие - как BigInteger.
+ * Значение BigInteger, заданное при создании и помещающееся в Long, приводится к Long, чтобы записи,
+ * созданные вручную, были равны декодированным.
  *
  * @author asidorov84@gmail.com
  * @see <a href="https://tools.ietf.org/html/rfc7011#section-3.4.3">RFC-7011</a>
@@ -42,7 +49,7 @@ public final class IPFIXFieldValue {
 
     private IPFIXFieldValue(IPFIXFieldValue.Builder builder) {
         this.name = builder.name;
-        this.value = builder.value;
+        this.value = normalize(builder.type, builder.value);
         this.type = builder.type;
     }
 
@@ -58,6 +65,19 @@ public final class IPFIXFieldValue {
         return type;
     }
 
+    /**
+     * Метод для получения значения целочисленного поля без создания объектов.<br>
+     * Значение UNSIGNED64, превышающее Long.MAX_VALUE, возвращается как отрицательное и должно
+     * интерпретироваться как беззнаковое (Long.compareUnsigned(), Long.toUnsignedString()).
+     *
+     * @return значение поля
+     * @throws ClassCastException   если значение поля не является числом
+     * @throws NullPointerException если значение поля не задано
+     */
+    public long getLongValue() {
+        return ((Number) value).longValue();
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -82,6 +102,14 @@ public final class IPFIXFieldValue {
                 '}';
     }
 
+    private static Object normalize(IANAAbstractDataTypes type, Object value) {
+        if (type == UNSIGNED64 && value instanceof BigInteger && ((BigInteger) value).bitLength() < Long.SIZE) {
+            return ((BigInteger) value).longValue();
+        }
+
+        return value;
+    }
+
     public static class Builder {
         private String name;
         private Object value;
@@ -0,0 +1,592 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.model;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import static me.alexand.scat.statistic.collector.utils.BytesConvertUtils.*;
+import static me.alexand.scat.statistic.collector.utils.DateTimeUtils.epochMillisToLocalDateTime;
+import static me.alexand.scat.statistic.collector.utils.DateTimeUtils.epochSecondsToLocalDateTime;
+import static me.alexand.scat.statistic.collector.utils.DateTimeUtils.ntpTimestampToLocalDateTime;
+
+/**
+ * Пакет записей данных одного типа шаблона, хранящийся по столбцам.
+ * <p>
+ * Значения полей хранятся в массивах примитивных типов: счетчики, время и unsigned64 - в long[],
+ * IPv4-адреса, порты и другие короткие целые - в int[], строки - в общем для всех строковых столбцов
+ * массиве байт со смещениями и длинами, либо ссылками на строки из словаря (см. StringDictionary).
+ * Таким образом, пакет из {@code capacity} записей занимает несколько массивов вместо сотен тысяч объектов
+ * записей и значений полей.
+ * <p>
+ * Столбец может не иметь значения в строке (setNull()), если в шаблоне записи нет соответствующего поля.
+ * <p>
+ * Пакет заполняется одним потоком построчно: значения текущей строки задаются методами set*(), после чего
+ * строка добавляется методом endRow(). Заполненный пакет передается для записи во временный буфер и
+ * больше не изменяется.
+ *
+ * @author asidorov84@gmail.com
+ * @see IPFIXDataRecord
+ */
+public final class RecordsBatch {
+    private static final int INITIAL_STRING_LENGTH = 32;
+
+    private final TemplateType type;
+    private final String[] columnNames;
+    private final IANAAbstractDataTypes[] columnTypes;
+    private final ColumnKind[] columnKinds;
+    private final int capacity;
+
+    //Для каждого столбца - номер массива в longColumns, intColumns или stringOffsets/stringLengths
+    private final int[] columnIndexes;
+    private final long[][] longColumns;
+    private final int[][] intColumns;
+    private final int[][] stringOffsets;
+    private final int[][] stringLengths;
+    //Создаются при первой ссылке на строку из словаря в столбце
+    private final String[][] stringReferences;
+    //Создаются при первом отсутствующем значении в столбце
+    private final boolean[][] nulls;
+
+    private byte[] arena;
+    private int arenaSize;
+    private int size;
+
+    public static RecordsBatch.Builder builder() {
+        return new RecordsBatch.Builder();
+    }
+
+    private RecordsBatch(RecordsBatch.Builder builder) {
+        this.type = Objects.requireNonNull(builder.type);
+        this.columnNames = Objects.requireNonNull(builder.columnNames);
+        this.columnTypes = Objects.requireNonNull(builder.columnTypes);
+        this.capacity = builder.capacity;
+
+        if (columnNames.length != columnTypes.length) {
+            throw new IllegalArgumentException("Count of column names and types must be equal");
+        }
+
+        if (capacity <= 0) {
+            throw new IllegalArgumentException(String.format("Illegal capacity of batch: %d", capacity));
+        }
+
+        int columnCount = columnTypes.length;
+        columnKinds = new ColumnKind[columnCount];
+        columnIndexes = new int[columnCount];
+
+        int longCount = 0;
+        int intCount = 0;
+        int stringCount = 0;
+
+        for (int i = 0; i < columnCount; i++) {
+            columnKinds[i] = ColumnKind.of(columnTypes[i]);
+
+            switch (columnKinds[i]) {
+                case LONG:
+                    columnIndexes[i] = longCount++;
+                    break;
+                case INT:
+                    columnIndexes[i] = intCount++;
+                    break;
+                case STRING:
+                    columnIndexes[i] = stringCount++;
+                    break;
+            }
+        }
+
+        longColumns = new long[longCount][capacity];
+        intColumns = new int[intCount][capacity];
+        stringOffsets = new int[stringCount][capacity];
+        stringLengths = new int[stringCount][capacity];
+        stringReferences = new String[stringCount][];
+        arena = new byte[stringCount * capacity * INITIAL_STRING_LENGTH];
+        nulls = new boolean[columnCount][];
+    }
+
+    public TemplateType getType() {
+        return type;
+    }
+
+    public int getColumnCount() {
+        return columnTypes.length;
+    }
+
+    public String getColumnName(int column) {
+        return columnNames[column];
+    }
+
+    public IANAAbstractDataTypes getColumnType(int column) {
+        return columnTypes[column];
+    }
+
+    public ColumnKind getColumnKind(int column) {
+        return columnKinds[column];
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return количество добавленных строк
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isFull() {
+        return size == capacity;
+    }
+
+    /**
+     * Метод для задания значения столбца типа {@link ColumnKind#LONG} в текущей строке
+     *
+     * @param column номер столбца
+     * @param value  значение
+     */
+    public void setLong(int column, long value) {
+        longColumns[columnIndexes[column]][size] = value;
+    }
+
+    /**
+     * Метод для задания значения столбца типа {@link ColumnKind#INT} в текущей строке
+     *
+     * @param column номер столбца
+     * @param value  значение
+     */
+    public void setInt(int column, int value) {
+        intColumns[columnIndexes[column]][size] = value;
+    }
+
+    /**
+     * Метод для задания значения столбца типа {@link ColumnKind#STRING} в текущей строке.<br>
+     * Байты значения копируются в пакет, поэтому массив {@code src} может быть переиспользован.
+     *
+     * @param column номер столбца
+     * @param src    массив, содержащий значение
+     * @param offset смещение значения в {@code src}
+     * @param length длина значения
+     */
+    public void setString(int column, byte[] src, int offset, int length) {
+        if (arenaSize + length > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + length));
+        }
+
+        System.arraycopy(src, offset, arena, arenaSize, length);
+
+        int index = columnIndexes[column];
+        stringOffsets[index][size] = arenaSize;
+        stringLengths[index][size] = length;
+        arenaSize += length;
+
+        if (stringReferences[index] != null) {
+            stringReferences[index][size] = null;
+        }
+    }
+
+    /**
+     * Метод для задания значения столбца типа {@link ColumnKind#STRING} в текущей строке ссылкой на строку.<br>
+     * Предназначен для строк из словаря, которые разделяются многими записями и не копируются в пакет.
+     *
+     * @param column номер столбца
+     * @param value  строка
+     */
+    public void setString(int column, String value) {
+        int index = columnIndexes[column];
+
+        if (stringReferences[index] == null) {
+            stringReferences[index] = new String[capacity];
+        }
+
+        stringReferences[index][size] = value;
+        stringLengths[index][size] = 0;
+    }
+
+    /**
+     * Метод для указания, что столбец не имеет значения в текущей строке
+     *
+     * @param column номер столбца
+     */
+    public void setNull(int column) {
+        setNull(column, size);
+    }
+
+    private void setNull(int column, int row) {
+        if (nulls[column] == null) {
+            nulls[column] = new boolean[capacity];
+        }
+
+        nulls[column][row] = true;
+    }
+
+    public boolean isNull(int row, int column) {
+        return nulls[column] != null && nulls[column][row];
+    }
+
+    /**
+     * @return true, если хотя бы в одной строке столбец не имеет значения
+     */
+    public boolean hasNulls(int column) {
+        return nulls[column] != null;
+    }
+
+    /**
+     * Метод для добавления текущей строки в пакет
+     *
+     * @throws IllegalStateException если пакет заполнен
+     */
+    public void endRow() {
+        if (size == capacity) {
+            throw new IllegalStateException("Batch is full");
+        }
+
+        size++;
+    }
+
+    /**
+     * Метод для удаления всех строк пакета.<br>
+     * Предназначен для промежуточных пакетов, которые не передаются для записи во временный буфер
+     * и переиспользуются для следующих записей; массивы столбцов и строк сохраняются.
+     */
+    public void clear() {
+        for (boolean[] columnNulls : nulls) {
+            if (columnNulls != null) {
+                Arrays.fill(columnNulls, 0, size, false);
+            }
+        }
+
+        size = 0;
+        arenaSize = 0;
+    }
+
+    /**
+     * Метод для добавления строк другого пакета с теми же столбцами, начиная со строки {@code from}.<br>
+     * Добавляется столько строк, сколько помещается в пакет: значения столбцов копируются целыми диапазонами,
+     * байты строк - в массив этого пакета, ссылки на строки из словаря - без копирования.
+     *
+     * @param src  пакет с теми же типом и столбцами
+     * @param from номер первой добавляемой строки {@code src}
+     * @return количество добавленных строк
+     * @throws IllegalArgumentException если столбцы пакетов различаются
+     */
+    public int append(RecordsBatch src, int from) {
+        if (src.type != type || !Arrays.equals(src.columnTypes, columnTypes)) {
+            throw new IllegalArgumentException("Columns of batches must be equal");
+        }
+
+        int count = Math.min(src.size - from, capacity - size);
+
+        for (int i = 0; i < longColumns.length; i++) {
+            System.arraycopy(src.longColumns[i], from, longColumns[i], size, count);
+        }
+
+        for (int i = 0; i < intColumns.length; i++) {
+            System.arraycopy(src.intColumns[i], from, intColumns[i], size, count);
+        }
+
+        for (int i = 0; i < stringOffsets.length; i++) {
+            appendStrings(src, i, from, count);
+        }
+
+        for (int column = 0; column < nulls.length; column++) {
+            boolean[] srcNulls = src.nulls[column];
+
+            if (srcNulls == null) {
+                continue;
+            }
+
+            for (int i = 0; i < count; i++) {
+                if (srcNulls[from + i]) {
+                    setNull(column, size + i);
+                }
+            }
+        }
+
+        size += count;
+        return count;
+    }
+
+    /**
+     * Метод для создания пустого пакета с теми же столбцами
+     *
+     * @param capacity максимальное количество записей в пакете
+     * @return новый пустой пакет
+     */
+    public RecordsBatch newBatch(int capacity) {
+        return RecordsBatch.builder()
+                .type(type)
+                .columnNames(columnNames)
+                .columnTypes(columnTypes)
+                .capacity(capacity)
+                .build();
+    }
+
+    public long getLong(int row, int column) {
+        return longColumns[columnIndexes[column]][row];
+    }
+
+    public int getInt(int row, int column) {
+        return intColumns[columnIndexes[column]][row];
+    }
+
+    /**
+     * @return массив байт, содержащий значения всех строковых столбцов пакета
+     * @see #getStringOffset(int, int)
+     * @see #getStringLength(int, int)
+     */
+    public byte[] getArena() {
+        return arena;
+    }
+
+    public int getStringOffset(int row, int column) {
+        return stringOffsets[columnIndexes[column]][row];
+    }
+
+    public int getStringLength(int row, int column) {
+        return stringLengths[columnIndexes[column]][row];
+    }
+
+    /**
+     * @return строка, заданная ссылкой, или null, если значение хранится в массиве байт пакета
+     * @see #setString(int, String)
+     */
+    public String getStringReference(int row, int column) {
+        String[] references = stringReferences[columnIndexes[column]];
+        return references != null ? references[row] : null;
+    }
+
+    public String getString(int row, int column) {
+        String reference = getStringReference(row, column);
+
+        if (reference != null) {
+            return reference;
+        }
+
+        int index = columnIndexes[column];
+        return new String(arena, stringOffsets[index][row], stringLengths[index][row], Charset.defaultCharset());
+    }
+
+    /**
+     * Метод для получения значения в виде объекта того же типа, что и при декодировании в {@link IPFIXFieldValue}
+     *
+     * @param row    номер строки
+     * @param column номер столбца
+     * @return значение или null, если значение отсутствует или тип столбца не поддерживается
+     */
+    public Object getValue(int row, int column) {
+        if (isNull(row, column)) {
+            return null;
+        }
+
+        switch (columnTypes[column]) {
+            case DATE_TIME_SECONDS:
+                return epochSecondsToLocalDateTime(getLong(row, column));
+            case DATE_TIME_MILLISECONDS:
+                return epochMillisToLocalDateTime(getLong(row, column));
+            case DATE_TIME_MICROSECONDS:
+            case DATE_TIME_NANOSECONDS:
+                return ntpTimestampToLocalDateTime(getLong(row, column));
+            case UNSIGNED8:
+            case UNSIGNED16:
+            case SIGNED8:
+            case SIGNED16:
+                return getInt(row, column);
+            case UNSIGNED32:
+            case SIGNED32:
+            case SIGNED64:
+                return getLong(row, column);
+            case UNSIGNED64:
+                return unsignedLongToNumber(getLong(row, column));
+            case FLOAT32:
+                return (float) Double.longBitsToDouble(getLong(row, column));
+            case FLOAT64:
+                return Double.longBitsToDouble(getLong(row, column));
+            case BOOLEAN:
+                return byteToBoolean((byte) getInt(row, column));
+            case IPV4_ADDRESS:
+                return intToIPv4(getInt(row, column));
+            case MAC_ADDRESS:
+                return sixBytesToMacAddress(arena, getStringOffset(row, column));
+            case OCTET_ARRAY:
+                return bytesToHexString(arena, getStringOffset(row, column), getStringLength(row, column));
+            case IPV6_ADDRESS:
+                return sixteenBytesToIPv6(arena, getStringOffset(row, column));
+            case STRING:
+                return getString(row, column);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Метод для преобразования пакета в список записей данных.<br>
+     * Создает объекты для всех значений, поэтому предназначен для тестов и отладки.
+     *
+     * @return список записей в порядке добавления строк
+     */
+    public List<IPFIXDataRecord> toDataRecords() {
+        List<IPFIXDataRecord> records = new ArrayList<>(size);
+
+        for (int row = 0; row < size; row++) {
+            List<IPFIXFieldValue> fieldValues = new ArrayList<>(columnTypes.length);
+
+            for (int column = 0; column < columnTypes.length; column++) {
+                fieldValues.add(IPFIXFieldValue.builder()
+                        .name(columnNames[column])
+                        .type(columnTypes[column])
+                        .value(getValue(row, column))
+                        .build());
+            }
+
+            records.add(IPFIXDataRecord.builder()
+                    .type(type)
+                    .fieldValues(fieldValues)
+                    .build());
+        }
+
+        return records;
+    }
+
+    private void appendStrings(RecordsBatch src, int index, int from, int count) {
+        String[] srcReferences = src.stringReferences[index];
+
+        for (int i = 0; i < count; i++) {
+            int row = size + i;
+            String reference = srcReferences != null ? srcReferences[from + i] : null;
+
+            if (reference != null) {
+                if (stringReferences[index] == null) {
+                    stringReferences[index] = new String[capacity];
+                }
+
+                stringReferences[index][row] = reference;
+                stringLengths[index][row] = 0;
+                continue;
+            }
+
+            int length = src.stringLengths[index][from + i];
+
+            if (arenaSize + length > arena.length) {
+                arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + length));
+            }
+
+            System.arraycopy(src.arena, src.stringOffsets[index][from + i], arena, arenaSize, length);
+            stringOffsets[index][row] = arenaSize;
+            stringLengths[index][row] = length;
+            arenaSize += length;
+
+            if (stringReferences[index] != null) {
+                stringReferences[index][row] = null;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RecordsBatch{" +
+                "type=" + type +
+                ", size=" + size +
+                ", capacity=" + capacity +
+                ", arenaSize=" + arenaSize +
+                '}';
+    }
+
+    /**
+     * Способ хранения значений столбца.<br>
+     * Числа с плавающей точкой хранятся в LONG битами double, время с точностью до микро- и наносекунд -
+     * отметкой NTP, MAC- и IPv6-адреса и массивы байт - исходными байтами в STRING.
+     */
+    public enum ColumnKind {
+        LONG,
+        INT,
+        STRING,
+        //Значения неподдерживаемых типов не хранятся
+        NONE;
+
+        public static ColumnKind of(IANAAbstractDataTypes type) {
+            switch (type) {
+                case UNSIGNED32:
+                case UNSIGNED64:
+                case SIGNED32:
+                case SIGNED64:
+                case FLOAT32:
+                case FLOAT64:
+                case DATE_TIME_SECONDS:
+                case DATE_TIME_MILLISECONDS:
+                case DATE_TIME_MICROSECONDS:
+                case DATE_TIME_NANOSECONDS:
+                    return LONG;
+                case UNSIGNED8:
+                case UNSIGNED16:
+                case SIGNED8:
+                case SIGNED16:
+                case BOOLEAN:
+                case IPV4_ADDRESS:
+                    return INT;
+                case STRING:
+                case MAC_ADDRESS:
+                case OCTET_ARRAY:
+                case IPV6_ADDRESS:
+                    return STRING;
+                default:
+                    return NONE;
+            }
+        }
+    }
+
+    public static class Builder {
+        private TemplateType type;
+        private String[] columnNames;
+        private IANAAbstractDataTypes[] columnTypes;
+        private int capacity;
+
+        private Builder() {
+        }
+
+        public Builder type(TemplateType type) {
+            this.type = type;
+            return this;
+        }
+
+        public Builder columnNames(String[] columnNames) {
+            this.columnNames = columnNames;
+            return this;
+        }
+
+        public Builder columnTypes(IANAAbstractDataTypes[] columnTypes) {
+            this.columnTypes = columnTypes;
+            return this;
+        }
+
+        public Builder capacity(int capacity) {
+            this.capacity = capacity;
+            return this;
+        }
+
+        public RecordsBatch build() {
+            return new RecordsBatch(this);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.model;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Отображение полей шаблона IPFIX на столбцы схемы типа записей.
+ * <p>
+ * Схема типа записей - шаблон АПК "СКАТ" ({@link SCATDataTemplate}), дополненный полями, обнаруженными
+ * в шаблонах экспортеров. Шаблон экспортера может содержать поля схемы в другом порядке, лишние поля или
+ * не содержать части полей: для каждого столбца схемы отображение хранит номер соответствующего поля шаблона,
+ * либо -1, если в шаблоне такого поля нет.
+ *
+ * @author asidorov84@gmail.com
+ * @see me.alexand.scat.statistic.collector.service.DataTemplateService
+ */
+public final class TemplateMapping {
+    private final TemplateType type;
+    private final List<InfoModelEntity> columns;
+    private final int[] fieldIndexes;
+
+    public static TemplateMapping.Builder builder() {
+        return new TemplateMapping.Builder();
+    }
+
+    private TemplateMapping(TemplateMapping.Builder builder) {
+        this.type = Objects.requireNonNull(builder.type);
+        this.columns = Objects.requireNonNull(builder.columns);
+        this.fieldIndexes = Objects.requireNonNull(builder.fieldIndexes);
+
+        if (columns.size() != fieldIndexes.length) {
+            throw new IllegalArgumentException("Count of columns and field indexes must be equal");
+        }
+    }
+
+    /**
+     * Метод для создания отображения шаблона, поля которого совпадают со столбцами схемы
+     *
+     * @param type    тип записей
+     * @param columns столбцы схемы
+     * @return отображение
+     */
+    public static TemplateMapping identity(TemplateType type, List<InfoModelEntity> columns) {
+        int[] fieldIndexes = new int[columns.size()];
+
+        for (int i = 0; i < fieldIndexes.length; i++) {
+            fieldIndexes[i] = i;
+        }
+
+        return builder()
+                .type(type)
+                .columns(columns)
+                .fieldIndexes(fieldIndexes)
+                .build();
+    }
+
+    public TemplateType getType() {
+        return type;
+    }
+
+    public List<InfoModelEntity> getColumns() {
+        return columns;
+    }
+
+    public int getColumnCount() {
+        return fieldIndexes.length;
+    }
+
+    /**
+     * @param column номер столбца схемы
+     * @return номер поля шаблона или -1, если поле отсутствует в шаблоне
+     */
+    public int getFieldIndex(int column) {
+        return fieldIndexes[column];
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TemplateMapping that = (TemplateMapping) o;
+        return type == that.type &&
+                Objects.equals(columns, that.columns) &&
+                Arrays.equals(fieldIndexes, that.fieldIndexes);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Objects.hash(type, columns) + Arrays.hashCode(fieldIndexes);
+    }
+
+    @Override
+    public String toString() {
+        return "TemplateMapping{" +
+                "type=" + type +
+                ", columns=" + columns.size() +
+                ", fieldIndexes=" + Arrays.toString(fieldIndexes) +
+                '}';
+    }
+
+    public static class Builder {
+        private TemplateType type;
+        private List<InfoModelEntity> columns;
+        private int[] fieldIndexes;
+
+        private Builder() {
+        }
+
+        public Builder type(TemplateType type) {
+            this.type = type;
+            return this;
+        }
+
+        public Builder columns(List<InfoModelEntity> columns) {
+            this.columns = columns;
+            return this;
+        }
+
+        public Builder fieldIndexes(int[] fieldIndexes) {
+            this.fieldIndexes = fieldIndexes;
+            return this;
+        }
+
+        public TemplateMapping build() {
+            return new TemplateMapping(this);
+        }
+    }
+}
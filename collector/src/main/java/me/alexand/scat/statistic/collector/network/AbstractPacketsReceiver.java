@@ -0,0 +1,279 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.network;
+
+import me.alexand.scat.statistic.collector.capture.CaptureFileWriter;
+import me.alexand.scat.statistic.collector.service.StatCollector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Базовая реализация приемника пакетов.
+ * <p>
+ * Содержит общий для всех видов транспорта внутренний буфер пакетов ({@link PacketQueue}), из которого процессоры забирают
+ * пакеты через метод getNextPacket(). Конкретная реализация отвечает только за получение пакетов от экспортера
+ * и передачу их в буфер через метод enqueue().
+ * <p>
+ * Пакеты хранятся в буферах из общего {@link PacketBufferPool}: реализация получает буфер методом acquire(),
+ * записывает в него сообщение и передает в enqueue(). Буфер возвращается в пул процессором после обработки пакета,
+ * либо сразу, если пакет не поместился во внутренний буфер.
+ * <p>
+ * Если задан файл захвата ({@link CaptureFileWriter}), каждое полученное сообщение записывается в него до передачи
+ * во внутренний буфер, независимо от того, будет ли оно принято.
+ * <p>
+ * Реализация отмечает буферы номером транспортной сессии ({@link PacketBuffer#session()}) и при закрытии TCP-сессии
+ * сообщает о нем процессорам методом enqueueSessionEnd(), после чего шаблоны сессии удаляются.
+ * <p>
+ * Для каждой сессии учитывается количество пакетов, принятых во внутренний буфер и еще не обработанных процессорами
+ * (см. completePacket()). Пакеты общего буфера обрабатываются процессорами параллельно, поэтому признак конца сессии
+ * может быть получен, пока другие процессоры еще декодируют последние пакеты сессии. Шаблоны такой сессии удаляются
+ * только после обработки всех ее пакетов.
+ *
+ * @author asidorov84@gmail.com
+ */
+public abstract class AbstractPacketsReceiver implements PacketsReceiver {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AbstractPacketsReceiver.class);
+    private static final int SESSIONS_COUNT = 0x10000;
+
+    private final PacketQueue packetsBuffer;
+    private final PacketBufferPool packetBufferPool;
+    private final OverflowPolicy overflowPolicy;
+    private volatile CaptureFileWriter capture;
+    //Количество необработанных пакетов (вместе с признаками конца) по номеру сессии
+    private final AtomicIntegerArray pendingPackets = new AtomicIntegerArray(SESSIONS_COUNT);
+    //Признаки сессий, конец которых получен процессором, но шаблоны которых еще не удалены
+    private final AtomicIntegerArray endedSessions = new AtomicIntegerArray(SESSIONS_COUNT);
+
+    protected final StatCollector statCollector;
+
+    protected AbstractPacketsReceiver(PacketQueue packetsBuffer,
+                                      PacketBufferPool packetBufferPool,
+                                      OverflowPolicy overflowPolicy,
+                                      StatCollector statCollector) {
+        this.packetsBuffer = packetsBuffer;
+        this.packetBufferPool = packetBufferPool;
+        this.overflowPolicy = overflowPolicy;
+        this.statCollector = statCollector;
+
+        LOGGER.debug("Initialize internal packets buffer {} with size: {}",
+                packetsBuffer.getClass().getSimpleName(),
+                packetsBuffer.capacity());
+    }
+
+    @Override
+    public PacketBuffer getNextPacket() throws InterruptedException {
+        return packetsBuffer.take();
+    }
+
+    @Override
+    public PacketBuffer getNextPacket(int shard) throws InterruptedException {
+        return packetsBuffer.take(shard);
+    }
+
+    @Override
+    public boolean completePacket(PacketBuffer packet) {
+        int session = packet.session();
+
+        //Признак отмечается до уменьшения счетчика, поэтому процессор, обработавший последний пакет сессии, его увидит
+        if (packet.isSessionEnd()) {
+            endedSessions.set(session, 1);
+        }
+
+        return pendingPackets.decrementAndGet(session) == 0 && endedSessions.compareAndSet(session, 1, 0);
+    }
+
+    @Override
+    public int getShardsCount() {
+        return packetsBuffer.shardsCount();
+    }
+
+    @Override
+    public final boolean shutdown() {
+        boolean stopped = stop();
+
+        if (capture != null) {
+            try {
+                capture.close();
+            } catch (IOException e) {
+                LOGGER.error("Failed to close capture file: {}", e.getMessage());
+                stopped = false;
+            }
+        }
+
+        return stopped;
+    }
+
+    /**
+     * Метод для остановки приема пакетов конкретной реализацией.
+     *
+     * @return true, если остановка прошла успешно, иначе false
+     */
+    protected abstract boolean stop();
+
+    /**
+     * Метод для включения записи всех полученных сообщений в файл захвата.
+     * Файл закрывается при остановке приемника.
+     *
+     * @param capture файл захвата
+     */
+    public void setCapture(CaptureFileWriter capture) {
+        this.capture = capture;
+    }
+
+    @Override
+    public int getRemainingPacketsCount() {
+        return packetsBuffer.size();
+    }
+
+    /**
+     * Метод для помещения полученного пакета во внутренний буфер.
+     * Если буфер заполнен, дальнейшие действия определяются {@link OverflowPolicy}. Если пакет так и не был принят,
+     * он отбрасывается, а факт переполнения регистрируется в StatCollector.
+     *
+     * @param packet буфер с пакетом (IPFIX-сообщение целиком, вместе с заголовком)
+     * @param source источник пакета (адрес экспортера)
+     * @throws InterruptedException если во время ожидания места в буфере текущий поток будет прерван,
+     *                              пакет при этом отбрасывается
+     */
+    protected void enqueue(PacketBuffer packet, String source) throws InterruptedException {
+        boolean accepted = false;
+        capture(packet);
+        //Счетчик увеличивается до передачи пакета, так как процессор может обработать его сразу после передачи
+        pendingPackets.incrementAndGet(packet.session());
+
+        try {
+            accepted = overflowPolicy.offer(packetsBuffer, packet, source);
+        } finally {
+            if (!accepted) {
+                pendingPackets.decrementAndGet(packet.session());
+                reject(packet);
+            }
+        }
+    }
+
+    /**
+     * Метод для записи полученного сообщения в файл захвата, если он задан.
+     * Вызывается методом enqueue(), либо реализацией, которая помещает пакет во внутренний буфер методом offer().
+     *
+     * @param packet буфер с пакетом
+     */
+    protected void capture(PacketBuffer packet) {
+        CaptureFileWriter capture = this.capture;
+
+        if (capture != null) {
+            try {
+                capture.write(packet.array(), packet.length());
+            } catch (IOException e) {
+                LOGGER.error("Failed to write message to capture file, capture is disabled: {}", e.getMessage());
+                this.capture = null;
+            }
+        }
+    }
+
+    /**
+     * Метод для помещения пакета во внутренний буфер без ожидания и без учета {@link OverflowPolicy}.
+     * Для реализаций, которые ожидают места в буфере сами, не блокируя поток (см. {@link NioTcpPacketsReceiver}):
+     * не принятый пакет остается у вызывающего.
+     *
+     * @param packet буфер с пакетом
+     * @return true, если пакет принят
+     */
+    protected boolean offer(PacketBuffer packet) {
+        pendingPackets.incrementAndGet(packet.session());
+
+        if (packetsBuffer.offer(packet)) {
+            return true;
+        }
+
+        pendingPackets.decrementAndGet(packet.session());
+        return false;
+    }
+
+    /**
+     * Метод для отбрасывания пакета, так и не принятого во внутренний буфер
+     *
+     * @param packet буфер с пакетом
+     */
+    protected void reject(PacketBuffer packet) {
+        packet.release();
+        statCollector.registerInputBufferOverflow();
+    }
+
+    /**
+     * @return максимальное время ожидания места во внутреннем буфере по {@link OverflowPolicy} в миллисекундах,
+     * 0 если политика не ожидает
+     */
+    protected long getBlockTimeoutMillis() {
+        return overflowPolicy.getBlockTimeoutMillis();
+    }
+
+    /**
+     * Метод для передачи процессорам признака конца сессии ({@link PacketBuffer#isSessionEnd()}).<br>
+     * Признак не записывается в файл захвата и не ожидает освобождения места во внутреннем буфере, но передается
+     * через {@link OverflowPolicy}, чтобы сохранить порядок относительно пакетов сессии (см. spill). Если признак
+     * не принят, шаблоны сессии со временем вытесняются из хранилища парсера.
+     *
+     * @param session             номер закрытой сессии
+     * @param observationDomainID домен наблюдения сессии
+     */
+    protected void enqueueSessionEnd(int session, long observationDomainID) {
+        pendingPackets.incrementAndGet(session);
+
+        if (!overflowPolicy.offerSessionEnd(packetsBuffer, PacketBuffer.sessionEnd(session, observationDomainID))) {
+            pendingPackets.decrementAndGet(session);
+            LOGGER.debug("End of session {} dropped: internal buffer is full", session);
+        }
+    }
+
+    /**
+     * Метод для получения номера TCP-сессии по порядковому номеру подключения
+     *
+     * @param id порядковый номер подключения, начиная с 1
+     * @return номер сессии в диапазоне [1, {@link PacketBuffer#UDP_SESSION})
+     */
+    protected static int tcpSession(int id) {
+        return 1 + (id - 1) % (PacketBuffer.UDP_SESSION - 1);
+    }
+
+    /**
+     * Метод для получения номера UDP-сессии по порядковому номеру экспортера
+     *
+     * @param id порядковый номер экспортера, начиная с 1
+     * @return номер сессии с признаком {@link PacketBuffer#UDP_SESSION}
+     */
+    protected static int udpSession(int id) {
+        return PacketBuffer.UDP_SESSION | tcpSession(id);
+    }
+
+    /**
+     * Метод для получения из пула буфера под очередной пакет.
+     *
+     * @param length длина пакета в байтах
+     * @return буфер, в который должен быть записан пакет
+     */
+    protected PacketBuffer acquire(int length) {
+        return packetBufferPool.acquire(length);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.network;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Очередь пакетов на основе {@link ArrayBlockingQueue}.
+ * <p>
+ * Все производители и потребители синхронизируются на одной блокировке. Подходит для небольшого количества
+ * процессоров и небольших потоков данных.
+ *
+ * @author asidorov84@gmail.com
+ */
+public final class BlockingPacketQueue implements PacketQueue {
+    private final int capacity;
+    private final BlockingQueue<PacketBuffer> queue;
+
+    public BlockingPacketQueue(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException(String.format("Illegal value of queue capacity: %d", capacity));
+        }
+
+        this.capacity = capacity;
+        queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    @Override
+    public boolean offer(PacketBuffer packet) {
+        return queue.offer(packet);
+    }
+
+    @Override
+    public boolean offer(PacketBuffer packet, long timeout, TimeUnit unit) throws InterruptedException {
+        return queue.offer(packet, timeout, unit);
+    }
+
+    @Override
+    public PacketBuffer take() throws InterruptedException {
+        return queue.take();
+    }
+
+    @Override
+    public int size() {
+        return capacity - queue.remainingCapacity();
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+}
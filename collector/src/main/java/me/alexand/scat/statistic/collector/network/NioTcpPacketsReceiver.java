@@ -0,0 +1,521 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.network;
+
+import me.alexand.scat.statistic.collector.service.StatCollector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.lang.Thread.MAX_PRIORITY;
+import static me.alexand.scat.statistic.collector.model.IPFIXHeader.IPFIX_MESSAGE_HEADER_LENGTH;
+import static me.alexand.scat.statistic.collector.model.IPFIXHeader.IPFIX_MESSAGE_VERSION;
+import static me.alexand.scat.statistic.collector.utils.Constants.TCP_LISTEN_BACKLOG;
+
+/**
+ * TCP-приемник пакетов c IPFIX-сообщениями на основе неблокирующего ввода-вывода (java.nio).
+ * <p>
+ * В отличие от {@link TCPPacketsReceiver}, не создает поток на каждое подключение. Все подключения
+ * обслуживаются фиксированным количеством потоков (циклов событий), каждый из которых работает со своим
+ * {@link Selector}. Первый цикл событий дополнительно принимает новые подключения и распределяет их
+ * между всеми циклами по кругу.
+ * <p>
+ * Для каждого подключения ведется свой конечный автомат разбора потока байт: сначала ожидается 16-байтный
+ * заголовок сообщения, из которого определяется длина сообщения, затем ожидается тело сообщения. Полученное
+ * сообщение целиком помещается во внутренний буфер. Учет порядковых номеров сообщений выполняется так же,
+ * как и в {@link TCPPacketsReceiver}.
+ * <p>
+ * Цикл событий никогда не ожидает места во внутреннем буфере: если политика переполнения предписывает ожидание
+ * (block), а сообщение не помещается в буфер (или в его сегмент), оно остается у подключения, и подключение
+ * перестает читаться (снимается OP_READ). Цикл событий повторяет попытку с периодом {@link #RESUME_PERIOD_MILLIS},
+ * пока место не освободится или не истечет время ожидания, и только затем возобновляет чтение подключения.
+ * Остальные подключения цикла событий в это время обслуживаются как обычно, а для приостановленного
+ * подключения срабатывает управление потоком TCP.
+ * <p>
+ * Обязательными параметрами для создания экземпляра являются IP-адрес и порт для создания сокета, очередь
+ * пакетов, размер приемного буфера сокета для TCP (SO_RCVBUF), количество циклов событий
+ * и пул буферов для пакетов.
+ *
+ * @author asidorov84@gmail.com
+ */
+public final class NioTcpPacketsReceiver extends AbstractPacketsReceiver {
+    private static final Logger LOGGER = LoggerFactory.getLogger(NioTcpPacketsReceiver.class);
+    private static final long RESUME_PERIOD_MILLIS = 1;
+
+    private final ServerSocketChannel serverChannel;
+    private final EventLoop[] eventLoops;
+    private final Thread[] eventLoopThreads;
+    private final AtomicInteger sessionsCounter = new AtomicInteger(0);
+    private final int socketReceiveBufferSize;
+    private final long blockTimeoutNanos;
+
+    public NioTcpPacketsReceiver(String address,
+                                 int port,
+                                 PacketQueue packetsBuffer,
+                                 int socketReceiveBufferSize,
+                                 int eventLoopsCount,
+                                 PacketBufferPool packetBufferPool,
+                                 OverflowPolicy overflowPolicy,
+                                 StatCollector statCollector) throws IOException {
+        super(packetsBuffer, packetBufferPool, overflowPolicy, statCollector);
+
+        if (socketReceiveBufferSize <= 0) {
+            throw new IllegalArgumentException(String.format("Illegal value of socket receive buffer size: %d",
+                    socketReceiveBufferSize));
+        }
+
+        if (eventLoopsCount <= 0) {
+            throw new IllegalArgumentException(String.format("Illegal value of event loops count: %d", eventLoopsCount));
+        }
+
+        this.socketReceiveBufferSize = socketReceiveBufferSize;
+        this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(getBlockTimeoutMillis());
+
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.setOption(StandardSocketOptions.SO_RCVBUF, socketReceiveBufferSize);
+        serverChannel.bind(new InetSocketAddress(InetAddress.getByName(address), port), TCP_LISTEN_BACKLOG);
+
+        LOGGER.debug("Created server socket channel on {}", serverChannel.getLocalAddress());
+
+        eventLoops = new EventLoop[eventLoopsCount];
+        eventLoopThreads = new Thread[eventLoopsCount];
+
+        for (int i = 0; i < eventLoopsCount; i++) {
+            eventLoops[i] = new EventLoop(i + 1);
+            eventLoopThreads[i] = new Thread(eventLoops[i], String.format("tcp-event-loop-%d-thread", i + 1));
+            eventLoopThreads[i].setPriority(MAX_PRIORITY);
+        }
+
+        serverChannel.register(eventLoops[0].selector, SelectionKey.OP_ACCEPT);
+        LOGGER.debug("Initialize {} event loops for incoming connections", eventLoopsCount);
+    }
+
+    @Override
+    public void start() {
+        for (Thread thread : eventLoopThreads) {
+            thread.start();
+        }
+    }
+
+    @Override
+    protected boolean stop() {
+        //Прекращаем слушать новые подключения к коллектору
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            LOGGER.error(e.getMessage());
+            return false;
+        }
+        LOGGER.debug("...server socket channel closed");
+
+        //Останавливаем циклы событий, при этом закрываются все текущие открытые подключения
+        for (Thread thread : eventLoopThreads) {
+            thread.interrupt();
+        }
+
+        try {
+            for (Thread thread : eventLoopThreads) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            LOGGER.error(e.getMessage());
+            return false;
+        }
+
+        return true;
+    }
+
+    private class EventLoop implements Runnable {
+        private final int id;
+        private final Selector selector;
+        private final Queue<SocketChannel> pendingChannels = new ConcurrentLinkedQueue<>();
+        //Подключения, сообщение которых ожидает места во внутреннем буфере
+        private final List<SelectionKey> pausedKeys = new ArrayList<>();
+        private int nextEventLoop = 0;
+
+        EventLoop(int id) throws IOException {
+            this.id = id;
+            this.selector = Selector.open();
+        }
+
+        /**
+         * Передать новое подключение на обслуживание данному циклу событий.
+         * Регистрация канала в селекторе выполняется в потоке цикла событий.
+         */
+        void assign(SocketChannel channel) {
+            pendingChannels.add(channel);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            LOGGER.info("Start event loop (id = {})...", id);
+
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    if (pausedKeys.isEmpty()) {
+                        selector.select();
+                    } else {
+                        selector.select(RESUME_PERIOD_MILLIS);
+                    }
+
+                    registerPendingChannels();
+                    resumePausedConnections();
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+
+                        if (!key.isValid()) {
+                            continue;
+                        }
+
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else if (key.isReadable()) {
+                            read(key);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.error(e.getMessage());
+            } catch (InterruptedException e) {
+                LOGGER.debug("Event loop (id = {}) interrupted", id);
+            } finally {
+                close();
+            }
+
+            LOGGER.info("Stop event loop (id = {})...", id);
+        }
+
+        private void accept() throws IOException {
+            SocketChannel channel;
+
+            while ((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.SO_RCVBUF, socketReceiveBufferSize);
+
+                LOGGER.info("Got connection from {}", channel.getRemoteAddress());
+
+                eventLoops[nextEventLoop].assign(channel);
+                nextEventLoop = (nextEventLoop + 1) % eventLoops.length;
+            }
+        }
+
+        private void registerPendingChannels() {
+            SocketChannel channel;
+
+            while ((channel = pendingChannels.poll()) != null) {
+                int sessionId = sessionsCounter.incrementAndGet();
+
+                try {
+                    //Статистика ведется по адресу экспортера: порт меняется при каждом подключении
+                    InetSocketAddress address = (InetSocketAddress) channel.getRemoteAddress();
+                    channel.register(selector, SelectionKey.OP_READ,
+                            new Connection(sessionId, address.getAddress().getHostAddress()));
+                    LOGGER.debug("Start new TCP session with id = {} within event loop (id = {})", sessionId, id);
+                } catch (IOException e) {
+                    LOGGER.error(e.getMessage());
+                    closeChannel(channel, sessionId);
+                }
+            }
+        }
+
+        private void read(SelectionKey key) throws InterruptedException {
+            SocketChannel channel = (SocketChannel) key.channel();
+            Connection connection = (Connection) key.attachment();
+
+            try {
+                if (!connection.read(channel)) {
+                    closeConnection(key);
+                } else if (connection.isPaused()) {
+                    pause(key);
+                }
+            } catch (IOException e) {
+                LOGGER.error(e.getMessage());
+                closeConnection(key);
+            }
+        }
+
+        private void pause(SelectionKey key) {
+            key.interestOps(0);
+            pausedKeys.add(key);
+        }
+
+        /**
+         * Повторить попытку поместить во внутренний буфер сообщения приостановленных подключений
+         * и возобновить чтение подключений, сообщения которых приняты или отброшены по истечении ожидания
+         */
+        private void resumePausedConnections() throws InterruptedException {
+            if (pausedKeys.isEmpty()) {
+                return;
+            }
+
+            long now = System.nanoTime();
+            Iterator<SelectionKey> keys = pausedKeys.iterator();
+
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                Connection connection = (Connection) key.attachment();
+
+                if (!connection.resume(now)) {
+                    continue;
+                }
+
+                //Разбор оставшихся в буфере подключения сообщений может снова приостановить подключение
+                if (!connection.process()) {
+                    keys.remove();
+                    closeConnection(key);
+                } else if (!connection.isPaused()) {
+                    keys.remove();
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            }
+        }
+
+        private void closeConnection(SelectionKey key) {
+            Connection connection = (Connection) key.attachment();
+            key.cancel();
+            closeChannel((SocketChannel) key.channel(), connection.id);
+            connection.end();
+        }
+
+        private void close() {
+            for (SelectionKey key : selector.keys()) {
+                if (key.channel() instanceof SocketChannel) {
+                    Connection connection = (Connection) key.attachment();
+                    closeChannel((SocketChannel) key.channel(), connection.id);
+                    connection.end();
+                }
+            }
+
+            SocketChannel channel;
+            while ((channel = pendingChannels.poll()) != null) {
+                closeChannel(channel, 0);
+            }
+
+            try {
+                selector.close();
+            } catch (IOException e) {
+                LOGGER.error(e.getMessage());
+            }
+        }
+
+        private void closeChannel(SocketChannel channel, int sessionId) {
+            try {
+                channel.close();
+                LOGGER.debug("Socket channel of session (id = {}) closed", sessionId);
+            } catch (IOException e) {
+                LOGGER.error(e.getMessage());
+            }
+        }
+    }
+
+    private enum State {
+        READ_HEADER,
+        READ_BODY
+    }
+
+    /**
+     * Состояние разбора потока байт в рамках одного подключения.
+     * Используется только потоком цикла событий, к которому привязано подключение.
+     */
+    private class Connection {
+        private final int id;
+        private final String exporter;
+        private final ByteBuffer buffer = ByteBuffer.allocate(PacketBuffer.MAX_PACKET_LENGTH);
+        private final SequenceNumberTracker sequenceNumberTracker = new SequenceNumberTracker();
+
+        private State state = State.READ_HEADER;
+        private int messageLength;
+        private long domainID;
+
+        //Сообщение, ожидающее места во внутреннем буфере, и время начала ожидания
+        private PacketBuffer pending;
+        private long pendingSince;
+
+        Connection(int id, String exporter) {
+            this.id = id;
+            this.exporter = exporter;
+        }
+
+        /**
+         * Прочитать доступные в канале данные и выделить из них все полностью полученные сообщения.
+         *
+         * @return false, если подключение должно быть закрыто
+         * @throws InterruptedException если поток был прерван во время помещения сообщения во внутренний буфер
+         */
+        boolean read(SocketChannel channel) throws IOException, InterruptedException {
+            int bytesRead = channel.read(buffer);
+
+            if (bytesRead == -1) {
+                LOGGER.info("Connection of session (id = {}) closed by exporter", id);
+                return false;
+            }
+
+            return process();
+        }
+
+        /**
+         * Выделить из буфера подключения все полностью полученные сообщения. Разбор приостанавливается, если
+         * сообщение должно ожидать места во внутреннем буфере (см. isPaused()).
+         *
+         * @return false, если подключение должно быть закрыто
+         * @throws InterruptedException если поток был прерван во время помещения сообщения во внутренний буфер
+         */
+        boolean process() throws InterruptedException {
+            buffer.flip();
+
+            try {
+                while (true) {
+                    if (state == State.READ_HEADER) {
+                        if (buffer.remaining() < IPFIX_MESSAGE_HEADER_LENGTH) {
+                            break;
+                        }
+
+                        if (!readHeader()) {
+                            return false;
+                        }
+
+                        state = State.READ_BODY;
+                    }
+
+                    if (buffer.remaining() < messageLength) {
+                        break;
+                    }
+
+                    PacketBuffer packet = acquire(messageLength);
+                    buffer.get(packet.array(), 0, messageLength);
+                    packet.setSession(tcpSession(id));
+                    state = State.READ_HEADER;
+
+                    if (blockTimeoutNanos == 0) {
+                        enqueue(packet, exporter);
+                        continue;
+                    }
+
+                    capture(packet);
+
+                    if (!offer(packet)) {
+                        pending = packet;
+                        pendingSince = System.nanoTime();
+                        break;
+                    }
+                }
+            } finally {
+                buffer.compact();
+            }
+
+            return true;
+        }
+
+        boolean isPaused() {
+            return pending != null;
+        }
+
+        /**
+         * Повторить попытку поместить ожидающее сообщение во внутренний буфер.
+         * По истечении времени ожидания сообщение отбрасывается.
+         *
+         * @param now текущее время в наносекундах (System.nanoTime())
+         * @return true, если ожидание закончено и разбор сообщений может быть продолжен
+         */
+        boolean resume(long now) {
+            boolean accepted = offer(pending);
+
+            if (!accepted && now - pendingSince < blockTimeoutNanos) {
+                return false;
+            }
+
+            if (!accepted) {
+                reject(pending);
+            }
+
+            statCollector.registerBlockedTime(exporter, now - pendingSince);
+            pending = null;
+            return true;
+        }
+
+        /**
+         * Сообщить процессорам о закрытии сессии, если в ней были получены сообщения
+         */
+        void end() {
+            if (pending != null) {
+                reject(pending);
+                pending = null;
+            }
+
+            if (!sequenceNumberTracker.isFirstPacket()) {
+                enqueueSessionEnd(tcpSession(id), domainID);
+            }
+        }
+
+        private boolean readHeader() {
+            int start = buffer.position();
+
+            int version = buffer.getShort(start) & 0xFFFF;
+            if (version != IPFIX_MESSAGE_VERSION) {
+                LOGGER.debug("Illegal version of message: {}", version);
+                LOGGER.debug("Closing session (id = {})...", id);
+                return false;
+            }
+
+            messageLength = buffer.getShort(start + 2) & 0xFFFF;
+            if (messageLength < IPFIX_MESSAGE_HEADER_LENGTH) {
+                LOGGER.debug("Illegal length of message: {}", messageLength);
+                LOGGER.debug("Closing session (id = {})...", id);
+                return false;
+            }
+
+            long currentSequenceNumber = buffer.getInt(start + 8) & 0xFFFFFFFFL;
+
+            if (sequenceNumberTracker.isFirstPacket()) {
+                //DomainID не меняется в рамках TCP-сессии.
+                domainID = buffer.getInt(start + 12) & 0xFFFFFFFFL;
+                sequenceNumberTracker.update(currentSequenceNumber);
+            } else {
+                statCollector.registerExportedRecords(domainID, sequenceNumberTracker.update(currentSequenceNumber));
+            }
+
+            return true;
+        }
+    }
+}
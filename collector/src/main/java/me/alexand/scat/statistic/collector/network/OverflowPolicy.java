@@ -0,0 +1,269 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.network;
+
+import me.alexand.scat.statistic.collector.service.StatCollector;
+import me.alexand.scat.statistic.collector.spill.SegmentLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Политика приемника при переполнении внутреннего буфера пакетов.
+ * <p>
+ * Политика выбирается параметром {@code packet.queue.overflow.policy}:
+ * <ul>
+ * <li>drop - пакет сразу отбрасывается</li>
+ * <li>block - поток приемника ожидает освобождения места не дольше {@code packet.queue.overflow.block.timeout}
+ * миллисекунд и только затем отбрасывает пакет. Пока поток ожидает, он не читает из сокета, поэтому для TCP
+ * срабатывает управление потоком и экспортер замедляет отправку. Для UDP ожидание лишь позволяет приемному
+ * буферу сокета сгладить кратковременный всплеск</li>
+ * <li>spill - пакет записывается в журнал на диске ({@link SegmentLog}), откуда отдельный поток возвращает пакеты
+ * во внутренний буфер, когда он освобождается. Вместе с пакетом в журнал записывается номер его сессии. Пока журнал
+ * не пуст, в него же записывается и признак конца сессии, чтобы он не опередил пакеты своей сессии</li>
+ * </ul>
+ * Отброшенные пакеты учитываются как переполнение входного буфера.
+ *
+ * @author asidorov84@gmail.com
+ */
+public interface OverflowPolicy {
+    /**
+     * Поместить пакет во внутренний буфер в соответствии с политикой.
+     *
+     * @param queue  внутренний буфер пакетов
+     * @param packet буфер с пакетом
+     * @param source источник пакета (адрес экспортера), используется для статистики
+     * @return true, если пакет принят, false если пакет должен быть отброшен
+     * @throws InterruptedException если во время ожидания текущий поток будет прерван
+     */
+    boolean offer(PacketQueue queue, PacketBuffer packet, String source) throws InterruptedException;
+
+    /**
+     * @return максимальное время ожидания места во внутреннем буфере в миллисекундах, 0 если политика не ожидает
+     */
+    default long getBlockTimeoutMillis() {
+        return 0;
+    }
+
+    /**
+     * Поместить признак конца сессии ({@link PacketBuffer#isSessionEnd()}) во внутренний буфер без ожидания.
+     * По умолчанию признак отбрасывается, если места в буфере нет.
+     *
+     * @param queue  внутренний буфер пакетов
+     * @param marker признак конца сессии
+     * @return true, если признак принят
+     */
+    default boolean offerSessionEnd(PacketQueue queue, PacketBuffer marker) {
+        return queue.offer(marker);
+    }
+
+    static OverflowPolicy drop() {
+        return (queue, packet, source) -> queue.offer(packet);
+    }
+
+    static OverflowPolicy block(long timeoutMillis, StatCollector statCollector) {
+        return new Block(timeoutMillis, statCollector);
+    }
+
+    static OverflowPolicy spill(SegmentLog log, PacketQueue queue, PacketBufferPool packetBufferPool) {
+        return new Spill(log, queue, packetBufferPool);
+    }
+
+    final class Block implements OverflowPolicy {
+        private final long timeoutMillis;
+        private final StatCollector statCollector;
+
+        Block(long timeoutMillis, StatCollector statCollector) {
+            if (timeoutMillis <= 0) {
+                throw new IllegalArgumentException(String.format("Illegal value of block timeout: %d", timeoutMillis));
+            }
+
+            this.timeoutMillis = timeoutMillis;
+            this.statCollector = statCollector;
+        }
+
+        @Override
+        public boolean offer(PacketQueue queue, PacketBuffer packet, String source) throws InterruptedException {
+            if (queue.offer(packet)) {
+                return true;
+            }
+
+            long t0 = System.nanoTime();
+
+            try {
+                return queue.offer(packet, timeoutMillis, TimeUnit.MILLISECONDS);
+            } finally {
+                statCollector.registerBlockedTime(source, System.nanoTime() - t0);
+            }
+        }
+
+        @Override
+        public long getBlockTimeoutMillis() {
+            return timeoutMillis;
+        }
+    }
+
+    final class Spill implements OverflowPolicy, AutoCloseable {
+        private static final Logger LOGGER = LoggerFactory.getLogger(Spill.class);
+        private static final long REPLAY_IDLE_PERIOD_MILLIS = 10;
+        //За пакетом в журнале следуют номер сессии (2 байта) и тип записи (1 байт)
+        private static final int SUFFIX_LENGTH = 3;
+        private static final byte PACKET_RECORD = 0;
+        private static final byte SESSION_END_RECORD = 1;
+        //Вместо сообщения признак конца сессии хранит домен наблюдения
+        private static final int DOMAIN_ID_OFFSET = 12;
+        private static final int DOMAIN_ID_LENGTH = 4;
+
+        private final SegmentLog log;
+        private final PacketQueue queue;
+        private final PacketBufferPool packetBufferPool;
+        private final Thread replayThread;
+        private final byte[] record = new byte[PacketBuffer.MAX_PACKET_LENGTH + SUFFIX_LENGTH];
+        private final byte[] replayRecord = new byte[PacketBuffer.MAX_PACKET_LENGTH + SUFFIX_LENGTH];
+
+        Spill(SegmentLog log, PacketQueue queue, PacketBufferPool packetBufferPool) {
+            this.log = log;
+            this.queue = queue;
+            this.packetBufferPool = packetBufferPool;
+
+            replayThread = new Thread(this::replay, "packets-spill-replay-thread");
+            replayThread.setDaemon(true);
+            replayThread.start();
+        }
+
+        @Override
+        public boolean offer(PacketQueue queue, PacketBuffer packet, String source) {
+            //Пока журнал не пуст, новые пакеты тоже пишутся в журнал, чтобы не нарушить порядок сообщений экспортера
+            if (log.isEmpty() && queue.offer(packet)) {
+                return true;
+            }
+
+            if (!append(packet)) {
+                return false;
+            }
+
+            packet.release();
+            return true;
+        }
+
+        /**
+         * Признак конца сессии подчиняется тому же правилу, что и пакеты: пока журнал не пуст, он записывается
+         * в журнал после пакетов сессии, иначе процессор удалил бы шаблоны сессии до обработки этих пакетов
+         */
+        @Override
+        public boolean offerSessionEnd(PacketQueue queue, PacketBuffer marker) {
+            return offer(queue, marker, null);
+        }
+
+        /**
+         * Записать пакет в журнал, дополнив его номером сессии и типом записи
+         */
+        private synchronized boolean append(PacketBuffer packet) {
+            int length;
+            byte type;
+
+            if (packet.isSessionEnd()) {
+                length = DOMAIN_ID_LENGTH;
+                type = SESSION_END_RECORD;
+                System.arraycopy(packet.array(), DOMAIN_ID_OFFSET, record, 0, length);
+            } else {
+                length = packet.length();
+                type = PACKET_RECORD;
+                System.arraycopy(packet.array(), 0, record, 0, length);
+            }
+
+            record[length] = (byte) (packet.session() >>> 8);
+            record[length + 1] = (byte) packet.session();
+            record[length + 2] = type;
+
+            return log.append(record, 0, length + SUFFIX_LENGTH);
+        }
+
+        @Override
+        public void close() {
+            replayThread.interrupt();
+
+            try {
+                replayThread.join();
+            } catch (InterruptedException e) {
+                //Журнал не удаляется, пока поток возврата может читать его
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            try {
+                log.close();
+            } catch (IOException e) {
+                LOGGER.error(e.getMessage());
+            }
+        }
+
+        /**
+         * Возвращать пакеты из журнала во внутренний буфер, пока он заполнен не более чем наполовину.
+         * Пакет удаляется из журнала только после того, как он помещен в буфер.
+         */
+        private void replay() {
+            LOGGER.info("Start replaying spilled packets...");
+
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    if (log.isEmpty() || queue.size() > queue.capacity() / 2) {
+                        Thread.sleep(REPLAY_IDLE_PERIOD_MILLIS);
+                        continue;
+                    }
+
+                    //Пакет с номером сессии может быть длиннее максимального буфера, поэтому читается через отдельный массив
+                    int length = log.read(replayRecord) - SUFFIX_LENGTH;
+                    PacketBuffer packet = toPacket(length);
+
+                    if (queue.offer(packet)) {
+                        log.remove();
+                    } else {
+                        packet.release();
+                        Thread.sleep(REPLAY_IDLE_PERIOD_MILLIS);
+                    }
+                }
+            } catch (InterruptedException e) {
+                LOGGER.debug("Replay of spilled packets interrupted");
+            }
+
+            LOGGER.info("Stop replaying spilled packets...");
+        }
+
+        private PacketBuffer toPacket(int length) {
+            int session = (replayRecord[length] & 0xFF) << 8 | replayRecord[length + 1] & 0xFF;
+
+            if (replayRecord[length + 2] == SESSION_END_RECORD) {
+                long observationDomainID = (replayRecord[0] & 0xFFL) << 24 | (replayRecord[1] & 0xFF) << 16
+                        | (replayRecord[2] & 0xFF) << 8 | replayRecord[3] & 0xFF;
+                return PacketBuffer.sessionEnd(session, observationDomainID);
+            }
+
+            PacketBuffer packet = packetBufferPool.acquire(length);
+            System.arraycopy(replayRecord, 0, packet.array(), 0, length);
+            packet.setSession(session);
+            return packet;
+        }
+    }
+}
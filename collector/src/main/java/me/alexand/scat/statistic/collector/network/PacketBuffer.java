@@ -0,0 +1,215 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.network;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Arrays.copyOf;
+
+/**
+ * Буфер с одним IPFIX-сообщением (пакетом), полученным приемником.
+ * <p>
+ * Буферы переиспользуются через {@link PacketBufferPool}: приемник получает буфер из пула, записывает в него
+ * сообщение и передает процессору через {@link PacketsReceiver#getNextPacket()}. После извлечения из сообщения
+ * всех записей процессор обязан вызвать {@link #release()}, после чего буфер возвращается в пул. Если буфер нужен нескольким
+ * потребителям, каждый дополнительный потребитель вызывает {@link #retain()} и затем {@link #release()}.
+ * <p>
+ * Массив буфера может быть длиннее сообщения, поэтому данные всегда читаются в пределах {@link #length()}.
+ * <p>
+ * Приемник отмечает буфер номером транспортной сессии ({@link #session()}), в рамках которой получено сообщение:
+ * шаблоны экспортера действительны только в пределах своей сессии (RFC 7011, 8). При закрытии TCP-сессии приемник
+ * передает процессорам пустой буфер - признак конца сессии ({@link #isSessionEnd()}).
+ *
+ * @author asidorov84@gmail.com
+ */
+public final class PacketBuffer {
+    static final int MAX_PACKET_LENGTH = 65535;
+
+    /**
+     * Сессия по умолчанию: сообщения, полученные не по сети (файл захвата, тесты)
+     */
+    public static final int DEFAULT_SESSION = 0;
+
+    /**
+     * Признак UDP-сессии в номере сессии. Номера TCP-сессий находятся в диапазоне [1, {@code UDP_SESSION})
+     */
+    public static final int UDP_SESSION = 0x8000;
+    private static final int MIN_CAPACITY = 1500;
+
+    private final PacketBufferPool pool;
+    private final AtomicInteger referenceCount = new AtomicInteger(0);
+
+    private byte[] array;
+    private int length;
+    private int session;
+
+    PacketBuffer(PacketBufferPool pool, int capacity) {
+        this.pool = pool;
+        this.array = new byte[Math.max(capacity, Math.min(MIN_CAPACITY, getMaxCapacity(capacity)))];
+    }
+
+    /**
+     * Создать буфер, не принадлежащий пулу, с готовым сообщением.
+     * Освобождение такого буфера ничего не делает, массив не копируется.
+     *
+     * @param packet сообщение целиком, вместе с заголовком
+     * @return буфер с сообщением
+     */
+    public static PacketBuffer wrap(byte[] packet) {
+        PacketBuffer buffer = new PacketBuffer(null, 0);
+        buffer.array = packet;
+        buffer.length = packet.length;
+        buffer.referenceCount.set(1);
+        return buffer;
+    }
+
+    /**
+     * Создать признак конца сессии, не принадлежащий пулу.<br>
+     * Массив признака содержит домен наблюдения на месте заголовка сообщения, поэтому при распределении пакетов
+     * по экспортерам (см. {@link ShardedPacketQueue}) признак попадает к процессору, обрабатывавшему сессию.
+     *
+     * @param session             номер закрытой сессии
+     * @param observationDomainID домен наблюдения сессии
+     * @return пустой буфер с номером сессии
+     */
+    static PacketBuffer sessionEnd(int session, long observationDomainID) {
+        byte[] header = new byte[16];
+        header[12] = (byte) (observationDomainID >>> 24);
+        header[13] = (byte) (observationDomainID >>> 16);
+        header[14] = (byte) (observationDomainID >>> 8);
+        header[15] = (byte) observationDomainID;
+
+        PacketBuffer buffer = wrap(header);
+        buffer.length = 0;
+        buffer.session = session;
+        return buffer;
+    }
+
+    /**
+     * @return массив с сообщением, значимы только первые {@link #length()} байт
+     */
+    public byte[] array() {
+        return array;
+    }
+
+    /**
+     * @return длина сообщения в байтах
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return номер транспортной сессии, в рамках которой получено сообщение
+     */
+    public int session() {
+        return session;
+    }
+
+    /**
+     * @return true, если буфер не содержит сообщения и является признаком конца сессии
+     */
+    public boolean isSessionEnd() {
+        return length == 0 && session != DEFAULT_SESSION;
+    }
+
+    /**
+     * @return копия сообщения в виде отдельного массива
+     */
+    public byte[] toByteArray() {
+        return copyOf(array, length);
+    }
+
+    /**
+     * Увеличить счетчик ссылок на буфер.
+     *
+     * @return этот же буфер
+     * @throws IllegalStateException если буфер уже освобожден
+     */
+    public PacketBuffer retain() {
+        int count;
+
+        do {
+            count = referenceCount.get();
+
+            if (count <= 0) {
+                throw new IllegalStateException("Packet buffer is already released");
+            }
+        } while (!referenceCount.compareAndSet(count, count + 1));
+
+        return this;
+    }
+
+    /**
+     * Уменьшить счетчик ссылок на буфер. Когда ссылок не остается, буфер возвращается в пул
+     * и больше не должен использоваться.
+     *
+     * @throws IllegalStateException если буфер уже освобожден
+     */
+    public void release() {
+        int count = referenceCount.decrementAndGet();
+
+        if (count < 0) {
+            referenceCount.incrementAndGet();
+            throw new IllegalStateException("Packet buffer is already released");
+        }
+
+        if (count == 0 && pool != null) {
+            pool.recycle(this);
+        }
+    }
+
+    /**
+     * Подготовить буфер к записи сообщения заданной длины. При необходимости массив увеличивается, и
+     * в дальнейшем буфер сохраняет увеличенный размер. Буфер пула растет не больше размера, с которым он
+     * возвращается в пул, если сообщение в него помещается.
+     */
+    void reset(int length) {
+        if (length < 0 || length > MAX_PACKET_LENGTH) {
+            throw new IllegalArgumentException(String.format("Illegal length of packet: %d", length));
+        }
+
+        if (array.length < length) {
+            array = new byte[Math.min(getMaxCapacity(length), Math.max(length, array.length * 2))];
+        }
+
+        this.length = length;
+        this.session = DEFAULT_SESSION;
+        referenceCount.set(1);
+    }
+
+    void setSession(int session) {
+        this.session = session;
+    }
+
+    boolean isPooled() {
+        return pool != null;
+    }
+
+    private int getMaxCapacity(int length) {
+        if (pool != null && length <= pool.getMaxRetainedSize()) {
+            return pool.getMaxRetainedSize();
+        }
+
+        return MAX_PACKET_LENGTH;
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.network;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Пул буферов для пакетов.
+ * <p>
+ * Буферы создаются по мере необходимости, но не более {@code capacity} штук, и после освобождения возвращаются
+ * в пул. Если все буферы пула заняты, выдается буфер, не принадлежащий пулу (он будет собран сборщиком мусора),
+ * а факт нехватки буферов учитывается. Размер пула должен покрывать емкость приемного буфера плюс пакеты,
+ * одновременно обрабатываемые процессорами.
+ * <p>
+ * Буфер растет до длины самого большого записанного в него сообщения (до 64 КБ). Чтобы редкие большие сообщения
+ * не увеличивали память, удерживаемую пулом, буфер размером больше {@code maxRetainedSize} после освобождения
+ * не возвращается в пул, а вместо него при необходимости создается новый. Для сообщений не длиннее
+ * {@code maxRetainedSize} буфер растет не больше этого размера, поэтому остается в пуле.
+ *
+ * @author asidorov84@gmail.com
+ */
+public final class PacketBufferPool {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PacketBufferPool.class);
+
+    private final int capacity;
+    private final int maxRetainedSize;
+    private final BlockingQueue<PacketBuffer> freeBuffers;
+    private final AtomicInteger createdBuffersCounter = new AtomicInteger(0);
+    private final AtomicInteger usedBuffersCounter = new AtomicInteger(0);
+    private final AtomicLong missesCounter = new AtomicLong(0);
+    private final AtomicLong discardedBuffersCounter = new AtomicLong(0);
+
+    public PacketBufferPool(int capacity) {
+        this(capacity, PacketBuffer.MAX_PACKET_LENGTH);
+    }
+
+    /**
+     * @param capacity        максимальное количество буферов пула
+     * @param maxRetainedSize максимальный размер буфера в байтах, возвращаемого в пул после освобождения
+     */
+    public PacketBufferPool(int capacity, int maxRetainedSize) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException(String.format("Illegal value of packet buffer pool capacity: %d", capacity));
+        }
+
+        if (maxRetainedSize <= 0) {
+            throw new IllegalArgumentException(String.format("Illegal value of max retained buffer size: %d",
+                    maxRetainedSize));
+        }
+
+        this.capacity = capacity;
+        this.maxRetainedSize = maxRetainedSize;
+        freeBuffers = new ArrayBlockingQueue<>(capacity);
+        LOGGER.debug("Initialize packet buffer pool with capacity: {}, max retained buffer size: {}",
+                capacity, maxRetainedSize);
+    }
+
+    /**
+     * Получить буфер для сообщения заданной длины. Счетчик ссылок полученного буфера равен 1.
+     *
+     * @param length длина сообщения в байтах
+     * @return буфер
+     */
+    public PacketBuffer acquire(int length) {
+        PacketBuffer buffer = freeBuffers.poll();
+
+        if (buffer == null) {
+            buffer = createBuffer(length);
+        }
+
+        if (buffer.isPooled()) {
+            usedBuffersCounter.incrementAndGet();
+        }
+
+        buffer.reset(length);
+        return buffer;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    int getMaxRetainedSize() {
+        return maxRetainedSize;
+    }
+
+    /**
+     * @return количество созданных пулом буферов
+     */
+    public int getCreatedBuffersCount() {
+        return createdBuffersCounter.get();
+    }
+
+    /**
+     * @return количество буферов пула, выданных и еще не освобожденных
+     */
+    public int getUsedBuffersCount() {
+        return usedBuffersCounter.get();
+    }
+
+    /**
+     * @return количество случаев, когда все буферы пула были заняты
+     */
+    public long getMissesCount() {
+        return missesCounter.get();
+    }
+
+    /**
+     * @return количество буферов, не возвращенных в пул из-за размера
+     */
+    public long getDiscardedBuffersCount() {
+        return discardedBuffersCounter.get();
+    }
+
+    void recycle(PacketBuffer buffer) {
+        usedBuffersCounter.decrementAndGet();
+
+        //Место выросшего буфера освобождается для нового буфера обычного размера
+        if (buffer.array().length > maxRetainedSize) {
+            discardedBuffersCounter.incrementAndGet();
+            createdBuffersCounter.decrementAndGet();
+            return;
+        }
+
+        freeBuffers.offer(buffer);
+    }
+
+    private PacketBuffer createBuffer(int length) {
+        int created;
+
+        do {
+            created = createdBuffersCounter.get();
+
+            if (created >= capacity) {
+                missesCounter.incrementAndGet();
+                return new PacketBuffer(null, length);
+            }
+        } while (!createdBuffersCounter.compareAndSet(created, created + 1));
+
+        return new PacketBuffer(this, length);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("used %d of %d (created %d, misses %d, discarded %d)",
+                getUsedBuffersCount(),
+                capacity,
+                getCreatedBuffersCount(),
+                getMissesCount(),
+                getDiscardedBuffersCount());
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.network;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Очередь пакетов между приемником и процессорами.
+ * <p>
+ * Приемник помещает пакеты методом {@link #offer(PacketBuffer)}, либо, если на заполненной очереди допустимо
+ * ожидание (см. {@link OverflowPolicy}), методом {@link #offer(PacketBuffer, long, TimeUnit)}.
+ * Процессоры забирают пакеты методом {@link #take()}. Реализация выбирается параметром {@code packet.queue.impl}.
+ *
+ * @author asidorov84@gmail.com
+ * @see BlockingPacketQueue
+ * @see RingBufferPacketQueue
+ * @see ShardedPacketQueue
+ */
+public interface PacketQueue {
+    /**
+     * Поместить пакет в очередь, если в ней есть место.
+     *
+     * @param packet буфер с пакетом
+     * @return true, если пакет помещен в очередь, false если очередь заполнена
+     */
+    boolean offer(PacketBuffer packet);
+
+    /**
+     * Поместить пакет в очередь, ожидая освобождения места не дольше заданного времени.
+     *
+     * @param packet  буфер с пакетом
+     * @param timeout максимальное время ожидания
+     * @param unit    единица измерения времени ожидания
+     * @return true, если пакет помещен в очередь, false если за время ожидания место не освободилось
+     * @throws InterruptedException если во время ожидания текущий поток будет прерван
+     */
+    boolean offer(PacketBuffer packet, long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Забрать очередной пакет из очереди, ожидая его появления.
+     *
+     * @return буфер с пакетом
+     * @throws InterruptedException если во время ожидания текущий поток будет прерван
+     */
+    PacketBuffer take() throws InterruptedException;
+
+    /**
+     * Забрать очередной пакет из заданного сегмента очереди, ожидая его появления.
+     * Очередь без сегментов состоит из одного сегмента с номером 0.
+     *
+     * @param shard номер сегмента
+     * @return буфер с пакетом
+     * @throws InterruptedException если во время ожидания текущий поток будет прерван
+     * @see ShardedPacketQueue
+     */
+    default PacketBuffer take(int shard) throws InterruptedException {
+        return take();
+    }
+
+    /**
+     * @return количество сегментов очереди
+     */
+    default int shardsCount() {
+        return 1;
+    }
+
+    /**
+     * @return количество пакетов, помещенных в очередь и еще не забранных из нее
+     */
+    int size();
+
+    /**
+     * @return максимальное количество пакетов в очереди
+     */
+    int capacity();
+}
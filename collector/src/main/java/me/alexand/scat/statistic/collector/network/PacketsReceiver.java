@@ -38,11 +38,54 @@ public interface PacketsReceiver {
     /**
      * Метод для получения очередного пакет с данными.
      * Вызов данного метода блокирующий, до тех пор, пока не будет получен очередной пакет.
+     * После обработки пакета вызывающая сторона обязана освободить буфер методом {@link PacketBuffer#release()}.
      *
-     * @return массив байт
+     * @return буфер с пакетом
      * @throws InterruptedException если во время ожидания очередного пакета текущий поток будет прерван
      */
-    byte[] getNextPacket() throws InterruptedException;
+    PacketBuffer getNextPacket() throws InterruptedException;
+
+    /**
+     * Метод для получения очередного пакета из заданного сегмента приемного буфера.
+     * Используется, когда пакеты распределяются между процессорами по экспортерам.
+     *
+     * @param shard номер сегмента, от 0 до {@link #getShardsCount()} - 1
+     * @return буфер с пакетом
+     * @throws InterruptedException если во время ожидания очередного пакета текущий поток будет прерван
+     */
+    PacketBuffer getNextPacket(int shard) throws InterruptedException;
+
+    /**
+     * Метод для учета сообщения, обработанного процессором.
+     * Используется приемниками без гарантии доставки для определения потерянных записей: количество записей
+     * в сообщении становится известно только после его декодирования.
+     *
+     * @param session        номер сессии пакета (см. {@link PacketBuffer#session()})
+     * @param domainID       домен наблюдения сообщения
+     * @param sequenceNumber порядковый номер сообщения
+     * @param recordsNumber  количество записей данных в сообщении
+     */
+    default void registerProcessedMessage(int session, long domainID, long sequenceNumber, long recordsNumber) {
+    }
+
+    /**
+     * Метод для учета пакета или признака конца сессии ({@link PacketBuffer#isSessionEnd()}), обработка которого
+     * процессором завершена. Вызывается до освобождения буфера.
+     *
+     * @param packet обработанный буфер
+     * @return true, если шаблоны сессии пакета могут быть удалены: признак конца сессии получен, и все пакеты
+     * сессии, принятые до него, обработаны
+     */
+    default boolean completePacket(PacketBuffer packet) {
+        return packet.isSessionEnd();
+    }
+
+    /**
+     * Метод для получения количества сегментов приемного буфера.
+     *
+     * @return количество сегментов, 1 если приемный буфер общий для всех процессоров
+     */
+    int getShardsCount();
 
     /**
      * Метод для корректной остановки процесса получения пакетов.
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.network;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Неблокирующая ограниченная очередь пакетов для нескольких производителей и нескольких потребителей.
+ * <p>
+ * Кольцевой буфер фиксированного размера (степень двойки), выделяемый целиком при создании. Каждая ячейка
+ * имеет свой порядковый номер, по которому производители и потребители определяют, свободна ли ячейка,
+ * и захватывают ее через CAS соответствующего счетчика (алгоритм Д. Вьюкова). Счетчики производителей и
+ * потребителей дополнены до размера кэш-линии, чтобы не вызывать ложного разделения (false sharing).
+ * <p>
+ * Ожидание на пустой очереди выполняется в соответствии с {@link WaitStrategy}.
+ *
+ * @author asidorov84@gmail.com
+ */
+public final class RingBufferPacketQueue implements PacketQueue {
+    private static final long OFFER_RETRY_PARK_NANOS = 50_000;
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<PacketBuffer> buffer;
+    private final AtomicLongArray sequences;
+    private final WaitStrategy waitStrategy;
+
+    private final PaddedAtomicLong tail = new PaddedAtomicLong();
+    private final PaddedAtomicLong head = new PaddedAtomicLong();
+
+    public RingBufferPacketQueue(int capacity, WaitStrategy waitStrategy) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException(String.format("Illegal value of queue capacity: %d", capacity));
+        }
+
+        this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.waitStrategy = waitStrategy;
+
+        buffer = new AtomicReferenceArray<>(this.capacity);
+        sequences = new AtomicLongArray(this.capacity);
+
+        for (int i = 0; i < this.capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    @Override
+    public boolean offer(PacketBuffer packet) {
+        long position = tail.get();
+
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    buffer.lazySet(index, packet);
+                    sequences.set(index, position + 1);
+                    waitStrategy.signal();
+                    return true;
+                }
+
+                position = tail.get();
+            } else if (difference < 0) {
+                //Ячейка еще не освобождена потребителем - очередь заполнена
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Производители не участвуют в стратегии ожидания, поэтому на заполненной очереди они периодически
+     * засыпают на короткое время и повторяют попытку.
+     */
+    @Override
+    public boolean offer(PacketBuffer packet, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        while (!offer(packet)) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+
+            LockSupport.parkNanos(OFFER_RETRY_PARK_NANOS);
+        }
+
+        return true;
+    }
+
+    @Override
+    public PacketBuffer take() throws InterruptedException {
+        PacketBuffer packet;
+
+        while ((packet = poll()) == null) {
+            waitStrategy.await(this::isEmpty);
+        }
+
+        return packet;
+    }
+
+    /**
+     * Забрать пакет из очереди без ожидания.
+     *
+     * @return буфер с пакетом или null, если очередь пуста
+     */
+    public PacketBuffer poll() {
+        long position = head.get();
+
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - (position + 1);
+
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    PacketBuffer packet = buffer.get(index);
+                    buffer.lazySet(index, null);
+                    sequences.set(index, position + capacity);
+                    return packet;
+                }
+
+                position = head.get();
+            } else if (difference < 0) {
+                //Ячейка еще не заполнена производителем - очередь пуста
+                return null;
+            } else {
+                position = head.get();
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        //Счетчики читаются неатомарно, поэтому результат ограничивается допустимым диапазоном
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    private boolean isEmpty() {
+        long position = head.get();
+        return sequences.get((int) (position & mask)) - (position + 1) < 0;
+    }
+
+    /**
+     * Счетчик, занимающий отдельную кэш-линию.
+     */
+    @SuppressWarnings("unused")
+    private static final class PaddedAtomicLong extends AtomicLong {
+        private long p1, p2, p3, p4, p5, p6, p7;
+        private long q1, q2, q3, q4, q5, q6, q7;
+    }
+}
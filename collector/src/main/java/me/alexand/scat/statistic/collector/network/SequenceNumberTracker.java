@@ -0,0 +1,91 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.network;
+
+/**
+ * Учет порядковых номеров (Sequence Number) IPFIX-сообщений одного экспортера.
+ * <p>
+ * Порядковый номер сообщения равен общему количеству записей данных, отправленных экспортером
+ * до этого сообщения. Разница между номерами двух последовательных сообщений дает количество
+ * экспортированных записей. Экземпляр не является потокобезопасным и должен использоваться
+ * в рамках одной сессии (одного потока).
+ *
+ * @author asidorov84@gmail.com
+ * @see <a href="https://tools.ietf.org/html/rfc7011#section-3.1">RFC-7011</a>
+ */
+final class SequenceNumberTracker {
+    private static final long MAX_SEQUENCE_NUMBER = 4294967296L;
+    private static final long HALF_SEQUENCE_RANGE = MAX_SEQUENCE_NUMBER / 2;
+
+    private long prevSequenceNumber;
+    private boolean isFirstPacket = true;
+
+    /**
+     * Метод для регистрации порядкового номера очередного сообщения.
+     *
+     * @param currentSequenceNumber порядковый номер сообщения
+     * @return количество записей, экспортированных со времени предыдущего сообщения (0 для первого сообщения)
+     */
+    long update(long currentSequenceNumber) {
+        if (isFirstPacket) {
+            prevSequenceNumber = currentSequenceNumber;
+            isFirstPacket = false;
+            return 0;
+        }
+
+        long exportedRecordsCounter;
+        //если текущее значение меньше чем предыдущее, значит было достигнуто максимальное значение
+        //для беззнакового 4-х байтового типа (2^32)
+        if (currentSequenceNumber < prevSequenceNumber) {
+            exportedRecordsCounter = MAX_SEQUENCE_NUMBER - prevSequenceNumber + currentSequenceNumber;
+        } else {
+            exportedRecordsCounter = currentSequenceNumber - prevSequenceNumber;
+        }
+
+        prevSequenceNumber = currentSequenceNumber;
+        return exportedRecordsCounter;
+    }
+
+    /**
+     * Метод для проверки, что сообщение с данным порядковым номером пришло позже сообщений, отправленных после него.
+     * Номера сравниваются по правилам арифметики порядковых номеров (RFC 1982), т.е. номер считается
+     * предшествующим, если он меньше предыдущего не более чем на половину диапазона. В противном случае
+     * уменьшение номера трактуется как переход через максимальное значение.
+     * <p>
+     * Для TCP такая ситуация невозможна, для UDP означает переупорядочивание датаграмм в сети.
+     *
+     * @param currentSequenceNumber порядковый номер сообщения
+     * @return true, если сообщение пришло не по порядку
+     */
+    boolean isOutOfOrder(long currentSequenceNumber) {
+        if (isFirstPacket) {
+            return false;
+        }
+
+        long distance = (prevSequenceNumber - currentSequenceNumber) & (MAX_SEQUENCE_NUMBER - 1);
+        return distance != 0 && distance < HALF_SEQUENCE_RANGE;
+    }
+
+    boolean isFirstPacket() {
+        return isFirstPacket;
+    }
+}
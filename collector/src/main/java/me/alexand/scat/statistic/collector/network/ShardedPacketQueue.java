@@ -0,0 +1,104 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.network;
+
+import java.util.concurrent.TimeUnit;
+
+import static me.alexand.scat.statistic.collector.utils.BytesConvertUtils.fourBytesToLong;
+
+/**
+ * Очередь пакетов, разделенная на сегменты (шарды) по одному на каждый процессор.
+ * <p>
+ * Пакет помещается в сегмент, определяемый доменом наблюдения (observation domain ID) из заголовка сообщения,
+ * поэтому все сообщения одного экспортера, включая шаблоны, обрабатываются одним и тем же процессором в порядке
+ * получения. Процессор забирает пакеты только из своего сегмента методом {@link #take(int)}.
+ *
+ * @author asidorov84@gmail.com
+ */
+public final class ShardedPacketQueue implements PacketQueue {
+    private final PacketQueue[] shards;
+
+    public ShardedPacketQueue(PacketQueue[] shards) {
+        if (shards.length == 0) {
+            throw new IllegalArgumentException("Shards must not be empty");
+        }
+
+        this.shards = shards;
+    }
+
+    @Override
+    public boolean offer(PacketBuffer packet) {
+        return shards[getShard(packet)].offer(packet);
+    }
+
+    @Override
+    public boolean offer(PacketBuffer packet, long timeout, TimeUnit unit) throws InterruptedException {
+        return shards[getShard(packet)].offer(packet, timeout, unit);
+    }
+
+    /**
+     * Забрать пакет без указания сегмента невозможно, так как нарушится порядок обработки сообщений экспортера.
+     *
+     * @throws UnsupportedOperationException всегда
+     */
+    @Override
+    public PacketBuffer take() {
+        throw new UnsupportedOperationException("Shard must be specified");
+    }
+
+    @Override
+    public PacketBuffer take(int shard) throws InterruptedException {
+        return shards[shard].take();
+    }
+
+    @Override
+    public int shardsCount() {
+        return shards.length;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+
+        for (PacketQueue shard : shards) {
+            size += shard.size();
+        }
+
+        return size;
+    }
+
+    @Override
+    public int capacity() {
+        int capacity = 0;
+
+        for (PacketQueue shard : shards) {
+            capacity += shard.capacity();
+        }
+
+        return capacity;
+    }
+
+    private int getShard(PacketBuffer packet) {
+        long observationDomainID = fourBytesToLong(packet.array(), 12);
+        return (int) (observationDomainID % shards.length);
+    }
+}
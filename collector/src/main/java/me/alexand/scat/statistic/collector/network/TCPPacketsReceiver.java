@@ -24,10 +24,6 @@ package me.alexand.scat.statistic.collector.network;
 import me.alexand.scat.statistic.collector.service.StatCollector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.context.annotation.Lazy;
-import org.springframework.stereotype.Component;
 
 import java.io.DataInputStream;
 import java.io.IOException;
@@ -36,11 +32,8 @@ import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
 
 import static java.lang.Thread.MAX_PRIORITY;
-import static java.util.Arrays.copyOf;
 import static me.alexand.scat.statistic.collector.model.IPFIXHeader.IPFIX_MESSAGE_HEADER_LENGTH;
 import static me.alexand.scat.statistic.collector.model.IPFIXHeader.IPFIX_MESSAGE_VERSION;
 import static me.alexand.scat.statistic.collector.utils.BytesConvertUtils.fourBytesToLong;
@@ -57,45 +50,35 @@ import static me.alexand.scat.statistic.collector.utils.Constants.TCP_LISTEN_BAC
  * Затем уже считывается тело сообщения, и вместе с заголовком помещается во внутренний буфер. Доступ к пакетам
  * осуществляется через метод getNextPacket().
  * <p>
- * Обязательными параметрами для создания экземпляра являются IP-адрес и порт для создания сокета, а также размер
- * внутреннего буфера (в пакетах) и размер приемного буфера сокета для TCP (SO_RCVBUF)
+ * Обязательными параметрами для создания экземпляра являются IP-адрес и порт для создания сокета, а также очередь
+ * пакетов, размер приемного буфера сокета для TCP (SO_RCVBUF) и пул буферов для пакетов
+ * <p>
+ * На каждое подключение создается отдельный поток, поэтому реализация подходит для небольшого количества
+ * экспортеров. Для большого количества подключений следует использовать {@link NioTcpPacketsReceiver}.
  *
  * @author asidorov84@gmail.com
  */
-@Component
-@Lazy
-public final class TCPPacketsReceiver implements PacketsReceiver {
+public final class TCPPacketsReceiver extends AbstractPacketsReceiver {
     private static final Logger LOGGER = LoggerFactory.getLogger(TCPPacketsReceiver.class);
-    private final int bufferCapacity;
-    private final BlockingQueue<byte[]> packetsBuffer;
 
     private final ServerSocket serverSocket;
     private final Thread connectionListenerThread;
     private final List<Thread> sessionThreads = new ArrayList<>();
 
-    private final StatCollector statCollector;
-
-    @Autowired
-    public TCPPacketsReceiver(@Value("${net.address}") String address,
-                              @Value("${net.port}") int port,
-                              @Value("${packet.buffer.capacity}") int bufferCapacity,
-                              @Value("${socket.receive.buffer.size}") int socketReceiveBufferSize,
+    public TCPPacketsReceiver(String address,
+                              int port,
+                              PacketQueue packetsBuffer,
+                              int socketReceiveBufferSize,
+                              PacketBufferPool packetBufferPool,
+                              OverflowPolicy overflowPolicy,
                               StatCollector statCollector) throws IOException {
-        if (bufferCapacity <= 0) {
-            throw new IllegalArgumentException(String.format("Illegal value of buffer capacity: %d", bufferCapacity));
-        }
+        super(packetsBuffer, packetBufferPool, overflowPolicy, statCollector);
 
         if (socketReceiveBufferSize <= 0) {
             throw new IllegalArgumentException(String.format("Illegal value of socket receive buffer size: %d",
                     socketReceiveBufferSize));
         }
 
-        this.statCollector = statCollector;
-        this.bufferCapacity = bufferCapacity;
-
-        packetsBuffer = new ArrayBlockingQueue<>(bufferCapacity);
-        LOGGER.debug("Initialize internal packets buffer with size: {}", bufferCapacity);
-
         serverSocket = new ServerSocket(port, TCP_LISTEN_BACKLOG, InetAddress.getByName(address));
         serverSocket.setReceiveBufferSize(socketReceiveBufferSize);
 
@@ -104,7 +87,6 @@ public final class TCPPacketsReceiver implements PacketsReceiver {
                 serverSocket.getLocalPort());
 
         connectionListenerThread = new Thread(new Server(), "connection-listener-thread");
-        connectionListenerThread.start();
     }
     
     @Override
@@ -113,12 +95,7 @@ public final class TCPPacketsReceiver implements PacketsReceiver {
     }
 
     @Override
-    public byte[] getNextPacket() throws InterruptedException {
-        return packetsBuffer.take();
-    }
-
-    @Override
-    public boolean shutdown() {
+    protected boolean stop() {
         //Прекращаем слушать новые подключения к коллектору
         try {
             serverSocket.close();
@@ -144,11 +121,6 @@ public final class TCPPacketsReceiver implements PacketsReceiver {
         return true;
     }
 
-    @Override
-    public int getRemainingPacketsCount() {
-        return bufferCapacity - packetsBuffer.remainingCapacity();
-    }
-
     private class Server implements Runnable {
         @Override
         public void run() {
@@ -182,19 +154,19 @@ public final class TCPPacketsReceiver implements PacketsReceiver {
     }
 
     private class Session implements Runnable {
-        private static final long MAX_SEQUENCE_NUMBER = 4294967296L;
         private final Socket socket;
         private final int id;
-        private final byte[] packetBuffer = new byte[65535];
+        private final String exporter;
         private final byte[] header = new byte[IPFIX_MESSAGE_HEADER_LENGTH];
+        private final SequenceNumberTracker sequenceNumberTracker = new SequenceNumberTracker();
 
         private long domainID;
-        private long prevSequenceNumber;
-        private boolean isFirstPacket = true;
 
         Session(Socket socket, int id) {
             this.socket = socket;
             this.id = id;
+            //Статистика ведется по адресу экспортера: порт меняется при каждом подключении
+            this.exporter = socket.getInetAddress().getHostAddress();
         }
 
         @Override
@@ -205,7 +177,6 @@ public final class TCPPacketsReceiver implements PacketsReceiver {
 
                 while (!Thread.currentThread().isInterrupted()) {
                     dis.readFully(header, 0, IPFIX_MESSAGE_HEADER_LENGTH);
-                    System.arraycopy(header, 0, packetBuffer, 0, IPFIX_MESSAGE_HEADER_LENGTH);
 
                     int version = twoBytesToInt(header, 0);
                     if (version != IPFIX_MESSAGE_VERSION) {
@@ -215,40 +186,50 @@ public final class TCPPacketsReceiver implements PacketsReceiver {
                     }
 
                     int fullMessageLength = twoBytesToInt(header, 2);
+                    if (fullMessageLength < IPFIX_MESSAGE_HEADER_LENGTH) {
+                        LOGGER.debug("Illegal length of message: {}", fullMessageLength);
+                        LOGGER.debug("Closing session (id = {})...", id);
+                        break;
+                    }
+
                     long currentSequenceNumber = fourBytesToLong(header, 8);
 
-                    if (isFirstPacket) {
+                    if (sequenceNumberTracker.isFirstPacket()) {
                         //DomainID не меняется в рамках TCP-сессии.
                         domainID = fourBytesToLong(header, 12);
-                        prevSequenceNumber = currentSequenceNumber;
-                        isFirstPacket = false;
+                        sequenceNumberTracker.update(currentSequenceNumber);
                     } else {
-                        long exportedRecordsCounter;
-                        //если текущее значение меньше чем предыдущее, значит было достигнуто максимальное значение
-                        //для беззнакового 4-х байтового типа (2^32)
-                        if (currentSequenceNumber < prevSequenceNumber) {
-                            exportedRecordsCounter = MAX_SEQUENCE_NUMBER - prevSequenceNumber + currentSequenceNumber;
-                        } else {
-                            exportedRecordsCounter = currentSequenceNumber - prevSequenceNumber;
-                        }
-
-                        statCollector.registerExportedRecords(domainID, exportedRecordsCounter);
-                        prevSequenceNumber = currentSequenceNumber;
+                        statCollector.registerExportedRecords(domainID,
+                                sequenceNumberTracker.update(currentSequenceNumber));
                     }
 
-                    //Теперь, зная длину всего сообщения, читаем его тело
-                    dis.readFully(packetBuffer, IPFIX_MESSAGE_HEADER_LENGTH, fullMessageLength - IPFIX_MESSAGE_HEADER_LENGTH);
-
-                    //И копируем его в буфер
-                    if (!packetsBuffer.offer(copyOf(packetBuffer, fullMessageLength))) {
-                        statCollector.registerInputBufferOverflow();
+                    //Теперь, зная длину всего сообщения, читаем его тело сразу в буфер из пула
+                    PacketBuffer packet = acquire(fullMessageLength);
+                    System.arraycopy(header, 0, packet.array(), 0, IPFIX_MESSAGE_HEADER_LENGTH);
+                    packet.setSession(tcpSession(id));
+
+                    try {
+                        dis.readFully(packet.array(), IPFIX_MESSAGE_HEADER_LENGTH,
+                                fullMessageLength - IPFIX_MESSAGE_HEADER_LENGTH);
+                    } catch (IOException e) {
+                        packet.release();
+                        throw e;
                     }
+
+                    //При заполненном буфере поток может ожидать здесь, не читая из сокета
+                    enqueue(packet, exporter);
                 }
 
                 socket.close();
                 LOGGER.debug("Socket of session (id = {}) closed", id);
             } catch (IOException e) {
                 LOGGER.error(e.getMessage());
+            } catch (InterruptedException e) {
+                LOGGER.debug("Session (id = {}) interrupted while waiting for free space in buffer", id);
+            }
+
+            if (!sequenceNumberTracker.isFirstPacket()) {
+                enqueueSessionEnd(tcpSession(id), domainID);
             }
 
             LOGGER.info("Stop receiving packets within new session (id = {})...", id);
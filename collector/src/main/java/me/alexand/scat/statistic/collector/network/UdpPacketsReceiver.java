@@ -0,0 +1,504 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.network;
+
+import me.alexand.scat.statistic.collector.service.StatCollector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static java.lang.Thread.MAX_PRIORITY;
+import static me.alexand.scat.statistic.collector.model.IPFIXHeader.IPFIX_MESSAGE_HEADER_LENGTH;
+import static me.alexand.scat.statistic.collector.model.IPFIXHeader.IPFIX_MESSAGE_VERSION;
+
+/**
+ * UDP-приемник пакетов c IPFIX-сообщениями.
+ * <p>
+ * Каждая датаграмма содержит ровно одно IPFIX-сообщение. Датаграммы читаются несколькими потоками, каждый
+ * из которых сам проверяет заголовок сообщения и помещает его во внутренний буфер, без передачи датаграммы
+ * между потоками. Если операционная система поддерживает SO_REUSEPORT (и он доступен в текущей версии Java),
+ * каждый поток работает со своим сокетом, привязанным к общему порту, и ядро само распределяет датаграммы
+ * между сокетами. Иначе все потоки читают из одного общего сокета.
+ * <p>
+ * Порядковые номера сообщений учитываются отдельно для каждой пары (источник, домен наблюдения):
+ * прирост номера регистрируется в StatCollector как количество экспортированных записей, датаграммы, пришедшие
+ * не по порядку, учитываются отдельно. Количество записей в сообщении становится известно только после
+ * декодирования, поэтому потерянные записи определяет процессор (см. registerProcessedMessage()): разрыв между
+ * порядковым номером обработанного сообщения и ожидаемым номером регистрируется как потерянные записи источника
+ * и домена. Датаграммы, не поместившиеся во внутренний буфер, отбрасываются и учитываются как переполнение буфера.
+ * <p>
+ * UDP не имеет сессий, поэтому сессией считаются все датаграммы одного источника (адреса и порта экспортера):
+ * номер сессии присваивается источнику при получении первой датаграммы. Состояние источника создается один раз
+ * и используется для всех его датаграмм. Если от источника нет датаграмм дольше заданного времени, сессия закрывается:
+ * процессорам передается признак конца сессии по каждому домену источника, а номер сессии освобождается. Освобожденные
+ * номера выдаются повторно в порядке освобождения и только после того, как выданы все ни разу не использованные, поэтому
+ * два действующих источника никогда не получают один номер сессии. Если заняты все номера, досрочно закрывается сессия
+ * источника, дольше всех не присылавшего датаграмм.
+ *
+ * @author asidorov84@gmail.com
+ */
+public final class UdpPacketsReceiver extends AbstractPacketsReceiver {
+    private static final Logger LOGGER = LoggerFactory.getLogger(UdpPacketsReceiver.class);
+
+    private static final int MAX_SESSIONS = PacketBuffer.UDP_SESSION - 1;
+
+    private final DatagramChannel[] channels;
+    private final Thread[] receiverThreads;
+    private final Thread expiryThread;
+    private final long sourceIdleTimeoutMillis;
+    private final Map<InetSocketAddress, Source> sources = new ConcurrentHashMap<>();
+    //Источники по номеру сессии без признака UDP_SESSION, для учета сообщений, обработанных процессорами
+    private final AtomicReferenceArray<Source> sessionSources = new AtomicReferenceArray<>(PacketBuffer.UDP_SESSION);
+    //Номера сессий закрытых источников; счетчик и очередь изменяются под блокировкой очереди
+    private final Queue<Integer> freeSessions = new ArrayDeque<>();
+    private int sessionsCounter;
+
+    public UdpPacketsReceiver(String address,
+                              int port,
+                              PacketQueue packetsBuffer,
+                              int socketReceiveBufferSize,
+                              int threadsCount,
+                              boolean reusePort,
+                              long sourceIdleTimeoutMillis,
+                              PacketBufferPool packetBufferPool,
+                              OverflowPolicy overflowPolicy,
+                              StatCollector statCollector) throws IOException {
+        super(packetsBuffer, packetBufferPool, overflowPolicy, statCollector);
+
+        if (socketReceiveBufferSize <= 0) {
+            throw new IllegalArgumentException(String.format("Illegal value of socket receive buffer size: %d",
+                    socketReceiveBufferSize));
+        }
+
+        if (threadsCount <= 0) {
+            throw new IllegalArgumentException(String.format("Illegal value of receiver threads count: %d", threadsCount));
+        }
+
+        if (sourceIdleTimeoutMillis <= 0) {
+            throw new IllegalArgumentException(String.format("Illegal value of source idle timeout: %d",
+                    sourceIdleTimeoutMillis));
+        }
+
+        this.sourceIdleTimeoutMillis = sourceIdleTimeoutMillis;
+
+        InetSocketAddress socketAddress = new InetSocketAddress(InetAddress.getByName(address), port);
+        SocketOption<Boolean> reusePortOption = reusePort ? getReusePortOption() : null;
+
+        channels = new DatagramChannel[reusePortOption != null ? threadsCount : 1];
+
+        for (int i = 0; i < channels.length; i++) {
+            DatagramChannel channel = DatagramChannel.open();
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, socketReceiveBufferSize);
+
+            if (reusePortOption != null) {
+                channel.setOption(reusePortOption, true);
+            }
+
+            channel.bind(socketAddress);
+            channels[i] = channel;
+        }
+
+        LOGGER.debug("Created {} datagram channel(s) on {}, SO_REUSEPORT: {}",
+                channels.length,
+                socketAddress,
+                reusePortOption != null);
+
+        receiverThreads = new Thread[threadsCount];
+
+        for (int i = 0; i < threadsCount; i++) {
+            receiverThreads[i] = new Thread(new Receiver(channels[i % channels.length]),
+                    String.format("udp-receiver-%d-thread", i + 1));
+            receiverThreads[i].setPriority(MAX_PRIORITY);
+        }
+
+        expiryThread = new Thread(this::expireIdleSources, "udp-sources-expiry-thread");
+        expiryThread.setDaemon(true);
+    }
+
+    @Override
+    public void start() {
+        for (Thread thread : receiverThreads) {
+            thread.start();
+        }
+
+        expiryThread.start();
+    }
+
+    @Override
+    protected boolean stop() {
+        //Закрытие канала прерывает ожидание датаграммы во всех потоках, читающих из него
+        for (DatagramChannel channel : channels) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.error(e.getMessage());
+                return false;
+            }
+        }
+        LOGGER.debug("...datagram channels closed");
+
+        //Прерываем потоки, ожидающие освобождения места во внутреннем буфере
+        for (Thread thread : receiverThreads) {
+            thread.interrupt();
+        }
+        expiryThread.interrupt();
+
+        try {
+            for (Thread thread : receiverThreads) {
+                thread.join();
+            }
+            expiryThread.join();
+        } catch (InterruptedException e) {
+            LOGGER.error(e.getMessage());
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Получить опцию SO_REUSEPORT, если она поддерживается текущей версией Java и операционной системой.
+     * Опция появилась в Java 9, поэтому при сборке под Java 8 доступна только через reflection.
+     */
+    @SuppressWarnings("unchecked")
+    private static SocketOption<Boolean> getReusePortOption() {
+        try {
+            Field field = StandardSocketOptions.class.getField("SO_REUSEPORT");
+            SocketOption<Boolean> option = (SocketOption<Boolean>) field.get(null);
+
+            try (DatagramChannel channel = DatagramChannel.open()) {
+                if (channel.supportedOptions().contains(option)) {
+                    return option;
+                }
+            }
+        } catch (ReflectiveOperationException | IOException e) {
+            LOGGER.debug("SO_REUSEPORT is not available: {}", e.getMessage());
+        }
+
+        return null;
+    }
+
+    @Override
+    public void registerProcessedMessage(int session, long domainID, long sequenceNumber, long recordsNumber) {
+        if ((session & PacketBuffer.UDP_SESSION) == 0) {
+            return;
+        }
+
+        Source source = sessionSources.get(session & ~PacketBuffer.UDP_SESSION);
+
+        if (source == null) {
+            return;
+        }
+
+        long lostRecords;
+
+        //Сообщения одного источника могут обрабатываться разными процессорами
+        synchronized (source) {
+            lostRecords = source.getDomain(domainID).registerProcessed(sequenceNumber, recordsNumber);
+        }
+
+        if (lostRecords != 0) {
+            statCollector.registerLostRecords(source.address, domainID, lostRecords);
+        }
+    }
+
+    /**
+     * Получить состояние источника датаграммы и отметить время ее получения.
+     * Если сессия источника закрывается одновременно с получением датаграммы, для него создается новая сессия.
+     */
+    private Source getSource(InetSocketAddress address) {
+        long now = System.currentTimeMillis();
+
+        while (true) {
+            Source source = sources.get(address);
+
+            if (source == null) {
+                Source created = new Source(address, allocateSession());
+                sessionSources.set(created.session & ~PacketBuffer.UDP_SESSION, created);
+                source = sources.putIfAbsent(address, created);
+
+                if (source == null) {
+                    source = created;
+                } else {
+                    sessionSources.compareAndSet(created.session & ~PacketBuffer.UDP_SESSION, created, null);
+                    releaseSession(created.session);
+                }
+            }
+
+            synchronized (source) {
+                if (!source.expired) {
+                    source.lastReceivedMillis = now;
+                    return source;
+                }
+            }
+        }
+    }
+
+    private int allocateSession() {
+        while (true) {
+            synchronized (freeSessions) {
+                if (sessionsCounter < MAX_SESSIONS) {
+                    return udpSession(++sessionsCounter);
+                }
+
+                Integer session = freeSessions.poll();
+
+                if (session != null) {
+                    return session;
+                }
+            }
+
+            //Все номера заняты действующими источниками
+            expireLeastRecentSource();
+        }
+    }
+
+    private void releaseSession(int session) {
+        synchronized (freeSessions) {
+            freeSessions.add(session);
+        }
+    }
+
+    private void expireLeastRecentSource() {
+        Source leastRecent = null;
+
+        for (Source source : sources.values()) {
+            if (leastRecent == null || source.lastReceivedMillis < leastRecent.lastReceivedMillis) {
+                leastRecent = source;
+            }
+        }
+
+        if (leastRecent != null) {
+            expire(leastRecent, Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Периодически закрывать сессии источников, не присылавших датаграмм дольше sourceIdleTimeoutMillis
+     */
+    private void expireIdleSources() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Thread.sleep(Math.max(sourceIdleTimeoutMillis / 2, 1));
+
+                long deadline = System.currentTimeMillis() - sourceIdleTimeoutMillis;
+
+                for (Source source : sources.values()) {
+                    if (source.lastReceivedMillis < deadline) {
+                        expire(source, deadline);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            LOGGER.debug("Expiry of idle sources interrupted");
+        }
+    }
+
+    /**
+     * Закрыть сессию источника, если от него нет датаграмм с момента deadline.
+     * Признаки конца сессии помещаются во внутренний буфер после всех уже принятых датаграмм источника,
+     * поэтому процессоры удаляют шаблоны сессии только после обработки этих датаграмм.
+     */
+    private void expire(Source source, long deadline) {
+        Domain[] domains;
+
+        synchronized (source) {
+            if (source.expired || source.lastReceivedMillis >= deadline) {
+                return;
+            }
+
+            source.expired = true;
+            domains = source.domains;
+        }
+
+        sources.remove(source.socketAddress, source);
+        sessionSources.compareAndSet(source.session & ~PacketBuffer.UDP_SESSION, source, null);
+
+        for (Domain domain : domains) {
+            enqueueSessionEnd(source.session, domain.domainID);
+        }
+
+        releaseSession(source.session);
+        LOGGER.debug("Session {} of source {} expired", source.session, source.socketAddress);
+    }
+
+    private void registerSequenceNumber(Source source, long domainID, long sequenceNumber) {
+        long exportedRecords;
+
+        //Датаграммы одного источника могут быть прочитаны разными потоками
+        synchronized (source) {
+            Domain domain = source.getDomain(domainID);
+
+            if (domain.tracker.isOutOfOrder(sequenceNumber)) {
+                statCollector.registerOutOfOrderPacket(domain.name);
+                return;
+            }
+
+            exportedRecords = domain.tracker.update(sequenceNumber);
+        }
+
+        if (exportedRecords != 0) {
+            statCollector.registerExportedRecords(domainID, exportedRecords);
+        }
+    }
+
+    private class Receiver implements Runnable {
+        private final DatagramChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(PacketBuffer.MAX_PACKET_LENGTH);
+
+        Receiver(DatagramChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void run() {
+            LOGGER.info("Start receiving datagrams...");
+
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    buffer.clear();
+                    InetSocketAddress address = (InetSocketAddress) channel.receive(buffer);
+                    buffer.flip();
+
+                    if (!isValidMessage()) {
+                        statCollector.registerMalformedPacket();
+                        continue;
+                    }
+
+                    Source source = getSource(address);
+                    registerSequenceNumber(source,
+                            buffer.getInt(12) & 0xFFFFFFFFL,
+                            buffer.getInt(8) & 0xFFFFFFFFL);
+
+                    PacketBuffer packet = acquire(buffer.remaining());
+                    buffer.get(packet.array(), 0, packet.length());
+                    packet.setSession(source.session);
+                    enqueue(packet, source.address);
+                }
+            } catch (ClosedChannelException e) {
+                LOGGER.debug("Datagram channel closed");
+            } catch (InterruptedException e) {
+                LOGGER.debug("Receiver interrupted while waiting for free space in buffer");
+            } catch (IOException e) {
+                LOGGER.error(e.getMessage());
+            }
+
+            LOGGER.info("Stop receiving datagrams...");
+        }
+
+        private boolean isValidMessage() {
+            if (buffer.remaining() < IPFIX_MESSAGE_HEADER_LENGTH) {
+                return false;
+            }
+
+            int version = buffer.getShort(0) & 0xFFFF;
+            int length = buffer.getShort(2) & 0xFFFF;
+
+            return version == IPFIX_MESSAGE_VERSION && length == buffer.remaining();
+        }
+    }
+
+    /**
+     * Состояние источника датаграмм: номер сессии, адрес для статистики и учет порядковых номеров по доменам
+     */
+    private static final class Source {
+        private final InetSocketAddress socketAddress;
+        private final String address;
+        private final int session;
+        //Экспортер обычно использует один или несколько доменов, поэтому поиск выполняется перебором
+        private Domain[] domains = new Domain[0];
+        private volatile long lastReceivedMillis;
+        //Сессия источника закрыта, изменяется под блокировкой источника
+        private boolean expired;
+
+        Source(InetSocketAddress socketAddress, int session) {
+            this.socketAddress = socketAddress;
+            this.address = socketAddress.getAddress().getHostAddress();
+            this.session = session;
+        }
+
+        Domain getDomain(long domainID) {
+            for (Domain domain : domains) {
+                if (domain.domainID == domainID) {
+                    return domain;
+                }
+            }
+
+            Domain domain = new Domain(domainID, address + "/" + domainID);
+            domains = Arrays.copyOf(domains, domains.length + 1);
+            domains[domains.length - 1] = domain;
+            return domain;
+        }
+    }
+
+    private static final class Domain {
+        private static final long SEQUENCE_NUMBER_MASK = 0xFFFFFFFFL;
+        private static final long HALF_SEQUENCE_RANGE = (SEQUENCE_NUMBER_MASK + 1) / 2;
+
+        private final long domainID;
+        private final String name;
+        private final SequenceNumberTracker tracker = new SequenceNumberTracker();
+        //Порядковый номер, ожидаемый у следующего обработанного сообщения, -1 до первого сообщения
+        private long expectedSequenceNumber = -1;
+
+        Domain(long domainID, String name) {
+            this.domainID = domainID;
+            this.name = name;
+        }
+
+        /**
+         * @return количество записей, потерянных перед обработанным сообщением; отрицательное значение, если
+         * сообщение обработано позже следующих за ним и его записи ранее были учтены как потерянные
+         */
+        long registerProcessed(long sequenceNumber, long recordsNumber) {
+            long lostRecords = 0;
+
+            if (expectedSequenceNumber >= 0) {
+                long distance = (sequenceNumber - expectedSequenceNumber) & SEQUENCE_NUMBER_MASK;
+
+                if (distance >= HALF_SEQUENCE_RANGE) {
+                    return -recordsNumber;
+                }
+
+                lostRecords = distance;
+            }
+
+            expectedSequenceNumber = (sequenceNumber + recordsNumber) & SEQUENCE_NUMBER_MASK;
+            return lostRecords;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.network;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Стратегия ожидания потребителя на пустой очереди {@link RingBufferPacketQueue}.
+ * <p>
+ * Стратегия выбирается параметром {@code packet.queue.wait.strategy}:
+ * <ul>
+ * <li>blocking - поток засыпает на условной переменной и будится производителем, минимальная загрузка процессора</li>
+ * <li>yielding - поток уступает процессор через {@link Thread#yield()}, компромисс между задержкой и загрузкой</li>
+ * <li>busy-spin - поток крутится в цикле, минимальная задержка, но каждый ожидающий поток полностью занимает ядро</li>
+ * </ul>
+ *
+ * @author asidorov84@gmail.com
+ */
+public interface WaitStrategy {
+    /**
+     * Ожидать, пока условие {@code isEmpty} не станет ложным.
+     *
+     * @param isEmpty проверка, что в очереди нет пакетов
+     * @throws InterruptedException если во время ожидания текущий поток будет прерван
+     */
+    void await(BooleanSupplier isEmpty) throws InterruptedException;
+
+    /**
+     * Сообщить ожидающим потребителям о появлении пакета в очереди.
+     */
+    void signal();
+
+    static WaitStrategy of(String name) {
+        switch (name) {
+            case "blocking":
+                return new Blocking();
+            case "yielding":
+                return new Yielding();
+            case "busy-spin":
+                return new BusySpin();
+            default:
+                throw new IllegalArgumentException(String.format("Unknown wait strategy: %s", name));
+        }
+    }
+
+    final class Blocking implements WaitStrategy {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notEmpty = lock.newCondition();
+        private final AtomicInteger waitersCounter = new AtomicInteger(0);
+
+        @Override
+        public void await(BooleanSupplier isEmpty) throws InterruptedException {
+            if (!isEmpty.getAsBoolean()) {
+                return;
+            }
+
+            lock.lockInterruptibly();
+            //Счетчик увеличивается до повторной проверки очереди, поэтому производитель, поместивший пакет
+            //после этой проверки, обязательно увидит ожидающий поток и разбудит его
+            waitersCounter.incrementAndGet();
+
+            try {
+                while (isEmpty.getAsBoolean()) {
+                    notEmpty.await();
+                }
+            } finally {
+                waitersCounter.decrementAndGet();
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void signal() {
+            if (waitersCounter.get() == 0) {
+                return;
+            }
+
+            lock.lock();
+
+            try {
+                notEmpty.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    final class Yielding implements WaitStrategy {
+        private static final int SPIN_TRIES = 100;
+
+        @Override
+        public void await(BooleanSupplier isEmpty) throws InterruptedException {
+            int counter = SPIN_TRIES;
+
+            while (isEmpty.getAsBoolean()) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+
+                if (counter > 0) {
+                    counter--;
+                } else {
+                    Thread.yield();
+                }
+            }
+        }
+
+        @Override
+        public void signal() {
+        }
+    }
+
+    final class BusySpin implements WaitStrategy {
+        @Override
+        public void await(BooleanSupplier isEmpty) throws InterruptedException {
+            while (isEmpty.getAsBoolean()) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        }
+
+        @Override
+        public void signal() {
+        }
+    }
+}
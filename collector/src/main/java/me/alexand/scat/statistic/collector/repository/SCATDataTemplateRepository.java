@@ -22,6 +22,7 @@
 package me.alexand.scat.statistic.collector.repository;
 
 import me.alexand.scat.statistic.collector.model.SCATDataTemplate;
+import me.alexand.scat.statistic.collector.model.TemplateType;
 
 import java.util.Collection;
 
@@ -31,5 +32,13 @@ import java.util.Collection;
 public interface SCATDataTemplateRepository {
     Collection<SCATDataTemplate> getAll();
 
+    SCATDataTemplate getByType(TemplateType type);
+
+    /**
+     * @param fingerprint отпечаток информационных элементов шаблона (FingerprintUtils.entitiesFingerprintOf())
+     * @return шаблон или null, если шаблона с таким отпечатком нет
+     */
+    SCATDataTemplate getByFingerprint(long fingerprint);
+
     void save(SCATDataTemplate template);
 }
\ No newline at end of file
@@ -22,6 +22,7 @@
 package me.alexand.scat.statistic.collector.repository;
 
 import me.alexand.scat.statistic.collector.model.IPFIXDataRecord;
+import me.alexand.scat.statistic.collector.model.RecordsBatch;
 import me.alexand.scat.statistic.collector.model.TemplateType;
 import me.alexand.scat.statistic.common.entities.ClickCount;
 import me.alexand.scat.statistic.common.entities.DomainRegex;
@@ -98,10 +99,10 @@ public interface TransitionalBufferRepository {
     LocalDateTime getMaxEventTime(TemplateType type);
 
     /**
-     * Сохранить список IPFIX-записей в виде одного BATCH INSERT
+     * Сохранить пакет IPFIX-записей в виде одного BATCH INSERT
      *
-     * @param records список IPFIX-записей
+     * @param batch пакет IPFIX-записей (обязательный)
      * @return количество успешно сохраненных IPFIX-записей
      */
-    int save(TemplateType type, List<IPFIXDataRecord> records);
+    int save(RecordsBatch batch);
 }
\ No newline at end of file
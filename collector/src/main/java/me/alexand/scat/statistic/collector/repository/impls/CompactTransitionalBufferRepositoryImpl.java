@@ -0,0 +1,252 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.repository.impls;
+
+import me.alexand.scat.statistic.collector.model.IANAAbstractDataTypes;
+import me.alexand.scat.statistic.collector.model.IPFIXFieldValue;
+import me.alexand.scat.statistic.collector.model.RecordsBatch;
+import me.alexand.scat.statistic.collector.model.TemplateType;
+import me.alexand.scat.statistic.common.entities.ClickCount;
+import me.alexand.scat.statistic.common.entities.DomainRegex;
+import me.alexand.scat.statistic.common.entities.TrackedDomainRequests;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import static me.alexand.scat.statistic.collector.model.TemplateType.CS_REQ;
+import static me.alexand.scat.statistic.collector.model.TemplateType.GENERIC;
+import static me.alexand.scat.statistic.collector.utils.BytesConvertUtils.intToIPv4;
+import static me.alexand.scat.statistic.collector.utils.BytesConvertUtils.ipv4ToInt;
+import static me.alexand.scat.statistic.collector.utils.DateTimeUtils.*;
+
+/**
+ * Реализация репозитория для IPFIX-записей с компактным хранением значений (см. initCompactBuffer.sql).
+ * <p>
+ * IPv4-адреса хранятся как INTEGER, время - как BIGINT: секунды эпохи для записей CS_REQ и CS_RESP, миллисекунды
+ * для GENERIC. Значения пакетов записей сохраняются без преобразования в объекты, а в даты и строки переводятся
+ * только результаты выборок (ClickCount и TrackedDomainRequests).
+ *
+ * @author asidorov84@gmail.com
+ * @see TransitionalBufferRepositoryImpl
+ */
+public class CompactTransitionalBufferRepositoryImpl extends TransitionalBufferRepositoryImpl {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompactTransitionalBufferRepositoryImpl.class);
+
+    //Номер дня эпохи в часовом поясе экспортера, которым заменяется cast(event_time AS DATE)
+    private static final String EVENT_DAY = String.format("((cs.event_time + %d) / %d)",
+            EXPORTER_ZONE_OFFSET.getTotalSeconds(),
+            SECONDS_PER_DAY);
+
+    public CompactTransitionalBufferRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        super(jdbcTemplate);
+    }
+
+    public CompactTransitionalBufferRepositoryImpl(JdbcTemplate jdbcTemplate, int partitionSeconds) {
+        super(jdbcTemplate, partitionSeconds);
+    }
+
+    @Override
+    @Transactional(value = "bufferTM", readOnly = true)
+    public List<ClickCount> getClickCount(LocalDateTime start, LocalDateTime end) {
+        Objects.requireNonNull(start);
+        Objects.requireNonNull(end);
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("SELECT ")
+                .append(EVENT_DAY).append(" AS day, ")
+                .append(" count(*) AS count ")
+                .append("FROM ").append(getSource(CS_REQ, start, end)).append(" AS cs ")
+                .append("WHERE cs.event_time >= ? AND cs.event_time < ? ")
+                .append("GROUP BY ").append(EVENT_DAY);
+
+        try {
+            return jdbcTemplate.query(sb.toString(), ps -> {
+                ps.setLong(1, localDateTimeToEpochSeconds(start));
+                ps.setLong(2, localDateTimeToEpochSeconds(end));
+            }, (rs, rowNum) -> ClickCount.builder()
+                    .date(LocalDate.ofEpochDay(rs.getLong(1)))
+                    .count(rs.getBigDecimal(2).toBigInteger())
+                    .build());
+        } catch (DataAccessException e) {
+            LOGGER.error(e.getMessage());
+        }
+
+        return new ArrayList<>();
+    }
+
+    @Override
+    @Transactional(value = "bufferTM", readOnly = true)
+    public List<TrackedDomainRequests> getTrackedDomainRequests(List<DomainRegex> domainRegexps, LocalDateTime start, LocalDateTime end) {
+        Objects.requireNonNull(domainRegexps);
+        Objects.requireNonNull(start);
+        Objects.requireNonNull(end);
+
+        String values = getDomainRegexValues(domainRegexps);
+
+        if (values.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        StringBuilder querySB = new StringBuilder();
+
+        querySB.append("WITH dr AS ( ")
+                .append(" SELECT")
+                .append("  d.id, ")
+                .append("  d.pattern, ")
+                .append("  d.date_added, ")
+                .append("  TRUE AS is_active ")
+                .append("  FROM (VALUES ")
+                .append(values)
+                .append(") AS d(id, pattern, date_added) ")
+                .append("), tdr AS ( ")
+                .append(" SELECT ")
+                .append(EVENT_DAY).append(" AS day, ")
+                .append("  dr.id AS domain_id, ")
+                .append("  cs.ip_src, ")
+                .append("  cs.login, ")
+                .append("  min(cs.event_time) AS first_time, ")
+                .append("  max(cs.event_time) AS last_time, ")
+                .append("  count(*) AS cnt ")
+                .append(" FROM ").append(getSource(CS_REQ, start, end))
+                .append(" AS cs INNER JOIN dr ON REGEXP_MATCHES(lower(cs.hostname), dr.pattern) ")
+                .append("WHERE cs.event_time >= ? AND cs.event_time < ? ")
+                .append("GROUP BY ").append(EVENT_DAY).append(", dr.id, cs.ip_src, cs.login ")
+                .append(" ) ")
+                .append(" SELECT ")
+                .append("  tdr.day, ")
+                .append("  dr.id, ")
+                .append("  dr.pattern, ")
+                .append("  dr.date_added, ")
+                .append("  dr.is_active, ")
+                .append("  tdr.ip_src, ")
+                .append("  tdr.login, ")
+                .append("  tdr.first_time, ")
+                .append("  tdr.last_time, ")
+                .append("  tdr.cnt ")
+                .append(" FROM tdr INNER JOIN dr ON tdr.domain_id = dr.id ");
+
+        try {
+            return jdbcTemplate.query(querySB.toString(),
+                    ps -> {
+                        ps.setLong(1, localDateTimeToEpochSeconds(start));
+                        ps.setLong(2, localDateTimeToEpochSeconds(end));
+                    },
+                    (rs, rowNum) -> TrackedDomainRequests.builder()
+                            .date(LocalDate.ofEpochDay(rs.getLong(1)))
+                            .domainRegex(DomainRegex.builder()
+                                    .id(rs.getLong(2))
+                                    .pattern(rs.getString(3))
+                                    .dateAdded(rs.getTimestamp(4).toLocalDateTime())
+                                    .active(rs.getBoolean(5))
+                                    .build())
+                            .address(intToIPv4(rs.getInt(6)))
+                            .login(rs.getString(7))
+                            .firstTime(epochSecondsToLocalDateTime(rs.getLong(8)).toLocalTime())
+                            .lastTime(epochSecondsToLocalDateTime(rs.getLong(9)).toLocalTime())
+                            .count(rs.getBigDecimal(10).toBigInteger())
+                            .build());
+        } catch (DataAccessException e) {
+            LOGGER.error(e.getMessage());
+        }
+
+        return new ArrayList<>();
+    }
+
+    @Override
+    protected String getColumnDefinition(IANAAbstractDataTypes type) {
+        switch (type) {
+            case DATE_TIME_SECONDS:
+            case DATE_TIME_MILLISECONDS:
+                return "BIGINT";
+            case IPV4_ADDRESS:
+                return "INTEGER";
+            default:
+                return super.getColumnDefinition(type);
+        }
+    }
+
+    @Override
+    protected void setValue(PreparedStatement ps, int index, RecordsBatch batch, int row, int column) throws SQLException {
+        switch (batch.getColumnType(column)) {
+            case DATE_TIME_SECONDS:
+            case DATE_TIME_MILLISECONDS:
+                ps.setLong(index, batch.getLong(row, column));
+                break;
+            case IPV4_ADDRESS:
+                ps.setInt(index, batch.getInt(row, column));
+                break;
+            default:
+                super.setValue(ps, index, batch, row, column);
+        }
+    }
+
+    @Override
+    protected void setValue(PreparedStatement ps, int index, IPFIXFieldValue fieldValue) throws SQLException {
+        Object value = fieldValue.getValue();
+
+        if (value == null) {
+            super.setValue(ps, index, fieldValue);
+            return;
+        }
+
+        switch (fieldValue.getType()) {
+            case DATE_TIME_SECONDS:
+                ps.setLong(index, localDateTimeToEpochSeconds(toLocalDateTime(value)));
+                break;
+            case DATE_TIME_MILLISECONDS:
+                ps.setLong(index, localDateTimeToEpochMillis(toLocalDateTime(value)));
+                break;
+            case IPV4_ADDRESS:
+                ps.setInt(index, ipv4ToInt(value.toString()));
+                break;
+            default:
+                super.setValue(ps, index, fieldValue);
+        }
+    }
+
+    @Override
+    protected Object toEventTimeParameter(TemplateType type, LocalDateTime eventTime) {
+        return type == GENERIC ? localDateTimeToEpochMillis(eventTime) : localDateTimeToEpochSeconds(eventTime);
+    }
+
+    @Override
+    protected LocalDateTime readEventTime(TemplateType type, ResultSet rs) throws SQLException {
+        long eventTime = rs.getLong(1);
+
+        if (rs.wasNull()) {
+            return null;
+        }
+
+        return type == GENERIC ? epochMillisToLocalDateTime(eventTime) : epochSecondsToLocalDateTime(eventTime);
+    }
+}
@@ -28,18 +28,26 @@ import org.springframework.stereotype.Repository;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 
+import static me.alexand.scat.statistic.collector.utils.FingerprintUtils.entitiesFingerprintOf;
+
 /**
+ * Хранилище шаблонов АПК "СКАТ" в памяти.<br>
+ * Помимо шаблонов по типу, хранит индекс шаблонов по отпечатку их информационных элементов (см. FingerprintUtils).
+ *
  * @author asidorov84@gmail.com
  */
 
 @Repository
 public class InMemorySCATDataTemplateRepositoryImpl implements SCATDataTemplateRepository {
     private final Map<TemplateType, SCATDataTemplate> repository = new ConcurrentHashMap<>();
-    private final Collection<SCATDataTemplate> allTemplates = new ArrayList<>();
+    private final Map<Long, SCATDataTemplate> fingerprints = new ConcurrentHashMap<>();
+    //Неизменяемый снимок всех шаблонов, заменяемый при сохранении шаблона
+    private volatile Collection<SCATDataTemplate> allTemplates = Collections.emptyList();
 
     @Override
     public Collection<SCATDataTemplate> getAll() {
@@ -47,12 +55,26 @@ public class InMemorySCATDataTemplateRepositoryImpl implements SCATDataTemplateR
     }
 
     @Override
-    public void save(SCATDataTemplate template) {
+    public SCATDataTemplate getByType(TemplateType type) {
+        return repository.get(type);
+    }
+
+    @Override
+    public SCATDataTemplate getByFingerprint(long fingerprint) {
+        return fingerprints.get(fingerprint);
+    }
+
+    @Override
+    public synchronized void save(SCATDataTemplate template) {
         Objects.requireNonNull(template);
-        repository.put(template.getType(), template);
-        synchronized (allTemplates) {
-            allTemplates.clear();
-            allTemplates.addAll(repository.values());
+        SCATDataTemplate previous = repository.put(template.getType(), template);
+
+        if (previous != null) {
+            fingerprints.remove(entitiesFingerprintOf(previous.getSpecifiers()), previous);
         }
+
+        fingerprints.put(entitiesFingerprintOf(template.getSpecifiers()), template);
+
+        allTemplates = Collections.unmodifiableList(new ArrayList<>(repository.values()));
     }
 }
\ No newline at end of file
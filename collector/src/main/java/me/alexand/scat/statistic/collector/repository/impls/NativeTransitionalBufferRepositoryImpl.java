@@ -0,0 +1,716 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.repository.impls;
+
+import me.alexand.scat.statistic.collector.model.IANAAbstractDataTypes;
+import me.alexand.scat.statistic.collector.model.IPFIXDataRecord;
+import me.alexand.scat.statistic.collector.model.IPFIXFieldValue;
+import me.alexand.scat.statistic.collector.model.RecordsBatch;
+import me.alexand.scat.statistic.collector.model.TemplateType;
+import me.alexand.scat.statistic.collector.repository.TransitionalBufferRepository;
+import me.alexand.scat.statistic.common.entities.ClickCount;
+import me.alexand.scat.statistic.common.entities.DomainRegex;
+import me.alexand.scat.statistic.common.entities.TrackedDomainRequests;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
+
+import static java.time.temporal.ChronoUnit.SECONDS;
+import static me.alexand.scat.statistic.collector.model.TemplateType.*;
+import static me.alexand.scat.statistic.collector.utils.BytesConvertUtils.intToIPv4;
+import static me.alexand.scat.statistic.collector.utils.BytesConvertUtils.ipv4ToInt;
+import static me.alexand.scat.statistic.collector.utils.DateTimeUtils.*;
+
+/**
+ * Реализация репозитория для IPFIX-записей, хранящая пакеты записей в памяти процесса, без SQL базы данных.
+ * <p>
+ * Записи каждого типа распределяются по интервалам времени заданной длины. Интервал содержит сегменты - ссылки
+ * на строки сохраненных пакетов: пакет после передачи во временный буфер не изменяется (см. {@link RecordsBatch}),
+ * поэтому значения не копируются, а сегмент добавляется в интервал без блокировок. Выборки за период обходят
+ * только пересекающиеся с ним интервалы, а удаление старых записей отбрасывает истекшие интервалы целиком и
+ * просматривает строки только граничного интервала.
+ * <p>
+ * Время хранится так же, как в {@link CompactTransitionalBufferRepositoryImpl}: секунды эпохи для записей CS_REQ
+ * и CS_RESP, миллисекунды для GENERIC, а даты в выборках определяются в часовом поясе экспортера.
+ * Столбцы пакетов сопоставляются столбцам таблиц буфера по порядку (см. initBuffer.sql).
+ *
+ * @author asidorov84@gmail.com
+ * @see TransitionalBufferRepositoryImpl
+ */
+public class NativeTransitionalBufferRepositoryImpl implements TransitionalBufferRepository {
+    private static final Logger LOGGER = LoggerFactory.getLogger(NativeTransitionalBufferRepositoryImpl.class);
+
+    private static final int CS_EVENT_TIME = 0;
+    private static final int CS_LOGIN = 1;
+    private static final int CS_IP_SRC = 2;
+    private static final int CS_HOSTNAME = 4;
+    private static final int GENERIC_FLOW_START = 10;
+    private static final int GENERIC_FLOW_END = 11;
+
+    private final Map<TemplateType, Partition> partitions = new EnumMap<>(TemplateType.class);
+
+    /**
+     * @param bucketSeconds длина интервала времени в секундах
+     */
+    public NativeTransitionalBufferRepositoryImpl(int bucketSeconds) {
+        if (bucketSeconds <= 0) {
+            throw new IllegalArgumentException(String.format("Illegal length of buffer bucket: %d seconds", bucketSeconds));
+        }
+
+        partitions.put(CS_REQ, new Partition(bucketSeconds, CS_EVENT_TIME, CS_EVENT_TIME));
+        partitions.put(CS_RESP, new Partition(bucketSeconds, CS_EVENT_TIME, CS_EVENT_TIME));
+        //Записи GENERIC удаляются по времени окончания потока, а максимальным считается время начала потока
+        partitions.put(GENERIC, new Partition(bucketSeconds * 1000L, GENERIC_FLOW_END, GENERIC_FLOW_START));
+    }
+
+    @Override
+    public boolean save(IPFIXDataRecord record) {
+        Objects.requireNonNull(record);
+
+        try {
+            return getPartition(record.getType()).append(toBatch(record)) == 1;
+        } catch (ClassCastException | IllegalArgumentException | DateTimeException e) {
+            LOGGER.error(e.getMessage());
+        }
+
+        return false;
+    }
+
+    @Override
+    public int save(RecordsBatch batch) {
+        Objects.requireNonNull(batch);
+        return getPartition(batch.getType()).append(batch);
+    }
+
+    @Override
+    public long getCount(TemplateType type) {
+        Objects.requireNonNull(type);
+        return getPartition(type).count();
+    }
+
+    @Override
+    public List<ClickCount> getClickCount(LocalDateTime start, LocalDateTime end) {
+        Objects.requireNonNull(start);
+        Objects.requireNonNull(end);
+
+        ClickCounter counter = new ClickCounter();
+        getPartition(CS_REQ).scan(localDateTimeToEpochSeconds(start), localDateTimeToEpochSeconds(end), counter);
+
+        return counter.counts.entrySet().stream()
+                .map(entry -> ClickCount.builder()
+                        .date(LocalDate.ofEpochDay(entry.getKey()))
+                        .count(BigInteger.valueOf(entry.getValue()[0]))
+                        .build())
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public long delete(TemplateType type, LocalDateTime beforeEventTime) {
+        Objects.requireNonNull(type);
+        Objects.requireNonNull(beforeEventTime);
+        return getPartition(type).delete(toEventTime(type, beforeEventTime));
+    }
+
+    @Override
+    public List<TrackedDomainRequests> getTrackedDomainRequests(List<DomainRegex> domainRegexps, LocalDateTime start, LocalDateTime end) {
+        Objects.requireNonNull(domainRegexps);
+        Objects.requireNonNull(start);
+        Objects.requireNonNull(end);
+
+        //Шаблоны приводятся к тому же виду, что и в запросе TransitionalBufferRepositoryImpl
+        List<DomainRegex> activeRegexps = domainRegexps.stream()
+                .filter(DomainRegex::isActive)
+                .map(domainRegex -> DomainRegex.builder()
+                        .id(domainRegex.getId())
+                        .pattern(domainRegex.getPattern().toLowerCase().trim())
+                        .dateAdded(domainRegex.getDateAdded().truncatedTo(SECONDS))
+                        .active(true)
+                        .build())
+                .collect(Collectors.toList());
+
+        if (activeRegexps.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        TrackedDomainsMatcher matcher;
+
+        try {
+            matcher = new TrackedDomainsMatcher(activeRegexps);
+        } catch (PatternSyntaxException e) {
+            LOGGER.error(e.getMessage());
+            return new ArrayList<>();
+        }
+
+        getPartition(CS_REQ).scan(localDateTimeToEpochSeconds(start), localDateTimeToEpochSeconds(end), matcher);
+
+        List<TrackedDomainRequests> result = new ArrayList<>(matcher.requests.size());
+
+        matcher.requests.forEach((key, stats) -> result.add(TrackedDomainRequests.builder()
+                .date(LocalDate.ofEpochDay(key.day))
+                .domainRegex(activeRegexps.get(key.regex))
+                .address(key.address)
+                .login(key.login)
+                .firstTime(epochSecondsToLocalDateTime(stats[0]).toLocalTime())
+                .lastTime(epochSecondsToLocalDateTime(stats[1]).toLocalTime())
+                .count(BigInteger.valueOf(stats[2]))
+                .build()));
+
+        return result;
+    }
+
+    @Override
+    public LocalDateTime getMinEventTime(TemplateType type) {
+        Objects.requireNonNull(type);
+        Long eventTime = getPartition(type).minTime();
+        return eventTime != null ? toLocalDateTime(type, eventTime) : null;
+    }
+
+    @Override
+    public LocalDateTime getMaxEventTime(TemplateType type) {
+        Objects.requireNonNull(type);
+        Long eventTime = getPartition(type).maxTime();
+        return eventTime != null ? toLocalDateTime(type, eventTime) : null;
+    }
+
+    private Partition getPartition(TemplateType type) {
+        Partition partition = partitions.get(type);
+
+        if (partition == null) {
+            throw new IllegalArgumentException(String.format("Unknown template type: %s", type));
+        }
+
+        return partition;
+    }
+
+    private static long toEventTime(TemplateType type, LocalDateTime eventTime) {
+        return type == GENERIC ? localDateTimeToEpochMillis(eventTime) : localDateTimeToEpochSeconds(eventTime);
+    }
+
+    private static LocalDateTime toLocalDateTime(TemplateType type, long eventTime) {
+        return type == GENERIC ? epochMillisToLocalDateTime(eventTime) : epochSecondsToLocalDateTime(eventTime);
+    }
+
+    //Номер дня эпохи в часовом поясе экспортера
+    private static long eventDay(long epochSeconds) {
+        return Math.floorDiv(epochSeconds + EXPORTER_ZONE_OFFSET.getTotalSeconds(), SECONDS_PER_DAY);
+    }
+
+    /**
+     * Метод для преобразования записи в пакет из одной строки.<br>
+     * Значения хранятся так же, как их сохраняет IPFIXRecordCursor, строковые значения - ссылками на строки.
+     *
+     * @param record IPFIX-запись
+     * @return пакет записей
+     */
+    private static RecordsBatch toBatch(IPFIXDataRecord record) {
+        List<IPFIXFieldValue> fieldValues = record.getFieldValues();
+
+        RecordsBatch batch = RecordsBatch.builder()
+                .type(record.getType())
+                .columnNames(fieldValues.stream().map(IPFIXFieldValue::getName).toArray(String[]::new))
+                .columnTypes(fieldValues.stream().map(IPFIXFieldValue::getType).toArray(IANAAbstractDataTypes[]::new))
+                .capacity(1)
+                .build();
+
+        for (int column = 0; column < fieldValues.size(); column++) {
+            IPFIXFieldValue fieldValue = fieldValues.get(column);
+            Object value = fieldValue.getValue();
+
+            if (value == null) {
+                batch.setNull(column);
+                continue;
+            }
+
+            switch (batch.getColumnKind(column)) {
+                case LONG:
+                    batch.setLong(column, toLong(fieldValue.getType(), value));
+                    break;
+                case INT:
+                    batch.setInt(column, toInt(fieldValue.getType(), value));
+                    break;
+                case STRING:
+                    batch.setString(column, value.toString());
+                    break;
+                default:
+                    batch.setNull(column);
+            }
+        }
+
+        batch.endRow();
+        return batch;
+    }
+
+    private static long toLong(IANAAbstractDataTypes type, Object value) {
+        switch (type) {
+            case DATE_TIME_SECONDS:
+                return localDateTimeToEpochSeconds(toLocalDateTime(value));
+            case DATE_TIME_MILLISECONDS:
+                return localDateTimeToEpochMillis(toLocalDateTime(value));
+            case FLOAT32:
+            case FLOAT64:
+                return Double.doubleToLongBits(((Number) value).doubleValue());
+            default:
+                return ((Number) value).longValue();
+        }
+    }
+
+    private static int toInt(IANAAbstractDataTypes type, Object value) {
+        switch (type) {
+            case IPV4_ADDRESS:
+                return ipv4ToInt(value.toString());
+            case BOOLEAN:
+                //RFC 7011, 6.1.5: true - 1, false - 2
+                return (Boolean) value ? 1 : 2;
+            default:
+                return ((Number) value).intValue();
+        }
+    }
+
+    //Значения времени в записях, созданных вручную, могут быть заданы строкой в формате TIMESTAMP
+    private static LocalDateTime toLocalDateTime(Object value) {
+        return value instanceof LocalDateTime ? (LocalDateTime) value : Timestamp.valueOf(value.toString()).toLocalDateTime();
+    }
+
+    @FunctionalInterface
+    private interface RowVisitor {
+        /**
+         * @param batch     пакет записей
+         * @param row       номер строки пакета
+         * @param eventTime время, по которому запись распределена в интервал
+         */
+        void visit(RecordsBatch batch, int row, long eventTime);
+    }
+
+    /**
+     * Записи одного типа, распределенные по интервалам времени
+     */
+    private static final class Partition {
+        private final long bucketLength;
+        private final int timeColumn;
+        private final int maxTimeColumn;
+        private final ConcurrentSkipListMap<Long, Bucket> buckets = new ConcurrentSkipListMap<>();
+
+        Partition(long bucketLength, int timeColumn, int maxTimeColumn) {
+            this.bucketLength = bucketLength;
+            this.timeColumn = timeColumn;
+            this.maxTimeColumn = maxTimeColumn;
+        }
+
+        int append(RecordsBatch batch) {
+            if (batch.getColumnCount() <= Math.max(timeColumn, maxTimeColumn)) {
+                LOGGER.error("batch of {} has no time column: {} columns", batch.getType(), batch.getColumnCount());
+                return 0;
+            }
+
+            //Строки без отметки времени не попадают ни в одну выборку и не удаляются, поэтому не сохраняются
+            int stored = 0;
+            long firstKey = 0;
+            boolean single = true;
+
+            for (int row = 0; row < batch.size(); row++) {
+                if (batch.isNull(row, timeColumn)) {
+                    single = false;
+                    continue;
+                }
+
+                long key = bucketKey(batch.getLong(row, timeColumn));
+
+                if (stored++ == 0) {
+                    firstKey = key;
+                } else if (key != firstKey) {
+                    single = false;
+                }
+            }
+
+            if (stored == 0) {
+                return 0;
+            }
+
+            //Как правило, все записи пакета относятся к одному интервалу, и сегмент ссылается на пакет целиком
+            if (single) {
+                getBucket(firstKey).segments.add(new Segment(batch, null, batch.size(), timeColumn));
+                return stored;
+            }
+
+            Map<Long, RowsBuilder> rowsByBucket = new HashMap<>();
+
+            for (int pass = 0; pass < 2; pass++) {
+                for (int row = 0; row < batch.size(); row++) {
+                    if (!batch.isNull(row, timeColumn)) {
+                        RowsBuilder rows = rowsByBucket.computeIfAbsent(bucketKey(batch.getLong(row, timeColumn)),
+                                key -> new RowsBuilder());
+
+                        if (pass == 0) {
+                            rows.size++;
+                        } else {
+                            rows.rows[rows.size++] = row;
+                        }
+                    }
+                }
+
+                if (pass == 0) {
+                    rowsByBucket.values().forEach(RowsBuilder::allocate);
+                }
+            }
+
+            rowsByBucket.forEach((key, rows) ->
+                    getBucket(key).segments.add(new Segment(batch, rows.rows, rows.size, timeColumn)));
+
+            return stored;
+        }
+
+        long count() {
+            long count = 0;
+
+            for (Bucket bucket : buckets.values()) {
+                count += bucket.count();
+            }
+
+            return count;
+        }
+
+        /**
+         * Метод для удаления записей со временем не позднее указанного.<br>
+         * Интервалы, все записи которых истекли, удаляются без обхода строк.
+         *
+         * @param before отметка времени, включительно
+         * @return количество удаленных записей
+         */
+        long delete(long before) {
+            long deleted = 0;
+            long boundaryKey = bucketKey(before);
+            boolean boundaryExpired = bucketEnd(boundaryKey) <= before;
+
+            Iterator<Bucket> expired = buckets.headMap(boundaryKey, boundaryExpired).values().iterator();
+
+            while (expired.hasNext()) {
+                deleted += expired.next().count();
+                expired.remove();
+            }
+
+            Bucket boundary = boundaryExpired ? null : buckets.get(boundaryKey);
+
+            if (boundary != null) {
+                for (Segment segment : boundary.segments) {
+                    deleted += segment.deleteUpTo(before);
+                }
+            }
+
+            return deleted;
+        }
+
+        /**
+         * Метод для обхода записей за период
+         *
+         * @param from    начальная отметка времени (>=)
+         * @param to      конечная отметка времени (<)
+         * @param visitor обработчик записей
+         */
+        void scan(long from, long to, RowVisitor visitor) {
+            if (from >= to) {
+                return;
+            }
+
+            for (Bucket bucket : buckets.subMap(bucketKey(from), true, bucketKey(to - 1), true).values()) {
+                for (Segment segment : bucket.segments) {
+                    segment.scan(from, to, visitor);
+                }
+            }
+        }
+
+        Long minTime() {
+            Extremum min = new Extremum(timeColumn, false);
+
+            //Первый непустой интервал содержит наименьшее время
+            for (Bucket bucket : buckets.values()) {
+                bucket.scan(min);
+
+                if (min.found) {
+                    return min.value;
+                }
+            }
+
+            return null;
+        }
+
+        Long maxTime() {
+            Extremum max = new Extremum(maxTimeColumn, true);
+
+            for (Bucket bucket : buckets.descendingMap().values()) {
+                //Значение столбца не превышает времени, по которому запись распределена в интервал,
+                //поэтому в более ранних интервалах большего значения нет
+                if (max.found && max.value >= bucketEnd(bucket.key)) {
+                    break;
+                }
+
+                bucket.scan(max);
+            }
+
+            return max.found ? max.value : null;
+        }
+
+        private Bucket getBucket(long key) {
+            return buckets.computeIfAbsent(key, Bucket::new);
+        }
+
+        private long bucketKey(long eventTime) {
+            return Math.floorDiv(eventTime, bucketLength);
+        }
+
+        //Последняя отметка времени, относящаяся к интервалу
+        private long bucketEnd(long key) {
+            return key * bucketLength + bucketLength - 1;
+        }
+    }
+
+    /**
+     * Интервал времени, содержащий сегменты пакетов записей
+     */
+    private static final class Bucket {
+        private final long key;
+        private final ConcurrentLinkedQueue<Segment> segments = new ConcurrentLinkedQueue<>();
+
+        Bucket(long key) {
+            this.key = key;
+        }
+
+        long count() {
+            long count = 0;
+
+            for (Segment segment : segments) {
+                count += segment.liveCount;
+            }
+
+            return count;
+        }
+
+        void scan(RowVisitor visitor) {
+            for (Segment segment : segments) {
+                segment.scan(Long.MIN_VALUE, Long.MAX_VALUE, visitor);
+            }
+        }
+    }
+
+    /**
+     * Строки пакета записей, относящиеся к одному интервалу.<br>
+     * Удаление строк граничного интервала не изменяет пакет: сегмент запоминает время, до которого (включительно)
+     * его строки считаются удаленными.
+     */
+    private static final class Segment {
+        private final RecordsBatch batch;
+        //null, если сегмент содержит все строки пакета
+        private final int[] rows;
+        private final int size;
+        private final int timeColumn;
+
+        private volatile long deletedUpTo = Long.MIN_VALUE;
+        private volatile int liveCount;
+
+        Segment(RecordsBatch batch, int[] rows, int size, int timeColumn) {
+            this.batch = batch;
+            this.rows = rows;
+            this.size = size;
+            this.timeColumn = timeColumn;
+            this.liveCount = size;
+        }
+
+        void scan(long from, long to, RowVisitor visitor) {
+            long deletedUpTo = this.deletedUpTo;
+
+            for (int i = 0; i < size; i++) {
+                int row = rows != null ? rows[i] : i;
+                long eventTime = batch.getLong(row, timeColumn);
+
+                if (eventTime > deletedUpTo && eventTime >= from && eventTime < to) {
+                    visitor.visit(batch, row, eventTime);
+                }
+            }
+        }
+
+        synchronized int deleteUpTo(long before) {
+            if (before <= deletedUpTo) {
+                return 0;
+            }
+
+            int deleted = 0;
+
+            for (int i = 0; i < size; i++) {
+                long eventTime = batch.getLong(rows != null ? rows[i] : i, timeColumn);
+
+                if (eventTime > deletedUpTo && eventTime <= before) {
+                    deleted++;
+                }
+            }
+
+            deletedUpTo = before;
+            liveCount -= deleted;
+
+            return deleted;
+        }
+    }
+
+    private static final class RowsBuilder {
+        private int[] rows;
+        private int size;
+
+        void allocate() {
+            rows = new int[size];
+            size = 0;
+        }
+    }
+
+    private static final class Extremum implements RowVisitor {
+        private final int column;
+        private final boolean max;
+        private long value;
+        private boolean found;
+
+        Extremum(int column, boolean max) {
+            this.column = column;
+            this.max = max;
+        }
+
+        @Override
+        public void visit(RecordsBatch batch, int row, long eventTime) {
+            if (batch.isNull(row, column)) {
+                return;
+            }
+
+            long candidate = batch.getLong(row, column);
+
+            if (!found || (max ? candidate > value : candidate < value)) {
+                value = candidate;
+                found = true;
+            }
+        }
+    }
+
+    private static final class ClickCounter implements RowVisitor {
+        private final Map<Long, long[]> counts = new TreeMap<>();
+        //Записи интервала, как правило, относятся к одному дню
+        private long lastDay = Long.MIN_VALUE;
+        private long[] lastCount;
+
+        @Override
+        public void visit(RecordsBatch batch, int row, long eventTime) {
+            long day = eventDay(eventTime);
+
+            if (day != lastDay) {
+                lastDay = day;
+                lastCount = counts.computeIfAbsent(day, key -> new long[1]);
+            }
+
+            lastCount[0]++;
+        }
+    }
+
+    private static final class TrackedDomainsMatcher implements RowVisitor {
+        private final Matcher[] matchers;
+        //Первое и последнее время и количество запросов по дате, шаблону, адресу и логину
+        private final Map<TrackedKey, long[]> requests = new HashMap<>();
+
+        TrackedDomainsMatcher(List<DomainRegex> domainRegexps) {
+            matchers = new Matcher[domainRegexps.size()];
+
+            for (int i = 0; i < matchers.length; i++) {
+                matchers[i] = Pattern.compile(domainRegexps.get(i).getPattern()).matcher("");
+            }
+        }
+
+        @Override
+        public void visit(RecordsBatch batch, int row, long eventTime) {
+            if (batch.isNull(row, CS_HOSTNAME)) {
+                return;
+            }
+
+            String hostname = batch.getString(row, CS_HOSTNAME).toLowerCase();
+
+            for (int i = 0; i < matchers.length; i++) {
+                if (!matchers[i].reset(hostname).matches()) {
+                    continue;
+                }
+
+                TrackedKey key = new TrackedKey(eventDay(eventTime), i,
+                        batch.isNull(row, CS_IP_SRC) ? null : intToIPv4(batch.getInt(row, CS_IP_SRC)),
+                        batch.isNull(row, CS_LOGIN) ? null : batch.getString(row, CS_LOGIN));
+                long[] stats = requests.get(key);
+
+                if (stats == null) {
+                    requests.put(key, new long[]{eventTime, eventTime, 1});
+                } else {
+                    stats[0] = Math.min(stats[0], eventTime);
+                    stats[1] = Math.max(stats[1], eventTime);
+                    stats[2]++;
+                }
+            }
+        }
+    }
+
+    private static final class TrackedKey {
+        private final long day;
+        private final int regex;
+        private final String address;
+        private final String login;
+
+        TrackedKey(long day, int regex, String address, String login) {
+            this.day = day;
+            this.regex = regex;
+            this.address = address;
+            this.login = login;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            TrackedKey that = (TrackedKey) o;
+            return day == that.day &&
+                    regex == that.regex &&
+                    Objects.equals(address, that.address) &&
+                    Objects.equals(login, that.login);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(day, regex, address, login);
+        }
+    }
+}
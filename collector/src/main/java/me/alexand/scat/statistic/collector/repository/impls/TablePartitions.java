@@ -0,0 +1,218 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.repository.impls;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Секции таблицы временного буфера.<br>
+ * Секция - таблица {@code <таблица>_p<номер>} с тем же набором столбцов, что и основная таблица, содержащая записи
+ * одного интервала времени: номер секции - номер интервала заданной длины, отсчитываемый от начала эпохи.
+ * Секции создаются при первой записи в интервал, а истекшие секции удаляются целиком (DROP TABLE)
+ * вместо построчного удаления записей.
+ * <p>
+ * Основная таблица остается пустой: новые секции создаются по ее определению, поэтому столбцы, добавленные в
+ * основную таблицу, добавляются и во все существующие секции (см. {@link #addColumn(String, String)}).
+ * <p>
+ * Вставка записей выполняется под {@link #insertLock()}: от выбора секции до окончания вставки секция не может
+ * быть удалена, а удаление истекших секций дожидается завершения начатых вставок. Записи, время которых не позже
+ * границы удаления, отклоняются (см. {@link #isExpired(long)}), поэтому запоздавшая запись не создает заново
+ * удаленную секцию.
+ *
+ * @author asidorov84@gmail.com
+ * @see TransitionalBufferRepositoryImpl
+ */
+final class TablePartitions {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TablePartitions.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String table;
+    private final String timeColumn;
+    private final long lengthMillis;
+    private final ConcurrentSkipListMap<Long, String> partitions = new ConcurrentSkipListMap<>();
+    //Вставки выполняются под блокировкой чтения, удаление секций и изменение столбцов - под блокировкой записи
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    //Граница последнего удаления: записи до нее (включительно) считаются истекшими
+    private volatile long expiredBeforeMillis = Long.MIN_VALUE;
+
+    /**
+     * @param jdbcTemplate JdbcTemplate буфера
+     * @param table        основная таблица
+     * @param timeColumn   столбец времени, по которому записи распределяются по секциям
+     * @param lengthMillis длина интервала секции в миллисекундах
+     */
+    TablePartitions(JdbcTemplate jdbcTemplate, String table, String timeColumn, long lengthMillis) {
+        if (lengthMillis <= 0) {
+            throw new IllegalArgumentException(String.format("Illegal length of partition: %d ms", lengthMillis));
+        }
+
+        this.jdbcTemplate = jdbcTemplate;
+        this.table = table;
+        this.timeColumn = timeColumn;
+        this.lengthMillis = lengthMillis;
+    }
+
+    String getTable() {
+        return table;
+    }
+
+    /**
+     * @param epochMillis отметка времени в миллисекундах эпохи
+     * @return номер секции, к которой относится отметка времени
+     */
+    long getKey(long epochMillis) {
+        return Math.floorDiv(epochMillis, lengthMillis);
+    }
+
+    /**
+     * @return блокировка, которую вставка записей удерживает от выбора секции до окончания вставки
+     */
+    Lock insertLock() {
+        return lock.readLock();
+    }
+
+    /**
+     * @param epochMillis отметка времени в миллисекундах эпохи
+     * @return true, если записи с такой отметкой времени уже удалены как истекшие и не должны сохраняться
+     */
+    boolean isExpired(long epochMillis) {
+        return epochMillis <= expiredBeforeMillis;
+    }
+
+    /**
+     * Метод для получения таблицы секции. Таблица создается, если секции еще нет.
+     * Вызывается под {@link #insertLock()}.
+     *
+     * @param key номер секции
+     * @return имя таблицы секции
+     * @throws DataAccessException при ошибке создания таблицы
+     */
+    String getPartition(long key) {
+        String partition = partitions.get(key);
+        return partition != null ? partition : createPartition(key);
+    }
+
+    /**
+     * @param fromKey номер первой секции, включительно
+     * @param toKey   номер последней секции, включительно
+     * @return таблицы существующих секций в указанном диапазоне номеров
+     */
+    List<String> getPartitions(long fromKey, long toKey) {
+        return fromKey > toKey
+                ? new ArrayList<>()
+                : new ArrayList<>(partitions.subMap(fromKey, true, toKey, true).values());
+    }
+
+    List<String> getPartitions() {
+        return new ArrayList<>(partitions.values());
+    }
+
+    /**
+     * Метод для удаления секций, все записи которых относятся ко времени до указанной отметки (включительно)
+     *
+     * @param beforeEpochMillis отметка времени в миллисекундах эпохи
+     * @return количество записей в удаленных секциях
+     */
+    long dropExpired(long beforeEpochMillis) {
+        lock.writeLock().lock();
+
+        try {
+            expiredBeforeMillis = Math.max(expiredBeforeMillis, beforeEpochMillis);
+
+            //Секция истекла, если истекла последняя миллисекунда ее интервала
+            long toKey = getKey(beforeEpochMillis + 1);
+            long deleted = 0;
+
+            Iterator<Map.Entry<Long, String>> expired = partitions.headMap(toKey).entrySet().iterator();
+
+            while (expired.hasNext()) {
+                String partition = expired.next().getValue();
+                //Секция исключается из выборок до удаления таблицы
+                expired.remove();
+
+                try {
+                    deleted += jdbcTemplate.queryForObject(String.format("SELECT count(*) FROM %s", partition), Long.class);
+                    jdbcTemplate.execute(String.format("DROP TABLE %s IF EXISTS", partition));
+                } catch (DataAccessException e) {
+                    LOGGER.error(e.getMessage());
+                }
+            }
+
+            return deleted;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Метод для добавления столбца в основную таблицу и все ее секции.
+     * Не должен вызываться под {@link #insertLock()}.
+     *
+     * @param column     имя столбца
+     * @param definition тип SQL столбца
+     */
+    void addColumn(String column, String definition) {
+        lock.writeLock().lock();
+
+        try {
+            List<String> tables = getPartitions();
+            tables.add(0, table);
+
+            for (String target : tables) {
+                try {
+                    jdbcTemplate.execute(String.format("ALTER TABLE %s ADD COLUMN %s %s", target, column, definition));
+                } catch (DataAccessException e) {
+                    //Столбец мог быть добавлен ранее, например, при повторном запуске на существующем буфере
+                    LOGGER.warn(e.getMessage());
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private synchronized String createPartition(long key) {
+        String partition = partitions.get(key);
+
+        if (partition == null) {
+            partition = String.format("%s_p%d", table, key);
+            jdbcTemplate.execute(String.format("CREATE TABLE IF NOT EXISTS %s (LIKE %s)", partition, table));
+            jdbcTemplate.execute(String.format("CREATE INDEX IF NOT EXISTS %s_time_idx ON %s (%s)", partition, partition, timeColumn));
+            partitions.put(key, partition);
+            LOGGER.debug("...partition {} created", partition);
+        }
+
+        return partition;
+    }
+}
@@ -21,8 +21,10 @@
 
 package me.alexand.scat.statistic.collector.repository.impls;
 
+import me.alexand.scat.statistic.collector.model.IANAAbstractDataTypes;
 import me.alexand.scat.statistic.collector.model.IPFIXDataRecord;
 import me.alexand.scat.statistic.collector.model.IPFIXFieldValue;
+import me.alexand.scat.statistic.collector.model.RecordsBatch;
 import me.alexand.scat.statistic.collector.model.TemplateType;
 import me.alexand.scat.statistic.collector.repository.TransitionalBufferRepository;
 import me.alexand.scat.statistic.common.entities.ClickCount;
@@ -36,9 +38,9 @@ import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.ResultSetExtractor;
-import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -49,46 +51,90 @@ import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
+import static me.alexand.scat.statistic.collector.model.IANAAbstractDataTypes.UNSIGNED64;
+import static me.alexand.scat.statistic.collector.model.TemplateType.CS_REQ;
+import static me.alexand.scat.statistic.collector.model.TemplateType.GENERIC;
+import static me.alexand.scat.statistic.collector.utils.BytesConvertUtils.unsignedLongToBigInteger;
+import static me.alexand.scat.statistic.collector.utils.DateTimeUtils.EXPORTER_ZONE_OFFSET;
+import static me.alexand.scat.statistic.collector.utils.DateTimeUtils.localDateTimeToEpochMillis;
+
 /**
- * SQL Databases реализация репозитория для IPFIX-записей
+ * SQL Databases реализация репозитория для IPFIX-записей.
+ * <p>
+ * Значения хранятся в том же виде, что и в {@link IPFIXFieldValue}: время - как TIMESTAMP, IPv4-адреса - как строки.
+ * <p>
+ * Столбцы пакетов записей сверх столбцов таблицы типа записей (поля, обнаруженные в шаблонах экспортеров,
+ * см. DataTemplateService) добавляются в таблицу при первом сохранении такого пакета.
+ * <p>
+ * Если задана длина интервала секций, записи сохраняются не в таблицы типов записей, а в их секции
+ * (см. {@link TablePartitions}): выборки за период обращаются только к пересекающимся с ним секциям, а удаление
+ * старых записей удаляет истекшие секции целиком и построчно удаляет записи только граничной секции.
+ * Записи, время которых не позже границы последнего удаления, не сохраняются.
  *
  * @author asidorov84@gmail.com
+ * @see CompactTransitionalBufferRepositoryImpl
  */
 
-@Repository
 public class TransitionalBufferRepositoryImpl implements TransitionalBufferRepository {
     private static final Logger LOGGER = LoggerFactory.getLogger(TransitionalBufferRepositoryImpl.class);
 
-    private static final String CS_REQ_INSERT = "INSERT INTO cs_req(event_time, login, ip_src, ip_dst, hostname," +
-            " path, refer, user_agent, cookie, session_id, locked, host_type, method)" +
-            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-
-    private static final String CS_REQ_DELETE = "DELETE FROM cs_req WHERE event_time <= ?";
+    private static final String[] CS_REQ_COLUMNS = {"event_time", "login", "ip_src", "ip_dst", "hostname",
+            "path", "refer", "user_agent", "cookie", "session_id", "locked", "host_type", "method"};
 
-    private static final String CS_RESP_INSERT = "INSERT INTO cs_resp(event_time, login, ip_src, ip_dst," +
-            " result_code, content_length, content_type, session_id) " +
-            "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String[] CS_RESP_COLUMNS = {"event_time", "login", "ip_src", "ip_dst",
+            "result_code", "content_length", "content_type", "session_id"};
 
-    private static final String CS_RESP_DELETE = "DELETE FROM cs_resp WHERE event_time <= ?";
+    private static final String[] GENERIC_COLUMNS = {"octet_delta_count", "packet_delta_count",
+            "protocol_identifier", "ip_class_of_service", "source_transport_port", "source_ipv4_address",
+            "destination_transport_port", "destination_ipv4_address", "bgp_source_as_number", "bgp_destination_as_number",
+            "flow_start_millisecond", "flow_end_millisecond", "input_snmp", "output_snmp", "ip_version", "session_id",
+            "http_host", "dpi_protocol", "login", "post_nat_source_ipv4_address", "post_nat_source_transport_port"};
 
-    private static final String GENERIC_INSERT = "INSERT INTO generic(octet_delta_count, packet_delta_count," +
-            " protocol_identifier, ip_class_of_service, source_transport_port, source_ipv4_address," +
-            " destination_transport_port, destination_ipv4_address, bgp_source_as_number, bgp_destination_as_number," +
-            " flow_start_millisecond, flow_end_millisecond, input_snmp, output_snmp, ip_version, session_id," +
-            " http_host, dpi_protocol, login, post_nat_source_ipv4_address, post_nat_source_transport_port) " +
-            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    //Номер секции и отметка времени записи без значения времени
+    private static final long NO_EVENT_TIME = Long.MIN_VALUE;
+    //Номер секции строк пакета, время которых не позже границы последнего удаления
+    private static final long EXPIRED_EVENT_TIME = Long.MAX_VALUE;
 
-    private static final String GENERIC_DELETE = "DELETE FROM generic WHERE flow_end_millisecond <= ?";
+    protected final JdbcTemplate jdbcTemplate;
 
-    private JdbcTemplate jdbcTemplate;
+    //Столбцы вставки пакетов, содержащих столбцы, добавленные в схему типа записей, по именам таких столбцов
+    private final Map<String, List<String>> extendedInsertColumns = new ConcurrentHashMap<>();
+    private final Set<String> addedColumns = new HashSet<>();
+    //Секции таблиц по типам записей, пусто, если таблицы не секционируются
+    private final Map<TemplateType, TablePartitions> partitions = new EnumMap<>(TemplateType.class);
 
     @Autowired
     public TransitionalBufferRepositoryImpl(@Qualifier("bufferJDBCTemplate") JdbcTemplate jdbcTemplate) {
+        this(jdbcTemplate, 0);
+    }
+
+    /**
+     * @param jdbcTemplate     JdbcTemplate буфера
+     * @param partitionSeconds длина интервала секций таблиц в секундах или 0, если таблицы не секционируются
+     */
+    public TransitionalBufferRepositoryImpl(JdbcTemplate jdbcTemplate, int partitionSeconds) {
+        if (partitionSeconds < 0) {
+            throw new IllegalArgumentException(String.format("Illegal length of partition: %d seconds", partitionSeconds));
+        }
+
         this.jdbcTemplate = jdbcTemplate;
+
+        if (partitionSeconds > 0) {
+            for (TemplateType type : TemplateType.values()) {
+                partitions.put(type, new TablePartitions(jdbcTemplate, getTable(type), getTimeColumn(type),
+                        partitionSeconds * 1000L));
+            }
+        }
     }
 
     @Override
@@ -97,20 +143,28 @@ public class TransitionalBufferRepositoryImpl implements TransitionalBufferRepos
         Objects.requireNonNull(record);
         int insertedRecords = 0;
 
+        TemplateType type = record.getType();
+        TablePartitions tablePartitions = partitions.get(type);
+        long eventMillis = getEventMillis(record);
+
+        if (tablePartitions != null) {
+            tablePartitions.insertLock().lock();
+        }
+
         try {
-            switch (record.getType()) {
-                case CS_REQ:
-                    insertedRecords = insertRecord(CS_REQ_INSERT, record);
-                    break;
-                case CS_RESP:
-                    insertedRecords = insertRecord(CS_RESP_INSERT, record);
-                    break;
-                case GENERIC:
-                    insertedRecords = insertRecord(GENERIC_INSERT, record);
-                    break;
+            if (tablePartitions != null && eventMillis != NO_EVENT_TIME && tablePartitions.isExpired(eventMillis)) {
+                LOGGER.debug("...expired record of type {} rejected", type);
+                return false;
             }
+
+            String table = getTargetTable(type, getPartitionKey(type, eventMillis));
+            insertedRecords = insertRecord(getInsertQuery(table, Arrays.asList(getColumns(type))), record);
         } catch (DataAccessException e) {
             LOGGER.error(e.getMessage());
+        } finally {
+            if (tablePartitions != null) {
+                tablePartitions.insertLock().unlock();
+            }
         }
 
         return insertedRecords == 1;
@@ -118,45 +172,43 @@ public class TransitionalBufferRepositoryImpl implements TransitionalBufferRepos
 
     @Override
     @Transactional("bufferTM")
-    public int save(TemplateType type, List<IPFIXDataRecord> records) {
-        String sql = null;
-
-        switch (type) {
-            case CS_REQ:
-                sql = CS_REQ_INSERT;
-                break;
-            case CS_RESP:
-                sql = CS_RESP_INSERT;
-                break;
-            case GENERIC:
-                sql = GENERIC_INSERT;
-                break;
-        }
+    public int save(RecordsBatch batch) {
+        Objects.requireNonNull(batch);
+        List<String> columns = getInsertColumns(batch);
+        TablePartitions tablePartitions = partitions.get(batch.getType());
+        int inserted = 0;
 
         try {
-            int[] rows = jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
-                @Override
-                public void setValues(PreparedStatement ps, int i) throws SQLException {
-                    List<IPFIXFieldValue> fieldValues = records.get(i).getFieldValues();
-
-                    for (int j = 0; j < fieldValues.size(); j++) {
-                        int sqlType = fieldValues.get(j).getType().getSqlType();
-                        ps.setObject(j + 1, fieldValues.get(j).getValue(), sqlType);
+            if (tablePartitions == null) {
+                return insertBatch(getInsertQuery(getTable(batch.getType()), columns), batch, null, batch.size());
+            }
+
+            tablePartitions.insertLock().lock();
+
+            try {
+                //Как правило, все записи пакета относятся к одной секции и вставляются одним запросом
+                Map<Long, int[]> rowsByPartition = splitByPartitions(tablePartitions, batch);
+
+                for (Map.Entry<Long, int[]> entry : rowsByPartition.entrySet()) {
+                    int[] rows = entry.getValue();
+
+                    if (entry.getKey() == EXPIRED_EVENT_TIME) {
+                        LOGGER.debug("...{} expired records of type {} rejected",
+                                rows != null ? rows.length : batch.size(), batch.getType());
+                        continue;
                     }
-                }
 
-                @Override
-                public int getBatchSize() {
-                    return records.size();
+                    String table = getTargetTable(batch.getType(), entry.getKey());
+                    inserted += insertBatch(getInsertQuery(table, columns), batch, rows, rows != null ? rows.length : batch.size());
                 }
-            });
-
-            return Arrays.stream(rows).sum();
+            } finally {
+                tablePartitions.insertLock().unlock();
+            }
         } catch (DataAccessException e) {
             LOGGER.error(e.getMessage());
         }
 
-        return 0;
+        return inserted;
     }
 
     @Override
@@ -164,16 +216,7 @@ public class TransitionalBufferRepositoryImpl implements TransitionalBufferRepos
     public long getCount(TemplateType type) {
         Objects.requireNonNull(type);
 
-        switch (type) {
-            case CS_REQ:
-                return jdbcTemplate.queryForObject("SELECT count(*) FROM cs_req", Long.class);
-            case CS_RESP:
-                return jdbcTemplate.queryForObject("SELECT count(*) FROM cs_resp", Long.class);
-            case GENERIC:
-                return jdbcTemplate.queryForObject("SELECT count(*) FROM generic", Long.class);
-        }
-
-        return 0;
+        return jdbcTemplate.queryForObject(String.format("SELECT count(*) FROM %s AS t", getSource(type)), Long.class);
     }
 
     @Override
@@ -186,7 +229,7 @@ public class TransitionalBufferRepositoryImpl implements TransitionalBufferRepos
         sb.append("SELECT ")
                 .append(" cast(cs.event_time AS DATE) AS date, ")
                 .append(" count(*) AS count ")
-                .append("FROM cs_req AS cs ")
+                .append("FROM ").append(getSource(CS_REQ, start, end)).append(" AS cs ")
                 .append("WHERE cs.event_time >= ? AND cs.event_time < ? ")
                 .append("GROUP BY cast(cs.event_time AS DATE)");
 
@@ -212,14 +255,23 @@ public class TransitionalBufferRepositoryImpl implements TransitionalBufferRepos
         Objects.requireNonNull(beforeEventTime);
 
         try {
-            switch (type) {
-                case CS_REQ:
-                    return jdbcTemplate.update(CS_REQ_DELETE, beforeEventTime);
-                case CS_RESP:
-                    return jdbcTemplate.update(CS_RESP_DELETE, beforeEventTime);
-                case GENERIC:
-                    return jdbcTemplate.update(GENERIC_DELETE, beforeEventTime);
+            Object eventTime = toEventTimeParameter(type, beforeEventTime);
+            TablePartitions tablePartitions = partitions.get(type);
+            long deleted = 0;
+
+            if (tablePartitions != null) {
+                long beforeMillis = toEpochMillis(type, beforeEventTime);
+                deleted += tablePartitions.dropExpired(beforeMillis);
+
+                //Записи граничной секции, истекшей не полностью, удаляются построчно
+                long boundaryKey = tablePartitions.getKey(beforeMillis);
+
+                for (String partition : tablePartitions.getPartitions(boundaryKey, boundaryKey)) {
+                    deleted += jdbcTemplate.update(getDeleteQuery(type, partition), eventTime);
+                }
             }
+
+            return deleted + jdbcTemplate.update(getDeleteQuery(type, getTable(type)), eventTime);
         } catch (DataAccessException e) {
             LOGGER.error(e.getMessage());
         }
@@ -234,13 +286,7 @@ public class TransitionalBufferRepositoryImpl implements TransitionalBufferRepos
         Objects.requireNonNull(start);
         Objects.requireNonNull(end);
 
-        String values = domainRegexps.stream()
-                .filter(DomainRegex::isActive)
-                .map(domainRegex -> String.format("(cast(%d AS BIGINT), cast('%s' AS VARCHAR(8000)), TIMESTAMP '%s')",
-                        domainRegex.getId(),
-                        domainRegex.getPattern().toLowerCase().trim(),
-                        domainRegex.getDateAdded().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))))
-                .collect(Collectors.joining(", "));
+        String values = getDomainRegexValues(domainRegexps);
 
         if (values.isEmpty()) {
             return new ArrayList<>();
@@ -266,7 +312,8 @@ public class TransitionalBufferRepositoryImpl implements TransitionalBufferRepos
                 .append("  cast(min(cs.event_time) AS TIME) AS first_time, ")
                 .append("  cast(max(cs.event_time) AS TIME) AS last_time, ")
                 .append("  count(*) AS cnt ")
-                .append(" FROM cs_req AS cs INNER JOIN dr ON REGEXP_MATCHES(lower(cs.hostname), dr.pattern) ")
+                .append(" FROM ").append(getSource(CS_REQ, start, end))
+                .append(" AS cs INNER JOIN dr ON REGEXP_MATCHES(lower(cs.hostname), dr.pattern) ")
                 .append("WHERE cs.event_time >= ? AND cs.event_time < ? ")
                 .append("GROUP BY cast(cs.event_time AS DATE), dr.id, cs.ip_src, cs.login ")
                 .append(" ) ")
@@ -316,14 +363,8 @@ public class TransitionalBufferRepositoryImpl implements TransitionalBufferRepos
         Objects.requireNonNull(type);
 
         try {
-            switch (type) {
-                case CS_REQ:
-                    return jdbcTemplate.query("SELECT min(event_time) FROM cs_req", new LocalDateTimeResultSetExtractor());
-                case CS_RESP:
-                    return jdbcTemplate.query("SELECT min(event_time) FROM cs_resp", new LocalDateTimeResultSetExtractor());
-                case GENERIC:
-                    return jdbcTemplate.query("SELECT min(flow_end_millisecond) FROM generic", new LocalDateTimeResultSetExtractor());
-            }
+            return jdbcTemplate.query(String.format("SELECT min(%s) FROM %s AS t", getTimeColumn(type), getSource(type)),
+                    new LocalDateTimeResultSetExtractor(type));
         } catch (DataAccessException e) {
             LOGGER.error(e.getMessage());
         }
@@ -336,15 +377,12 @@ public class TransitionalBufferRepositoryImpl implements TransitionalBufferRepos
     public LocalDateTime getMaxEventTime(TemplateType type) {
         Objects.requireNonNull(type);
 
+        //Для записей GENERIC максимальным считается время начала потока
+        String column = type == GENERIC ? "flow_start_millisecond" : getTimeColumn(type);
+
         try {
-            switch (type) {
-                case CS_REQ:
-                    return jdbcTemplate.query("SELECT max(event_time) FROM cs_req", new LocalDateTimeResultSetExtractor());
-                case CS_RESP:
-                    return jdbcTemplate.query("SELECT max(event_time) FROM cs_resp", new LocalDateTimeResultSetExtractor());
-                case GENERIC:
-                    return jdbcTemplate.query("SELECT max(flow_start_millisecond) FROM generic", new LocalDateTimeResultSetExtractor());
-            }
+            return jdbcTemplate.query(String.format("SELECT max(%s) FROM %s AS t", column, getSource(type)),
+                    new LocalDateTimeResultSetExtractor(type));
         } catch (DataAccessException e) {
             LOGGER.error(e.getMessage());
         }
@@ -352,23 +390,448 @@ public class TransitionalBufferRepositoryImpl implements TransitionalBufferRepos
         return null;
     }
 
+    /**
+     * Метод для получения источника записей запроса: таблицы типа записей либо объединения таблицы и ее секций
+     *
+     * @param type тип записей
+     * @return таблица или подзапрос для подстановки в FROM
+     */
+    protected String getSource(TemplateType type) {
+        TablePartitions tablePartitions = partitions.get(type);
+        return tablePartitions != null ? getSource(type, tablePartitions.getPartitions()) : getTable(type);
+    }
+
+    /**
+     * Метод для получения источника записей запроса за период.<br>
+     * Секции, не пересекающиеся с периодом, в источник не включаются.
+     *
+     * @param type  тип записей
+     * @param start начальная отметка времени (>=)
+     * @param end   конечная отметка времени (<)
+     * @return таблица или подзапрос для подстановки в FROM
+     */
+    protected String getSource(TemplateType type, LocalDateTime start, LocalDateTime end) {
+        TablePartitions tablePartitions = partitions.get(type);
+
+        if (tablePartitions == null) {
+            return getTable(type);
+        }
+
+        return getSource(type, tablePartitions.getPartitions(
+                tablePartitions.getKey(toEpochMillis(type, start)),
+                tablePartitions.getKey(toEpochMillis(type, end) - 1)));
+    }
+
+    /**
+     * Метод для получения значений отслеживаемых шаблонов доменных имен в виде списка строк VALUES
+     *
+     * @param domainRegexps список шаблонов доменных имен
+     * @return строка для подстановки в VALUES или пустая строка, если активных шаблонов нет
+     */
+    protected String getDomainRegexValues(List<DomainRegex> domainRegexps) {
+        return domainRegexps.stream()
+                .filter(DomainRegex::isActive)
+                .map(domainRegex -> String.format("(cast(%d AS BIGINT), cast('%s' AS VARCHAR(8000)), TIMESTAMP '%s')",
+                        domainRegex.getId(),
+                        domainRegex.getPattern().toLowerCase().trim(),
+                        domainRegex.getDateAdded().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))))
+                .collect(Collectors.joining(", "));
+    }
+
+    /**
+     * Метод для задания параметра запроса значением столбца пакета
+     *
+     * @param ps     запрос
+     * @param index  номер параметра
+     * @param batch  пакет записей
+     * @param row    номер строки пакета
+     * @param column номер столбца пакета
+     * @throws SQLException при ошибке задания параметра
+     */
+    protected void setValue(PreparedStatement ps, int index, RecordsBatch batch, int row, int column) throws SQLException {
+        if (batch.getColumnType(column) == UNSIGNED64) {
+            setUnsignedLong(ps, index, batch.getLong(row, column));
+            return;
+        }
+
+        ps.setObject(index, batch.getValue(row, column), batch.getColumnType(column).getSqlType());
+    }
+
+    /**
+     * Метод для задания параметра запроса значением поля записи
+     *
+     * @param ps         запрос
+     * @param index      номер параметра
+     * @param fieldValue значение поля
+     * @throws SQLException при ошибке задания параметра
+     */
+    protected void setValue(PreparedStatement ps, int index, IPFIXFieldValue fieldValue) throws SQLException {
+        if (fieldValue.getType() == UNSIGNED64 && fieldValue.getValue() instanceof Number) {
+            setUnsignedLong(ps, index, fieldValue.getLongValue());
+            return;
+        }
+
+        ps.setObject(index, fieldValue.getValue(), fieldValue.getType().getSqlType());
+    }
+
+    /**
+     * Метод для задания параметра запроса беззнаковым 64-битным значением.<br>
+     * BigDecimal создается только для значений, превышающих Long.MAX_VALUE.
+     *
+     * @param ps    запрос
+     * @param index номер параметра
+     * @param value значение с беззнаковой семантикой
+     * @throws SQLException при ошибке задания параметра
+     */
+    protected static void setUnsignedLong(PreparedStatement ps, int index, long value) throws SQLException {
+        if (value >= 0) {
+            ps.setLong(index, value);
+        } else {
+            ps.setBigDecimal(index, new BigDecimal(unsignedLongToBigInteger(value)));
+        }
+    }
+
+    /**
+     * Метод для преобразования отметки времени в параметр запроса к столбцу времени записей данного типа
+     *
+     * @param type      тип записей
+     * @param eventTime отметка времени
+     * @return значение параметра
+     */
+    protected Object toEventTimeParameter(TemplateType type, LocalDateTime eventTime) {
+        return eventTime;
+    }
+
+    /**
+     * Метод для чтения отметки времени из первого столбца результата запроса к записям данного типа
+     *
+     * @param type тип записей
+     * @param rs   результат запроса
+     * @return отметка времени или null
+     * @throws SQLException при ошибке чтения результата
+     */
+    protected LocalDateTime readEventTime(TemplateType type, ResultSet rs) throws SQLException {
+        Timestamp timestamp = rs.getTimestamp(1);
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+
+    /**
+     * Метод для получения определения столбца таблицы для значений данного типа
+     *
+     * @param type тип значений
+     * @return тип SQL столбца
+     */
+    protected String getColumnDefinition(IANAAbstractDataTypes type) {
+        switch (type) {
+            case UNSIGNED8:
+            case SIGNED8:
+            case SIGNED16:
+                return "SMALLINT";
+            case UNSIGNED16:
+            case SIGNED32:
+                return "INTEGER";
+            case UNSIGNED32:
+            case SIGNED64:
+                return "BIGINT";
+            case UNSIGNED64:
+                return "DECIMAL(20)";
+            case FLOAT32:
+            case FLOAT64:
+                return "DOUBLE";
+            case BOOLEAN:
+                return "BOOLEAN";
+            case DATE_TIME_SECONDS:
+            case DATE_TIME_MILLISECONDS:
+            case DATE_TIME_MICROSECONDS:
+            case DATE_TIME_NANOSECONDS:
+                return "TIMESTAMP";
+            case IPV4_ADDRESS:
+                return "VARCHAR(15)";
+            case IPV6_ADDRESS:
+                return "VARCHAR(39)";
+            default:
+                return "VARCHAR(8000)";
+        }
+    }
+
+    private static String[] getColumns(TemplateType type) {
+        switch (type) {
+            case CS_REQ:
+                return CS_REQ_COLUMNS;
+            case CS_RESP:
+                return CS_RESP_COLUMNS;
+            case GENERIC:
+                return GENERIC_COLUMNS;
+            default:
+                throw new IllegalArgumentException(String.format("Unknown template type: %s", type));
+        }
+    }
+
+    private static String getTable(TemplateType type) {
+        return type.name().toLowerCase();
+    }
+
+    private static String getTimeColumn(TemplateType type) {
+        return type == GENERIC ? "flow_end_millisecond" : "event_time";
+    }
+
+    private static String getDeleteQuery(TemplateType type, String table) {
+        return String.format("DELETE FROM %s WHERE %s <= ?", table, getTimeColumn(type));
+    }
+
+    private static String getSource(TemplateType type, List<String> partitions) {
+        if (partitions.isEmpty()) {
+            return getTable(type);
+        }
+
+        //Основная таблица секционируемого типа пуста, кроме записей без отметки времени
+        StringBuilder sb = new StringBuilder("(SELECT * FROM ").append(getTable(type));
+
+        for (String partition : partitions) {
+            sb.append(" UNION ALL SELECT * FROM ").append(partition);
+        }
+
+        return sb.append(")").toString();
+    }
+
+    private static String getInsertQuery(String table, List<String> columns) {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append("INSERT INTO ").append(table)
+                .append("(").append(String.join(", ", columns)).append(") ")
+                .append("VALUES (");
+
+        for (int i = 0; i < columns.size(); i++) {
+            sb.append(i == 0 ? "?" : ", ?");
+        }
+
+        return sb.append(")").toString();
+    }
+
+    private List<String> getInsertColumns(RecordsBatch batch) {
+        TemplateType type = batch.getType();
+        String[] columns = getColumns(type);
+
+        if (batch.getColumnCount() <= columns.length) {
+            return Arrays.asList(columns);
+        }
+
+        StringBuilder key = new StringBuilder(type.name());
+
+        for (int i = columns.length; i < batch.getColumnCount(); i++) {
+            key.append(',').append(batch.getColumnName(i));
+        }
+
+        return extendedInsertColumns.computeIfAbsent(key.toString(), k -> {
+            List<String> names = new ArrayList<>(Arrays.asList(columns));
+
+            for (int i = columns.length; i < batch.getColumnCount(); i++) {
+                addColumn(type, batch.getColumnName(i), batch.getColumnType(i));
+                names.add(batch.getColumnName(i));
+            }
+
+            return names;
+        });
+    }
+
+    /**
+     * @return таблица секции с указанным номером или таблица типа записей, если таблицы не секционируются
+     * либо запись не имеет отметки времени
+     */
+    private String getTargetTable(TemplateType type, long partitionKey) {
+        TablePartitions tablePartitions = partitions.get(type);
+
+        return tablePartitions == null || partitionKey == NO_EVENT_TIME
+                ? getTable(type)
+                : tablePartitions.getPartition(partitionKey);
+    }
+
+    private long getPartitionKey(TemplateType type, long eventMillis) {
+        TablePartitions tablePartitions = partitions.get(type);
+
+        return tablePartitions == null || eventMillis == NO_EVENT_TIME
+                ? NO_EVENT_TIME
+                : tablePartitions.getKey(eventMillis);
+    }
+
+    /**
+     * Метод для распределения строк пакета по секциям
+     *
+     * @return номера строк пакета по номерам секций (NO_EVENT_TIME - для строк без отметки времени,
+     * EXPIRED_EVENT_TIME - для истекших строк) или null вместо номеров строк, если все строки относятся к одной секции
+     */
+    private static Map<Long, int[]> splitByPartitions(TablePartitions tablePartitions, RecordsBatch batch) {
+        long[] keys = new long[batch.size()];
+        boolean single = true;
+
+        for (int row = 0; row < batch.size(); row++) {
+            long eventMillis = getEventMillis(batch, row);
+            keys[row] = eventMillis == NO_EVENT_TIME
+                    ? NO_EVENT_TIME
+                    : tablePartitions.isExpired(eventMillis) ? EXPIRED_EVENT_TIME : tablePartitions.getKey(eventMillis);
+            single &= keys[row] == keys[0];
+        }
+
+        Map<Long, int[]> rowsByPartition = new TreeMap<>();
+
+        if (single) {
+            if (keys.length > 0) {
+                rowsByPartition.put(keys[0], null);
+            }
+
+            return rowsByPartition;
+        }
+
+        Map<Long, Integer> counts = new TreeMap<>();
+
+        for (long key : keys) {
+            counts.merge(key, 1, Integer::sum);
+        }
+
+        counts.forEach((key, count) -> rowsByPartition.put(key, new int[count]));
+        counts.replaceAll((key, count) -> 0);
+
+        for (int row = 0; row < keys.length; row++) {
+            rowsByPartition.get(keys[row])[counts.merge(keys[row], 1, Integer::sum) - 1] = row;
+        }
+
+        return rowsByPartition;
+    }
+
+    /**
+     * @return отметка времени строки пакета в миллисекундах эпохи или NO_EVENT_TIME
+     */
+    private static long getEventMillis(RecordsBatch batch, int row) {
+        int column = getTimeColumnIndex(batch.getType());
+
+        if (column >= batch.getColumnCount() || batch.isNull(row, column)) {
+            return NO_EVENT_TIME;
+        }
+
+        switch (batch.getColumnType(column)) {
+            case DATE_TIME_SECONDS:
+                return batch.getLong(row, column) * 1000;
+            case DATE_TIME_MILLISECONDS:
+                return batch.getLong(row, column);
+            default:
+                return NO_EVENT_TIME;
+        }
+    }
+
+    /**
+     * @return отметка времени записи в миллисекундах эпохи или NO_EVENT_TIME
+     */
+    private static long getEventMillis(IPFIXDataRecord record) {
+        int column = getTimeColumnIndex(record.getType());
+        List<IPFIXFieldValue> fieldValues = record.getFieldValues();
+
+        if (column >= fieldValues.size() || fieldValues.get(column).getValue() == null) {
+            return NO_EVENT_TIME;
+        }
+
+        try {
+            return toEpochMillis(record.getType(), toLocalDateTime(fieldValues.get(column).getValue()));
+        } catch (IllegalArgumentException e) {
+            return NO_EVENT_TIME;
+        }
+    }
+
+    private static int getTimeColumnIndex(TemplateType type) {
+        return Arrays.asList(getColumns(type)).indexOf(getTimeColumn(type));
+    }
+
+    /**
+     * Метод для преобразования отметки времени в миллисекунды эпохи в том же часовом поясе, в котором
+     * время записей данного типа переводится в LocalDateTime (см. RecordsBatch#getValue())
+     */
+    private static long toEpochMillis(TemplateType type, LocalDateTime eventTime) {
+        return type == GENERIC
+                ? localDateTimeToEpochMillis(eventTime)
+                : eventTime.toInstant(EXPORTER_ZONE_OFFSET).toEpochMilli();
+    }
+
+    /**
+     * Метод для преобразования значения времени записи в LocalDateTime.<br>
+     * Значения времени в записях, созданных вручную, могут быть заданы строкой в формате TIMESTAMP.
+     *
+     * @throws IllegalArgumentException если строка не является отметкой времени
+     */
+    protected static LocalDateTime toLocalDateTime(Object value) {
+        return value instanceof LocalDateTime ? (LocalDateTime) value : Timestamp.valueOf(value.toString()).toLocalDateTime();
+    }
+
+    private int insertBatch(String sql, RecordsBatch batch, int[] rows, int size) {
+        int[] counts = jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                int row = rows != null ? rows[i] : i;
+
+                for (int j = 0; j < batch.getColumnCount(); j++) {
+                    if (batch.isNull(row, j)) {
+                        ps.setNull(j + 1, batch.getColumnType(j).getSqlType());
+                    } else {
+                        setValue(ps, j + 1, batch, row, j);
+                    }
+                }
+            }
+
+            @Override
+            public int getBatchSize() {
+                return size;
+            }
+        });
+
+        return Arrays.stream(counts).sum();
+    }
+
+    private synchronized void addColumn(TemplateType type, String name, IANAAbstractDataTypes columnType) {
+        String table = getTable(type);
+
+        if (!addedColumns.add(table + "." + name)) {
+            return;
+        }
+
+        TablePartitions tablePartitions = partitions.get(type);
+
+        if (tablePartitions != null) {
+            tablePartitions.addColumn(name, getColumnDefinition(columnType));
+            LOGGER.info("...column {} added to table {} and its partitions", name, table);
+            return;
+        }
+
+        try {
+            jdbcTemplate.execute(String.format("ALTER TABLE %s ADD COLUMN %s %s",
+                    table,
+                    name,
+                    getColumnDefinition(columnType)));
+            LOGGER.info("...column {} added to table {}", name, table);
+        } catch (DataAccessException e) {
+            //Столбец мог быть добавлен ранее, например, при повторном запуске на существующем буфере
+            LOGGER.warn(e.getMessage());
+        }
+    }
+
     private int insertRecord(String query, IPFIXDataRecord record) {
         return jdbcTemplate.update(query, preparedStatement -> {
             List<IPFIXFieldValue> fieldValues = record.getFieldValues();
 
             for (int j = 0; j < fieldValues.size(); j++) {
-                int sqlType = fieldValues.get(j).getType().getSqlType();
-                preparedStatement.setObject(j + 1, fieldValues.get(j).getValue(), sqlType);
+                setValue(preparedStatement, j + 1, fieldValues.get(j));
             }
         });
     }
 
     private class LocalDateTimeResultSetExtractor implements ResultSetExtractor<LocalDateTime> {
+        private final TemplateType type;
+
+        LocalDateTimeResultSetExtractor(TemplateType type) {
+            this.type = type;
+        }
+
         @Override
         public LocalDateTime extractData(ResultSet rs) throws SQLException, DataAccessException {
             rs.next();
-            Timestamp timestamp = rs.getTimestamp(1);
-            return timestamp != null ? timestamp.toLocalDateTime() : null;
+            return readEventTime(type, rs);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.service;
+
+import me.alexand.scat.statistic.collector.model.RecordsBatch;
+import me.alexand.scat.statistic.common.entities.ClickCount;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigInteger;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongSupplier;
+
+import static me.alexand.scat.statistic.collector.model.TemplateType.CS_REQ;
+import static me.alexand.scat.statistic.collector.utils.DateTimeUtils.EXPORTER_ZONE_OFFSET;
+
+/**
+ * Подсчет количества веб-запросов по дням в момент получения записей, без выборки из временного буфера.
+ * <p>
+ * Записи CS_REQ учитываются в счетчиках по минутам времени события. Минута закрывается, когда максимальное
+ * время события полученных записей опережает ее конец на {@code clicks.watermark.seconds}: счетчики закрытых
+ * минут суммируются по дням и выгружаются методом {@link #flush()}. Записи, пришедшие с опозданием больше
+ * этого интервала, не учитываются.
+ * <p>
+ * Время события задают часы экспортеров, поэтому оно ограничивается часами коллектора: минута не закрывается
+ * раньше, чем наступит по часам коллектора, а записи, опережающие их больше чем на {@code clicks.watermark.seconds},
+ * не учитываются и не сдвигают закрытие минут. Иначе один экспортер с ушедшими вперед часами закрыл бы минуты,
+ * записи которых еще передают остальные экспортеры.
+ *
+ * @author asidorov84@gmail.com
+ */
+
+@Component
+public final class ClickCountAggregator {
+    private static final int CS_EVENT_TIME = 0;
+    private static final long SECONDS_PER_MINUTE = 60;
+    private static final long SECONDS_PER_DAY = 86400;
+
+    private final long watermarkSeconds;
+    private final LongSupplier currentTimeSeconds;
+
+    //Счетчики по минутам (номер минуты от начала эпохи); LongAdder распределяет обновления по ячейкам,
+    //поэтому процессоры, пишущие в одну минуту, не конкурируют за один счетчик
+    private final ConcurrentSkipListMap<Long, LongAdder> minuteCounts = new ConcurrentSkipListMap<>();
+    private final LongAccumulator maxEventTime = new LongAccumulator(Math::max, Long.MIN_VALUE);
+    private final LongAdder lateRecordsNumber = new LongAdder();
+    private final LongAdder futureRecordsNumber = new LongAdder();
+
+    //Пакеты учитываются под блокировкой чтения, закрытие минут - под блокировкой записи,
+    //чтобы счетчик не изменился после выгрузки
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile long closedBefore = Long.MIN_VALUE;
+
+    @Autowired
+    public ClickCountAggregator(@Value("${clicks.watermark.seconds}") int watermarkSeconds) {
+        this(watermarkSeconds, () -> Math.floorDiv(System.currentTimeMillis(), 1000));
+    }
+
+    ClickCountAggregator(int watermarkSeconds, LongSupplier currentTimeSeconds) {
+        if (watermarkSeconds < 0) {
+            throw new IllegalArgumentException(String.format("watermark is illegal: %s", watermarkSeconds));
+        }
+
+        this.watermarkSeconds = watermarkSeconds;
+        this.currentTimeSeconds = currentTimeSeconds;
+    }
+
+    /**
+     * Метод для учета записей пакета. Пакеты других типов, кроме CS_REQ, пропускаются.
+     *
+     * @param batch пакет записей
+     */
+    public void add(RecordsBatch batch) {
+        if (batch.getType() != CS_REQ || batch.size() == 0) {
+            return;
+        }
+
+        long maxTime = Long.MIN_VALUE;
+        long lateNumber = 0;
+        long futureNumber = 0;
+        long maxAllowedTime = currentTimeSeconds.getAsLong() + watermarkSeconds;
+
+        lock.readLock().lock();
+
+        try {
+            long closed = closedBefore;
+            //Записи пакета, как правило, относятся к одной минуте, поэтому счетчик обновляется по серии записей
+            long minute = Long.MIN_VALUE;
+            long count = 0;
+
+            for (int row = 0; row < batch.size(); row++) {
+                if (batch.isNull(row, CS_EVENT_TIME)) {
+                    continue;
+                }
+
+                long eventTime = batch.getLong(row, CS_EVENT_TIME);
+
+                if (eventTime > maxAllowedTime) {
+                    futureNumber++;
+                    continue;
+                }
+
+                long rowMinute = Math.floorDiv(eventTime, SECONDS_PER_MINUTE);
+                maxTime = Math.max(maxTime, eventTime);
+
+                if (rowMinute < closed) {
+                    lateNumber++;
+                    continue;
+                }
+
+                if (rowMinute != minute) {
+                    increment(minute, count);
+                    minute = rowMinute;
+                    count = 0;
+                }
+
+                count++;
+            }
+
+            increment(minute, count);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        if (maxTime != Long.MIN_VALUE) {
+            maxEventTime.accumulate(maxTime);
+        }
+
+        if (lateNumber > 0) {
+            lateRecordsNumber.add(lateNumber);
+        }
+
+        if (futureNumber > 0) {
+            futureRecordsNumber.add(futureNumber);
+        }
+    }
+
+    /**
+     * Метод для выгрузки количества запросов по дням за минуты, закрытые с момента предыдущей выгрузки.
+     * Возвращаемые значения являются приращениями к ранее выгруженным.
+     *
+     * @return количество запросов по дням
+     */
+    public List<ClickCount> flush() {
+        long maxTime = maxEventTime.get();
+
+        if (maxTime == Long.MIN_VALUE) {
+            return new ArrayList<>();
+        }
+
+        //Минута не закрывается раньше, чем наступит по часам коллектора
+        maxTime = Math.min(maxTime, currentTimeSeconds.getAsLong());
+
+        return flush(Math.floorDiv(maxTime - watermarkSeconds, SECONDS_PER_MINUTE));
+    }
+
+    public long getLateRecordsNumber() {
+        return lateRecordsNumber.sum();
+    }
+
+    public long getFutureRecordsNumber() {
+        return futureRecordsNumber.sum();
+    }
+
+    private List<ClickCount> flush(long beforeMinute) {
+        Map<Long, LongAdder> closedCounts;
+
+        lock.writeLock().lock();
+
+        try {
+            if (beforeMinute <= closedBefore) {
+                return new ArrayList<>();
+            }
+
+            closedBefore = beforeMinute;
+            NavigableMap<Long, LongAdder> head = minuteCounts.headMap(beforeMinute, false);
+            closedCounts = head.isEmpty() ? Collections.emptyMap() : new TreeMap<>(head);
+            head.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        //Смещение часового пояса экспортера кратно минуте, поэтому минута целиком относится к одному дню
+        Map<Long, Long> dayCounts = new TreeMap<>();
+        closedCounts.forEach((minute, count) -> dayCounts.merge(
+                Math.floorDiv(minute * SECONDS_PER_MINUTE + EXPORTER_ZONE_OFFSET.getTotalSeconds(), SECONDS_PER_DAY),
+                count.sum(),
+                Long::sum));
+
+        List<ClickCount> result = new ArrayList<>(dayCounts.size());
+        dayCounts.forEach((day, count) -> result.add(ClickCount.builder()
+                .date(LocalDate.ofEpochDay(day))
+                .count(BigInteger.valueOf(count))
+                .build()));
+
+        return result;
+    }
+
+    private void increment(long minute, long count) {
+        if (count > 0) {
+            minuteCounts.computeIfAbsent(minute, key -> new LongAdder()).add(count);
+        }
+    }
+}
@@ -22,6 +22,7 @@
 package me.alexand.scat.statistic.collector.service;
 
 import me.alexand.scat.statistic.collector.model.IPFIXFieldSpecifier;
+import me.alexand.scat.statistic.collector.model.TemplateMapping;
 import me.alexand.scat.statistic.collector.model.TemplateType;
 import me.alexand.scat.statistic.collector.utils.exceptions.UnknownInfoModelException;
 import me.alexand.scat.statistic.collector.utils.exceptions.UnknownTemplateTypeException;
@@ -34,6 +35,19 @@ import java.util.List;
 public interface DataTemplateService {
     void load();
 
-    TemplateType getTypeByIPFIXSpecifiers(List<IPFIXFieldSpecifier> specifiers)
+    /**
+     * Метод для определения отображения полей шаблона IPFIX на столбцы схемы типа записей
+     *
+     * @param specifiers спецификаторы полей шаблона
+     * @return отображение
+     * @throws UnknownInfoModelException   если для поля шаблона не найден информационный элемент
+     * @throws UnknownTemplateTypeException если тип записей шаблона не удалось определить
+     */
+    TemplateMapping getMapping(List<IPFIXFieldSpecifier> specifiers)
             throws UnknownInfoModelException, UnknownTemplateTypeException;
+
+    default TemplateType getTypeByIPFIXSpecifiers(List<IPFIXFieldSpecifier> specifiers)
+            throws UnknownInfoModelException, UnknownTemplateTypeException {
+        return getMapping(specifiers).getType();
+    }
 }
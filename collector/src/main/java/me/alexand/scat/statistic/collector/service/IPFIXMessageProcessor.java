@@ -21,11 +21,12 @@
 
 package me.alexand.scat.statistic.collector.service;
 
-import me.alexand.scat.statistic.collector.model.IPFIXDataRecord;
-import me.alexand.scat.statistic.collector.model.IPFIXMessage;
-import me.alexand.scat.statistic.collector.model.IPFIXSet;
+import me.alexand.scat.statistic.collector.model.IPFIXHeader;
+import me.alexand.scat.statistic.collector.model.RecordsBatch;
 import me.alexand.scat.statistic.collector.model.TemplateType;
+import me.alexand.scat.statistic.collector.network.PacketBuffer;
 import me.alexand.scat.statistic.collector.network.PacketsReceiver;
+import me.alexand.scat.statistic.collector.utils.StringDictionary;
 import me.alexand.scat.statistic.collector.utils.exceptions.IPFIXParseException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,10 +35,11 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Процессор, управляющий логикой получения пакета по сети,
@@ -54,17 +56,32 @@ public final class IPFIXMessageProcessor implements Runnable {
 
     private static volatile int processorsCounter = 0;
     private int processorId;
+    private final int shard;
+    //Процессор хранит шаблоны своего сегмента отдельно от остальных процессоров
+    private final boolean ownTemplates;
 
     private final int batchSize;
-    private final Map<TemplateType, List<IPFIXDataRecord>> interimStorage = new HashMap<>();
+    private final Map<TemplateType, RecordsBatch> interimStorage = new EnumMap<>(TemplateType.class);
 
     private final StatCollector statCollector;
     private final PacketsReceiver receiver;
     private final IPFIXParser parser;
     private final TransitionalBufferRecorder transitionalBufferRecorder;
 
+    //Курсор и обработчик записей переиспользуются для всех пакетов процессора
+    private final IPFIXRecordCursor cursor = new IPFIXRecordCursor();
+    private final IPFIXParser.DataRecordHandler recordHandler = this::store;
+    private final ParallelSetDecoder.BatchHandler batchHandler = this::store;
+    private final ParallelSetDecoder parallelSetDecoder;
+    private long processedRecordsNumber;
+
     @Autowired
     public IPFIXMessageProcessor(@Value("${processor.records.batch.size}") int batchSize,
+                                 @Value("${strings.dictionary.capacity}") int dictionaryCapacity,
+                                 @Value("${strings.dictionary.max.length}") int dictionaryMaxLength,
+                                 @Value("${strings.dictionary.fields}") String dictionaryFields,
+                                 @Value("${processor.parallel.min.message.length}") int parallelMinMessageLength,
+                                 ForkJoinPool setsDecodingPool,
                                  IPFIXParser parser,
                                  PacketsReceiver receiver,
                                  TransitionalBufferRecorder transitionalBufferRecorder,
@@ -78,69 +95,150 @@ public final class IPFIXMessageProcessor implements Runnable {
             processorId = ++processorsCounter;
         }
 
-        this.parser = parser;
         this.receiver = receiver;
+
+        //Если пакеты распределяются по экспортерам, процессор забирает пакеты только из своего сегмента
+        //и хранит шаблоны своих экспортеров отдельно от остальных процессоров
+        int shardsCount = receiver.getShardsCount();
+        this.shard = (processorId - 1) % shardsCount;
+        this.ownTemplates = shardsCount > 1;
+        this.parser = ownTemplates ? parser.newInstanceWithOwnTemplates() : parser;
         this.transitionalBufferRecorder = transitionalBufferRecorder;
         this.statCollector = statCollector;
+        statCollector.registerTemplateCache(this.parser.getTemplateCache());
+
+        //Сеты больших сообщений декодируются параллельно, небольшие сообщения - только потоком процессора
+        this.parallelSetDecoder = new ParallelSetDecoder(setsDecodingPool, parallelMinMessageLength);
 
-        for (TemplateType type : TemplateType.values()) {
-            interimStorage.put(type, new ArrayList<>(batchSize));
+        //Словарь строк принадлежит процессору и используется только его потоком
+        if (dictionaryCapacity > 0) {
+            StringDictionary dictionary = new StringDictionary(dictionaryCapacity, dictionaryMaxLength);
+            cursor.setStringDictionary(dictionary, new HashSet<>(Arrays.asList(dictionaryFields.trim().split("\\s*,\\s*"))));
+            statCollector.registerStringDictionary(dictionary);
         }
     }
 
     @Override
     public void run() {
         Thread currentThread = Thread.currentThread();
-        LOGGER.info("...start new processor with id = {}", processorId);
+        LOGGER.info("...start new processor with id = {} (shard {})", processorId, shard);
         statCollector.registerProcessorThread(processorId);
 
         while (!currentThread.isInterrupted()) {
-            byte[] rawPacket;
+            PacketBuffer rawPacket;
 
             try {
-                rawPacket = receiver.getNextPacket();
+                rawPacket = receiver.getNextPacket(shard);
                 statCollector.registerReceivedPacket(processorId);
             } catch (InterruptedException e) {
                 break;
             }
 
+            //Шаблоны закрытой сессии больше не действительны. Пакеты сегмента обрабатываются только этим процессором,
+            //поэтому все пакеты сессии, полученные до признака ее конца, уже обработаны
+            if (rawPacket.isSessionEnd()) {
+                if (ownTemplates) {
+                    parser.closeSession(rawPacket.session());
+                }
+
+                complete(rawPacket);
+                rawPacket.release();
+                continue;
+            }
+
             try {
+                processedRecordsNumber = 0;
+
                 long t0 = System.nanoTime();
-                IPFIXMessage message = parser.parse(rawPacket);
+                IPFIXHeader header = parallelSetDecoder.isApplicable(rawPacket.length())
+                        ? parallelSetDecoder.parse(parser, rawPacket.array(), rawPacket.length(), rawPacket.session(),
+                        cursor, recordHandler, batchHandler)
+                        : parser.parse(rawPacket.array(), rawPacket.length(), rawPacket.session(), cursor, recordHandler);
                 long t1 = System.nanoTime();
 
                 statCollector.registerProcessedPacket(processorId, t1 - t0);
-                long processedRecordsNumber = 0;
-
-                for (IPFIXSet set : message.getSets()) {
-                    int setID = set.getSetID();
-
-                    if (setID >= 256 && setID <= 65535) {
-                        processedRecordsNumber += set.getRecords().size();
-
-                        set.getRecords().forEach(record -> {
-                            if (record instanceof IPFIXDataRecord) {
-                                IPFIXDataRecord dataRecord = (IPFIXDataRecord) record;
-                                TemplateType dataRecordType = dataRecord.getType();
-                                List<IPFIXDataRecord> batchList = interimStorage.get(dataRecordType);
-                                batchList.add(dataRecord);
-
-                                if (batchList.size() == batchSize) {
-                                    transitionalBufferRecorder.transfer(dataRecordType, batchList);
-                                    interimStorage.put(dataRecordType, new ArrayList<>(batchSize));
-                                }
-                            }
-                        });
-                    }
-                }
-
-                statCollector.registerProcessedRecords(message.getHeader().getObservationDomainID(), processedRecordsNumber);
+                statCollector.registerProcessedRecords(header.getObservationDomainID(), processedRecordsNumber);
+                receiver.registerProcessedMessage(rawPacket.session(), header.getObservationDomainID(),
+                        header.getSequenceNumber(), processedRecordsNumber);
             } catch (IPFIXParseException e) {
                 //TODO сделать учет ошибок разного типа и выводить их в периодическом отчете
+            } finally {
+                //Все записи уже извлечены из пакета, буфер возвращается в пул
+                complete(rawPacket);
+                rawPacket.release();
             }
         }
 
         LOGGER.info("...shutdown of processor with id = {} complete", processorId);
         statCollector.unregisterProcessorThread();
     }
-}
\ No newline at end of file
+
+    /**
+     * Метод для учета обработанного пакета. Общие шаблоны закрытой сессии удаляет процессор, последним завершивший
+     * обработку ее пакетов, так как остальные процессоры еще могут декодировать пакеты, полученные до признака конца
+     */
+    private void complete(PacketBuffer packet) {
+        if (receiver.completePacket(packet) && !ownTemplates) {
+            parser.closeSession(packet.session());
+        }
+    }
+
+    private void store(IPFIXRecordCursor record) {
+        processedRecordsNumber++;
+
+        //Пакет создается по первой записи типа, так как столбцы пакета соответствуют схеме типа записей
+        TemplateType dataRecordType = record.getType();
+        RecordsBatch batch = getInterimBatch(dataRecordType, record.getColumnCount());
+
+        if (batch == null) {
+            batch = record.newBatch(batchSize);
+            interimStorage.put(dataRecordType, batch);
+        }
+
+        record.copyTo(batch);
+
+        if (batch.isFull()) {
+            transitionalBufferRecorder.transfer(batch);
+            interimStorage.remove(dataRecordType);
+        }
+    }
+
+    /**
+     * Метод для сохранения записей сета, декодированного параллельно (см. ParallelSetDecoder)
+     */
+    private void store(RecordsBatch records) {
+        processedRecordsNumber += records.size();
+
+        TemplateType dataRecordType = records.getType();
+        int from = 0;
+
+        while (from < records.size()) {
+            RecordsBatch batch = getInterimBatch(dataRecordType, records.getColumnCount());
+
+            if (batch == null) {
+                batch = records.newBatch(batchSize);
+                interimStorage.put(dataRecordType, batch);
+            }
+
+            from += batch.append(records, from);
+
+            if (batch.isFull()) {
+                transitionalBufferRecorder.transfer(batch);
+                interimStorage.remove(dataRecordType);
+            }
+        }
+    }
+
+    private RecordsBatch getInterimBatch(TemplateType dataRecordType, int columnCount) {
+        RecordsBatch batch = interimStorage.get(dataRecordType);
+
+        //Схема типа записей только дополняется столбцами, поэтому пакет по прежней схеме передается неполным
+        if (batch != null && batch.getColumnCount() != columnCount) {
+            transitionalBufferRecorder.transfer(batch);
+            interimStorage.remove(dataRecordType);
+            batch = null;
+        }
+
+        return batch;
+    }
+}
@@ -22,26 +22,21 @@
 package me.alexand.scat.statistic.collector.service;
 
 import me.alexand.scat.statistic.collector.model.*;
+import me.alexand.scat.statistic.collector.network.PacketBuffer;
 import me.alexand.scat.statistic.collector.repository.InfoModelRepository;
 import me.alexand.scat.statistic.collector.utils.exceptions.IPFIXParseException;
 import me.alexand.scat.statistic.collector.utils.exceptions.MalformedMessageException;
 import me.alexand.scat.statistic.collector.utils.exceptions.UnknownDataRecordFormatException;
 import me.alexand.scat.statistic.collector.utils.exceptions.UnknownProtocolException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.math.BigInteger;
-import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
 
-import static java.util.Arrays.copyOfRange;
 import static me.alexand.scat.statistic.collector.model.IPFIXHeader.IPFIX_MESSAGE_HEADER_LENGTH;
 import static me.alexand.scat.statistic.collector.model.IPFIXHeader.IPFIX_MESSAGE_VERSION;
 import static me.alexand.scat.statistic.collector.utils.BytesConvertUtils.*;
@@ -49,25 +44,82 @@ import static me.alexand.scat.statistic.collector.utils.BytesConvertUtils.*;
 /**
  * Класс для декодирования IPFIX-сообщений из набора байт
  * <p>
+ * Шаблоны хранятся в {@link TemplateCache} отдельно для каждой транспортной сессии, номер которой передается
+ * при потоковом декодировании (см. {@link PacketBuffer#session()}). Обрабатываются отзыв шаблонов (RFC 7011, 8.1)
+ * и шаблоны параметров (сет с идентификатором 3): шаблоны параметров регистрируются, но записи по ним
+ * не декодируются и обработчику не передаются.
  *
  * @author asidorov84@gmail.com
  */
 
 @Component
 public class IPFIXParser {
-    private static final ZoneOffset ZONE_OFFSET = ZoneOffset.ofHours(3);
-    private static final ZoneId ZONE_ID = ZoneId.systemDefault();
+    private static final int DEFAULT_TEMPLATES_MAX_SIZE = 16384;
+    private static final long DEFAULT_UDP_TEMPLATE_LIFETIME = 1800;
+
+    private static final int TEMPLATE_SET_ID = 2;
+    private static final int OPTIONS_TEMPLATE_SET_ID = 3;
 
     private final DataTemplateService dataTemplateService;
     private final InfoModelRepository infoModelRepository;
+    private final int templatesMaxSize;
+    private final long udpTemplateLifetime;
 
-    private final Map<Long, IPFIXTemplateRecord> IPFIXTemplates = new ConcurrentHashMap<>();
+    //Зарегистрированные шаблоны вместе с декодерами записей данных, см. TemplateDecoder
+    private final TemplateCache templateCache;
 
-    @Autowired
     public IPFIXParser(DataTemplateService dataTemplateService,
                        InfoModelRepository infoModelRepository) {
+        this(dataTemplateService, infoModelRepository, DEFAULT_TEMPLATES_MAX_SIZE, DEFAULT_UDP_TEMPLATE_LIFETIME);
+    }
+
+    /**
+     * @param templatesMaxSize    максимальное количество хранимых шаблонов
+     * @param udpTemplateLifetime время жизни шаблонов UDP-сессий в секундах, 0 - шаблоны не устаревают
+     */
+    @Autowired
+    public IPFIXParser(DataTemplateService dataTemplateService,
+                       InfoModelRepository infoModelRepository,
+                       @Value("${templates.cache.max.size}") int templatesMaxSize,
+                       @Value("${templates.udp.lifetime}") long udpTemplateLifetime) {
+        this(dataTemplateService, infoModelRepository, templatesMaxSize, udpTemplateLifetime, true);
+    }
+
+    private IPFIXParser(DataTemplateService dataTemplateService,
+                        InfoModelRepository infoModelRepository,
+                        int templatesMaxSize,
+                        long udpTemplateLifetime,
+                        boolean concurrent) {
         this.dataTemplateService = dataTemplateService;
         this.infoModelRepository = infoModelRepository;
+        this.templatesMaxSize = templatesMaxSize;
+        this.udpTemplateLifetime = udpTemplateLifetime;
+        this.templateCache = new TemplateCache(templatesMaxSize, udpTemplateLifetime, concurrent);
+    }
+
+    /**
+     * Метод для создания парсера с собственным хранилищем шаблонов.<br>
+     * Используется процессором, который единолично обрабатывает сообщения своих экспортеров (см. ShardedPacketQueue).
+     * Хранилище не синхронизировано, поэтому созданный парсер должен использоваться только одним потоком.
+     *
+     * @return новый парсер, не разделяющий шаблоны с текущим
+     */
+    public IPFIXParser newInstanceWithOwnTemplates() {
+        return new IPFIXParser(dataTemplateService, infoModelRepository, templatesMaxSize, udpTemplateLifetime, false);
+    }
+
+    /**
+     * Метод для удаления всех шаблонов закрытой транспортной сессии
+     *
+     * @param session номер сессии
+     * @see PacketBuffer#isSessionEnd()
+     */
+    public void closeSession(int session) {
+        templateCache.closeSession(session);
+    }
+
+    TemplateCache getTemplateCache() {
+        return templateCache;
     }
 
     /**
@@ -84,7 +136,148 @@ public class IPFIXParser {
             throw new NullPointerException("Payload must not be NULL");
         }
 
-        int payloadLength = payload.length;
+        return parse(payload, payload.length);
+    }
+
+    /**
+     * Метод для декодирования IPFIX-сообщения, занимающего начало массива.<br>
+     * Используется для буферов из пула, массив которых может быть длиннее сообщения. Массив не изменяется
+     * и не копируется, поэтому после возврата из метода может быть переиспользован.
+     *
+     * @param payload       массив байт, содержащий сообщение (обязательный параметр)
+     * @param payloadLength длина сообщения в массиве
+     * @return сообщение в виде экземпляра класса IPFIXMessage
+     * @throws NullPointerException если параметр {@code payload} равен {@code null}
+     * @throws IPFIXParseException  при возникновении ошибки во время декодирования
+     * @see IPFIXMessage
+     */
+    public IPFIXMessage parse(byte[] payload, int payloadLength) throws IPFIXParseException {
+        IPFIXHeader header = parseCheckedHeader(payload, payloadLength);
+
+        return IPFIXMessage.builder()
+                .header(header)
+                .sets(parseSets(header.getObservationDomainID(), header.getExportTime(), payload, header.getLength()))
+                .build();
+    }
+
+    /**
+     * Метод для потокового декодирования IPFIX-сообщения, занимающего начало массива.<br>
+     * Шаблоны регистрируются так же, как и при обычном декодировании, а записи данных не создаются: для каждой
+     * из них вызывается {@code handler}, получающий курсор, установленный на эту запись. Курсор читает значения
+     * прямо из {@code payload}, поэтому массив не должен изменяться до возврата из метода.
+     *
+     * @param payload       массив байт, содержащий сообщение (обязательный параметр)
+     * @param payloadLength длина сообщения в массиве
+     * @param cursor        переиспользуемый курсор (обязательный параметр)
+     * @param handler       обработчик записей данных (обязательный параметр)
+     * @return заголовок сообщения
+     * @throws NullPointerException если один из параметров {@code payload}, {@code cursor}, {@code handler} равен {@code null}
+     * @throws IPFIXParseException  при возникновении ошибки во время декодирования
+     * @see IPFIXRecordCursor
+     */
+    public IPFIXHeader parse(byte[] payload,
+                             int payloadLength,
+                             IPFIXRecordCursor cursor,
+                             DataRecordHandler handler) throws IPFIXParseException {
+        return parse(payload, payloadLength, PacketBuffer.DEFAULT_SESSION, cursor, handler);
+    }
+
+    /**
+     * Метод для потокового декодирования IPFIX-сообщения, полученного в рамках транспортной сессии.<br>
+     * Шаблоны регистрируются и ищутся только среди шаблонов сессии {@code session}.
+     *
+     * @param session номер транспортной сессии (см. {@link PacketBuffer#session()})
+     * @see #parse(byte[], int, IPFIXRecordCursor, DataRecordHandler)
+     */
+    public IPFIXHeader parse(byte[] payload,
+                             int payloadLength,
+                             int session,
+                             IPFIXRecordCursor cursor,
+                             DataRecordHandler handler) throws IPFIXParseException {
+        Objects.requireNonNull(cursor);
+        Objects.requireNonNull(handler);
+
+        return parse(payload, payloadLength, session, cursor, handler, null);
+    }
+
+    /**
+     * Метод для разбора структуры IPFIX-сообщения без декодирования записей данных.<br>
+     * Шаблоны регистрируются так же, как и при потоковом декодировании, а для каждого сета записей данных
+     * вызывается {@code setHandler} с декодером шаблона и границами сета. Используется для распределения
+     * сетов между потоками (см. ParallelSetDecoder).
+     *
+     * @param session    номер транспортной сессии
+     * @param setHandler обработчик сетов записей данных (обязательный параметр)
+     * @return заголовок сообщения
+     * @throws IPFIXParseException при возникновении ошибки во время разбора; сеты, предшествующие ошибке,
+     *                             к этому моменту уже переданы обработчику
+     */
+    IPFIXHeader parse(byte[] payload,
+                      int payloadLength,
+                      int session,
+                      DataSetHandler setHandler) throws IPFIXParseException {
+        Objects.requireNonNull(setHandler);
+
+        return parse(payload, payloadLength, session, null, null, setHandler);
+    }
+
+    private IPFIXHeader parse(byte[] payload,
+                              int payloadLength,
+                              int session,
+                              IPFIXRecordCursor cursor,
+                              DataRecordHandler handler,
+                              DataSetHandler setHandler) throws IPFIXParseException {
+        IPFIXHeader header = parseCheckedHeader(payload, payloadLength);
+        long observationDomainID = header.getObservationDomainID();
+        long exportTime = header.getExportTime();
+        int messageLength = header.getLength();
+        int offset = IPFIX_MESSAGE_HEADER_LENGTH;
+
+        try {
+            while (offset < messageLength) {
+                int setID = twoBytesToInt(payload, offset);
+                int length = twoBytesToInt(payload, offset + 2);
+                int setEnd = offset + length;
+                offset += 4;
+
+                if (length < 4 || setEnd > messageLength) {
+                    throw new MalformedMessageException(String.format("Illegal length of set (id = %d): %d",
+                            setID,
+                            length));
+                }
+
+                if (setID == TEMPLATE_SET_ID || setID == OPTIONS_TEMPLATE_SET_ID) {
+                    parseTemplateRecords(session, observationDomainID, exportTime, payload, offset, setEnd,
+                            setID == OPTIONS_TEMPLATE_SET_ID, null);
+                }
+
+                if (setID >= 256 && setID <= 65535) {
+                    TemplateCache.Entry template = getCheckedTemplate(session, observationDomainID, setID, exportTime);
+
+                    if (!template.isOptions() && setHandler != null) {
+                        setHandler.handle(template.getDecoder(), offset, setEnd);
+                    } else if (!template.isOptions()) {
+                        cursor.reset(template.getDecoder(), payload, offset, setEnd);
+
+                        while (cursor.next()) {
+                            handler.handle(cursor);
+                        }
+                    }
+                }
+
+                offset = setEnd;
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new MalformedMessageException(e);
+        }
+
+        return header;
+    }
+
+    private IPFIXHeader parseCheckedHeader(byte[] payload, int payloadLength) throws IPFIXParseException {
+        if (payload == null) {
+            throw new NullPointerException("Payload must not be NULL");
+        }
 
         if (payloadLength < IPFIX_MESSAGE_HEADER_LENGTH) {
             throw new MalformedMessageException(String.format("Length of message less than %d (minimal): %d bytes",
@@ -92,6 +285,12 @@ public class IPFIXParser {
                     payloadLength));
         }
 
+        if (payloadLength > payload.length) {
+            throw new MalformedMessageException(String.format("Length of message (%d) greater than array length (%d)",
+                    payloadLength,
+                    payload.length));
+        }
+
         IPFIXHeader header = parseHeader(payload);
         int messageLength = header.getLength();
 
@@ -101,13 +300,9 @@ public class IPFIXParser {
                     payloadLength));
         }
 
-        return IPFIXMessage.builder()
-                .header(header)
-                .sets(parseSets(header.getObservationDomainID(), header.getExportTime(), payload))
-                .build();
+        return header;
     }
 
-
     /**
      * Метод для декодирования заголовка IPFIX-сообщения.<br>
      * На входе ожидается массив байт не менее чем из {@code IPFIX_MESSAGE_HEADER_LENGTH} элементов
@@ -165,12 +360,14 @@ public class IPFIXParser {
      * @param observationDomainID домен экспортера
      * @param exportTime          время экспорта
      * @param payload             массив байт, содержащий сообщение
+     * @param messageLength       длина сообщения
      * @return список сетов
      * @throws IPFIXParseException в случае ошибки при декодировании
      */
     private List<IPFIXSet> parseSets(long observationDomainID,
                                      long exportTime,
-                                     byte[] payload) throws IPFIXParseException {
+                                     byte[] payload,
+                                     int messageLength) throws IPFIXParseException {
         if (payload == null) {
             throw new NullPointerException("Payload must not be NULL");
         }
@@ -180,23 +377,31 @@ public class IPFIXParser {
         int offset = IPFIX_MESSAGE_HEADER_LENGTH;
 
         try {
-            while (offset < payload.length) {
+            while (offset < messageLength) {
                 int setID = twoBytesToInt(payload, offset);
                 offset += 2;
 
                 int length = twoBytesToInt(payload, offset);
                 offset += 2;
 
-                byte[] recordsPayload = copyOfRange(payload, offset, offset + length);
+                //Записи сета разбираются прямо в массиве сообщения, в границах [offset, setEnd)
+                int setEnd = offset + length - 4;
+
+                if (length < 4 || setEnd > messageLength) {
+                    throw new MalformedMessageException(String.format("Illegal length of set (id = %d): %d",
+                            setID,
+                            length));
+                }
 
                 List<? extends IPFIXRecord> records = null;
 
-                if (setID == 2) {
-                    records = parseTemplateRecords(observationDomainID, exportTime, recordsPayload);
+                if (setID == TEMPLATE_SET_ID || setID == OPTIONS_TEMPLATE_SET_ID) {
+                    records = parseTemplateRecords(PacketBuffer.DEFAULT_SESSION, observationDomainID, exportTime,
+                            payload, offset, setEnd, setID == OPTIONS_TEMPLATE_SET_ID, new ArrayList<>());
                 }
 
                 if (setID >= 256 && setID <= 65535) {
-                    records = parseDataRecords(observationDomainID, setID, exportTime, recordsPayload);
+                    records = parseDataRecords(observationDomainID, setID, exportTime, payload, offset, setEnd);
                 }
 
                 sets.add(IPFIXSet.builder()
@@ -205,7 +410,7 @@ public class IPFIXParser {
                         .records(records)
                         .build());
 
-                offset += (length - 4);
+                offset = setEnd;
             }
         } catch (ArrayIndexOutOfBoundsException e) {
             throw new MalformedMessageException(e);
@@ -214,20 +419,31 @@ public class IPFIXParser {
         return sets;
     }
 
-    private List<IPFIXTemplateRecord> parseTemplateRecords(long observationDomainID,
+    /**
+     * Метод для декодирования и регистрации шаблонов сета.<br>
+     * Запись без полей - отзыв шаблона (RFC 7011, 8.1): отзыв шаблона с идентификатором сета отзывает
+     * все шаблоны (шаблоны параметров) домена наблюдения в сессии.
+     *
+     * @param options true для сета шаблонов параметров (options template set)
+     * @param records список, в который добавляются шаблоны, или null, если шаблоны нужно только зарегистрировать
+     */
+    private List<IPFIXTemplateRecord> parseTemplateRecords(int session,
+                                                           long observationDomainID,
                                                            long exportTime,
-                                                           byte[] payload) throws IPFIXParseException {
+                                                           byte[] payload,
+                                                           int offset,
+                                                           int end,
+                                                           boolean options,
+                                                           List<IPFIXTemplateRecord> records) throws IPFIXParseException {
         if (payload == null) {
             throw new NullPointerException("Payload must not be NULL");
         }
 
-        List<IPFIXTemplateRecord> records = new ArrayList<>();
-
-        int minTemplateRecordLength = 8;
-        int offset = 0;
+        //Наименьшая запись - отзыв шаблона из 4 байт, остаток сета меньшей длины - выравнивание
+        int minTemplateRecordLength = 4;
 
         try {
-            while (payload.length - offset >= minTemplateRecordLength) {
+            while (end - offset >= minTemplateRecordLength) {
                 int currentRecordLength = 0;
                 int templateID = twoBytesToInt(payload, offset);
                 offset += 2;
@@ -236,13 +452,69 @@ public class IPFIXParser {
                 offset += 2;
                 currentRecordLength += 4;
 
+                if (fieldCount == 0) {
+                    //Отзывом считается только запись с допустимым идентификатором, нули - выравнивание до конца сета
+                    if (templateID < 256 && templateID != (options ? OPTIONS_TEMPLATE_SET_ID : TEMPLATE_SET_ID)) {
+                        break;
+                    }
+
+                    withdrawTemplate(session, observationDomainID, templateID, options);
+
+                    if (records != null) {
+                        records.add(IPFIXTemplateRecord.builder()
+                                .templateID(templateID)
+                                .fieldCount(0)
+                                .exportTime(exportTime)
+                                .fieldSpecifiers(Collections.emptyList())
+                                .build());
+                    }
+
+                    continue;
+                }
+
+                //Количество полей области действия шаблона параметров не используется: записи по нему не декодируются
+                if (options) {
+                    offset += 2;
+                    currentRecordLength += 2;
+                }
+
+                //Экспортеры повторяют шаблоны в каждом сообщении: совпадающий с зарегистрированным шаблон
+                //не декодируется и не определяется заново, а только продлевает свое время жизни
+                TemplateCache.Entry registered = templateCache.peek(session, observationDomainID, templateID);
+                int registeredEnd = registered != null && registered.isOptions() == options
+                        ? matchFieldSpecifiers(registered.getTemplateRecord(), fieldCount, payload, offset)
+                        : -1;
+
+                if (registeredEnd >= 0) {
+                    if (registeredEnd > end) {
+                        throw new MalformedMessageException("Template record exceeds bounds of set");
+                    }
+
+                    currentRecordLength += registeredEnd - offset;
+                    offset = registeredEnd;
+                    minTemplateRecordLength = Math.min(minTemplateRecordLength, currentRecordLength);
+                    registered.refresh(exportTime);
+
+                    if (records != null) {
+                        records.add(IPFIXTemplateRecord.builder()
+                                .templateID(templateID)
+                                .fieldCount(fieldCount)
+                                .exportTime(exportTime)
+                                .type(registered.getTemplateRecord().getType())
+                                .fieldSpecifiers(registered.getTemplateRecord().getFieldSpecifiers())
+                                .build());
+                    }
+
+                    continue;
+                }
+
                 List<IPFIXFieldSpecifier> fieldSpecifiers = new ArrayList<>(fieldCount);
 
                 for (int i = 0; i < fieldCount; i++) {
                     boolean enterpriseBit = isHighBitSet(payload[offset]);
 
-                    payload[offset] &= 0x7f;
-                    int informationElementIdentifier = twoBytesToInt(payload, offset);
+                    //Старший бит идентификатора - признак enterprise-специфичного поля, сам массив не изменяется
+                    int informationElementIdentifier = twoBytesToInt(payload, offset) & 0x7fff;
                     offset += 2;
                     currentRecordLength += 2;
 
@@ -264,19 +536,19 @@ public class IPFIXParser {
                     fieldSpecifiers.add(fs);
                 }
 
-                TemplateType type = dataTemplateService.getTypeByIPFIXSpecifiers(fieldSpecifiers);
-
-                IPFIXTemplateRecord templateRecord = IPFIXTemplateRecord.builder()
-                        .templateID(templateID)
-                        .fieldCount(fieldCount)
-                        .exportTime(exportTime)
-                        .type(type)
-                        .fieldSpecifiers(fieldSpecifiers)
-                        .build();
+                if (offset > end) {
+                    throw new MalformedMessageException("Template record exceeds bounds of set");
+                }
 
                 minTemplateRecordLength = Math.min(minTemplateRecordLength, currentRecordLength);
-                registerTemplateRecord(observationDomainID, templateRecord);
-                records.add(templateRecord);
+
+                IPFIXTemplateRecord templateRecord = options
+                        ? registerOptionsTemplateRecord(session, observationDomainID, templateID, exportTime, fieldSpecifiers)
+                        : registerTemplateRecord(session, observationDomainID, templateID, exportTime, fieldSpecifiers);
+
+                if (records != null) {
+                    records.add(templateRecord);
+                }
             }
         } catch (ArrayIndexOutOfBoundsException e) {
             throw new MalformedMessageException(e);
@@ -288,126 +560,172 @@ public class IPFIXParser {
     private List<IPFIXDataRecord> parseDataRecords(long observationDomainID,
                                                    int setID,
                                                    long exportTime,
-                                                   byte[] payload) throws IPFIXParseException {
+                                                   byte[] payload,
+                                                   int offset,
+                                                   int end) throws IPFIXParseException {
         Objects.requireNonNull(payload);
+        TemplateCache.Entry template = getCheckedTemplate(PacketBuffer.DEFAULT_SESSION, observationDomainID, setID, exportTime);
+
+        if (template.isOptions()) {
+            return Collections.emptyList();
+        }
+
         List<IPFIXDataRecord> records = new ArrayList<>();
 
-        IPFIXTemplateRecord templateRecord = getTemplateRecord(observationDomainID, setID);
+        IPFIXRecordCursor cursor = new IPFIXRecordCursor();
+        cursor.reset(template.getDecoder(), payload, offset, end);
 
-        if (templateRecord == null || templateRecord.getExportTime() > exportTime) {
-            //statCollector.registerUnknownDataFormatPacket();
-            throw new UnknownDataRecordFormatException(
-                    String.format("Can't find template for ObservationDomainID: %d and Data Record ID: %d",
-                            observationDomainID,
-                            setID));
+        while (cursor.next()) {
+            records.add(cursor.toDataRecord());
         }
 
-        int offset = 0;
-        int minDataRecordLength = templateRecord.getMinDataRecordSize();
+        return records;
+    }
 
-        while (payload.length - offset >= minDataRecordLength) {
-            int fieldCount = templateRecord.getFieldCount();
-            List<IPFIXFieldValue> fieldValues = new ArrayList<>(fieldCount);
-            int currentRecordLength = 0;
+    private IPFIXTemplateRecord registerTemplateRecord(int session,
+                                                       long observationDomainID,
+                                                       int templateID,
+                                                       long exportTime,
+                                                       List<IPFIXFieldSpecifier> fieldSpecifiers) throws IPFIXParseException {
+        TemplateMapping mapping = dataTemplateService.getMapping(fieldSpecifiers);
+
+        IPFIXTemplateRecord record = IPFIXTemplateRecord.builder()
+                .templateID(templateID)
+                .fieldCount(fieldSpecifiers.size())
+                .exportTime(exportTime)
+                .type(mapping.getType())
+                .fieldSpecifiers(fieldSpecifiers)
+                .build();
 
-            for (IPFIXFieldSpecifier specifier : templateRecord.getFieldSpecifiers()) {
-                long enterpriseNumber = specifier.getEnterpriseNumber();
-                int informationElementIdentifier = specifier.getInformationElementIdentifier();
-                int fieldLength = specifier.getFieldLength();
+        //Шаблоны периодически повторяются экспортером, декодер создается только для более нового шаблона,
+        //либо если после создания декодера схема типа записей дополнена столбцами
+        if (isRegisteredNotOlder(session, observationDomainID, templateID, exportTime)
+                && templateCache.peek(session, observationDomainID, templateID).getDecoder().getColumnCount()
+                == mapping.getColumnCount()) {
+            return record;
+        }
 
-                InfoModelEntity entity = infoModelRepository.getByEnterpriseNumberAndInformationElementIdentifier(
-                        enterpriseNumber,
-                        informationElementIdentifier
-                );
+        templateCache.put(session, observationDomainID,
+                TemplateCache.Entry.of(TemplateDecoder.compile(record, mapping, infoModelRepository)));
 
-                Object value = null;
+        return record;
+    }
 
-                switch (entity.getType()) {
-                    case DATE_TIME_SECONDS:
-                        long epochSeconds = fourBytesToLong(payload, offset);
-                        value = LocalDateTime.ofEpochSecond(epochSeconds, 0, ZONE_OFFSET);
-                        offset += fieldLength;
-                        currentRecordLength += fieldLength;
-                        break;
-                    case DATE_TIME_MILLISECONDS:
-                        BigInteger epochMilliseconds = eightBytesToBigInteger(payload, offset);
-                        value = LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMilliseconds.longValue()), ZONE_ID);
-                        offset += fieldLength;
-                        currentRecordLength += fieldLength;
-                        break;
-                    case UNSIGNED8:
-                        value = oneByteToInt(payload[offset]);
-                        offset += fieldLength;
-                        currentRecordLength += fieldLength;
-                        break;
-                    case UNSIGNED16:
-                        value = twoBytesToInt(payload, offset);
-                        offset += fieldLength;
-                        currentRecordLength += fieldLength;
-                        break;
-                    case UNSIGNED32:
-                        value = fourBytesToLong(payload, offset);
-                        offset += fieldLength;
-                        currentRecordLength += fieldLength;
-                        break;
-                    case UNSIGNED64:
-                        value = eightBytesToBigInteger(payload, offset);
-                        offset += fieldLength;
-                        currentRecordLength += fieldLength;
-                        break;
-                    case IPV4_ADDRESS:
-                        value = fourBytesToIPv4(payload, offset);
-                        offset += fieldLength;
-                        currentRecordLength += fieldLength;
-                        break;
-                    case STRING:
-                        int actualFieldLength = oneByteToInt(payload[offset]);
-                        offset += 1;
-                        currentRecordLength += 1;
-
-                        if (actualFieldLength == 255) {
-                            actualFieldLength = twoBytesToInt(payload, offset);
-                            offset += 2;
-                            currentRecordLength += 2;
-                        }
+    private IPFIXTemplateRecord registerOptionsTemplateRecord(int session,
+                                                              long observationDomainID,
+                                                              int templateID,
+                                                              long exportTime,
+                                                              List<IPFIXFieldSpecifier> fieldSpecifiers) {
+        IPFIXTemplateRecord record = IPFIXTemplateRecord.builder()
+                .templateID(templateID)
+                .fieldCount(fieldSpecifiers.size())
+                .exportTime(exportTime)
+                .fieldSpecifiers(fieldSpecifiers)
+                .build();
 
-                        value = bytesToString(payload, offset, actualFieldLength);
-                        offset += actualFieldLength;
-                        currentRecordLength += actualFieldLength;
-                        break;
-                }
+        if (!isRegisteredNotOlder(session, observationDomainID, templateID, exportTime)) {
+            templateCache.put(session, observationDomainID, TemplateCache.Entry.options(record));
+        }
 
-                fieldValues.add(IPFIXFieldValue.builder()
-                        .name(entity.getName())
-                        .type(entity.getType())
-                        .value(value)
-                        .build());
+        return record;
+    }
+
+    private boolean isRegisteredNotOlder(int session, long observationDomainID, int templateID, long exportTime) {
+        TemplateCache.Entry registered = templateCache.peek(session, observationDomainID, templateID);
+        return registered != null && registered.getExportTime() >= exportTime;
+    }
+
+    private void withdrawTemplate(int session, long observationDomainID, int templateID, boolean options) {
+        if (templateID == (options ? OPTIONS_TEMPLATE_SET_ID : TEMPLATE_SET_ID)) {
+            templateCache.withdrawAll(session, observationDomainID, options);
+        } else if (templateID >= 256) {
+            templateCache.withdraw(session, observationDomainID, templateID);
+        }
+    }
+
+    /**
+     * Метод для сравнения спецификаторов полей шаблона в сообщении со спецификаторами зарегистрированного шаблона
+     * без их создания
+     *
+     * @param registered зарегистрированный шаблон
+     * @param fieldCount количество полей шаблона в сообщении
+     * @param payload    массив байт сообщения
+     * @param offset     смещение первого спецификатора
+     * @return смещение конца спецификаторов, если шаблоны совпадают, иначе -1
+     */
+    private static int matchFieldSpecifiers(IPFIXTemplateRecord registered, int fieldCount, byte[] payload, int offset) {
+        List<IPFIXFieldSpecifier> specifiers = registered.getFieldSpecifiers();
+
+        if (specifiers.size() != fieldCount) {
+            return -1;
+        }
+
+        for (int i = 0; i < fieldCount; i++) {
+            IPFIXFieldSpecifier specifier = specifiers.get(i);
+            boolean enterpriseBit = isHighBitSet(payload[offset]);
+
+            if (enterpriseBit != specifier.isEnterpriseBit()
+                    || (twoBytesToInt(payload, offset) & 0x7fff) != specifier.getInformationElementIdentifier()
+                    || twoBytesToInt(payload, offset + 2) != specifier.getFieldLength()) {
+                return -1;
             }
 
-            records.add(IPFIXDataRecord.builder()
-                    .type(templateRecord.getType())
-                    .fieldValues(fieldValues)
-                    .build());
+            offset += 4;
+
+            if (enterpriseBit) {
+                if (fourBytesToLong(payload, offset) != specifier.getEnterpriseNumber()) {
+                    return -1;
+                }
 
-            minDataRecordLength = Math.min(minDataRecordLength, currentRecordLength);
+                offset += 4;
+            }
         }
 
-        return records;
+        return offset;
     }
 
-    private void registerTemplateRecord(long observationDomainID,
-                                        IPFIXTemplateRecord record) {
-        Long registrationID = getRegistrationID(observationDomainID, record.getTemplateID());
+    private TemplateCache.Entry getCheckedTemplate(int session,
+                                                   long observationDomainID,
+                                                   int templateID,
+                                                   long exportTime) throws UnknownDataRecordFormatException {
+        TemplateCache.Entry template = templateCache.get(session, observationDomainID, templateID, exportTime);
+
+        if (template == null || template.getExportTime() > exportTime) {
+            //statCollector.registerUnknownDataFormatPacket();
+            throw new UnknownDataRecordFormatException(
+                    String.format("Can't find template for ObservationDomainID: %d and Data Record ID: %d",
+                            observationDomainID,
+                            templateID));
+        }
 
-        IPFIXTemplates.merge(registrationID, record,
-                (oldRecord, newRecord) -> oldRecord.getExportTime() < newRecord.getExportTime() ? newRecord : oldRecord);
+        return template;
     }
 
-    private IPFIXTemplateRecord getTemplateRecord(long observationDomainID, int templateID) {
-        return IPFIXTemplates.get(getRegistrationID(observationDomainID, templateID));
+    /**
+     * Обработчик записей данных при потоковом декодировании
+     *
+     * @see #parse(byte[], int, IPFIXRecordCursor, DataRecordHandler)
+     */
+    @FunctionalInterface
+    public interface DataRecordHandler {
+        /**
+         * @param record курсор, установленный на очередную запись; действителен только во время вызова
+         */
+        void handle(IPFIXRecordCursor record);
     }
 
-    private long getRegistrationID(long observationDomainID, int templateID) {
-        return observationDomainID << 16 | templateID;
+    /**
+     * Обработчик сетов записей данных при разборе структуры сообщения
+     *
+     * @see #parse(byte[], int, int, DataSetHandler)
+     */
+    @FunctionalInterface
+    interface DataSetHandler {
+        /**
+         * @param decoder декодер записей шаблона сета
+         * @param offset  смещение первой записи сета в массиве сообщения
+         * @param end     смещение конца сета
+         */
+        void handle(TemplateDecoder decoder, int offset, int end);
     }
-}
\ No newline at end of file
+}
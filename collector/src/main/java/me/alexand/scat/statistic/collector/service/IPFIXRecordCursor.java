@@ -0,0 +1,430 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.service;
+
+import me.alexand.scat.statistic.collector.model.IANAAbstractDataTypes;
+import me.alexand.scat.statistic.collector.model.IPFIXDataRecord;
+import me.alexand.scat.statistic.collector.model.IPFIXFieldValue;
+import me.alexand.scat.statistic.collector.model.RecordsBatch;
+import me.alexand.scat.statistic.collector.model.TemplateType;
+import me.alexand.scat.statistic.collector.utils.StringDictionary;
+import me.alexand.scat.statistic.collector.utils.exceptions.MalformedMessageException;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static me.alexand.scat.statistic.collector.utils.BytesConvertUtils.bytesToDouble;
+import static me.alexand.scat.statistic.collector.utils.BytesConvertUtils.bytesToSignedLong;
+
+/**
+ * Курсор по записям данных одного сета IPFIX-сообщения.
+ * <p>
+ * Значения полей читаются непосредственно из массива байт сообщения, без создания промежуточных объектов:
+ * курсор хранит только ссылку на массив, декодер шаблона и границы полей текущей записи. Один экземпляр курсора
+ * переиспользуется для всех записей и сообщений, поэтому он действителен только во время вызова
+ * {@link IPFIXParser.DataRecordHandler} и не должен сохраняться или использоваться несколькими потоками.
+ * <p>
+ * Для записи во временный буфер запись копируется в пакет {@link RecordsBatch} методом copyTo(), для тестов и
+ * отладки может быть преобразована в {@link IPFIXDataRecord} методом toDataRecord().
+ * <p>
+ * Если курсору задан словарь строк (setStringDictionary()), значения перечисленных строковых полей
+ * берутся из словаря, и повторяющиеся значения не создаются и не копируются заново для каждой записи.
+ *
+ * @author asidorov84@gmail.com
+ * @see IPFIXParser#parse(byte[], int, IPFIXRecordCursor, IPFIXParser.DataRecordHandler)
+ */
+public final class IPFIXRecordCursor {
+    private TemplateDecoder decoder;
+    private byte[] payload;
+    private int offset;
+    private int end;
+    private int[] offsets = new int[0];
+    private int[] lengths = new int[0];
+
+    private StringDictionary dictionary;
+    private Set<String> dictionaryFields = Collections.emptySet();
+    //Признаки использования словаря для полей шаблона текущего декодера
+    private TemplateDecoder dictionaryDecoder;
+    private boolean[] dictionaryFlags = new boolean[0];
+
+    /**
+     * Метод для задания словаря строк
+     *
+     * @param dictionary словарь или null, если словарь не используется
+     * @param fields     имена строковых полей, значения которых берутся из словаря
+     */
+    public void setStringDictionary(StringDictionary dictionary, Set<String> fields) {
+        this.dictionary = dictionary;
+        this.dictionaryFields = fields != null ? fields : Collections.emptySet();
+        this.dictionaryDecoder = null;
+
+        if (decoder != null) {
+            updateDictionaryFlags();
+        }
+    }
+
+    /**
+     * Метод для установки курсора перед первой записью сета
+     *
+     * @param decoder декодер шаблона записей сета
+     * @param payload массив байт, содержащий сообщение
+     * @param offset  смещение первой записи сета
+     * @param end     смещение конца сета
+     */
+    void reset(TemplateDecoder decoder, byte[] payload, int offset, int end) {
+        this.decoder = decoder;
+        this.payload = payload;
+        this.offset = offset;
+        this.end = end;
+
+        int fieldCount = decoder.getFieldCount();
+        if (offsets.length < fieldCount) {
+            offsets = new int[fieldCount];
+            lengths = new int[fieldCount];
+        }
+
+        if (decoder != dictionaryDecoder) {
+            updateDictionaryFlags();
+        }
+    }
+
+    /**
+     * Метод для перехода к следующей записи сета.<br>
+     * Остаток сета, меньший минимальной длины записи, считается выравниванием и пропускается.
+     *
+     * @return true, если курсор установлен на очередную запись, false, если записей больше нет
+     * @throws MalformedMessageException если запись выходит за границы сета
+     */
+    boolean next() throws MalformedMessageException {
+        if (end - offset < decoder.getMinRecordLength()) {
+            return false;
+        }
+
+        try {
+            offset = decoder.position(payload, offset, offsets, lengths);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new MalformedMessageException(e);
+        }
+
+        if (offset > end) {
+            throw new MalformedMessageException("Data record exceeds bounds of set");
+        }
+
+        return true;
+    }
+
+    public TemplateType getType() {
+        return decoder.getType();
+    }
+
+    public int getFieldCount() {
+        return decoder.getFieldCount();
+    }
+
+    public String getFieldName(int field) {
+        return decoder.getFieldName(field);
+    }
+
+    public IANAAbstractDataTypes getFieldType(int field) {
+        return decoder.getFieldType(field);
+    }
+
+    /**
+     * @return массив байт сообщения, которому принадлежит текущая запись
+     */
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    /**
+     * @param field номер поля в шаблоне
+     * @return смещение значения поля в массиве сообщения
+     */
+    public int getFieldOffset(int field) {
+        return offsets[field];
+    }
+
+    /**
+     * @param field номер поля в шаблоне
+     * @return длина значения поля в байтах (для полей переменной длины - фактическая длина без префикса)
+     */
+    public int getFieldLength(int field) {
+        return lengths[field];
+    }
+
+    /**
+     * Метод для чтения значения поля как беззнакового целого в сетевом порядке байт.<br>
+     * Применим к счетчикам, идентификаторам и времени (секунды или миллисекунды эпохи в зависимости от типа поля).
+     * Значение восьмибайтного поля, превышающее Long.MAX_VALUE, возвращается как отрицательное.
+     *
+     * @param field номер поля в шаблоне
+     * @return значение поля
+     */
+    public long getLong(int field) {
+        int position = offsets[field];
+        int limit = position + Math.min(lengths[field], 8);
+        long value = 0;
+
+        for (; position < limit; position++) {
+            value = (value << 8) | (payload[position] & 0xFF);
+        }
+
+        return value;
+    }
+
+    /**
+     * Метод для чтения значения поля как знакового целого в сетевом порядке байт,
+     * в том числе закодированного с уменьшенным размером
+     *
+     * @param field номер поля в шаблоне
+     * @return значение поля
+     */
+    public long getSignedLong(int field) {
+        return bytesToSignedLong(payload, offsets[field], Math.min(lengths[field], 8));
+    }
+
+    /**
+     * Метод для чтения значения поля типа float32 или float64 (в том числе закодированного как float32)
+     *
+     * @param field номер поля в шаблоне
+     * @return значение поля
+     */
+    public double getDouble(int field) {
+        return bytesToDouble(payload, offsets[field], lengths[field]);
+    }
+
+    /**
+     * Метод для чтения IPv4-адреса в виде 32-битного целого (старший байт - первый октет адреса)
+     *
+     * @param field номер поля в шаблоне
+     * @return адрес
+     */
+    public int getIPv4AsInt(int field) {
+        return (int) getLong(field);
+    }
+
+    /**
+     * Метод для копирования байт строкового значения поля
+     *
+     * @param field     номер поля в шаблоне
+     * @param dst       массив, в который копируется значение
+     * @param dstOffset смещение в массиве {@code dst}
+     * @return количество скопированных байт
+     * @throws IndexOutOfBoundsException если значение не помещается в {@code dst}
+     */
+    public int getStringBytes(int field, byte[] dst, int dstOffset) {
+        System.arraycopy(payload, offsets[field], dst, dstOffset, lengths[field]);
+        return lengths[field];
+    }
+
+    /**
+     * Метод для чтения строкового значения поля.<br>
+     * Для полей, не использующих словарь строк, создает новый объект String, поэтому для них не рекомендуется
+     * при обработке потока записей.
+     *
+     * @param field номер поля в шаблоне
+     * @return значение поля
+     */
+    public String getString(int field) {
+        String value = getDictionaryString(field);
+        return value != null ? value : new String(payload, offsets[field], lengths[field], Charset.defaultCharset());
+    }
+
+    /**
+     * Метод для получения идентификатора строкового значения поля в словаре строк
+     *
+     * @param field номер поля в шаблоне
+     * @return идентификатор значения или -1, если словарь не задан или значение в него не попадает
+     * @see StringDictionary#getId(byte[], int, int)
+     */
+    public int getStringId(int field) {
+        return dictionary != null ? dictionary.getId(payload, offsets[field], lengths[field]) : -1;
+    }
+
+    /**
+     * Метод для чтения значения поля в виде объекта, соответствующего типу информационного элемента
+     *
+     * @param field номер поля в шаблоне
+     * @return значение поля
+     */
+    public Object getValue(int field) {
+        String value = getDictionaryString(field);
+        return value != null ? value : decoder.read(field, payload, offsets[field], lengths[field]);
+    }
+
+    /**
+     * Метод для добавления текущей записи строкой в пакет записей.<br>
+     * Столбцы пакета должны соответствовать столбцам схемы типа записей (см. newBatch()): значения берутся
+     * из соответствующих полей шаблона, а столбцы, для которых в шаблоне нет поля, остаются без значения.
+     *
+     * @param batch пакет записей того же типа шаблона
+     * @throws IllegalStateException если пакет заполнен
+     */
+    public void copyTo(RecordsBatch batch) {
+        int columnCount = decoder.getColumnCount();
+
+        for (int i = 0; i < columnCount; i++) {
+            int field = decoder.getColumnField(i);
+
+            if (field < 0) {
+                batch.setNull(i);
+                continue;
+            }
+
+            switch (batch.getColumnKind(i)) {
+                case LONG:
+                    batch.setLong(i, getColumnLong(field));
+                    break;
+                case INT:
+                    batch.setInt(i, (int) getColumnLong(field));
+                    break;
+                case STRING:
+                    String value = getDictionaryString(field);
+
+                    if (value != null) {
+                        batch.setString(i, value);
+                    } else {
+                        batch.setString(i, payload, offsets[field], lengths[field]);
+                    }
+                    break;
+            }
+        }
+
+        batch.endRow();
+    }
+
+    /**
+     * @return количество столбцов схемы типа записей, на которые отображаются поля шаблона текущей записи
+     */
+    public int getColumnCount() {
+        return decoder.getColumnCount();
+    }
+
+    /**
+     * @param batch пакет записей
+     * @return true, если тип и столбцы пакета соответствуют схеме типа текущей записи (см. newBatch())
+     */
+    public boolean isColumnsOf(RecordsBatch batch) {
+        int columnCount = decoder.getColumnCount();
+
+        if (batch.getType() != decoder.getType() || batch.getColumnCount() != columnCount) {
+            return false;
+        }
+
+        for (int i = 0; i < columnCount; i++) {
+            if (batch.getColumnType(i) != decoder.getColumnType(i)
+                    || !batch.getColumnName(i).equals(decoder.getColumnName(i))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Метод для создания пакета записей, столбцы которого соответствуют столбцам схемы типа текущей записи
+     *
+     * @param capacity максимальное количество записей в пакете
+     * @return новый пустой пакет
+     */
+    public RecordsBatch newBatch(int capacity) {
+        int columnCount = decoder.getColumnCount();
+        String[] names = new String[columnCount];
+        IANAAbstractDataTypes[] types = new IANAAbstractDataTypes[columnCount];
+
+        for (int i = 0; i < columnCount; i++) {
+            names[i] = decoder.getColumnName(i);
+            types[i] = decoder.getColumnType(i);
+        }
+
+        return RecordsBatch.builder()
+                .type(decoder.getType())
+                .columnNames(names)
+                .columnTypes(types)
+                .capacity(capacity)
+                .build();
+    }
+
+    //Значение поля в том виде, в каком оно хранится в столбцах LONG и INT пакета записей
+    private long getColumnLong(int field) {
+        switch (decoder.getFieldType(field)) {
+            case SIGNED8:
+            case SIGNED16:
+            case SIGNED32:
+            case SIGNED64:
+                return getSignedLong(field);
+            case FLOAT32:
+            case FLOAT64:
+                return Double.doubleToRawLongBits(getDouble(field));
+            case DATE_TIME_MICROSECONDS:
+                return getLong(field) & ~0x7FFL;
+            default:
+                return getLong(field);
+        }
+    }
+
+    private String getDictionaryString(int field) {
+        return dictionaryFlags[field] ? dictionary.get(payload, offsets[field], lengths[field]) : null;
+    }
+
+    private void updateDictionaryFlags() {
+        int fieldCount = decoder.getFieldCount();
+
+        if (dictionaryFlags.length < fieldCount) {
+            dictionaryFlags = new boolean[fieldCount];
+        }
+
+        for (int i = 0; i < fieldCount; i++) {
+            dictionaryFlags[i] = dictionary != null
+                    && decoder.getFieldType(i) == IANAAbstractDataTypes.STRING
+                    && dictionaryFields.contains(decoder.getFieldName(i));
+        }
+
+        dictionaryDecoder = decoder;
+    }
+
+    /**
+     * Метод для преобразования текущей записи в {@link IPFIXDataRecord}
+     *
+     * @return новый экземпляр записи, не связанный с массивом сообщения
+     */
+    public IPFIXDataRecord toDataRecord() {
+        int fieldCount = decoder.getFieldCount();
+        List<IPFIXFieldValue> fieldValues = new ArrayList<>(fieldCount);
+
+        for (int i = 0; i < fieldCount; i++) {
+            fieldValues.add(IPFIXFieldValue.builder()
+                    .name(decoder.getFieldName(i))
+                    .type(decoder.getFieldType(i))
+                    .value(getValue(i))
+                    .build());
+        }
+
+        return IPFIXDataRecord.builder()
+                .type(decoder.getType())
+                .fieldValues(fieldValues)
+                .build();
+    }
+}
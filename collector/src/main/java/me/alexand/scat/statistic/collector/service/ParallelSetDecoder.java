@@ -0,0 +1,247 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.service;
+
+import me.alexand.scat.statistic.collector.model.IPFIXHeader;
+import me.alexand.scat.statistic.collector.model.RecordsBatch;
+import me.alexand.scat.statistic.collector.utils.exceptions.IPFIXParseException;
+import me.alexand.scat.statistic.collector.utils.exceptions.MalformedMessageException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Декодер, распределяющий сеты записей данных одного IPFIX-сообщения между потоками {@link ForkJoinPool}.
+ * <p>
+ * Сообщение сначала разбирается парсером без декодирования записей (см. {@link IPFIXParser#parse(byte[], int, int,
+ * IPFIXParser.DataSetHandler)}): шаблоны регистрируются в порядке следования сетов, а для каждого сета записей
+ * данных запоминаются его декодер и границы. Затем сеты, кроме первого, декодируются потоками пула, каждый
+ * в промежуточный пакет записей своей задачи, а первый сет - текущим потоком сразу в обработчик записей,
+ * как при последовательном декодировании. Пакеты задач передаются обработчику в порядке сетов в сообщении,
+ * поэтому порядок записей такой же, как при последовательном декодировании.
+ * <p>
+ * Каждый сет декодируется один раз: емкость пакета задачи определяется по длине сета и минимальной длине
+ * записи шаблона. Пакеты задач переиспользуются для следующих сообщений и пересоздаются, только если
+ * изменились столбцы или сет не помещается в пакет.
+ * <p>
+ * Сообщение с единственным сетом записей данных декодируется текущим потоком без промежуточного пакета.
+ * Строковые значения при параллельном декодировании копируются в пакеты и не используют словарь строк процессора.
+ * <p>
+ * Экземпляр переиспользует задачи и используется только одним потоком процессора.
+ *
+ * @author asidorov84@gmail.com
+ * @see IPFIXMessageProcessor
+ */
+final class ParallelSetDecoder {
+    private final ForkJoinPool pool;
+    private final int minMessageLength;
+
+    private final List<SetTask> tasks = new ArrayList<>();
+    private final IPFIXParser.DataSetHandler setHandler = this::addTask;
+    private byte[] payload;
+    private int tasksCount;
+
+    /**
+     * @param pool             пул потоков для декодирования сетов
+     * @param minMessageLength минимальная длина сообщения, сеты которого декодируются параллельно, 0 - не использовать
+     */
+    ParallelSetDecoder(ForkJoinPool pool, int minMessageLength) {
+        if (minMessageLength < 0) {
+            throw new IllegalArgumentException(String.format("Illegal min length of message: %d", minMessageLength));
+        }
+
+        this.pool = pool;
+        this.minMessageLength = minMessageLength;
+    }
+
+    /**
+     * @param messageLength длина сообщения
+     * @return true, если сеты сообщения такой длины следует декодировать параллельно
+     */
+    boolean isApplicable(int messageLength) {
+        return minMessageLength > 0 && messageLength >= minMessageLength;
+    }
+
+    /**
+     * Метод для декодирования сообщения.<br>
+     * При ошибке записи всех сетов, предшествующих ошибочному, и записи ошибочного сета до места ошибки передаются
+     * обработчикам так же, как при последовательном декодировании, после чего выбрасывается исключение.
+     *
+     * @param parser         парсер с шаблонами процессора
+     * @param cursor         курсор процессора для декодирования текущим потоком
+     * @param recordHandler  обработчик записей, декодированных курсором процессора
+     * @param batchHandler   обработчик пакетов записей, декодированных потоками пула
+     * @return заголовок сообщения
+     * @throws IPFIXParseException при возникновении ошибки во время декодирования
+     */
+    IPFIXHeader parse(IPFIXParser parser,
+                      byte[] payload,
+                      int payloadLength,
+                      int session,
+                      IPFIXRecordCursor cursor,
+                      IPFIXParser.DataRecordHandler recordHandler,
+                      BatchHandler batchHandler) throws IPFIXParseException {
+        this.payload = payload;
+        tasksCount = 0;
+
+        try {
+            IPFIXHeader header = null;
+            IPFIXParseException failure = null;
+
+            try {
+                header = parser.parse(payload, payloadLength, session, setHandler);
+            } catch (IPFIXParseException e) {
+                failure = e;
+            }
+
+            if (tasksCount > 0) {
+                decode(cursor, recordHandler, batchHandler);
+            }
+
+            if (failure != null) {
+                throw failure;
+            }
+
+            return header;
+        } finally {
+            //Массив сообщения после возврата из метода может быть переиспользован
+            this.payload = null;
+
+            for (int i = 0; i < tasksCount; i++) {
+                tasks.get(i).clear();
+            }
+        }
+    }
+
+    private void decode(IPFIXRecordCursor cursor,
+                        IPFIXParser.DataRecordHandler recordHandler,
+                        BatchHandler batchHandler) throws IPFIXParseException {
+        for (int i = 1; i < tasksCount; i++) {
+            pool.execute(tasks.get(i));
+        }
+
+        try {
+            SetTask first = tasks.get(0);
+
+            try {
+                cursor.reset(first.decoder, payload, first.offset, first.end);
+
+                while (cursor.next()) {
+                    recordHandler.handle(cursor);
+                }
+            } catch (ArrayIndexOutOfBoundsException e) {
+                throw new MalformedMessageException(e);
+            }
+        } finally {
+            //Все задачи завершаются до возврата, так как они читают массив сообщения
+            for (int i = 1; i < tasksCount; i++) {
+                tasks.get(i).quietlyJoin();
+            }
+        }
+
+        for (int i = 1; i < tasksCount; i++) {
+            SetTask task = tasks.get(i);
+
+            if (task.isCompletedAbnormally()) {
+                Throwable e = task.getException();
+                throw e instanceof RuntimeException ? (RuntimeException) e : new IllegalStateException(e);
+            }
+
+            if (task.batch.size() > 0) {
+                batchHandler.handle(task.batch);
+            }
+
+            if (task.failure != null) {
+                throw task.failure;
+            }
+        }
+    }
+
+    private void addTask(TemplateDecoder decoder, int offset, int end) {
+        if (tasksCount == tasks.size()) {
+            tasks.add(new SetTask());
+        }
+
+        SetTask task = tasks.get(tasksCount++);
+        task.reinitialize();
+        task.decoder = decoder;
+        task.offset = offset;
+        task.end = end;
+    }
+
+    /**
+     * Обработчик пакетов записей, декодированных потоками пула
+     */
+    @FunctionalInterface
+    interface BatchHandler {
+        /**
+         * @param batch пакет записей одного сета; после возврата из метода переиспользуется декодером,
+         *              поэтому записи должны быть скопированы
+         */
+        void handle(RecordsBatch batch);
+    }
+
+    /**
+     * Декодирование одного сета в пакет записей задачи
+     */
+    private final class SetTask extends RecursiveAction {
+        private final IPFIXRecordCursor cursor = new IPFIXRecordCursor();
+
+        private TemplateDecoder decoder;
+        private int offset;
+        private int end;
+        private RecordsBatch batch;
+        private MalformedMessageException failure;
+
+        @Override
+        protected void compute() {
+            //Каждая запись сета занимает не менее одного байта, поэтому записей в сете не больше его длины
+            int maxCount = (end - offset) / Math.max(decoder.getMinRecordLength(), 1) + 1;
+
+            cursor.reset(decoder, payload, offset, end);
+
+            if (batch == null || !cursor.isColumnsOf(batch) || batch.getCapacity() < maxCount) {
+                batch = cursor.newBatch(batch != null ? Math.max(maxCount, batch.getCapacity()) : maxCount);
+            } else {
+                batch.clear();
+            }
+
+            try {
+                while (cursor.next()) {
+                    cursor.copyTo(batch);
+                }
+            } catch (MalformedMessageException e) {
+                failure = e;
+            } catch (ArrayIndexOutOfBoundsException e) {
+                failure = new MalformedMessageException(e);
+            }
+        }
+
+        //Пакет сохраняется для следующих сообщений
+        void clear() {
+            decoder = null;
+            failure = null;
+        }
+    }
+}
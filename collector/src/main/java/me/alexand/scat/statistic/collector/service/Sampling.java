@@ -21,7 +21,6 @@
 
 package me.alexand.scat.statistic.collector.service;
 
-import me.alexand.scat.statistic.collector.repository.TransitionalBufferRepository;
 import me.alexand.scat.statistic.common.entities.ClickCount;
 import me.alexand.scat.statistic.common.entities.DomainRegex;
 import me.alexand.scat.statistic.common.entities.TrackedDomainRequests;
@@ -35,12 +34,10 @@ import org.springframework.dao.DataAccessException;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalDateTime;
 import java.util.List;
 
 import static java.util.stream.Collectors.toList;
 import static me.alexand.scat.statistic.collector.utils.Constants.SAMPLING_RUN_FREQUENCY;
-import static me.alexand.scat.statistic.collector.utils.DateTimeUtils.getFormattedDateTime;
 
 /**
  * @author asidorov84@gmail.com
@@ -50,48 +47,47 @@ import static me.alexand.scat.statistic.collector.utils.DateTimeUtils.getFormatt
 public class Sampling {
     private static final Logger LOGGER = LoggerFactory.getLogger(Sampling.class);
     private final DomainRegexRepository domainRegexRepository;
-    private final TransitionalBufferRepository transitionalBufferRepository;
     private final TrackedDomainRequestsRepository trackedDomainRequestsRepository;
     private final ClickCountRepository clickCountRepository;
-    private LocalDateTime lastTimeTrackDomains;
-    private LocalDateTime lastTimeCountClicks;
+    private final ClickCountAggregator clickCountAggregator;
+    private final TrackedDomainsAggregator trackedDomainsAggregator;
 
     @Autowired
     public Sampling(DomainRegexRepository domainRegexRepository,
-                    TransitionalBufferRepository transitionalBufferRepository,
                     TrackedDomainRequestsRepository trackedDomainRequestsRepository,
-                    ClickCountRepository clickCountRepository) {
+                    ClickCountRepository clickCountRepository,
+                    ClickCountAggregator clickCountAggregator,
+                    TrackedDomainsAggregator trackedDomainsAggregator) {
         this.domainRegexRepository = domainRegexRepository;
-        this.transitionalBufferRepository = transitionalBufferRepository;
         this.trackedDomainRequestsRepository = trackedDomainRequestsRepository;
         this.clickCountRepository = clickCountRepository;
-        lastTimeTrackDomains = LocalDateTime.now().minusSeconds(60);
-        lastTimeCountClicks = LocalDateTime.now().minusSeconds(60);
+        this.clickCountAggregator = clickCountAggregator;
+        this.trackedDomainsAggregator = trackedDomainsAggregator;
     }
 
-    @Scheduled(fixedRate = SAMPLING_RUN_FREQUENCY, initialDelay = SAMPLING_RUN_FREQUENCY)
-    public void trackDomains() {
-        LOGGER.info("start tracking domains...");
-        LocalDateTime endDateTime = lastTimeTrackDomains.plusSeconds(30);
-
+    /**
+     * Шаблоны доменных имен загружаются при запуске и обновляются с той же частотой, что и выгрузка результатов
+     */
+    @Scheduled(fixedRate = SAMPLING_RUN_FREQUENCY)
+    public void updateDomainRegexps() {
         List<DomainRegex> domainRegexps = domainRegexRepository.findAll();
 
         List<String> domainRegexPatterns = domainRegexps.stream()
                 .map(DomainRegex::getPattern)
                 .collect(toList());
 
-        LOGGER.info("\ttime period for tracking domains is between {} and {}",
-                getFormattedDateTime(lastTimeTrackDomains),
-                getFormattedDateTime(endDateTime));
-        LOGGER.info("\tlist of domain regex patterns which must be tracked: {}", domainRegexPatterns);
+        LOGGER.info("list of domain regex patterns which must be tracked: {}", domainRegexPatterns);
+        trackedDomainsAggregator.setDomainRegexps(domainRegexps);
+    }
 
-        List<TrackedDomainRequests> results = transitionalBufferRepository.getTrackedDomainRequests(domainRegexps,
-                lastTimeTrackDomains,
-                endDateTime);
+    @Scheduled(fixedRate = SAMPLING_RUN_FREQUENCY, initialDelay = SAMPLING_RUN_FREQUENCY)
+    public void trackDomains() {
+        LOGGER.info("start tracking domains...");
 
+        //Запросы на отслеживаемые домены учитываются при получении записей
+        List<TrackedDomainRequests> results = trackedDomainsAggregator.flush();
         LOGGER.info("\tnumber of tracking domain results: {}", results.size());
 
-        lastTimeTrackDomains = endDateTime;
         trackedDomainRequestsRepository.saveAll(results);
 
         LOGGER.info("...stop tracking domains.\n");
@@ -100,23 +96,19 @@ public class Sampling {
     @Scheduled(fixedRate = SAMPLING_RUN_FREQUENCY, initialDelay = SAMPLING_RUN_FREQUENCY + 5000)
     public void countClicks() {
         LOGGER.info("start counting clicks...");
-        LocalDateTime endDateTime = lastTimeCountClicks.plusSeconds(30);
-
-        LOGGER.info("\ttime period for counting clicks is between {} and {}",
-                getFormattedDateTime(lastTimeCountClicks),
-                getFormattedDateTime(endDateTime));
 
-        List<ClickCount> clickCounts = transitionalBufferRepository.getClickCount(lastTimeCountClicks, endDateTime);
+        //Запросы подсчитываются при получении записей, выгружаются только закрытые минуты
+        List<ClickCount> clickCounts = clickCountAggregator.flush();
         LOGGER.info("\tnumber of counts: {}", clickCounts.size());
+        LOGGER.info("\tnumber of late records not counted: {}", clickCountAggregator.getLateRecordsNumber());
+        LOGGER.info("\tnumber of records ahead of collector clock not counted: {}",
+                clickCountAggregator.getFutureRecordsNumber());
 
-        lastTimeCountClicks = endDateTime;
-        
         try {
             clickCountRepository.saveAll(clickCounts);
         } catch (DataAccessException e) {
             LOGGER.error(e.getMessage());
         }
-        
 
         LOGGER.info("...stop counting clicks\n");
     }
@@ -22,6 +22,9 @@
 package me.alexand.scat.statistic.collector.service;
 
 import me.alexand.scat.statistic.collector.model.TemplateType;
+import me.alexand.scat.statistic.collector.network.PacketBufferPool;
+import me.alexand.scat.statistic.collector.spill.SegmentLog;
+import me.alexand.scat.statistic.collector.utils.StringDictionary;
 import me.alexand.scat.statistic.collector.utils.DateTimeUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,6 +37,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.util.stream.Collectors.toList;
@@ -48,12 +52,21 @@ public class StatCollector {
 
     private final AtomicInteger activeProcessorsCounter = new AtomicInteger(0);
     private final AtomicInteger inputBufferOverflowCounter = new AtomicInteger(0);
+    private final AtomicInteger malformedPacketsCounter = new AtomicInteger(0);
+    private final Map<String, Long> outOfOrderPacketsCounter = new ConcurrentHashMap<>();
+    private final Map<String, Long> lostRecordsCounter = new ConcurrentHashMap<>();
+    private final Map<String, Long> blockedTimeCounter = new ConcurrentHashMap<>();
     private final Map<TemplateType, Integer> recorderBuffersOverflowCounter;
     private final Map<Integer, Long> receivedPacketsCounter = new ConcurrentHashMap<>();
     private final Map<Integer, Long> processedPacketsCounter = new ConcurrentHashMap<>();
     private final Map<Integer, Long> processedPacketsTotalTimeCounter = new ConcurrentHashMap<>();
     private final Map<Long, Long> recordsCounter = new ConcurrentHashMap<>();
 
+    private volatile PacketBufferPool packetBufferPool;
+    private final List<SegmentLog> spillLogs = new CopyOnWriteArrayList<>();
+    private final List<StringDictionary> stringDictionaries = new CopyOnWriteArrayList<>();
+    private final CopyOnWriteArrayList<TemplateCache> templateCaches = new CopyOnWriteArrayList<>();
+
     private final LocalDateTime applicationStart = LocalDateTime.now();
     private LocalDateTime lastReportDateTime;
 
@@ -77,10 +90,51 @@ public class StatCollector {
         activeProcessorsCounter.decrementAndGet();
     }
 
+    public void registerPacketBufferPool(PacketBufferPool packetBufferPool) {
+        this.packetBufferPool = packetBufferPool;
+    }
+
+    public void registerSpillLog(SegmentLog spillLog) {
+        spillLogs.add(spillLog);
+    }
+
+    public void registerStringDictionary(StringDictionary stringDictionary) {
+        stringDictionaries.add(stringDictionary);
+    }
+
+    /**
+     * Хранилище шаблонов общего парсера регистрируется каждым процессором, но учитывается один раз
+     */
+    void registerTemplateCache(TemplateCache templateCache) {
+        templateCaches.addIfAbsent(templateCache);
+    }
+
     public void registerInputBufferOverflow() {
         inputBufferOverflowCounter.incrementAndGet();
     }
 
+    public void registerBlockedTime(String exporter, long time) {
+        blockedTimeCounter.merge(exporter, time, (oldValue, newValue) -> oldValue + newValue);
+    }
+
+    public void registerMalformedPacket() {
+        malformedPacketsCounter.incrementAndGet();
+    }
+
+    public void registerOutOfOrderPacket(String exporter) {
+        outOfOrderPacketsCounter.merge(exporter, 1L, (oldValue, newValue) -> oldValue + newValue);
+    }
+
+    /**
+     * @param source   адрес экспортера
+     * @param domainID домен наблюдения
+     * @param gap      количество потерянных записей; отрицательное значение исправляет ранее учтенные потери,
+     *                 если сообщение было обработано не по порядку
+     */
+    public void registerLostRecords(String source, long domainID, long gap) {
+        lostRecordsCounter.merge(source + "/" + domainID, gap, (oldValue, newValue) -> oldValue + newValue);
+    }
+
     public void registerRecorderBufferOverflow(TemplateType type) {
         recorderBuffersOverflowCounter.merge(type, 1, (oldValue, newValue) -> (oldValue + newValue));
     }
@@ -131,8 +185,40 @@ public class StatCollector {
                 .append(inputBufferOverflowCounter.get())
                 .append("\n");
 
+        sb.append("\ttime blocked on full input buffer per exporter: ")
+                .append(getBlockedTimePerExporter())
+                .append("\n");
+
+        sb.append("\tpacket buffer pool: ")
+                .append(packetBufferPool)
+                .append("\n");
+
+        sb.append("\tmalformed packets dropped by receiver: ")
+                .append(malformedPacketsCounter.get())
+                .append("\n");
+
+        sb.append("\tout of order packets per exporter: ")
+                .append(outOfOrderPacketsCounter.entrySet())
+                .append("\n");
+
+        sb.append("\tlost records per exporter and domain: ")
+                .append(lostRecordsCounter.entrySet())
+                .append("\n");
+
         sb.append("\trecorder buffers overflows: ")
                 .append(recorderBuffersOverflowCounter.entrySet())
+                .append("\n");
+
+        sb.append("\tspill logs: ")
+                .append(spillLogs)
+                .append("\n");
+
+        sb.append("\tstring dictionaries: ")
+                .append(stringDictionaries)
+                .append("\n");
+
+        sb.append("\ttemplates: ")
+                .append(templateCaches)
                 .append("\n\n");
 
         sb.append("\tpackets received rates per processor: ")
@@ -169,6 +255,13 @@ public class StatCollector {
         packetsCounter.entrySet().forEach(e -> e.setValue(Long.valueOf(0L)));
     }
 
+    private String getBlockedTimePerExporter() {
+        return blockedTimeCounter.entrySet().stream()
+                .map(e -> String.format("%s: %d ms", e.getKey(), e.getValue() / 1_000_000))
+                .collect(toList())
+                .toString();
+    }
+
     private String getUptime(LocalDateTime currentDateTime) {
         return DateTimeUtils.getFormattedDifferenceBetweenLocalDateTime(applicationStart, currentDateTime);
     }
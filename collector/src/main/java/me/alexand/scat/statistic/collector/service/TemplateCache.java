@@ -0,0 +1,320 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.service;
+
+import me.alexand.scat.statistic.collector.model.IPFIXTemplateRecord;
+import me.alexand.scat.statistic.collector.network.PacketBuffer;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Хранилище шаблонов, зарегистрированных парсером.
+ * <p>
+ * Шаблоны принадлежат транспортной сессии (см. {@link PacketBuffer#session()}) и домену наблюдения, поэтому
+ * одинаковые идентификаторы шаблонов разных экспортеров не пересекаются. Шаблоны удаляются:
+ * <ul>
+ * <li>при отзыве экспортером (RFC 7011, 8.1);</li>
+ * <li>при закрытии TCP-сессии;</li>
+ * <li>по истечении времени жизни - только для UDP-сессий, в которых шаблоны периодически повторяются
+ * (RFC 7011, 8.4). Время отсчитывается по времени экспорта сообщений, а не по часам коллектора;</li>
+ * <li>при заполнении хранилища - шаблон, дольше всех не использовавшийся для декодирования записей.</li>
+ * </ul>
+ * Поиск вытесняемого шаблона выполняется перебором, так как происходит только при регистрации нового шаблона.
+ * <p>
+ * Хранилище, созданное с {@code concurrent = true}, может использоваться несколькими потоками: время последнего
+ * использования шаблона обновляется без синхронизации, поэтому вытеснение в этом случае приблизительное.
+ *
+ * @author asidorov84@gmail.com
+ * @see IPFIXParser
+ */
+final class TemplateCache {
+    private final Map<Long, Entry> entries;
+    private final int maxSize;
+    private final long udpLifetime;
+
+    //Логические часы для определения шаблона, дольше всех не использовавшегося
+    private long clock;
+
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong withdrawn = new AtomicLong();
+    private final AtomicLong closed = new AtomicLong();
+
+    /**
+     * @param maxSize     максимальное количество шаблонов
+     * @param udpLifetime время жизни шаблона UDP-сессии в секундах, 0 - шаблоны не устаревают
+     * @param concurrent  true, если хранилище используется несколькими потоками
+     */
+    TemplateCache(int maxSize, long udpLifetime, boolean concurrent) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException(String.format("Illegal max size of templates cache: %d", maxSize));
+        }
+
+        if (udpLifetime < 0) {
+            throw new IllegalArgumentException(String.format("Illegal lifetime of UDP templates: %d", udpLifetime));
+        }
+
+        this.maxSize = maxSize;
+        this.udpLifetime = udpLifetime;
+        this.entries = concurrent ? new ConcurrentHashMap<>() : new HashMap<>();
+    }
+
+    /**
+     * Метод для получения шаблона при декодировании записей данных.<br>
+     * Устаревший шаблон UDP-сессии удаляется и не возвращается.
+     *
+     * @param exportTime время экспорта сообщения с записями
+     * @return шаблон или null, если шаблон не зарегистрирован или устарел
+     */
+    Entry get(int session, long observationDomainID, int templateID, long exportTime) {
+        Long key = getKey(session, observationDomainID, templateID);
+        Entry entry = entries.get(key);
+
+        if (entry == null) {
+            return null;
+        }
+
+        if (isExpired(session, entry, exportTime)) {
+            if (entries.remove(key, entry)) {
+                expired.incrementAndGet();
+            }
+
+            return null;
+        }
+
+        entry.lastUsed = ++clock;
+        return entry;
+    }
+
+    /**
+     * Метод для получения шаблона без проверки времени жизни.<br>
+     * Используется при повторном объявлении шаблона экспортером, которое продлевает время жизни шаблона.
+     *
+     * @return шаблон или null, если шаблон не зарегистрирован
+     */
+    Entry peek(int session, long observationDomainID, int templateID) {
+        return entries.get(getKey(session, observationDomainID, templateID));
+    }
+
+    /**
+     * Метод для регистрации шаблона. Зарегистрированный ранее шаблон заменяется только более новым.
+     * Если хранилище заполнено, предварительно вытесняется шаблон, дольше всех не использовавшийся.
+     */
+    void put(int session, long observationDomainID, Entry entry) {
+        Long key = getKey(session, observationDomainID, entry.getTemplateID());
+
+        if (!entries.containsKey(key) && entries.size() >= maxSize) {
+            evict();
+        }
+
+        entry.lastUsed = ++clock;
+        entries.merge(key, entry, (oldEntry, newEntry) ->
+                oldEntry.getExportTime() < newEntry.getExportTime() ? newEntry : oldEntry);
+    }
+
+    /**
+     * Метод для отзыва одного шаблона
+     *
+     * @return true, если шаблон был зарегистрирован
+     */
+    boolean withdraw(int session, long observationDomainID, int templateID) {
+        if (entries.remove(getKey(session, observationDomainID, templateID)) == null) {
+            return false;
+        }
+
+        withdrawn.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Метод для отзыва всех шаблонов (или всех шаблонов параметров) домена наблюдения в сессии
+     *
+     * @param options true - отзываются шаблоны параметров, false - шаблоны записей данных
+     * @return количество отозванных шаблонов
+     */
+    int withdrawAll(int session, long observationDomainID, boolean options) {
+        long prefix = getKey(session, observationDomainID, 0);
+        int count = 0;
+
+        for (Iterator<Map.Entry<Long, Entry>> it = entries.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Long, Entry> e = it.next();
+
+            if ((e.getKey() & ~0xFFFFL) == prefix && e.getValue().isOptions() == options) {
+                it.remove();
+                count++;
+            }
+        }
+
+        withdrawn.addAndGet(count);
+        return count;
+    }
+
+    /**
+     * Метод для удаления всех шаблонов закрытой сессии
+     *
+     * @return количество удаленных шаблонов
+     */
+    int closeSession(int session) {
+        long sessionBits = (long) (session & 0xFFFF) << 48;
+        int count = 0;
+
+        for (Iterator<Long> it = entries.keySet().iterator(); it.hasNext(); ) {
+            if ((it.next() & 0xFFFF_0000_0000_0000L) == sessionBits) {
+                it.remove();
+                count++;
+            }
+        }
+
+        closed.addAndGet(count);
+        return count;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    int getOptionsCount() {
+        int count = 0;
+
+        for (Entry entry : entries.values()) {
+            if (entry.isOptions()) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    long getEvictedCount() {
+        return evicted.get();
+    }
+
+    long getExpiredCount() {
+        return expired.get();
+    }
+
+    long getWithdrawnCount() {
+        return withdrawn.get();
+    }
+
+    long getClosedCount() {
+        return closed.get();
+    }
+
+    @Override
+    public String toString() {
+        return "{size=" + size() +
+                ", options=" + getOptionsCount() +
+                ", evicted=" + getEvictedCount() +
+                ", expired=" + getExpiredCount() +
+                ", withdrawn=" + getWithdrawnCount() +
+                ", closed=" + getClosedCount() +
+                "}";
+    }
+
+    private boolean isExpired(int session, Entry entry, long exportTime) {
+        return udpLifetime > 0
+                && (session & PacketBuffer.UDP_SESSION) != 0
+                && exportTime - entry.refreshed > udpLifetime;
+    }
+
+    private void evict() {
+        Map.Entry<Long, Entry> victim = null;
+
+        for (Map.Entry<Long, Entry> e : entries.entrySet()) {
+            if (victim == null || e.getValue().lastUsed < victim.getValue().lastUsed) {
+                victim = e;
+            }
+        }
+
+        if (victim != null && entries.remove(victim.getKey(), victim.getValue())) {
+            evicted.incrementAndGet();
+        }
+    }
+
+    private static long getKey(int session, long observationDomainID, int templateID) {
+        return (long) (session & 0xFFFF) << 48 | observationDomainID << 16 | templateID;
+    }
+
+    /**
+     * Зарегистрированный шаблон: шаблон записей данных вместе с его декодером, либо шаблон параметров
+     * (options template, RFC 7011, 3.4.2.2), записи которого не декодируются
+     */
+    static final class Entry {
+        private final IPFIXTemplateRecord templateRecord;
+        private final TemplateDecoder decoder;
+
+        //Время экспорта последнего объявления шаблона, от него отсчитывается время жизни
+        private volatile long refreshed;
+        private long lastUsed;
+
+        private Entry(IPFIXTemplateRecord templateRecord, TemplateDecoder decoder) {
+            this.templateRecord = templateRecord;
+            this.decoder = decoder;
+            this.refreshed = templateRecord.getExportTime();
+        }
+
+        static Entry of(TemplateDecoder decoder) {
+            return new Entry(decoder.getTemplateRecord(), decoder);
+        }
+
+        static Entry options(IPFIXTemplateRecord templateRecord) {
+            return new Entry(templateRecord, null);
+        }
+
+        IPFIXTemplateRecord getTemplateRecord() {
+            return templateRecord;
+        }
+
+        /**
+         * @return декодер записей данных или null для шаблона параметров
+         */
+        TemplateDecoder getDecoder() {
+            return decoder;
+        }
+
+        boolean isOptions() {
+            return decoder == null;
+        }
+
+        int getTemplateID() {
+            return templateRecord.getTemplateID();
+        }
+
+        long getExportTime() {
+            return templateRecord.getExportTime();
+        }
+
+        /**
+         * Продлить время жизни шаблона при его повторном объявлении
+         */
+        void refresh(long exportTime) {
+            if (exportTime > refreshed) {
+                refreshed = exportTime;
+            }
+        }
+    }
+}
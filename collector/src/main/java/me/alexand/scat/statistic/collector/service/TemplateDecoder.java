@@ -0,0 +1,358 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.service;
+
+import me.alexand.scat.statistic.collector.model.IANAAbstractDataTypes;
+import me.alexand.scat.statistic.collector.model.IPFIXFieldSpecifier;
+import me.alexand.scat.statistic.collector.model.IPFIXTemplateRecord;
+import me.alexand.scat.statistic.collector.model.InfoModelEntity;
+import me.alexand.scat.statistic.collector.model.TemplateMapping;
+import me.alexand.scat.statistic.collector.model.TemplateType;
+import me.alexand.scat.statistic.collector.repository.InfoModelRepository;
+import me.alexand.scat.statistic.collector.utils.exceptions.MalformedMessageException;
+import me.alexand.scat.statistic.collector.utils.exceptions.UnknownInfoModelException;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static me.alexand.scat.statistic.collector.utils.BytesConvertUtils.*;
+import static me.alexand.scat.statistic.collector.utils.DateTimeUtils.epochMillisToLocalDateTime;
+import static me.alexand.scat.statistic.collector.utils.DateTimeUtils.epochSecondsToLocalDateTime;
+import static me.alexand.scat.statistic.collector.utils.DateTimeUtils.ntpTimestampToLocalDateTime;
+
+/**
+ * Декодер записей данных одного шаблона.
+ * <p>
+ * Создается один раз при регистрации шаблона: для каждого поля заранее определяются информационный элемент,
+ * длина и функция чтения значения, соответствующая его типу. Смещения полей фиксированной длины, предшествующих
+ * первому полю переменной длины, также вычисляются заранее. Таким образом, при декодировании записей
+ * не выполняются ни обращения к {@link InfoModelRepository}, ни выбор способа чтения по типу поля.
+ * <p>
+ * Поддерживаются все типы {@link IANAAbstractDataTypes}, в том числе целые числа и float64,
+ * закодированные с уменьшенным размером (RFC 7011, 6.2).
+ * <p>
+ * Помимо полей шаблона декодер хранит столбцы схемы типа записей ({@link TemplateMapping}): для каждого столбца -
+ * номер поля шаблона, из которого берется значение, либо -1, если в шаблоне такого поля нет.
+ *
+ * @author asidorov84@gmail.com
+ * @see IPFIXParser
+ */
+final class TemplateDecoder {
+    private static final int VARIABLE_LENGTH = 65535;
+
+    private final IPFIXTemplateRecord templateRecord;
+    private final String[] names;
+    private final IANAAbstractDataTypes[] types;
+    private final FieldReader[] readers;
+    private final int[] lengths;
+    private final int[] fixedOffsets;
+    private final int fixedFieldsCount;
+    private final int fixedFieldsLength;
+    private final int minRecordLength;
+    private final int[] columnFields;
+    private final String[] columnNames;
+    private final IANAAbstractDataTypes[] columnTypes;
+
+    private TemplateDecoder(IPFIXTemplateRecord templateRecord, InfoModelEntity[] entities, TemplateMapping mapping) {
+        List<IPFIXFieldSpecifier> specifiers = templateRecord.getFieldSpecifiers();
+        int fieldCount = specifiers.size();
+
+        this.templateRecord = templateRecord;
+        names = new String[fieldCount];
+        types = new IANAAbstractDataTypes[fieldCount];
+        readers = new FieldReader[fieldCount];
+        lengths = new int[fieldCount];
+        fixedOffsets = new int[fieldCount];
+
+        int fixedCount = fieldCount;
+        int fixedLength = 0;
+        int minLength = 0;
+
+        for (int i = 0; i < fieldCount; i++) {
+            int fieldLength = specifiers.get(i).getFieldLength();
+
+            names[i] = entities[i].getName();
+            types[i] = entities[i].getType();
+            readers[i] = readerOf(types[i]);
+            lengths[i] = fieldLength;
+
+            if (fieldLength == VARIABLE_LENGTH) {
+                fixedCount = Math.min(fixedCount, i);
+                continue;
+            }
+
+            minLength += fieldLength;
+
+            //Смещение известно заранее, только пока не встретилось поле переменной длины
+            if (i < fixedCount) {
+                fixedOffsets[i] = fixedLength;
+                fixedLength += fieldLength;
+            }
+        }
+
+        fixedFieldsCount = fixedCount;
+        fixedFieldsLength = fixedLength;
+        minRecordLength = minLength;
+
+        int columnCount = mapping.getColumnCount();
+        columnFields = new int[columnCount];
+        columnNames = new String[columnCount];
+        columnTypes = new IANAAbstractDataTypes[columnCount];
+
+        for (int i = 0; i < columnCount; i++) {
+            InfoModelEntity column = mapping.getColumns().get(i);
+
+            columnFields[i] = mapping.getFieldIndex(i);
+            columnNames[i] = column.getName();
+            columnTypes[i] = column.getType();
+        }
+    }
+
+    /**
+     * Метод для создания декодера по шаблону, столбцы которого совпадают с полями шаблона
+     *
+     * @param templateRecord      шаблон
+     * @param infoModelRepository хранилище информационных элементов
+     * @return декодер записей данных шаблона
+     * @throws UnknownInfoModelException если для какого-либо поля шаблона не найден информационный элемент
+     * @throws MalformedMessageException если длина поля шаблона недопустима для типа информационного элемента
+     */
+    static TemplateDecoder compile(IPFIXTemplateRecord templateRecord,
+                                   InfoModelRepository infoModelRepository) throws UnknownInfoModelException,
+                                                                                   MalformedMessageException {
+        InfoModelEntity[] entities = resolve(templateRecord, infoModelRepository);
+        return new TemplateDecoder(templateRecord, entities,
+                TemplateMapping.identity(templateRecord.getType(), Arrays.asList(entities)));
+    }
+
+    /**
+     * Метод для создания декодера по шаблону и отображению его полей на столбцы схемы типа записей
+     *
+     * @param templateRecord      шаблон
+     * @param mapping             отображение полей шаблона на столбцы схемы
+     * @param infoModelRepository хранилище информационных элементов
+     * @return декодер записей данных шаблона
+     * @throws UnknownInfoModelException если для какого-либо поля шаблона не найден информационный элемент
+     * @throws MalformedMessageException если длина поля шаблона недопустима для типа информационного элемента
+     */
+    static TemplateDecoder compile(IPFIXTemplateRecord templateRecord,
+                                   TemplateMapping mapping,
+                                   InfoModelRepository infoModelRepository) throws UnknownInfoModelException,
+                                                                                   MalformedMessageException {
+        InfoModelEntity[] entities = resolve(templateRecord, infoModelRepository);
+
+        for (int i = 0; i < mapping.getColumnCount(); i++) {
+            int field = mapping.getFieldIndex(i);
+            InfoModelEntity column = mapping.getColumns().get(i);
+
+            if (field >= entities.length
+                    || field >= 0 && (entities[field].getEnterpriseNumber() != column.getEnterpriseNumber()
+                    || entities[field].getInformationElementId() != column.getInformationElementId())) {
+                throw new IllegalArgumentException(String.format("Mapping of column %s doesn't match the template",
+                        column.getName()));
+            }
+        }
+
+        return new TemplateDecoder(templateRecord, entities, mapping);
+    }
+
+    private static InfoModelEntity[] resolve(IPFIXTemplateRecord templateRecord,
+                                             InfoModelRepository infoModelRepository) throws UnknownInfoModelException,
+                                                                                             MalformedMessageException {
+        List<IPFIXFieldSpecifier> specifiers = templateRecord.getFieldSpecifiers();
+        InfoModelEntity[] entities = new InfoModelEntity[specifiers.size()];
+
+        for (int i = 0; i < entities.length; i++) {
+            IPFIXFieldSpecifier specifier = specifiers.get(i);
+
+            entities[i] = infoModelRepository.getByEnterpriseNumberAndInformationElementIdentifier(
+                    specifier.getEnterpriseNumber(),
+                    specifier.getInformationElementIdentifier());
+
+            if (entities[i] == null) {
+                throw new UnknownInfoModelException(String.format("Unknown information element: %d/%d",
+                        specifier.getEnterpriseNumber(),
+                        specifier.getInformationElementIdentifier()));
+            }
+
+            if (!entities[i].getType().isValidFieldLength(specifier.getFieldLength())) {
+                throw new MalformedMessageException(String.format("Illegal length %d of field %s of type %s",
+                        specifier.getFieldLength(),
+                        entities[i].getName(),
+                        entities[i].getType()));
+            }
+        }
+
+        return entities;
+    }
+
+    IPFIXTemplateRecord getTemplateRecord() {
+        return templateRecord;
+    }
+
+    TemplateType getType() {
+        return templateRecord.getType();
+    }
+
+    long getExportTime() {
+        return templateRecord.getExportTime();
+    }
+
+    int getFieldCount() {
+        return names.length;
+    }
+
+    int getMinRecordLength() {
+        return minRecordLength;
+    }
+
+    String getFieldName(int field) {
+        return names[field];
+    }
+
+    IANAAbstractDataTypes getFieldType(int field) {
+        return types[field];
+    }
+
+    int getColumnCount() {
+        return columnFields.length;
+    }
+
+    /**
+     * @param column номер столбца схемы
+     * @return номер поля шаблона или -1, если поле отсутствует в шаблоне
+     */
+    int getColumnField(int column) {
+        return columnFields[column];
+    }
+
+    String getColumnName(int column) {
+        return columnNames[column];
+    }
+
+    IANAAbstractDataTypes getColumnType(int column) {
+        return columnTypes[column];
+    }
+
+    /**
+     * Метод для определения границ полей одной записи данных
+     *
+     * @param payload массив байт, содержащий запись
+     * @param offset  смещение начала записи
+     * @param offsets массив, в который записываются смещения значений полей (не менее getFieldCount() элементов)
+     * @param lengths массив, в который записываются длины значений полей (не менее getFieldCount() элементов)
+     * @return смещение конца записи
+     * @throws ArrayIndexOutOfBoundsException если запись выходит за границы массива
+     */
+    int position(byte[] payload, int offset, int[] offsets, int[] lengths) {
+        for (int i = 0; i < fixedFieldsCount; i++) {
+            offsets[i] = offset + fixedOffsets[i];
+            lengths[i] = this.lengths[i];
+        }
+
+        offset += fixedFieldsLength;
+
+        for (int i = fixedFieldsCount; i < this.lengths.length; i++) {
+            int fieldLength = this.lengths[i];
+
+            if (fieldLength == VARIABLE_LENGTH) {
+                fieldLength = oneByteToInt(payload[offset]);
+                offset += 1;
+
+                if (fieldLength == 255) {
+                    fieldLength = twoBytesToInt(payload, offset);
+                    offset += 2;
+                }
+            }
+
+            offsets[i] = offset;
+            lengths[i] = fieldLength;
+            offset += fieldLength;
+        }
+
+        return offset;
+    }
+
+    /**
+     * Метод для чтения значения поля в виде объекта, соответствующего типу информационного элемента
+     *
+     * @param field   номер поля в шаблоне
+     * @param payload массив байт, содержащий запись
+     * @param offset  смещение значения поля
+     * @param length  длина значения поля
+     * @return значение поля
+     */
+    Object read(int field, byte[] payload, int offset, int length) {
+        return readers[field].read(payload, offset, length);
+    }
+
+    private static FieldReader readerOf(IANAAbstractDataTypes type) {
+        switch (type) {
+            case DATE_TIME_SECONDS:
+                return (payload, offset, length) -> epochSecondsToLocalDateTime(fourBytesToLong(payload, offset));
+            case DATE_TIME_MILLISECONDS:
+                return (payload, offset, length) -> epochMillisToLocalDateTime(eightBytesToLong(payload, offset));
+            case DATE_TIME_MICROSECONDS:
+                //Младшие 11 бит доли секунды не используются (RFC 7011, 6.1.9)
+                return (payload, offset, length) -> ntpTimestampToLocalDateTime(eightBytesToLong(payload, offset) & ~0x7FFL);
+            case DATE_TIME_NANOSECONDS:
+                return (payload, offset, length) -> ntpTimestampToLocalDateTime(eightBytesToLong(payload, offset));
+            case UNSIGNED8:
+                return (payload, offset, length) -> oneByteToInt(payload[offset]);
+            case UNSIGNED16:
+                return (payload, offset, length) -> (int) bytesToUnsignedLong(payload, offset, length);
+            case UNSIGNED32:
+                return (payload, offset, length) -> bytesToUnsignedLong(payload, offset, length);
+            case UNSIGNED64:
+                return (payload, offset, length) -> unsignedLongToNumber(bytesToUnsignedLong(payload, offset, length));
+            case SIGNED8:
+            case SIGNED16:
+                return (payload, offset, length) -> (int) bytesToSignedLong(payload, offset, length);
+            case SIGNED32:
+            case SIGNED64:
+                return (payload, offset, length) -> bytesToSignedLong(payload, offset, length);
+            case FLOAT32:
+                return (payload, offset, length) -> fourBytesToFloat(payload, offset);
+            case FLOAT64:
+                return (payload, offset, length) -> bytesToDouble(payload, offset, length);
+            case BOOLEAN:
+                return (payload, offset, length) -> byteToBoolean(payload[offset]);
+            case MAC_ADDRESS:
+                return (payload, offset, length) -> sixBytesToMacAddress(payload, offset);
+            case OCTET_ARRAY:
+                return (payload, offset, length) -> bytesToHexString(payload, offset, length);
+            case IPV4_ADDRESS:
+                return (payload, offset, length) -> fourBytesToIPv4(payload, offset);
+            case IPV6_ADDRESS:
+                return (payload, offset, length) -> sixteenBytesToIPv6(payload, offset);
+            case STRING:
+                return (payload, offset, length) -> bytesToString(payload, offset, length);
+            default:
+                throw new IllegalArgumentException(String.format("Unknown data type: %s", type));
+        }
+    }
+
+    @FunctionalInterface
+    private interface FieldReader {
+        Object read(byte[] payload, int offset, int length);
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.service;
+
+import me.alexand.scat.statistic.collector.model.RecordsBatch;
+import me.alexand.scat.statistic.collector.utils.DomainPatternsMatcher;
+import me.alexand.scat.statistic.common.entities.DomainRegex;
+import me.alexand.scat.statistic.common.entities.TrackedDomainRequests;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.math.BigInteger;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static java.time.temporal.ChronoUnit.SECONDS;
+import static me.alexand.scat.statistic.collector.model.TemplateType.CS_REQ;
+import static me.alexand.scat.statistic.collector.utils.BytesConvertUtils.intToIPv4;
+import static me.alexand.scat.statistic.collector.utils.DateTimeUtils.EXPORTER_ZONE_OFFSET;
+import static me.alexand.scat.statistic.collector.utils.DateTimeUtils.epochSecondsToLocalDateTime;
+
+/**
+ * Учет веб-запросов на отслеживаемые доменные имена в момент получения записей, без выборки из временного буфера.
+ * <p>
+ * Имя хоста каждой записи CS_REQ за один проход сравнивается со всеми шаблонами доменных имен, заданными
+ * методом {@link #setDomainRegexps(List)} (см. {@link DomainPatternsMatcher}). Для совпавших записей
+ * накапливаются время первого и последнего запроса и количество запросов по дате, шаблону, адресу и логину
+ * абонента. Метод {@link #flush()} выгружает
+ * накопленные значения, поэтому затраты на учет не зависят от количества записей во временном буфере.
+ *
+ * @author asidorov84@gmail.com
+ */
+
+@Component
+public final class TrackedDomainsAggregator {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TrackedDomainsAggregator.class);
+
+    private static final int CS_EVENT_TIME = 0;
+    private static final int CS_LOGIN = 1;
+    private static final int CS_IP_SRC = 2;
+    private static final int CS_HOSTNAME = 4;
+    private static final long SECONDS_PER_DAY = 86400;
+
+    //Шаблоны заменяются целиком, поэтому пакет всегда проверяется по одному набору шаблонов
+    private volatile DomainPatterns domainPatterns = new DomainPatterns(new DomainRegex[0], new Pattern[0]);
+
+    //Первое и последнее время и количество запросов по дате, шаблону, адресу и логину
+    private Map<TrackedKey, long[]> requests = new ConcurrentHashMap<>();
+
+    //Пакеты учитываются под блокировкой чтения, выгрузка - под блокировкой записи,
+    //чтобы значения не изменились после выгрузки
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Метод для задания отслеживаемых шаблонов доменных имен. Учитываются только активные шаблоны,
+     * шаблоны с ошибкой синтаксиса пропускаются.
+     *
+     * @param domainRegexps шаблоны доменных имен
+     */
+    public void setDomainRegexps(List<DomainRegex> domainRegexps) {
+        Objects.requireNonNull(domainRegexps);
+
+        List<DomainRegex> regexps = new ArrayList<>();
+        List<Pattern> patterns = new ArrayList<>();
+
+        for (DomainRegex domainRegex : domainRegexps) {
+            if (!domainRegex.isActive()) {
+                continue;
+            }
+
+            //Шаблоны приводятся к тому же виду, что и в запросе TransitionalBufferRepositoryImpl
+            String pattern = domainRegex.getPattern().toLowerCase().trim();
+
+            try {
+                patterns.add(Pattern.compile(pattern));
+            } catch (PatternSyntaxException e) {
+                LOGGER.error(e.getMessage());
+                continue;
+            }
+
+            regexps.add(DomainRegex.builder()
+                    .id(domainRegex.getId())
+                    .pattern(pattern)
+                    .dateAdded(domainRegex.getDateAdded().truncatedTo(SECONDS))
+                    .active(true)
+                    .build());
+        }
+
+        domainPatterns = new DomainPatterns(regexps.toArray(new DomainRegex[0]), patterns.toArray(new Pattern[0]));
+    }
+
+    /**
+     * Метод для учета записей пакета. Пакеты других типов, кроме CS_REQ, пропускаются.
+     *
+     * @param batch пакет записей
+     */
+    public void add(RecordsBatch batch) {
+        DomainPatterns current = domainPatterns;
+
+        if (batch.getType() != CS_REQ || batch.size() == 0 || current.matcher.size() == 0) {
+            return;
+        }
+
+        //Записи пакета сначала агрегируются локально, чтобы реже обновлять общую таблицу
+        Map<TrackedKey, long[]> batchRequests = new HashMap<>();
+        int[] matches = new int[current.matcher.size()];
+
+        for (int row = 0; row < batch.size(); row++) {
+            if (batch.isNull(row, CS_HOSTNAME) || batch.isNull(row, CS_EVENT_TIME)) {
+                continue;
+            }
+
+            String hostname = batch.getString(row, CS_HOSTNAME).toLowerCase();
+            long eventTime = batch.getLong(row, CS_EVENT_TIME);
+
+            int matchesCount = current.matcher.match(hostname, matches);
+
+            for (int i = 0; i < matchesCount; i++) {
+                TrackedKey key = new TrackedKey(
+                        Math.floorDiv(eventTime + EXPORTER_ZONE_OFFSET.getTotalSeconds(), SECONDS_PER_DAY),
+                        current.regexps[matches[i]],
+                        batch.isNull(row, CS_IP_SRC) ? null : intToIPv4(batch.getInt(row, CS_IP_SRC)),
+                        batch.isNull(row, CS_LOGIN) ? null : batch.getString(row, CS_LOGIN));
+
+                batchRequests.merge(key, new long[]{eventTime, eventTime, 1}, TrackedDomainsAggregator::mergeStats);
+            }
+        }
+
+        if (batchRequests.isEmpty()) {
+            return;
+        }
+
+        lock.readLock().lock();
+
+        try {
+            batchRequests.forEach((key, stats) -> requests.merge(key, stats, TrackedDomainsAggregator::mergeStats));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Метод для выгрузки значений, накопленных с момента предыдущей выгрузки.
+     * Количество запросов является приращением к ранее выгруженному.
+     *
+     * @return запросы на отслеживаемые доменные имена
+     */
+    public List<TrackedDomainRequests> flush() {
+        Map<TrackedKey, long[]> flushed;
+
+        lock.writeLock().lock();
+
+        try {
+            flushed = requests;
+            requests = new ConcurrentHashMap<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        List<TrackedDomainRequests> result = new ArrayList<>(flushed.size());
+
+        flushed.forEach((key, stats) -> result.add(TrackedDomainRequests.builder()
+                .date(LocalDate.ofEpochDay(key.day))
+                .domainRegex(key.domainRegex)
+                .address(key.address)
+                .login(key.login)
+                .firstTime(epochSecondsToLocalDateTime(stats[0]).toLocalTime())
+                .lastTime(epochSecondsToLocalDateTime(stats[1]).toLocalTime())
+                .count(BigInteger.valueOf(stats[2]))
+                .build()));
+
+        return result;
+    }
+
+    private static long[] mergeStats(long[] stats, long[] other) {
+        stats[0] = Math.min(stats[0], other[0]);
+        stats[1] = Math.max(stats[1], other[1]);
+        stats[2] += other[2];
+        return stats;
+    }
+
+    private static final class DomainPatterns {
+        private final DomainRegex[] regexps;
+        private final DomainPatternsMatcher matcher;
+
+        DomainPatterns(DomainRegex[] regexps, Pattern[] patterns) {
+            this.regexps = regexps;
+            this.matcher = new DomainPatternsMatcher(patterns);
+        }
+    }
+
+    private static final class TrackedKey {
+        private final long day;
+        private final DomainRegex domainRegex;
+        private final String address;
+        private final String login;
+
+        TrackedKey(long day, DomainRegex domainRegex, String address, String login) {
+            this.day = day;
+            this.domainRegex = domainRegex;
+            this.address = address;
+            this.login = login;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            TrackedKey that = (TrackedKey) o;
+            return day == that.day &&
+                    domainRegex.equals(that.domainRegex) &&
+                    Objects.equals(address, that.address) &&
+                    Objects.equals(login, that.login);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(day, domainRegex, address, login);
+        }
+    }
+}
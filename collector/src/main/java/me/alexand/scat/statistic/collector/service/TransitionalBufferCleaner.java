@@ -26,19 +26,24 @@ import me.alexand.scat.statistic.collector.repository.TransitionalBufferReposito
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 
 import static me.alexand.scat.statistic.collector.utils.Constants.INTERIM_BUFFER_CLEANER_RUN_FREQUENCY;
-import static me.alexand.scat.statistic.collector.utils.Constants.INTERIM_BUFFER_DEPTH;
 import static me.alexand.scat.statistic.collector.utils.DateTimeUtils.DATE_TIME_FORMATTER;
 import static me.alexand.scat.statistic.collector.utils.DateTimeUtils.getFormattedDateTime;
 
 /**
  * Класс для очистки буфера от старых IPFIX-записей
  * Единственный метод
+ * <p>
+ * Глубина буфера задается параметром {@code buffer.depth.minutes}. Если записи буфера распределяются по секциям
+ * (см. {@code buffer.partition.seconds}), граница удаления выравнивается по началу секции, чтобы истекшие записи
+ * удалялись целыми секциями без построчного удаления записей граничной секции.
  *
  * @author asidorov84@gmail.com
  */
@@ -48,17 +53,26 @@ public class TransitionalBufferCleaner {
     private static final Logger LOGGER = LoggerFactory.getLogger(TransitionalBufferCleaner.class);
 
     private TransitionalBufferRepository transitionalBufferRepository;
+    private final int depthMinutes;
+    private final int partitionSeconds;
 
     @Autowired
-    public TransitionalBufferCleaner(TransitionalBufferRepository transitionalBufferRepository) {
-        this.transitionalBufferRepository = transitionalBufferRepository;
+    public TransitionalBufferCleaner(TransitionalBufferRepository transitionalBufferRepository,
+                                     @Value("${buffer.depth.minutes}") int depthMinutes,
+                                     @Value("${buffer.partition.seconds}") int partitionSeconds) {
+        if (depthMinutes <= 0) {
+            throw new IllegalArgumentException(String.format("Illegal depth of buffer: %d minutes", depthMinutes));
+        }
 
+        this.transitionalBufferRepository = transitionalBufferRepository;
+        this.depthMinutes = depthMinutes;
+        this.partitionSeconds = partitionSeconds;
     }
 
     @Scheduled(fixedRate = INTERIM_BUFFER_CLEANER_RUN_FREQUENCY, initialDelay = INTERIM_BUFFER_CLEANER_RUN_FREQUENCY)
     public void clean() {
         LOGGER.info("Start cleaner...");
-        LocalDateTime beforeEventTime = LocalDateTime.now().minusMinutes(INTERIM_BUFFER_DEPTH);
+        LocalDateTime beforeEventTime = getBeforeEventTime(LocalDateTime.now());
 
         LOGGER.info("\tdeleting all records of all types in buffer before {}", beforeEventTime.format(DATE_TIME_FORMATTER));
 
@@ -83,4 +97,25 @@ public class TransitionalBufferCleaner {
         LOGGER.info("\ttotal records deleted: {}", totalRecordsDeleted);
         LOGGER.info("Stop cleaner\n");
     }
+
+    /**
+     * Метод для получения отметки времени, записи до которой (включительно) удаляются.<br>
+     * Интервалы секций отсчитываются от начала эпохи, поэтому выравнивание совпадает с границами секций,
+     * если длина интервала делит смещение часового пояса (например, 10 или 60 секунд).
+     *
+     * @param now текущее время
+     * @return отметка времени, на 1 наносекунду предшествующая началу секции, если записи распределяются по секциям
+     */
+    LocalDateTime getBeforeEventTime(LocalDateTime now) {
+        LocalDateTime beforeEventTime = now.minusMinutes(depthMinutes);
+
+        if (partitionSeconds <= 0) {
+            return beforeEventTime;
+        }
+
+        long seconds = beforeEventTime.toEpochSecond(ZoneOffset.UTC);
+        long partitionStart = seconds - Math.floorMod(seconds, partitionSeconds);
+
+        return LocalDateTime.ofEpochSecond(partitionStart, 0, ZoneOffset.UTC).minusNanos(1);
+    }
 }
@@ -21,44 +21,75 @@
 
 package me.alexand.scat.statistic.collector.service;
 
-import me.alexand.scat.statistic.collector.model.IPFIXDataRecord;
+import me.alexand.scat.statistic.collector.model.RecordsBatch;
 import me.alexand.scat.statistic.collector.model.TemplateType;
 import me.alexand.scat.statistic.collector.repository.TransitionalBufferRepository;
+import me.alexand.scat.statistic.collector.spill.RecordsBatchCodec;
+import me.alexand.scat.statistic.collector.spill.SegmentLog;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * Запись пакетов записей во временный буфер, отдельным потоком для каждого типа шаблона.
+ * <p>
+ * Если {@code records.buffer.spill} равен true, пакеты записей, не поместившиеся в очередь записи, сохраняются
+ * в журнал на диске ({@link SegmentLog}) и записываются во временный буфер, когда очередь опустеет.
+ *
  * @author asidorov84@gmail.com
  */
 
 @Component
 public final class TransitionalBufferRecorder {
     private static final Logger LOGGER = LoggerFactory.getLogger(TransitionalBufferRecorder.class);
+    private static final long REPLAY_IDLE_PERIOD_MILLIS = 100;
 
     private final Map<TemplateType, Thread> recorderThreads = new HashMap<>();
-    private final Map<TemplateType, BlockingQueue<List<IPFIXDataRecord>>> recordsBuffers = new HashMap<>();
+    private final Map<TemplateType, BlockingQueue<RecordsBatch>> recordsBuffers = new HashMap<>();
+    private final Map<TemplateType, SegmentLog> spillLogs = new HashMap<>();
     private final TransitionalBufferRepository transitionalBufferRepository;
     private final StatCollector statCollector;
+    private final ClickCountAggregator clickCountAggregator;
+    private final TrackedDomainsAggregator trackedDomainsAggregator;
 
     @Autowired
     public TransitionalBufferRecorder(@Value("${records.buffer.capacity}") int outputBufferSize,
+                                      @Value("${records.buffer.spill}") boolean spill,
+                                      @Value("${spill.directory}") String spillDirectory,
+                                      @Value("${spill.segment.size}") int spillSegmentSize,
+                                      @Value("${spill.max.segments}") int spillMaxSegments,
                                       TransitionalBufferRepository transitionalBufferRepository,
-                                      StatCollector statCollector) {
+                                      StatCollector statCollector,
+                                      ClickCountAggregator clickCountAggregator,
+                                      TrackedDomainsAggregator trackedDomainsAggregator) throws IOException {
         LOGGER.info("Initializing recorders...");
         this.transitionalBufferRepository = transitionalBufferRepository;
         this.statCollector = statCollector;
+        this.clickCountAggregator = clickCountAggregator;
+        this.trackedDomainsAggregator = trackedDomainsAggregator;
 
         for (TemplateType templateType : TemplateType.values()) {
             recordsBuffers.put(templateType, new ArrayBlockingQueue<>(outputBufferSize));
+
+            if (spill) {
+                Path directory = Paths.get(spillDirectory);
+                SegmentLog log = new SegmentLog(directory, "records-" + templateType.getName(), spillSegmentSize,
+                        spillMaxSegments);
+                spillLogs.put(templateType, log);
+                statCollector.registerSpillLog(log);
+            }
+
             String threadName = String.format("%s-recorder-thread", templateType.getName().toLowerCase());
             Thread recorderThread = new Thread(new Recorder(templateType), threadName);
             recorderThreads.put(templateType, recorderThread);
@@ -66,12 +97,34 @@ public final class TransitionalBufferRecorder {
         }
     }
 
-    public void transfer(TemplateType type, List<IPFIXDataRecord> records) {
-        if (!recordsBuffers.get(type).offer(records)) {
+    public void transfer(RecordsBatch batch) {
+        TemplateType type = batch.getType();
+        //Запросы и обращения к отслеживаемым доменам учитываются до записи в буфер,
+        //в том числе если пакет будет отброшен при переполнении
+        clickCountAggregator.add(batch);
+        trackedDomainsAggregator.add(batch);
+
+        if (!recordsBuffers.get(type).offer(batch) && !spill(type, batch)) {
             statCollector.registerRecorderBufferOverflow(type);
         }
     }
 
+    private boolean spill(TemplateType type, RecordsBatch batch) {
+        SegmentLog log = spillLogs.get(type);
+
+        if (log == null) {
+            return false;
+        }
+
+        try {
+            byte[] data = RecordsBatchCodec.encode(batch);
+            return log.append(data, 0, data.length);
+        } catch (IOException e) {
+            LOGGER.error(e.getMessage());
+            return false;
+        }
+    }
+
     private class Recorder implements Runnable {
         private final TemplateType templateType;
 
@@ -81,18 +134,52 @@ public final class TransitionalBufferRecorder {
 
         @Override
         public void run() {
-            BlockingQueue<List<IPFIXDataRecord>> buffer = recordsBuffers.get(templateType);
+            BlockingQueue<RecordsBatch> buffer = recordsBuffers.get(templateType);
+            SegmentLog spillLog = spillLogs.get(templateType);
             LOGGER.info("start recorder with template type: {}", templateType);
 
             try {
                 while (!recorderThreads.get(templateType).isInterrupted()) {
-                    List<IPFIXDataRecord> records = buffer.take();
-                    transitionalBufferRepository.save(templateType, records);
+                    RecordsBatch batch;
+
+                    if (spillLog == null) {
+                        batch = buffer.take();
+                    } else {
+                        //Когда очередь пуста, записываются пакеты записей, сохраненные в журнал при ее переполнении
+                        batch = buffer.poll(REPLAY_IDLE_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+
+                        if (batch == null) {
+                            batch = replay(spillLog);
+                        }
+                    }
+
+                    if (batch != null) {
+                        transitionalBufferRepository.save(batch);
+                    }
                 }
 
             } catch (InterruptedException e) {
                 LOGGER.error(e.getMessage());
             }
         }
+
+        private RecordsBatch replay(SegmentLog spillLog) {
+            int length = spillLog.peekLength();
+
+            if (length < 0) {
+                return null;
+            }
+
+            byte[] data = new byte[length];
+            spillLog.read(data);
+            spillLog.remove();
+
+            try {
+                return RecordsBatchCodec.decode(data, length);
+            } catch (IOException e) {
+                LOGGER.error(e.getMessage());
+                return null;
+            }
+        }
     }
 }
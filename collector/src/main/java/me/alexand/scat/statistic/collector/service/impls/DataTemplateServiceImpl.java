@@ -24,35 +24,69 @@ package me.alexand.scat.statistic.collector.service.impls;
 import me.alexand.scat.statistic.collector.model.IPFIXFieldSpecifier;
 import me.alexand.scat.statistic.collector.model.InfoModelEntity;
 import me.alexand.scat.statistic.collector.model.SCATDataTemplate;
+import me.alexand.scat.statistic.collector.model.TemplateMapping;
 import me.alexand.scat.statistic.collector.model.TemplateType;
 import me.alexand.scat.statistic.collector.repository.InfoModelRepository;
 import me.alexand.scat.statistic.collector.repository.SCATDataTemplateRepository;
 import me.alexand.scat.statistic.collector.service.DataTemplateService;
 import me.alexand.scat.statistic.collector.utils.exceptions.UnknownInfoModelException;
 import me.alexand.scat.statistic.collector.utils.exceptions.UnknownTemplateTypeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
-import static java.util.stream.Collectors.toList;
+import static me.alexand.scat.statistic.collector.model.IANAAbstractDataTypes.OCTET_ARRAY;
+import static me.alexand.scat.statistic.collector.utils.FingerprintUtils.elementsFingerprintOf;
+import static me.alexand.scat.statistic.collector.utils.FingerprintUtils.fingerprintOf;
 import static me.alexand.scat.statistic.collector.utils.SCATDataTemplateEntities.DATA_TEMPLATE_LIST;
 
 /**
+ * Сервис определения типа записей по шаблону IPFIX.
+ * <p>
+ * Результат определения кэшируется по отпечатку полей шаблона (информационные элементы и длины полей,
+ * см. FingerprintUtils), поэтому шаблоны, повторно объявляемые экспортерами, разрешаются одним поиском
+ * в хэш-таблице и сравнением спецификаторов, без обращений к хранилищам. Шаблон АПК "СКАТ", совпадающий
+ * с шаблоном IPFIX, ищется по отпечатку информационных элементов в индексе {@link SCATDataTemplateRepository}.
+ * <p>
+ * Если включено обнаружение шаблонов ({@code templates.discovery.enabled}), шаблон, не совпадающий ни с одним
+ * из шаблонов АПК "СКАТ", относится к типу записей, схема которого однозначно содержит большинство его полей.
+ * Поля шаблона, отсутствующие в схеме, добавляются в нее новыми столбцами (хранилище для них создается
+ * репозиторием временного буфера при записи пакета), а неизвестные информационные элементы регистрируются
+ * как массивы байт. При дополнении схемы из кэша удаляются все отображения на ее прежние столбцы, поэтому
+ * повторно объявленные шаблоны этого типа записей отображаются на текущую схему.
+ *
  * @author asidorov84@gmail.com
+ * @see TemplateMapping
  */
 
 @Service
 public class DataTemplateServiceImpl implements DataTemplateService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DataTemplateServiceImpl.class);
+
     private SCATDataTemplateRepository SCATDataTemplateRepository;
     private InfoModelRepository infoModelRepository;
+    private final boolean discoveryEnabled;
+    private final Map<Long, ResolvedTemplate> mappings = new ConcurrentHashMap<>();
 
-    @Autowired
     public DataTemplateServiceImpl(SCATDataTemplateRepository SCATDataTemplateRepository,
                                    InfoModelRepository infoModelRepository) {
+        this(SCATDataTemplateRepository, infoModelRepository, false);
+    }
+
+    @Autowired
+    public DataTemplateServiceImpl(SCATDataTemplateRepository SCATDataTemplateRepository,
+                                   InfoModelRepository infoModelRepository,
+                                   @Value("${templates.discovery.enabled}") boolean discoveryEnabled) {
         this.SCATDataTemplateRepository = SCATDataTemplateRepository;
         this.infoModelRepository = infoModelRepository;
+        this.discoveryEnabled = discoveryEnabled;
     }
 
     @Override
@@ -61,36 +95,199 @@ public class DataTemplateServiceImpl implements DataTemplateService {
             SCATDataTemplateRepository.save(dataTemplate);
             dataTemplate.getSpecifiers().forEach(infoModelRepository::save);
         });
+
+        mappings.clear();
     }
 
     @Override
-    public TemplateType getTypeByIPFIXSpecifiers(List<IPFIXFieldSpecifier> fieldSpecifiers)
+    public TemplateMapping getMapping(List<IPFIXFieldSpecifier> fieldSpecifiers)
+            throws UnknownInfoModelException, UnknownTemplateTypeException {
+        long fingerprint = fingerprintOf(fieldSpecifiers);
+        ResolvedTemplate resolved = mappings.get(fingerprint);
+
+        if (resolved != null && resolved.specifiers.equals(fieldSpecifiers)) {
+            return resolved.mapping;
+        }
+
+        //Определение выполняется редко, но может изменить схему, поэтому выполняется последовательно
+        synchronized (this) {
+            resolved = mappings.get(fingerprint);
+
+            //При совпадении отпечатков разных шаблонов в кэше остается последний из них
+            if (resolved == null || !resolved.specifiers.equals(fieldSpecifiers)) {
+                resolved = new ResolvedTemplate(new ArrayList<>(fieldSpecifiers), resolve(fieldSpecifiers));
+                mappings.put(fingerprint, resolved);
+            }
+
+            return resolved.mapping;
+        }
+    }
+
+    private TemplateMapping resolve(List<IPFIXFieldSpecifier> fieldSpecifiers)
             throws UnknownInfoModelException, UnknownTemplateTypeException {
-        List<InfoModelEntity> infoModelEntities;
-
-        try {
-            infoModelEntities = fieldSpecifiers.stream()
-                    .map(specifier -> {
-                        InfoModelEntity entity = infoModelRepository.getByEnterpriseNumberAndInformationElementIdentifier(
-                                specifier.getEnterpriseNumber(),
-                                specifier.getInformationElementIdentifier()
-                        );
-
-                        if (entity == null) {
-                            throw new RuntimeException();
-                        }
-
-                        return entity;
-                    })
-                    .collect(toList());
-        } catch (RuntimeException e) {
-            throw new UnknownInfoModelException(e.getMessage());
-        }
-
-        return SCATDataTemplateRepository.getAll().stream()
-                .filter(template -> Objects.equals(template.getSpecifiers(), infoModelEntities))
-                .map(SCATDataTemplate::getType)
-                .findFirst()
-                .orElseThrow(() -> new UnknownTemplateTypeException("Unknown template type"));
+        List<InfoModelEntity> infoModelEntities = new ArrayList<>(fieldSpecifiers.size());
+
+        for (IPFIXFieldSpecifier specifier : fieldSpecifiers) {
+            infoModelEntities.add(getInfoModelEntity(specifier));
+        }
+
+        SCATDataTemplate template = SCATDataTemplateRepository.getByFingerprint(elementsFingerprintOf(fieldSpecifiers));
+
+        if (template != null && sameElements(template.getSpecifiers(), infoModelEntities)) {
+            return TemplateMapping.identity(template.getType(), template.getSpecifiers());
+        }
+
+        if (!discoveryEnabled) {
+            throw new UnknownTemplateTypeException("Unknown template type");
+        }
+
+        return discover(infoModelEntities);
+    }
+
+    private TemplateMapping discover(List<InfoModelEntity> infoModelEntities) throws UnknownTemplateTypeException {
+        SCATDataTemplate family = null;
+        int bestScore = 0;
+        boolean ambiguous = false;
+
+        for (SCATDataTemplate template : SCATDataTemplateRepository.getAll()) {
+            int score = 0;
+
+            for (InfoModelEntity column : template.getSpecifiers()) {
+                if (indexOf(infoModelEntities, column) >= 0) {
+                    score++;
+                }
+            }
+
+            if (score > bestScore) {
+                family = template;
+                bestScore = score;
+                ambiguous = false;
+            } else if (score == bestScore) {
+                ambiguous = true;
+            }
+        }
+
+        if (family == null || ambiguous || bestScore * 2 <= family.getSpecifiers().size()) {
+            throw new UnknownTemplateTypeException("Unknown template type");
+        }
+
+        List<InfoModelEntity> columns = new ArrayList<>(family.getSpecifiers());
+
+        for (InfoModelEntity entity : infoModelEntities) {
+            if (indexOf(columns, entity) < 0) {
+                columns.add(toColumn(entity));
+            }
+        }
+
+        if (columns.size() > family.getSpecifiers().size()) {
+            SCATDataTemplateRepository.save(SCATDataTemplate.builder()
+                    .type(family.getType())
+                    .specifiers(columns)
+                    .build());
+
+            //Отображения на прежнюю схему определяются заново, иначе пакеты записей одного типа имели бы разные столбцы
+            TemplateType type = family.getType();
+            mappings.values().removeIf(resolved -> resolved.mapping.getType() == type);
+
+            LOGGER.info("...schema of {} records extended to {} columns", family.getType(), columns.size());
+        }
+
+        int[] fieldIndexes = new int[columns.size()];
+
+        for (int i = 0; i < fieldIndexes.length; i++) {
+            fieldIndexes[i] = indexOf(infoModelEntities, columns.get(i));
+        }
+
+        return TemplateMapping.builder()
+                .type(family.getType())
+                .columns(columns)
+                .fieldIndexes(fieldIndexes)
+                .build();
+    }
+
+    private InfoModelEntity getInfoModelEntity(IPFIXFieldSpecifier specifier) throws UnknownInfoModelException {
+        InfoModelEntity entity = infoModelRepository.getByEnterpriseNumberAndInformationElementIdentifier(
+                specifier.getEnterpriseNumber(),
+                specifier.getInformationElementIdentifier());
+
+        if (entity != null) {
+            return entity;
+        }
+
+        if (!discoveryEnabled) {
+            throw new UnknownInfoModelException(String.format("Unknown information element: %d/%d",
+                    specifier.getEnterpriseNumber(),
+                    specifier.getInformationElementIdentifier()));
+        }
+
+        //Значения неизвестного информационного элемента сохраняются как массив байт
+        entity = InfoModelEntity.builder()
+                .enterpriseNumber(specifier.getEnterpriseNumber())
+                .informationElementId(specifier.getInformationElementIdentifier())
+                .type(OCTET_ARRAY)
+                .name("ie" + specifier.getEnterpriseNumber() + "_" + specifier.getInformationElementIdentifier())
+                .build();
+
+        infoModelRepository.save(entity);
+        LOGGER.info("...registered unknown information element {}/{}",
+                specifier.getEnterpriseNumber(),
+                specifier.getInformationElementIdentifier());
+
+        return entity;
+    }
+
+    //Столбец схемы для поля, добавленного экспортером: имя столбца уникально и пригодно для SQL
+    private static InfoModelEntity toColumn(InfoModelEntity entity) {
+        String name = entity.getName()
+                .replaceAll("([a-z0-9])([A-Z])", "$1_$2")
+                .toLowerCase()
+                .replaceAll("[^a-z0-9_]", "_");
+
+        return InfoModelEntity.builder()
+                .enterpriseNumber(entity.getEnterpriseNumber())
+                .informationElementId(entity.getInformationElementId())
+                .type(entity.getType())
+                .name(name + "_" + entity.getInformationElementId())
+                .build();
+    }
+
+    private static boolean sameElements(List<InfoModelEntity> columns, List<InfoModelEntity> entities) {
+        if (columns.size() != entities.size()) {
+            return false;
+        }
+
+        for (int i = 0; i < columns.size(); i++) {
+            if (!sameElement(columns.get(i), entities.get(i))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    //Поля шаблона и столбцы схемы сопоставляются по информационному элементу, без учета имени
+    private static boolean sameElement(InfoModelEntity column, InfoModelEntity entity) {
+        return column.getEnterpriseNumber() == entity.getEnterpriseNumber()
+                && column.getInformationElementId() == entity.getInformationElementId();
+    }
+
+    private static int indexOf(List<InfoModelEntity> entities, InfoModelEntity entity) {
+        for (int i = 0; i < entities.size(); i++) {
+            if (sameElement(entities.get(i), entity)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static final class ResolvedTemplate {
+        private final List<IPFIXFieldSpecifier> specifiers;
+        private final TemplateMapping mapping;
+
+        private ResolvedTemplate(List<IPFIXFieldSpecifier> specifiers, TemplateMapping mapping) {
+            this.specifiers = specifiers;
+            this.mapping = mapping;
+        }
     }
 }
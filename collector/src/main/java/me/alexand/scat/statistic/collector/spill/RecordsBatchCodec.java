@@ -0,0 +1,157 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.spill;
+
+import me.alexand.scat.statistic.collector.model.IANAAbstractDataTypes;
+import me.alexand.scat.statistic.collector.model.RecordsBatch;
+import me.alexand.scat.statistic.collector.model.TemplateType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Преобразование пакета записей в массив байт для временного хранения в {@link SegmentLog} и обратно.
+ * <p>
+ * Формат: тип шаблона, количество столбцов, имя, тип IANA и признак наличия отсутствующих значений каждого
+ * столбца, количество строк, затем значения строк по порядку. Значения хранятся в том же виде, что и в пакете:
+ * long, int или длина и байты строки. Значению столбца с признаком предшествует байт: 1 - значение отсутствует
+ * (и далее не записывается), 0 - значение присутствует.
+ *
+ * @author asidorov84@gmail.com
+ */
+public interface RecordsBatchCodec {
+    int MAX_STRING_LENGTH = 65535;
+
+    static byte[] encode(RecordsBatch batch) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            int columnCount = batch.getColumnCount();
+
+            out.writeByte(batch.getType().ordinal());
+            out.writeShort(columnCount);
+
+            for (int column = 0; column < columnCount; column++) {
+                out.writeUTF(batch.getColumnName(column));
+                out.writeByte(batch.getColumnType(column).ordinal());
+                out.writeBoolean(batch.hasNulls(column));
+            }
+
+            out.writeInt(batch.size());
+
+            for (int row = 0; row < batch.size(); row++) {
+                for (int column = 0; column < columnCount; column++) {
+                    if (batch.hasNulls(column)) {
+                        boolean isNull = batch.isNull(row, column);
+                        out.writeBoolean(isNull);
+
+                        if (isNull) {
+                            continue;
+                        }
+                    }
+
+                    switch (batch.getColumnKind(column)) {
+                        case LONG:
+                            out.writeLong(batch.getLong(row, column));
+                            break;
+                        case INT:
+                            out.writeInt(batch.getInt(row, column));
+                            break;
+                        case STRING:
+                            String reference = batch.getStringReference(row, column);
+
+                            if (reference != null) {
+                                byte[] value = reference.getBytes(Charset.defaultCharset());
+                                out.writeShort(value.length);
+                                out.write(value);
+                            } else {
+                                int length = batch.getStringLength(row, column);
+                                out.writeShort(length);
+                                out.write(batch.getArena(), batch.getStringOffset(row, column), length);
+                            }
+                            break;
+                    }
+                }
+            }
+        }
+
+        return bytes.toByteArray();
+    }
+
+    static RecordsBatch decode(byte[] data, int length) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 0, length))) {
+            TemplateType type = TemplateType.values()[in.readUnsignedByte()];
+            int columnCount = in.readUnsignedShort();
+            String[] columnNames = new String[columnCount];
+            IANAAbstractDataTypes[] columnTypes = new IANAAbstractDataTypes[columnCount];
+            boolean[] nullable = new boolean[columnCount];
+
+            for (int column = 0; column < columnCount; column++) {
+                columnNames[column] = in.readUTF();
+                columnTypes[column] = IANAAbstractDataTypes.values()[in.readUnsignedByte()];
+                nullable[column] = in.readBoolean();
+            }
+
+            int size = in.readInt();
+
+            RecordsBatch batch = RecordsBatch.builder()
+                    .type(type)
+                    .columnNames(columnNames)
+                    .columnTypes(columnTypes)
+                    .capacity(Math.max(size, 1))
+                    .build();
+
+            byte[] buffer = new byte[MAX_STRING_LENGTH];
+
+            for (int row = 0; row < size; row++) {
+                for (int column = 0; column < columnCount; column++) {
+                    if (nullable[column] && in.readBoolean()) {
+                        batch.setNull(column);
+                        continue;
+                    }
+
+                    switch (batch.getColumnKind(column)) {
+                        case LONG:
+                            batch.setLong(column, in.readLong());
+                            break;
+                        case INT:
+                            batch.setInt(column, in.readInt());
+                            break;
+                        case STRING:
+                            int stringLength = in.readUnsignedShort();
+                            in.readFully(buffer, 0, stringLength);
+                            batch.setString(column, buffer, 0, stringLength);
+                            break;
+                    }
+                }
+
+                batch.endRow();
+            }
+
+            return batch;
+        }
+    }
+}
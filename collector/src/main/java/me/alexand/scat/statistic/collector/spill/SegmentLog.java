@@ -0,0 +1,308 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.spill;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Журнал для временного хранения на диске данных, не поместившихся во внутренние буферы коллектора.
+ * <p>
+ * Журнал состоит из сегментов - файлов фиксированного размера, отображенных в память. Записи только добавляются
+ * в конец последнего сегмента (каждая запись предваряется своей длиной), поэтому запись выполняется с
+ * последовательной скоростью. Когда в последнем сегменте не хватает места, запись продолжается в следующем сегменте.
+ * Чтение выполняется с начала первого сегмента, полностью прочитанный сегмент не удаляется, а возвращается в кольцо
+ * свободных сегментов и затем заполняется заново с начала. Файлы сегментов создаются по мере необходимости, но не
+ * более {@code maxSegments}, и удаляются только при закрытии журнала: удаленный файл остается отображенным в память
+ * до сборки мусора и продолжает занимать диск, поэтому объем диска ограничен только при переиспользовании файлов.
+ * Если все сегменты заполнены, запись отклоняется.
+ * <p>
+ * Журнал не предназначен для восстановления данных после перезапуска коллектора: сегменты, оставшиеся от
+ * предыдущего запуска, удаляются при создании журнала.
+ * <p>
+ * Все операции синхронизированы. Чтение рассчитано на одного потребителя: запись сначала читается методом
+ * {@link #read(byte[])} и удаляется из журнала методом {@link #remove()} только после того, как потребитель
+ * успешно ее обработал.
+ *
+ * @author asidorov84@gmail.com
+ */
+public final class SegmentLog implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SegmentLog.class);
+    private static final int RECORD_HEADER_LENGTH = 4;
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Path directory;
+    private final String name;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    //Прочитанные сегменты, готовые к повторному заполнению
+    private final Deque<Segment> freeSegments = new ArrayDeque<>();
+
+    private final AtomicLong spilledBytesCounter = new AtomicLong(0);
+    private final AtomicLong replayedBytesCounter = new AtomicLong(0);
+    private final AtomicLong rejectedRecordsCounter = new AtomicLong(0);
+
+    private long segmentsCounter = 0;
+    private long recordsCount = 0;
+
+    public SegmentLog(Path directory, String name, int segmentSize, int maxSegments) throws IOException {
+        if (segmentSize <= RECORD_HEADER_LENGTH) {
+            throw new IllegalArgumentException(String.format("Illegal value of segment size: %d", segmentSize));
+        }
+
+        if (maxSegments <= 0) {
+            throw new IllegalArgumentException(String.format("Illegal value of max segments: %d", maxSegments));
+        }
+
+        this.directory = directory;
+        this.name = name;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+
+        Files.createDirectories(directory);
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, name + "-*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                LOGGER.info("Deleting stale spill segment: {}", path);
+                Files.delete(path);
+            }
+        }
+
+        LOGGER.debug("Initialize spill log {} in {}: {} segments of {} bytes", name, directory, maxSegments, segmentSize);
+    }
+
+    /**
+     * Добавить запись в конец журнала.
+     *
+     * @param data   массив с данными
+     * @param offset начало записи в массиве
+     * @param length длина записи
+     * @return true, если запись добавлена, false если журнал заполнен или запись длиннее сегмента
+     */
+    public synchronized boolean append(byte[] data, int offset, int length) {
+        int recordLength = RECORD_HEADER_LENGTH + length;
+
+        if (recordLength > segmentSize) {
+            rejectedRecordsCounter.incrementAndGet();
+            return false;
+        }
+
+        Segment segment = segments.peekLast();
+
+        if (segment == null || segmentSize - segment.writePosition < recordLength) {
+            if (segments.size() == maxSegments) {
+                rejectedRecordsCounter.incrementAndGet();
+                return false;
+            }
+
+            segment = freeSegments.pollFirst();
+
+            if (segment == null) {
+                try {
+                    segment = createSegment();
+                } catch (IOException e) {
+                    LOGGER.error(e.getMessage());
+                    rejectedRecordsCounter.incrementAndGet();
+                    return false;
+                }
+            }
+
+            segments.addLast(segment);
+        }
+
+        MappedByteBuffer buffer = segment.buffer;
+        buffer.putInt(segment.writePosition, length);
+        buffer.position(segment.writePosition + RECORD_HEADER_LENGTH);
+        buffer.put(data, offset, length);
+        segment.writePosition += recordLength;
+
+        recordsCount++;
+        spilledBytesCounter.addAndGet(length);
+        return true;
+    }
+
+    /**
+     * @return длина первой записи журнала или -1, если журнал пуст
+     */
+    public synchronized int peekLength() {
+        Segment segment = getReadSegment();
+        return segment == null ? -1 : segment.buffer.getInt(segment.readPosition);
+    }
+
+    /**
+     * Скопировать первую запись журнала в массив, не удаляя ее из журнала.
+     *
+     * @param target массив, длина которого не меньше {@link #peekLength()}
+     * @return длина записи или -1, если журнал пуст
+     */
+    public synchronized int read(byte[] target) {
+        Segment segment = getReadSegment();
+
+        if (segment == null) {
+            return -1;
+        }
+
+        MappedByteBuffer buffer = segment.buffer;
+        int length = buffer.getInt(segment.readPosition);
+        buffer.position(segment.readPosition + RECORD_HEADER_LENGTH);
+        buffer.get(target, 0, length);
+        return length;
+    }
+
+    /**
+     * Удалить первую запись журнала.
+     *
+     * @throws IllegalStateException если журнал пуст
+     */
+    public synchronized void remove() {
+        Segment segment = getReadSegment();
+
+        if (segment == null) {
+            throw new IllegalStateException("Spill log is empty");
+        }
+
+        int length = segment.buffer.getInt(segment.readPosition);
+        segment.readPosition += RECORD_HEADER_LENGTH + length;
+
+        recordsCount--;
+        replayedBytesCounter.addAndGet(length);
+    }
+
+    public synchronized boolean isEmpty() {
+        return recordsCount == 0;
+    }
+
+    public synchronized int getSegmentsCount() {
+        return segments.size();
+    }
+
+    public long getSpilledBytes() {
+        return spilledBytesCounter.get();
+    }
+
+    public long getReplayedBytes() {
+        return replayedBytesCounter.get();
+    }
+
+    /**
+     * @return количество записей, отклоненных из-за нехватки места в журнале
+     */
+    public long getRejectedRecords() {
+        return rejectedRecordsCounter.get();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (Segment segment : segments) {
+            segment.delete();
+        }
+
+        for (Segment segment : freeSegments) {
+            segment.delete();
+        }
+
+        segments.clear();
+        freeSegments.clear();
+        recordsCount = 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: spilled %d bytes, replayed %d bytes, rejected %d records, segments %d of %d",
+                name,
+                getSpilledBytes(),
+                getReplayedBytes(),
+                getRejectedRecords(),
+                getSegmentsCount(),
+                maxSegments);
+    }
+
+    /**
+     * Получить сегмент, с которого начинается чтение, вернув полностью прочитанные сегменты в кольцо свободных.
+     * Единственный сегмент остается последним и переиспользуется с начала.
+     */
+    private Segment getReadSegment() {
+        Segment segment;
+
+        while ((segment = segments.peekFirst()) != null && segment.readPosition == segment.writePosition) {
+            segment.readPosition = 0;
+            segment.writePosition = 0;
+
+            if (segments.size() == 1) {
+                return null;
+            }
+
+            freeSegments.addLast(segments.removeFirst());
+        }
+
+        return segment;
+    }
+
+    private Segment createSegment() throws IOException {
+        //Новый файл создается, только пока количество сегментов меньше maxSegments
+        Path path = directory.resolve(String.format("%s-%08d%s", name, ++segmentsCounter, SEGMENT_SUFFIX));
+
+        try (FileChannel channel = FileChannel.open(path, CREATE, TRUNCATE_EXISTING, READ, WRITE)) {
+            //Отображение остается действительным и после закрытия канала
+            return new Segment(path, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+        }
+    }
+
+    private static final class Segment {
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+        private int readPosition;
+
+        Segment(Path path, MappedByteBuffer buffer) {
+            this.path = path;
+            this.buffer = buffer;
+        }
+
+        /**
+         * Удалить файл сегмента при закрытии журнала. Память отображения освобождается сборщиком мусора.
+         */
+        void delete() {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                LOGGER.error(e.getMessage());
+            }
+        }
+    }
+}
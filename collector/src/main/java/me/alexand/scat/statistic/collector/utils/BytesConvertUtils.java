@@ -23,8 +23,6 @@ package me.alexand.scat.statistic.collector.utils;
 
 import java.math.BigInteger;
 
-import static java.lang.System.arraycopy;
-
 /**
  * Вспомогательные методы для конвертирования наборов байт,
  * интерпретируемые как unsigned, в другие типы данных
@@ -70,9 +68,164 @@ public interface BytesConvertUtils {
     }
 
     static BigInteger eightBytesToBigInteger(byte[] array, int offset) {
-        byte[] bigIntegerBuf = new byte[8];
-        arraycopy(array, offset, bigIntegerBuf, 0, 8);
-        return new BigInteger(1, bigIntegerBuf);
+        return unsignedLongToBigInteger(eightBytesToLong(array, offset));
+    }
+
+    static long eightBytesToLong(byte[] array, int offset) {
+        long result = 0;
+        for (int i = 0; i < 8; i++) {
+            result = (result << 8) | (array[offset + i] & 0xFF);
+        }
+        return result;
+    }
+
+    static BigInteger unsignedLongToBigInteger(long value) {
+        BigInteger result = BigInteger.valueOf(value & Long.MAX_VALUE);
+        return value < 0 ? result.setBit(63) : result;
+    }
+
+    /**
+     * Метод для преобразования беззнакового 64-битного значения в объект.<br>
+     * BigInteger создается только для значений, превышающих Long.MAX_VALUE, остальные возвращаются как Long.
+     *
+     * @param value значение с беззнаковой семантикой
+     * @return Long или BigInteger
+     */
+    static Number unsignedLongToNumber(long value) {
+        return value >= 0 ? (Number) value : unsignedLongToBigInteger(value);
+    }
+
+    static Number eightBytesToUnsignedNumber(byte[] array, int offset) {
+        return unsignedLongToNumber(eightBytesToLong(array, offset));
+    }
+
+    /**
+     * Метод для чтения беззнакового целого в сетевом порядке байт, в том числе закодированного
+     * с уменьшенным размером (RFC 7011, 6.2)
+     *
+     * @param array  массив байт
+     * @param offset смещение значения
+     * @param length длина значения (не более 8 байт)
+     * @return значение; восьмибайтное значение больше Long.MAX_VALUE возвращается как отрицательное
+     */
+    static long bytesToUnsignedLong(byte[] array, int offset, int length) {
+        long result = 0;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            result = (result << 8) | (array[i] & 0xFF);
+        }
+        return result;
+    }
+
+    /**
+     * Метод для чтения знакового целого в сетевом порядке байт, в том числе закодированного
+     * с уменьшенным размером (RFC 7011, 6.2): знак определяется старшим битом первого байта
+     *
+     * @param array  массив байт
+     * @param offset смещение значения
+     * @param length длина значения (от 1 до 8 байт)
+     * @return значение
+     */
+    static long bytesToSignedLong(byte[] array, int offset, int length) {
+        long result = array[offset];
+        for (int i = offset + 1, end = offset + length; i < end; i++) {
+            result = (result << 8) | (array[i] & 0xFF);
+        }
+        return result;
+    }
+
+    static float fourBytesToFloat(byte[] array, int offset) {
+        return Float.intBitsToFloat((int) fourBytesToLong(array, offset));
+    }
+
+    /**
+     * Метод для чтения значения float64, в том числе закодированного с уменьшенным размером как float32
+     *
+     * @param array  массив байт
+     * @param offset смещение значения
+     * @param length длина значения (4 или 8 байт)
+     * @return значение
+     */
+    static double bytesToDouble(byte[] array, int offset, int length) {
+        return length == 4 ? fourBytesToFloat(array, offset) : Double.longBitsToDouble(eightBytesToLong(array, offset));
+    }
+
+    /**
+     * Метод для чтения значения типа boolean: согласно RFC 7011 (6.1.5) true кодируется как 1, false - как 2
+     *
+     * @param value байт значения
+     * @return значение или null, если байт не соответствует ни одному из значений
+     */
+    static Boolean byteToBoolean(byte value) {
+        switch (value) {
+            case 1:
+                return Boolean.TRUE;
+            case 2:
+                return Boolean.FALSE;
+            default:
+                return null;
+        }
+    }
+
+    static String sixBytesToMacAddress(byte[] array, int offset) {
+        char[] chars = new char[17];
+
+        for (int i = 0; i < 6; i++) {
+            int octet = array[offset + i] & 0xFF;
+
+            if (i > 0) {
+                chars[i * 3 - 1] = ':';
+            }
+
+            chars[i * 3] = Character.forDigit(octet >>> 4, 16);
+            chars[i * 3 + 1] = Character.forDigit(octet & 0xF, 16);
+        }
+
+        return new String(chars);
+    }
+
+    static String bytesToHexString(byte[] array, int offset, int length) {
+        char[] chars = new char[length * 2];
+
+        for (int i = 0; i < length; i++) {
+            int octet = array[offset + i] & 0xFF;
+            chars[i * 2] = Character.forDigit(octet >>> 4, 16);
+            chars[i * 2 + 1] = Character.forDigit(octet & 0xF, 16);
+        }
+
+        return new String(chars);
+    }
+
+    /**
+     * Метод для преобразования IPv6-адреса в строку в том же виде, что и Inet6Address.getHostAddress():
+     * восемь шестнадцатеричных групп без ведущих нулей и без сокращения нулевых групп
+     *
+     * @param array  массив байт
+     * @param offset смещение адреса
+     * @return адрес
+     */
+    static String sixteenBytesToIPv6(byte[] array, int offset) {
+        char[] chars = new char[39];
+        int length = 0;
+
+        for (int i = 0; i < 8; i++) {
+            int group = twoBytesToInt(array, offset + i * 2);
+            boolean significant = false;
+
+            if (i > 0) {
+                chars[length++] = ':';
+            }
+
+            for (int shift = 12; shift >= 0; shift -= 4) {
+                int digit = (group >>> shift) & 0xF;
+
+                if (digit != 0 || significant || shift == 0) {
+                    chars[length++] = Character.forDigit(digit, 16);
+                    significant = true;
+                }
+            }
+        }
+
+        return new String(chars, 0, length);
     }
 
     static boolean isHighBitSet(byte octet) {
@@ -88,9 +241,7 @@ public interface BytesConvertUtils {
             length = array.length - offset;
         }
 
-        byte[] strBuffer = new byte[length];
-        arraycopy(array, offset, strBuffer, 0, length);
-        return new String(strBuffer);
+        return new String(array, offset, length);
     }
 
     static String bytesToString(byte[] array) {
@@ -98,11 +249,39 @@ public interface BytesConvertUtils {
     }
 
     static String fourBytesToIPv4(byte[] array, int offset) {
-        return String.format("%d.%d.%d.%d",
-                oneByteToInt(array[offset]),
-                oneByteToInt(array[offset + 1]),
-                oneByteToInt(array[offset + 2]),
-                oneByteToInt(array[offset + 3]));
+        return new StringBuilder(15)
+                .append(oneByteToInt(array[offset])).append('.')
+                .append(oneByteToInt(array[offset + 1])).append('.')
+                .append(oneByteToInt(array[offset + 2])).append('.')
+                .append(oneByteToInt(array[offset + 3]))
+                .toString();
+    }
+
+    static String intToIPv4(int address) {
+        return new StringBuilder(15)
+                .append(address >>> 24).append('.')
+                .append((address >>> 16) & 0xFF).append('.')
+                .append((address >>> 8) & 0xFF).append('.')
+                .append(address & 0xFF)
+                .toString();
+    }
+
+    static int ipv4ToInt(String address) {
+        int result = 0;
+        int octet = 0;
+
+        for (int i = 0; i < address.length(); i++) {
+            char c = address.charAt(i);
+
+            if (c == '.') {
+                result = (result << 8) | octet;
+                octet = 0;
+            } else {
+                octet = octet * 10 + (c - '0');
+            }
+        }
+
+        return (result << 8) | octet;
     }
 
     static String fourBytesToIPv4(byte[] array) {
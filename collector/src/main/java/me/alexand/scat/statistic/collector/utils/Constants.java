@@ -28,7 +28,6 @@ public interface Constants {
     int TCP_LISTEN_BACKLOG = 10;
     
     int INTERIM_BUFFER_CLEANER_RUN_FREQUENCY = 15000;
-    int INTERIM_BUFFER_DEPTH = 5;
     
     int SAMPLING_RUN_FREQUENCY = 30000;
 }
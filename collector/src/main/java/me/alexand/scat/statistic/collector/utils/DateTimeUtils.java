@@ -22,7 +22,10 @@
 package me.alexand.scat.statistic.collector.utils;
 
 import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 
 /**
@@ -34,6 +37,42 @@ public interface DateTimeUtils {
     int SECONDS_PER_HOUR = 60 * SECONDS_PER_MINUTE;
     int SECONDS_PER_DAY = 24 * SECONDS_PER_HOUR;
 
+    //Часовой пояс, в котором АПК "СКАТ" экспортирует время в секундах
+    ZoneOffset EXPORTER_ZONE_OFFSET = ZoneOffset.ofHours(3);
+
+    //Количество секунд между 1 января 1900 года (начало отсчета NTP) и 1 января 1970 года
+    long NTP_EPOCH_OFFSET = 2_208_988_800L;
+
+    static LocalDateTime epochSecondsToLocalDateTime(long epochSeconds) {
+        return LocalDateTime.ofEpochSecond(epochSeconds, 0, EXPORTER_ZONE_OFFSET);
+    }
+
+    static LocalDateTime epochMillisToLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+
+    /**
+     * Метод для преобразования отметки времени в формате NTP (RFC 7011, 6.1.9 и 6.1.10): старшие 32 бита - секунды
+     * с 1 января 1900 года, младшие - доля секунды. Время переводится в часовой пояс системы,
+     * как и время в миллисекундах.
+     *
+     * @param ntpTimestamp отметка времени
+     * @return дата и время с точностью до наносекунд
+     */
+    static LocalDateTime ntpTimestampToLocalDateTime(long ntpTimestamp) {
+        long seconds = (ntpTimestamp >>> 32) - NTP_EPOCH_OFFSET;
+        long nanos = ((ntpTimestamp & 0xFFFFFFFFL) * 1_000_000_000L) >>> 32;
+        return LocalDateTime.ofInstant(Instant.ofEpochSecond(seconds, nanos), ZoneId.systemDefault());
+    }
+
+    static long localDateTimeToEpochSeconds(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(EXPORTER_ZONE_OFFSET);
+    }
+
+    static long localDateTimeToEpochMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
     static String getFormattedDateTime(LocalDateTime dateTime) {
         return dateTime != null ? dateTime.format(DATE_TIME_FORMATTER) : "N/A";
     }
@@ -0,0 +1,297 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Одновременная проверка имени хоста по набору шаблонов доменных имен.
+ * <p>
+ * Большинство шаблонов доменных имен заканчивается литеральным суффиксом ({@code mail\.ru}, {@code .*\.vk\.com},
+ * {@code (.*\.)?yandex\.ru$}). Суффиксы всех шаблонов объединяются в префиксное дерево, построенное по
+ * перевернутым суффиксам, поэтому за один проход имени хоста с конца находятся все шаблоны, суффикс которых
+ * совпадает с окончанием имени, независимо от количества шаблонов. Шаблоны вида {@code суффикс},
+ * {@code .*суффикс} и {@code (.*\.)?суффикс} совпадают по суффиксу и предшествующему ему символу, остальные
+ * найденные шаблоны проверяются регулярным выражением. Шаблоны без литерального суффикса, с чередованием,
+ * флагами или экранированием, отличным от экранирования одного метасимвола ({@code \.}, {@code \$}), проверяются
+ * регулярным выражением для каждого имени.
+ * <p>
+ * Экземпляр не изменяется после создания и может использоваться несколькими потоками; при изменении
+ * шаблонов создается новый экземпляр.
+ *
+ * @author asidorov84@gmail.com
+ */
+public final class DomainPatternsMatcher {
+    private static final String METACHARACTERS = "\\.[]{}()*+?^$|";
+    private static final String ANY_PREFIX = ".*";
+    private static final String ANY_SUBDOMAIN = "(.*\\.)?";
+
+    //Способ проверки шаблона, суффикс которого совпал с окончанием имени
+    private static final byte EXACT = 0;
+    private static final byte ANY_PREFIXED = 1;
+    private static final byte ANY_SUBDOMAIN_PREFIXED = 2;
+    private static final byte VERIFIED = 3;
+
+    private final Pattern[] patterns;
+    private final byte[] kinds;
+    private final Node root = new Node();
+    //Шаблоны, проверяемые для каждого имени
+    private final int[] unindexed;
+
+    /**
+     * @param patterns шаблоны; номер шаблона в массиве возвращается методом {@link #match(String, int[])}
+     */
+    public DomainPatternsMatcher(Pattern[] patterns) {
+        this.patterns = patterns.clone();
+        this.kinds = new byte[patterns.length];
+        List<Integer> unindexedPatterns = new ArrayList<>();
+
+        for (int i = 0; i < patterns.length; i++) {
+            String[] parts = split(patterns[i]);
+
+            if (parts == null || parts[1].isEmpty()) {
+                unindexedPatterns.add(i);
+                continue;
+            }
+
+            String prefix = parts[0];
+            kinds[i] = prefix.isEmpty() ? EXACT
+                    : ANY_PREFIX.equals(prefix) ? ANY_PREFIXED
+                    : ANY_SUBDOMAIN.equals(prefix) ? ANY_SUBDOMAIN_PREFIXED
+                    : VERIFIED;
+
+            Node node = root;
+            String suffix = parts[1];
+
+            for (int j = suffix.length() - 1; j >= 0; j--) {
+                node = node.getOrAddChild(suffix.charAt(j));
+            }
+
+            node.addPattern(i);
+        }
+
+        unindexed = unindexedPatterns.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    public int size() {
+        return patterns.length;
+    }
+
+    /**
+     * Метод для поиска всех шаблонов, которым полностью соответствует имя хоста
+     *
+     * @param hostname имя хоста
+     * @param matches  массив для номеров совпавших шаблонов, не меньше {@link #size()}
+     * @return количество совпавших шаблонов
+     */
+    public int match(String hostname, int[] matches) {
+        //Символ . не совпадает с концом строки, поэтому такие имена проверяются каждым шаблоном
+        if (hasLineTerminator(hostname)) {
+            return matchEach(hostname, matches);
+        }
+
+        int count = 0;
+        Node node = root;
+
+        for (int i = hostname.length() - 1; node != null; i--) {
+            //Узел соответствует окончанию имени, начиная с позиции i + 1
+            for (int j = 0; j < node.patternsCount; j++) {
+                int pattern = node.patterns[j];
+
+                if (isMatched(pattern, hostname, i)) {
+                    matches[count++] = pattern;
+                }
+            }
+
+            node = i < 0 ? null : node.getChild(hostname.charAt(i));
+        }
+
+        for (int pattern : unindexed) {
+            if (patterns[pattern].matcher(hostname).matches()) {
+                matches[count++] = pattern;
+            }
+        }
+
+        return count;
+    }
+
+    private boolean isMatched(int pattern, String hostname, int beforeSuffix) {
+        switch (kinds[pattern]) {
+            case EXACT:
+                return beforeSuffix < 0;
+            case ANY_PREFIXED:
+                return true;
+            case ANY_SUBDOMAIN_PREFIXED:
+                return beforeSuffix < 0 || hostname.charAt(beforeSuffix) == '.';
+            default:
+                return patterns[pattern].matcher(hostname).matches();
+        }
+    }
+
+    private int matchEach(String hostname, int[] matches) {
+        int count = 0;
+
+        for (int i = 0; i < patterns.length; i++) {
+            if (patterns[i].matcher(hostname).matches()) {
+                matches[count++] = i;
+            }
+        }
+
+        return count;
+    }
+
+    private static boolean hasLineTerminator(String hostname) {
+        for (int i = 0; i < hostname.length(); i++) {
+            char c = hostname.charAt(i);
+
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Метод для разделения шаблона на литеральный суффикс и предшествующую ему часть.
+     * Якоря {@code ^} в начале и {@code $} в конце шаблона отбрасываются.
+     *
+     * @param pattern шаблон
+     * @return часть шаблона перед суффиксом и суффикс с раскрытым экранированием
+     * или null, если суффикс шаблона нельзя выделить
+     */
+    static String[] split(Pattern pattern) {
+        String regex = pattern.pattern();
+
+        //Флаги меняют смысл литералов, а при чередовании суффикс последней альтернативы не обязателен
+        if (pattern.flags() != 0 || regex.contains("(?") || !hasSimpleSyntax(regex)) {
+            return null;
+        }
+
+        int start = regex.startsWith("^") ? 1 : 0;
+        int end = regex.length();
+
+        if (end > start && regex.charAt(end - 1) == '$' && !isEscaped(regex, end - 1)) {
+            end--;
+        }
+
+        StringBuilder suffix = new StringBuilder();
+        int i = end - 1;
+
+        while (i >= start) {
+            char c = regex.charAt(i);
+
+            if (isEscaped(regex, i)) {
+                suffix.append(c);
+                i -= 2;
+            } else if (METACHARACTERS.indexOf(c) >= 0) {
+                break;
+            } else {
+                suffix.append(c);
+                i--;
+            }
+        }
+
+        return new String[]{regex.substring(start, i + 1), suffix.reverse().toString()};
+    }
+
+    /**
+     * @return true, если в шаблоне нет чередования, а экранируются только одиночные метасимволы; остальные
+     * экранированные символы обозначают классы символов, ссылки, коды символов ({@code \x2e}, {@code \u002e},
+     * {@code \0101}, {@code \cJ}) или цитирование и не могут быть прочитаны с конца шаблона
+     */
+    private static boolean hasSimpleSyntax(String regex) {
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+
+            if (c == '|') {
+                return false;
+            }
+
+            if (c == '\\') {
+                if (++i == regex.length() || METACHARACTERS.indexOf(regex.charAt(i)) < 0) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean isEscaped(String regex, int index) {
+        int backslashes = 0;
+
+        for (int i = index - 1; i >= 0 && regex.charAt(i) == '\\'; i--) {
+            backslashes++;
+        }
+
+        return backslashes % 2 == 1;
+    }
+
+    /**
+     * Узел дерева суффиксов: дочерние узлы упорядочены по символу для двоичного поиска
+     */
+    private static final class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private int[] patterns = new int[0];
+        private int patternsCount;
+
+        Node getChild(char key) {
+            int index = Arrays.binarySearch(keys, key);
+            return index < 0 ? null : children[index];
+        }
+
+        Node getOrAddChild(char key) {
+            int index = Arrays.binarySearch(keys, key);
+
+            if (index >= 0) {
+                return children[index];
+            }
+
+            int position = -index - 1;
+            Node child = new Node();
+
+            char[] newKeys = new char[keys.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, position);
+            newKeys[position] = key;
+            System.arraycopy(keys, position, newKeys, position + 1, keys.length - position);
+
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(children, 0, newChildren, 0, position);
+            newChildren[position] = child;
+            System.arraycopy(children, position, newChildren, position + 1, children.length - position);
+
+            keys = newKeys;
+            children = newChildren;
+            return child;
+        }
+
+        void addPattern(int pattern) {
+            patterns = Arrays.copyOf(patterns, patternsCount + 1);
+            patterns[patternsCount++] = pattern;
+        }
+    }
+}
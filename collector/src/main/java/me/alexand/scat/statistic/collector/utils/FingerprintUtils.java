@@ -0,0 +1,112 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.utils;
+
+import me.alexand.scat.statistic.collector.model.IPFIXFieldSpecifier;
+import me.alexand.scat.statistic.collector.model.InfoModelEntity;
+
+import java.util.List;
+
+/**
+ * Отпечатки последовательностей полей шаблонов.
+ * <p>
+ * Отпечаток - 64-битный хэш, зависящий от порядка полей: каждое поле кодируется одним long
+ * (номер предприятия, идентификатор информационного элемента и длина поля) и последовательно перемешивается
+ * с отпечатком предыдущих полей. Отпечаток вычисляется без создания объектов и используется как ключ индексов
+ * шаблонов. Отпечатки разных последовательностей могут совпасть, поэтому найденный по отпечатку шаблон
+ * необходимо сравнивать с исходным.
+ *
+ * @author asidorov84@gmail.com
+ * @see me.alexand.scat.statistic.collector.service.impls.DataTemplateServiceImpl
+ */
+public interface FingerprintUtils {
+    long EMPTY_FINGERPRINT = 0xCBF29CE484222325L;
+
+    /**
+     * Метод для добавления поля к отпечатку
+     *
+     * @param fingerprint          отпечаток предыдущих полей или EMPTY_FINGERPRINT
+     * @param enterpriseNumber     номер предприятия (0 для полей IANA)
+     * @param informationElementId идентификатор информационного элемента
+     * @param fieldLength          длина поля или 0, если длина не учитывается
+     * @return отпечаток последовательности, дополненной полем
+     */
+    static long nextFingerprint(long fingerprint, long enterpriseNumber, int informationElementId, int fieldLength) {
+        long field = enterpriseNumber << 32 | (informationElementId & 0xFFFFL) << 16 | fieldLength & 0xFFFFL;
+        long hash = (fingerprint ^ field) * 0x9E3779B97F4A7C15L;
+        return hash ^ hash >>> 29;
+    }
+
+    /**
+     * @param specifiers спецификаторы полей шаблона IPFIX
+     * @return отпечаток информационных элементов и длин полей
+     */
+    static long fingerprintOf(List<IPFIXFieldSpecifier> specifiers) {
+        long fingerprint = EMPTY_FINGERPRINT;
+
+        for (int i = 0; i < specifiers.size(); i++) {
+            IPFIXFieldSpecifier specifier = specifiers.get(i);
+            fingerprint = nextFingerprint(fingerprint,
+                    specifier.getEnterpriseNumber(),
+                    specifier.getInformationElementIdentifier(),
+                    specifier.getFieldLength());
+        }
+
+        return fingerprint;
+    }
+
+    /**
+     * @param specifiers спецификаторы полей шаблона IPFIX
+     * @return отпечаток только информационных элементов полей, без учета длин
+     */
+    static long elementsFingerprintOf(List<IPFIXFieldSpecifier> specifiers) {
+        long fingerprint = EMPTY_FINGERPRINT;
+
+        for (int i = 0; i < specifiers.size(); i++) {
+            IPFIXFieldSpecifier specifier = specifiers.get(i);
+            fingerprint = nextFingerprint(fingerprint,
+                    specifier.getEnterpriseNumber(),
+                    specifier.getInformationElementIdentifier(),
+                    0);
+        }
+
+        return fingerprint;
+    }
+
+    /**
+     * @param entities информационные элементы, например, столбцы шаблона АПК "СКАТ"
+     * @return отпечаток, совпадающий с elementsFingerprintOf() спецификаторов тех же элементов
+     */
+    static long entitiesFingerprintOf(List<InfoModelEntity> entities) {
+        long fingerprint = EMPTY_FINGERPRINT;
+
+        for (int i = 0; i < entities.size(); i++) {
+            InfoModelEntity entity = entities.get(i);
+            fingerprint = nextFingerprint(fingerprint,
+                    entity.getEnterpriseNumber(),
+                    entity.getInformationElementId(),
+                    0);
+        }
+
+        return fingerprint;
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.utils;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Словарь часто повторяющихся строковых значений полей (логины, доменные имена, User-Agent и т.п.).
+ * <p>
+ * Поиск выполняется по байтам значения непосредственно в массиве сообщения: хэш вычисляется по фрагменту массива,
+ * и новая строка создается только при первом появлении значения. Каждому значению присваивается целочисленный
+ * идентификатор, по которому его можно получить методом getString().
+ * <p>
+ * Размер словаря ограничен: при заполнении словарь очищается, идентификаторы начинают выдаваться заново,
+ * а номер поколения (getGeneration()) увеличивается. Значения длиннее {@code maxLength} байт в словарь не попадают.
+ * <p>
+ * Словарь не синхронизирован и должен использоваться одним потоком (см. IPFIXMessageProcessor). Счетчики
+ * попаданий читаются другими потоками только для отчета и могут быть неточными.
+ *
+ * @author asidorov84@gmail.com
+ */
+public final class StringDictionary {
+    private final int capacity;
+    private final int maxLength;
+    private final int mask;
+    private final Charset charset = Charset.defaultCharset();
+
+    //Открытая адресация: в ячейке таблицы хранится идентификатор значения + 1, 0 - пустая ячейка
+    private final int[] table;
+    private final int[] hashes;
+    private final byte[][] keys;
+    private final String[] values;
+
+    private int size;
+    private int generation;
+    private long hits;
+    private long misses;
+    private long bypassed;
+
+    public StringDictionary(int capacity, int maxLength) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException(String.format("Illegal capacity of dictionary: %d", capacity));
+        }
+
+        this.capacity = capacity;
+        this.maxLength = maxLength;
+
+        int tableSize = Integer.highestOneBit(capacity * 2 - 1) << 1;
+        mask = tableSize - 1;
+        table = new int[tableSize];
+        hashes = new int[capacity];
+        keys = new byte[capacity][];
+        values = new String[capacity];
+    }
+
+    /**
+     * Метод для получения строки по байтам значения
+     *
+     * @param src    массив, содержащий значение
+     * @param offset смещение значения
+     * @param length длина значения
+     * @return строка из словаря или null, если значение длиннее {@code maxLength}
+     */
+    public String get(byte[] src, int offset, int length) {
+        int id = getId(src, offset, length);
+        return id < 0 ? null : values[id];
+    }
+
+    /**
+     * Метод для получения идентификатора значения, с добавлением значения в словарь при его отсутствии.<br>
+     * Идентификатор действителен, пока не изменился номер поколения словаря.
+     *
+     * @param src    массив, содержащий значение
+     * @param offset смещение значения
+     * @param length длина значения
+     * @return идентификатор значения или -1, если значение длиннее {@code maxLength}
+     */
+    public int getId(byte[] src, int offset, int length) {
+        if (length > maxLength) {
+            bypassed++;
+            return -1;
+        }
+
+        int hash = hash(src, offset, length);
+        int slot = hash & mask;
+
+        for (int entry = table[slot]; entry != 0; entry = table[slot]) {
+            int id = entry - 1;
+
+            if (hashes[id] == hash && equals(keys[id], src, offset, length)) {
+                hits++;
+                return id;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        misses++;
+
+        if (size == capacity) {
+            clear();
+            slot = hash & mask;
+        }
+
+        int id = size++;
+        hashes[id] = hash;
+        keys[id] = Arrays.copyOfRange(src, offset, offset + length);
+        values[id] = new String(keys[id], charset);
+        table[slot] = id + 1;
+
+        return id;
+    }
+
+    /**
+     * @param id идентификатор значения в текущем поколении словаря
+     * @return строка
+     */
+    public String getString(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException(String.format("Unknown id of string: %d", id));
+        }
+
+        return values[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return количество значений, не добавленных в словарь из-за их длины
+     */
+    public long getBypassed() {
+        return bypassed;
+    }
+
+    /**
+     * @return доля найденных в словаре значений среди всех запрошенных, не считая слишком длинных
+     */
+    public double getHitRate() {
+        long hits = this.hits;
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("StringDictionary{size=%d/%d, generation=%d, hitRate=%.1f%%, hits=%d, misses=%d, bypassed=%d}",
+                size,
+                capacity,
+                generation,
+                getHitRate() * 100,
+                hits,
+                misses,
+                bypassed);
+    }
+
+    private void clear() {
+        Arrays.fill(table, 0);
+        Arrays.fill(keys, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+        generation++;
+    }
+
+    private static int hash(byte[] src, int offset, int length) {
+        int hash = 1;
+
+        for (int i = offset, end = offset + length; i < end; i++) {
+            hash = 31 * hash + src[i];
+        }
+
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean equals(byte[] key, byte[] src, int offset, int length) {
+        if (key.length != length) {
+            return false;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (key[i] != src[offset + i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
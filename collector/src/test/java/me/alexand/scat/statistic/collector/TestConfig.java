@@ -24,14 +24,11 @@ package me.alexand.scat.statistic.collector;
 import me.alexand.scat.statistic.collector.config.TransitionalBufferConfig;
 import me.alexand.scat.statistic.collector.repository.InfoModelRepository;
 import me.alexand.scat.statistic.collector.repository.SCATDataTemplateRepository;
-import me.alexand.scat.statistic.collector.repository.TransitionalBufferRepository;
 import me.alexand.scat.statistic.collector.repository.impls.InMemoryInfoModelRepositoryImpl;
 import me.alexand.scat.statistic.collector.repository.impls.InMemorySCATDataTemplateRepositoryImpl;
-import me.alexand.scat.statistic.collector.repository.impls.TransitionalBufferRepositoryImpl;
 import me.alexand.scat.statistic.collector.service.DataTemplateService;
 import me.alexand.scat.statistic.collector.service.IPFIXParser;
 import me.alexand.scat.statistic.collector.service.impls.DataTemplateServiceImpl;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
@@ -44,14 +41,6 @@ import org.springframework.context.annotation.PropertySource;
 @PropertySource("classpath:app-test.properties")
 @Import(TransitionalBufferConfig.class)
 public class TestConfig {
-    @Autowired
-    private TransitionalBufferConfig transitionalBufferConfig;
-
-    @Bean
-    public TransitionalBufferRepository transitionalBufferRepository() {
-        return new TransitionalBufferRepositoryImpl(transitionalBufferConfig.bufferJdbcTemplate());
-    }
-
     @Bean
     public SCATDataTemplateRepository scatDataTemplateRepository() {
         return new InMemorySCATDataTemplateRepositoryImpl();
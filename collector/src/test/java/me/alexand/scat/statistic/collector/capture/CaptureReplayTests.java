@@ -0,0 +1,157 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.capture;
+
+import me.alexand.scat.statistic.collector.network.NioTcpPacketsReceiver;
+import me.alexand.scat.statistic.collector.network.OverflowPolicy;
+import me.alexand.scat.statistic.collector.network.PacketBuffer;
+import me.alexand.scat.statistic.collector.network.PacketBufferPool;
+import me.alexand.scat.statistic.collector.network.RingBufferPacketQueue;
+import me.alexand.scat.statistic.collector.network.WaitStrategy;
+import me.alexand.scat.statistic.collector.service.StatCollector;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static me.alexand.scat.statistic.collector.entities.RawPacketsEntities.RAW_CS_REQ_DATA_PAYLOAD;
+import static me.alexand.scat.statistic.collector.entities.RawPacketsEntities.RAW_CS_REQ_TEMPLATE;
+import static me.alexand.scat.statistic.collector.utils.BytesConvertUtils.fourBytesToLong;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Тесты захвата и воспроизведения IPFIX-сообщений
+ *
+ * @author asidorov84@gmail.com
+ */
+public class CaptureReplayTests {
+    private static final String ADDRESS = "127.0.0.1";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWriteAndReadCaptureFile() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("test.cap");
+
+        try (CaptureFileWriter writer = new CaptureFileWriter(file)) {
+            writer.write(RAW_CS_REQ_TEMPLATE, RAW_CS_REQ_TEMPLATE.length);
+            writer.write(RAW_CS_REQ_DATA_PAYLOAD, RAW_CS_REQ_DATA_PAYLOAD.length);
+            assertEquals(2, writer.getMessagesCount());
+
+            //до закрытия файл читается до первой нулевой длины
+            assertEquals(2, CaptureFileReader.readAll(file).size());
+        }
+
+        //после закрытия файл обрезан до фактического размера
+        assertEquals(8 + 2 + RAW_CS_REQ_TEMPLATE.length + 2 + RAW_CS_REQ_DATA_PAYLOAD.length, Files.size(file));
+
+        List<byte[]> messages = CaptureFileReader.readAll(file);
+        assertEquals(2, messages.size());
+        assertArrayEquals(RAW_CS_REQ_TEMPLATE, messages.get(0));
+        assertArrayEquals(RAW_CS_REQ_DATA_PAYLOAD, messages.get(1));
+    }
+
+    @Test
+    public void testReadThroughSlidingWindow() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("window.cap");
+
+        try (CaptureFileWriter writer = new CaptureFileWriter(file)) {
+            writer.write(RAW_CS_REQ_TEMPLATE, RAW_CS_REQ_TEMPLATE.length);
+            writer.write(RAW_CS_REQ_DATA_PAYLOAD, RAW_CS_REQ_DATA_PAYLOAD.length);
+        }
+
+        //окно вмещает самое длинное сообщение, но не файл целиком: второе сообщение читается после сдвига окна
+        byte[] message = new byte[0xFFFF];
+
+        try (CaptureFileReader reader = new CaptureFileReader(file, RAW_CS_REQ_DATA_PAYLOAD.length + 2)) {
+            assertEquals(RAW_CS_REQ_TEMPLATE.length, reader.next(message));
+            assertArrayEquals(RAW_CS_REQ_TEMPLATE, Arrays.copyOf(message, RAW_CS_REQ_TEMPLATE.length));
+            assertEquals(RAW_CS_REQ_DATA_PAYLOAD.length, reader.next(message));
+            assertArrayEquals(RAW_CS_REQ_DATA_PAYLOAD, Arrays.copyOf(message, RAW_CS_REQ_DATA_PAYLOAD.length));
+            assertEquals(-1, reader.next(message));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadNotCaptureFile() throws Exception {
+        Path file = folder.newFile().toPath();
+        Files.write(file, RAW_CS_REQ_TEMPLATE);
+        CaptureFileReader.readAll(file);
+    }
+
+    @Test
+    public void testReplayAndCaptureReceivedMessages() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        Path source = folder.getRoot().toPath().resolve("source.cap");
+        try (CaptureFileWriter writer = new CaptureFileWriter(source)) {
+            writer.write(RAW_CS_REQ_TEMPLATE, RAW_CS_REQ_TEMPLATE.length);
+            writer.write(RAW_CS_REQ_DATA_PAYLOAD, RAW_CS_REQ_DATA_PAYLOAD.length);
+        }
+
+        PacketBufferPool packetBufferPool = new PacketBufferPool(4);
+        NioTcpPacketsReceiver receiver = new NioTcpPacketsReceiver(ADDRESS, port,
+                new RingBufferPacketQueue(16, WaitStrategy.of("blocking")), 65535, 1, packetBufferPool,
+                OverflowPolicy.drop(), mock(StatCollector.class));
+        Path file = folder.getRoot().toPath().resolve("received.cap");
+        receiver.setCapture(new CaptureFileWriter(file));
+        receiver.start();
+
+        PacketReplayer.Result result;
+        try {
+            result = new PacketReplayer(ADDRESS, port, "tcp", 0, 0, asList(source),
+                    PacketReplayer.createParser()).replay();
+
+            for (int i = 0; i < 2; i++) {
+                PacketBuffer packet = receiver.getNextPacket();
+                packet.release();
+            }
+        } finally {
+            assertTrue(receiver.shutdown());
+        }
+
+        assertEquals(2, result.getMessagesCount());
+        assertEquals(1, result.getRecordsCount());
+        assertEquals(0, packetBufferPool.getUsedBuffersCount());
+
+        //порядковые номера переписаны: шаблон не содержит записей данных, поэтому оба сообщения начинаются с нуля
+        List<byte[]> captured = CaptureFileReader.readAll(file);
+        assertEquals(2, captured.size());
+        assertEquals(0, fourBytesToLong(captured.get(0), 8));
+        assertEquals(0, fourBytesToLong(captured.get(1), 8));
+        assertEquals(RAW_CS_REQ_DATA_PAYLOAD.length, captured.get(1).length);
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.model;
+
+import me.alexand.scat.statistic.collector.TestConfig;
+import me.alexand.scat.statistic.collector.repository.InfoModelRepository;
+import me.alexand.scat.statistic.collector.repository.SCATDataTemplateRepository;
+import me.alexand.scat.statistic.collector.service.IPFIXParser;
+import me.alexand.scat.statistic.collector.service.IPFIXRecordCursor;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static me.alexand.scat.statistic.collector.entities.IPFIXMessageTestEntities.IPFIX_CS_REQ_DATA_RECORD;
+import static me.alexand.scat.statistic.collector.entities.RawPacketsEntities.*;
+import static me.alexand.scat.statistic.collector.model.IANAAbstractDataTypes.STRING;
+import static me.alexand.scat.statistic.collector.model.IANAAbstractDataTypes.UNSIGNED64;
+import static me.alexand.scat.statistic.collector.model.TemplateType.CS_REQ;
+import static me.alexand.scat.statistic.collector.utils.SCATDataTemplateEntities.DATA_TEMPLATE_LIST;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Тесты пакета записей, хранящегося по столбцам
+ *
+ * @author asidorov84@gmail.com
+ */
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = TestConfig.class)
+public class RecordsBatchTests {
+    @Autowired
+    private IPFIXParser parser;
+
+    @Autowired
+    private SCATDataTemplateRepository SCATDataTemplateRepository;
+
+    @Autowired
+    private InfoModelRepository infoModelRepository;
+
+    private final IPFIXRecordCursor cursor = new IPFIXRecordCursor();
+
+    @Before
+    public void before() throws Exception {
+        DATA_TEMPLATE_LIST.forEach(dataTemplate -> {
+            SCATDataTemplateRepository.save(dataTemplate);
+            dataTemplate.getSpecifiers().forEach(infoModelRepository::save);
+        });
+
+        parser.parse(RAW_CS_REQ_TEMPLATE);
+        parser.parse(RAW_GENERIC_TEMPLATE);
+    }
+
+    @Test
+    public void testCopyRecordsFromCursor() throws Exception {
+        for (byte[] payload : new byte[][]{RAW_CS_REQ_DATA_PAYLOAD, RAW_GENERIC_DATA}) {
+            List<IPFIXDataRecord> expected = new ArrayList<>();
+            RecordsBatch[] batch = new RecordsBatch[1];
+
+            parser.parse(payload, payload.length, cursor, record -> {
+                if (batch[0] == null) {
+                    batch[0] = record.newBatch(10);
+                }
+
+                record.copyTo(batch[0]);
+                expected.add(record.toDataRecord());
+            });
+
+            assertEquals(expected.size(), batch[0].size());
+            assertEquals(expected, batch[0].toDataRecords());
+        }
+    }
+
+    @Test
+    public void testArenaGrowsForLongStrings() throws Exception {
+        RecordsBatch[] batch = new RecordsBatch[1];
+
+        //путь в записи CS_REQ длиннее начального места под строки пакета емкостью в одну запись
+        parser.parse(RAW_CS_REQ_DATA_PAYLOAD, RAW_CS_REQ_DATA_PAYLOAD.length, cursor, record -> {
+            batch[0] = record.newBatch(1);
+            record.copyTo(batch[0]);
+        });
+
+        assertTrue(batch[0].isFull());
+        assertEquals(CS_REQ, batch[0].getType());
+        assertEquals(IPFIX_CS_REQ_DATA_RECORD, batch[0].toDataRecords().get(0));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testEndRowOfFullBatch() {
+        RecordsBatch batch = RecordsBatch.builder()
+                .type(CS_REQ)
+                .columnNames(new String[]{"login"})
+                .columnTypes(new IANAAbstractDataTypes[]{STRING})
+                .capacity(1)
+                .build();
+
+        batch.endRow();
+        assertFalse(batch.size() == 0);
+        batch.endRow();
+    }
+
+    @Test
+    public void testNullValues() {
+        RecordsBatch batch = RecordsBatch.builder()
+                .type(CS_REQ)
+                .columnNames(new String[]{"login", "sessionID"})
+                .columnTypes(new IANAAbstractDataTypes[]{STRING, UNSIGNED64})
+                .capacity(2)
+                .build();
+
+        byte[] login = "user@example.com".getBytes();
+        batch.setString(0, login, 0, login.length);
+        batch.setNull(1);
+        batch.endRow();
+        batch.setNull(0);
+        batch.setLong(1, 42L);
+        batch.endRow();
+
+        assertTrue(batch.hasNulls(0));
+        assertTrue(batch.isNull(0, 1));
+        assertFalse(batch.isNull(1, 1));
+        assertNull(batch.getValue(0, 1));
+        assertNull(batch.getValue(1, 0));
+        assertEquals("user@example.com", batch.getValue(0, 0));
+        assertEquals(42L, batch.getValue(1, 1));
+    }
+
+    @Test
+    public void testClear() {
+        RecordsBatch batch = RecordsBatch.builder()
+                .type(CS_REQ)
+                .columnNames(new String[]{"login", "sessionID"})
+                .columnTypes(new IANAAbstractDataTypes[]{STRING, UNSIGNED64})
+                .capacity(1)
+                .build();
+
+        byte[] login = "user@example.com".getBytes();
+        batch.setString(0, login, 0, login.length);
+        batch.setNull(1);
+        batch.endRow();
+        batch.clear();
+
+        //после очистки пакет заполняется заново, отсутствие значения в прежней строке не сохраняется
+        assertEquals(0, batch.size());
+        batch.setString(0, login, 0, 4);
+        batch.setLong(1, 42L);
+        batch.endRow();
+
+        assertTrue(batch.isFull());
+        assertFalse(batch.isNull(0, 1));
+        assertEquals("user", batch.getValue(0, 0));
+        assertEquals(0, batch.getStringOffset(0, 0));
+    }
+
+    @Test
+    public void testAppendRowsOfOtherBatch() {
+        RecordsBatch src = RecordsBatch.builder()
+                .type(CS_REQ)
+                .columnNames(new String[]{"login", "sessionID"})
+                .columnTypes(new IANAAbstractDataTypes[]{STRING, UNSIGNED64})
+                .capacity(3)
+                .build();
+
+        for (int i = 0; i < 3; i++) {
+            byte[] login = ("user" + i).getBytes();
+
+            if (i == 1) {
+                src.setString(0, "dictionary");
+                src.setNull(1);
+            } else {
+                src.setString(0, login, 0, login.length);
+                src.setLong(1, i);
+            }
+
+            src.endRow();
+        }
+
+        //в пакет емкостью 2 помещаются только две строки, остальная добавляется в следующий пакет
+        RecordsBatch first = src.newBatch(2);
+        assertEquals(2, first.append(src, 0));
+        assertTrue(first.isFull());
+
+        RecordsBatch second = src.newBatch(2);
+        assertEquals(1, second.append(src, 2));
+
+        assertEquals(src.toDataRecords().subList(0, 2), first.toDataRecords());
+        assertEquals(src.toDataRecords().subList(2, 3), second.toDataRecords());
+        assertEquals("dictionary", first.getStringReference(1, 0));
+        assertTrue(first.isNull(1, 1));
+        assertFalse(second.hasNulls(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAppendBatchWithOtherColumns() {
+        RecordsBatch batch = RecordsBatch.builder()
+                .type(CS_REQ)
+                .columnNames(new String[]{"login"})
+                .columnTypes(new IANAAbstractDataTypes[]{STRING})
+                .capacity(1)
+                .build();
+
+        RecordsBatch other = RecordsBatch.builder()
+                .type(CS_REQ)
+                .columnNames(new String[]{"sessionID"})
+                .columnTypes(new IANAAbstractDataTypes[]{UNSIGNED64})
+                .capacity(1)
+                .build();
+
+        batch.append(other, 0);
+    }
+}
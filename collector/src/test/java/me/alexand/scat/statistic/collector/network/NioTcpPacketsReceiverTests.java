@@ -0,0 +1,196 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.network;
+
+import me.alexand.scat.statistic.collector.service.StatCollector;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+import static me.alexand.scat.statistic.collector.entities.RawPacketsEntities.RAW_CS_REQ_DATA_PAYLOAD;
+import static me.alexand.scat.statistic.collector.entities.RawPacketsEntities.RAW_CS_REQ_TEMPLATE;
+import static me.alexand.scat.statistic.collector.utils.BytesConvertUtils.fourBytesToLong;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Тесты NIO TCP-приемника пакетов
+ *
+ * @author asidorov84@gmail.com
+ */
+public class NioTcpPacketsReceiverTests {
+    private static final String ADDRESS = "127.0.0.1";
+
+    private final StatCollector statCollector = mock(StatCollector.class);
+    private final PacketBufferPool packetBufferPool = new PacketBufferPool(4);
+    private NioTcpPacketsReceiver receiver;
+    private int port;
+
+    @Before
+    public void before() throws IOException {
+        port = getFreePort();
+
+        receiver = new NioTcpPacketsReceiver(ADDRESS, port,
+                new RingBufferPacketQueue(16, WaitStrategy.of("blocking")), 65535, 2, packetBufferPool,
+                OverflowPolicy.drop(), statCollector);
+        receiver.start();
+    }
+
+    @After
+    public void after() {
+        assertTrue(receiver.shutdown());
+        assertEquals(0, packetBufferPool.getUsedBuffersCount());
+    }
+
+    @Test
+    public void testReceiveMessagesSplitAcrossWrites() throws Exception {
+        byte[] stream = new byte[RAW_CS_REQ_TEMPLATE.length + RAW_CS_REQ_DATA_PAYLOAD.length];
+        System.arraycopy(RAW_CS_REQ_TEMPLATE, 0, stream, 0, RAW_CS_REQ_TEMPLATE.length);
+        System.arraycopy(RAW_CS_REQ_DATA_PAYLOAD, 0, stream, RAW_CS_REQ_TEMPLATE.length, RAW_CS_REQ_DATA_PAYLOAD.length);
+
+        try (Socket socket = new Socket(ADDRESS, port)) {
+            OutputStream os = socket.getOutputStream();
+            //заголовок первого сообщения разбит на две части, второе сообщение приходит вместе с хвостом первого
+            int[] chunks = {7, 50, stream.length - 57};
+            int offset = 0;
+
+            for (int chunk : chunks) {
+                os.write(stream, offset, chunk);
+                os.flush();
+                offset += chunk;
+                Thread.sleep(50);
+            }
+
+            assertArrayEquals(RAW_CS_REQ_TEMPLATE, nextPacket());
+            assertArrayEquals(RAW_CS_REQ_DATA_PAYLOAD, nextPacket());
+            assertEquals(0, receiver.getRemainingPacketsCount());
+        }
+
+        long exportedRecords = fourBytesToLong(RAW_CS_REQ_DATA_PAYLOAD, 8) - fourBytesToLong(RAW_CS_REQ_TEMPLATE, 8);
+        verify(statCollector, timeout(1000)).registerExportedRecords(1L, exportedRecords);
+    }
+
+    @Test
+    public void testReceiveFromSeveralConnections() throws Exception {
+        try (Socket first = new Socket(ADDRESS, port);
+             Socket second = new Socket(ADDRESS, port)) {
+            first.getOutputStream().write(RAW_CS_REQ_TEMPLATE);
+            assertArrayEquals(RAW_CS_REQ_TEMPLATE, nextPacket());
+
+            second.getOutputStream().write(RAW_CS_REQ_DATA_PAYLOAD);
+            assertArrayEquals(RAW_CS_REQ_DATA_PAYLOAD, nextPacket());
+        }
+    }
+
+    @Test
+    public void testFullShardDoesNotStallOtherConnections() throws Exception {
+        PacketQueue[] shards = {new BlockingPacketQueue(1), new BlockingPacketQueue(1)};
+        int blockingPort = getFreePort();
+        //один цикл событий обслуживает оба подключения, ожидание места в буфере дольше времени теста
+        NioTcpPacketsReceiver blockingReceiver = new NioTcpPacketsReceiver(ADDRESS, blockingPort,
+                new ShardedPacketQueue(shards), 65535, 1, packetBufferPool,
+                OverflowPolicy.block(60000, statCollector), statCollector);
+        blockingReceiver.start();
+
+        byte[] firstShardMessage = withDomainID(RAW_CS_REQ_TEMPLATE, 2);
+        byte[] secondShardMessage = withDomainID(RAW_CS_REQ_DATA_PAYLOAD, 3);
+
+        try (Socket first = new Socket(ADDRESS, blockingPort);
+             Socket second = new Socket(ADDRESS, blockingPort)) {
+            //первое сообщение занимает сегмент 0, второе ожидает места в нем
+            first.getOutputStream().write(firstShardMessage);
+            first.getOutputStream().write(firstShardMessage);
+            assertTrue(waitForSize(shards[0], 1));
+            Thread.sleep(100);
+
+            second.getOutputStream().write(secondShardMessage);
+            assertTrue(waitForSize(shards[1], 1));
+            assertArrayEquals(secondShardMessage, toByteArray(blockingReceiver.getNextPacket(1)));
+
+            //после освобождения места чтение приостановленного подключения возобновляется
+            assertArrayEquals(firstShardMessage, toByteArray(blockingReceiver.getNextPacket(0)));
+            assertArrayEquals(firstShardMessage, toByteArray(blockingReceiver.getNextPacket(0)));
+            assertFalse(waitForSize(shards[0], 1));
+            //время ожидания учитывается по адресу экспортера без порта подключения
+            verify(statCollector, timeout(1000)).registerBlockedTime(eq(ADDRESS), anyLong());
+        } finally {
+            assertTrue(blockingReceiver.shutdown());
+        }
+    }
+
+    private static int getFreePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static byte[] withDomainID(byte[] message, int domainID) {
+        byte[] result = message.clone();
+        ByteBuffer.wrap(result).putInt(12, domainID);
+        return result;
+    }
+
+    private static boolean waitForSize(PacketQueue queue, int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 3000;
+
+        while (queue.size() < size) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+
+            Thread.sleep(10);
+        }
+
+        return true;
+    }
+
+    private static byte[] toByteArray(PacketBuffer packet) {
+        try {
+            return packet.toByteArray();
+        } finally {
+            packet.release();
+        }
+    }
+
+    private byte[] nextPacket() throws InterruptedException {
+        PacketBuffer packet = receiver.getNextPacket();
+
+        try {
+            return packet.toByteArray();
+        } finally {
+            packet.release();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.network;
+
+import me.alexand.scat.statistic.collector.service.StatCollector;
+import me.alexand.scat.statistic.collector.spill.SegmentLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+/**
+ * Тесты политик переполнения внутреннего буфера пакетов
+ *
+ * @author asidorov84@gmail.com
+ */
+public class OverflowPolicyTests {
+    private static final String EXPORTER = "127.0.0.1:4739";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final StatCollector statCollector = mock(StatCollector.class);
+    private final PacketQueue queue = new BlockingPacketQueue(1);
+
+    @Test
+    public void testDropWhenFull() throws Exception {
+        OverflowPolicy policy = OverflowPolicy.drop();
+
+        assertTrue(policy.offer(queue, PacketBuffer.wrap(new byte[1]), EXPORTER));
+        assertFalse(policy.offer(queue, PacketBuffer.wrap(new byte[1]), EXPORTER));
+    }
+
+    @Test
+    public void testBlockUntilTimeout() throws Exception {
+        OverflowPolicy policy = OverflowPolicy.block(50, statCollector);
+
+        assertTrue(policy.offer(queue, PacketBuffer.wrap(new byte[1]), EXPORTER));
+        verifyZeroInteractions(statCollector);
+
+        assertFalse(policy.offer(queue, PacketBuffer.wrap(new byte[1]), EXPORTER));
+        verify(statCollector).registerBlockedTime(eq(EXPORTER), anyLong());
+    }
+
+    @Test
+    public void testBlockUntilSpaceAvailable() throws Exception {
+        OverflowPolicy policy = OverflowPolicy.block(10_000, statCollector);
+        PacketBuffer first = PacketBuffer.wrap(new byte[1]);
+        PacketBuffer second = PacketBuffer.wrap(new byte[2]);
+
+        assertTrue(policy.offer(queue, first, EXPORTER));
+
+        Thread consumer = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+                queue.take();
+            } catch (InterruptedException e) {
+                //остановка потребителя
+            }
+        });
+        consumer.start();
+
+        assertTrue(policy.offer(queue, second, EXPORTER));
+        consumer.join();
+
+        assertSame(second, queue.take());
+        verify(statCollector, times(1)).registerBlockedTime(eq(EXPORTER), anyLong());
+    }
+
+    @Test
+    public void testSpillAndReplayInOrder() throws Exception {
+        SegmentLog log = new SegmentLog(folder.getRoot().toPath(), "packets", 1024, 1);
+        PacketBufferPool pool = new PacketBufferPool(4);
+        OverflowPolicy.Spill policy = (OverflowPolicy.Spill) OverflowPolicy.spill(log, queue, pool);
+
+        try {
+            for (byte i = 1; i <= 3; i++) {
+                PacketBuffer packet = PacketBuffer.wrap(new byte[]{i});
+                packet.setSession(PacketBuffer.UDP_SESSION | i);
+                assertTrue(policy.offer(queue, packet, EXPORTER));
+            }
+            assertFalse(log.isEmpty());
+
+            for (byte expected = 1; expected <= 3; expected++) {
+                PacketBuffer packet = queue.take();
+                assertArrayEquals(new byte[]{expected}, packet.toByteArray());
+                //номер сессии сохраняется в журнале вместе с пакетом
+                assertEquals(PacketBuffer.UDP_SESSION | expected, packet.session());
+                packet.release();
+            }
+
+            //запись удаляется из журнала потоком воспроизведения уже после помещения пакета в буфер
+            long deadline = System.currentTimeMillis() + 1000;
+            while (!log.isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+
+            assertTrue(log.isEmpty());
+            //каждый пакет записан в журнал вместе с номером сессии и типом записи
+            assertEquals(2 * (1 + 3), log.getReplayedBytes());
+        } finally {
+            policy.close();
+        }
+    }
+
+    @Test
+    public void testSpilledSessionEndFollowsSessionPackets() throws Exception {
+        SegmentLog log = new SegmentLog(folder.getRoot().toPath(), "packets", 1024, 1);
+        PacketBufferPool pool = new PacketBufferPool(4);
+        OverflowPolicy.Spill policy = (OverflowPolicy.Spill) OverflowPolicy.spill(log, queue, pool);
+        int session = 5;
+
+        try {
+            for (byte i = 1; i <= 2; i++) {
+                PacketBuffer packet = PacketBuffer.wrap(new byte[]{i});
+                packet.setSession(session);
+                assertTrue(policy.offer(queue, packet, EXPORTER));
+            }
+
+            //буфер заполнен, а второй пакет сессии в журнале: признак записывается в журнал после него
+            assertTrue(policy.offerSessionEnd(queue, PacketBuffer.sessionEnd(session, 0x01020304L)));
+
+            for (byte expected = 1; expected <= 2; expected++) {
+                PacketBuffer packet = queue.take();
+                assertArrayEquals(new byte[]{expected}, packet.toByteArray());
+                packet.release();
+            }
+
+            PacketBuffer marker = queue.take();
+            assertTrue(marker.isSessionEnd());
+            assertEquals(session, marker.session());
+            //домен наблюдения нужен для распределения признака по сегментам
+            assertArrayEquals(new byte[]{1, 2, 3, 4}, Arrays.copyOfRange(marker.array(), 12, 16));
+        } finally {
+            policy.close();
+        }
+    }
+}
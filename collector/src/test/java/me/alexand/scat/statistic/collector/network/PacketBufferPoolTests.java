@@ -0,0 +1,121 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.network;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Тесты пула буферов для пакетов
+ *
+ * @author asidorov84@gmail.com
+ */
+public class PacketBufferPoolTests {
+    private final PacketBufferPool pool = new PacketBufferPool(2);
+
+    @Test
+    public void testReleasedBufferIsReused() {
+        PacketBuffer first = pool.acquire(100);
+        assertEquals(100, first.length());
+        assertEquals(1, pool.getUsedBuffersCount());
+
+        first.release();
+        assertEquals(0, pool.getUsedBuffersCount());
+
+        PacketBuffer second = pool.acquire(3000);
+        assertSame(first, second);
+        assertEquals(3000, second.length());
+        assertTrue(second.array().length >= 3000);
+        assertEquals(1, pool.getCreatedBuffersCount());
+    }
+
+    @Test
+    public void testOversizedBufferNotReturned() {
+        PacketBufferPool limitedPool = new PacketBufferPool(1, 2000);
+
+        PacketBuffer large = limitedPool.acquire(3000);
+        large.release();
+        assertEquals(1, limitedPool.getDiscardedBuffersCount());
+        assertEquals(0, limitedPool.getCreatedBuffersCount());
+
+        //вместо выросшего буфера создается новый буфер пула обычного размера
+        PacketBuffer small = limitedPool.acquire(100);
+        assertNotSame(large, small);
+        assertTrue(small.array().length <= 2000);
+        assertEquals(0, limitedPool.getMissesCount());
+
+        small.release();
+        assertSame(small, limitedPool.acquire(1500));
+    }
+
+    @Test
+    public void testGrowthLimitedByMaxRetainedSize() {
+        PacketBufferPool limitedPool = new PacketBufferPool(1, 10000);
+
+        PacketBuffer buffer = limitedPool.acquire(9000);
+        buffer.release();
+
+        //при удвоении массив превысил бы максимальный размер, и буфер не вернулся бы в пул
+        PacketBuffer grown = limitedPool.acquire(10000);
+        assertSame(buffer, grown);
+        assertEquals(10000, grown.array().length);
+        grown.release();
+
+        assertSame(buffer, limitedPool.acquire(100));
+        assertEquals(0, limitedPool.getDiscardedBuffersCount());
+    }
+
+    @Test
+    public void testBufferReturnedAfterLastRelease() {
+        PacketBuffer buffer = pool.acquire(100).retain();
+
+        buffer.release();
+        assertEquals(1, pool.getUsedBuffersCount());
+
+        buffer.release();
+        assertEquals(0, pool.getUsedBuffersCount());
+    }
+
+    @Test
+    public void testUnpooledBufferWhenPoolExhausted() {
+        pool.acquire(100);
+        pool.acquire(100);
+
+        PacketBuffer buffer = pool.acquire(100);
+        assertEquals(1, pool.getMissesCount());
+        assertEquals(2, pool.getUsedBuffersCount());
+
+        buffer.release();
+        assertEquals(2, pool.getUsedBuffersCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDoubleRelease() {
+        PacketBuffer buffer = pool.acquire(100);
+        buffer.release();
+        buffer.release();
+    }
+}
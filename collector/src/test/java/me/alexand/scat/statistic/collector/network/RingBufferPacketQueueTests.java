@@ -0,0 +1,143 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.network;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Тесты неблокирующей очереди пакетов
+ *
+ * @author asidorov84@gmail.com
+ */
+public class RingBufferPacketQueueTests {
+    private static final int PRODUCERS_COUNT = 4;
+    private static final int CONSUMERS_COUNT = 4;
+    private static final int PACKETS_PER_PRODUCER = 100_000;
+
+    @Test
+    public void testCapacityRoundedToPowerOfTwo() {
+        assertEquals(16, new RingBufferPacketQueue(10, WaitStrategy.of("busy-spin")).capacity());
+        assertEquals(16, new RingBufferPacketQueue(16, WaitStrategy.of("busy-spin")).capacity());
+    }
+
+    @Test
+    public void testOfferAndPollInOrder() {
+        RingBufferPacketQueue queue = new RingBufferPacketQueue(2, WaitStrategy.of("busy-spin"));
+        PacketBuffer first = PacketBuffer.wrap(new byte[1]);
+        PacketBuffer second = PacketBuffer.wrap(new byte[2]);
+
+        assertTrue(queue.offer(first));
+        assertTrue(queue.offer(second));
+        assertFalse(queue.offer(PacketBuffer.wrap(new byte[3])));
+        assertEquals(2, queue.size());
+
+        assertSame(first, queue.poll());
+        assertSame(second, queue.poll());
+        assertNull(queue.poll());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testConcurrentTransferWithBlockingStrategy() throws Exception {
+        testConcurrentTransfer("blocking");
+    }
+
+    @Test
+    public void testConcurrentTransferWithYieldingStrategy() throws Exception {
+        testConcurrentTransfer("yielding");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownWaitStrategy() {
+        WaitStrategy.of("unknown");
+    }
+
+    private void testConcurrentTransfer(String waitStrategy) throws Exception {
+        RingBufferPacketQueue queue = new RingBufferPacketQueue(1024, WaitStrategy.of(waitStrategy));
+        ExecutorService executor = Executors.newFixedThreadPool(PRODUCERS_COUNT + CONSUMERS_COUNT);
+        AtomicLong consumedLength = new AtomicLong();
+        List<Future<?>> producers = new ArrayList<>();
+
+        //длина пакета используется как его идентификатор, сумма длин должна сойтись
+        PacketBuffer[] packets = new PacketBuffer[PACKETS_PER_PRODUCER];
+        for (int i = 0; i < PACKETS_PER_PRODUCER; i++) {
+            packets[i] = PacketBuffer.wrap(new byte[i % 100]);
+        }
+
+        for (int i = 0; i < CONSUMERS_COUNT; i++) {
+            executor.submit(() -> {
+                try {
+                    while (true) {
+                        consumedLength.addAndGet(queue.take().length());
+                    }
+                } catch (InterruptedException e) {
+                    //остановка потребителя
+                }
+            });
+        }
+
+        for (int i = 0; i < PRODUCERS_COUNT; i++) {
+            producers.add(executor.submit(() -> {
+                for (PacketBuffer packet : packets) {
+                    while (!queue.offer(packet)) {
+                        Thread.yield();
+                    }
+                }
+            }));
+        }
+
+        for (Future<?> producer : producers) {
+            producer.get(30, TimeUnit.SECONDS);
+        }
+
+        long expectedLength = 0;
+        for (PacketBuffer packet : packets) {
+            expectedLength += packet.length();
+        }
+        expectedLength *= PRODUCERS_COUNT;
+
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (queue.size() != 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        executor.shutdownNow();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(0, queue.size());
+        assertEquals(expectedLength, consumedLength.get());
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.network;
+
+import org.junit.Test;
+
+import static me.alexand.scat.statistic.collector.entities.RawPacketsEntities.RAW_CS_REQ_DATA_PAYLOAD;
+import static me.alexand.scat.statistic.collector.entities.RawPacketsEntities.RAW_CS_REQ_TEMPLATE;
+import static org.junit.Assert.*;
+
+/**
+ * Тесты очереди пакетов, разделенной по экспортерам
+ *
+ * @author asidorov84@gmail.com
+ */
+public class ShardedPacketQueueTests {
+    private final ShardedPacketQueue queue = new ShardedPacketQueue(new PacketQueue[]{
+            new BlockingPacketQueue(4),
+            new BlockingPacketQueue(4)
+    });
+
+    @Test
+    public void testPacketsOfOneDomainGoToOneShardInOrder() throws Exception {
+        PacketBuffer template = withDomain(RAW_CS_REQ_TEMPLATE, 3);
+        PacketBuffer data = withDomain(RAW_CS_REQ_DATA_PAYLOAD, 3);
+        PacketBuffer otherDomainData = withDomain(RAW_CS_REQ_DATA_PAYLOAD, 4);
+
+        queue.offer(template);
+        queue.offer(otherDomainData);
+        queue.offer(data);
+
+        assertEquals(3, queue.size());
+        assertEquals(8, queue.capacity());
+
+        assertSame(otherDomainData, queue.take(0));
+        assertSame(template, queue.take(1));
+        assertSame(data, queue.take(1));
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testSessionEndGoesToShardOfSession() throws Exception {
+        PacketBuffer data = withDomain(RAW_CS_REQ_DATA_PAYLOAD, 3);
+        PacketBuffer sessionEnd = PacketBuffer.sessionEnd(1, 3);
+
+        queue.offer(data);
+        queue.offer(sessionEnd);
+
+        assertSame(data, queue.take(1));
+        assertSame(sessionEnd, queue.take(1));
+        assertTrue(sessionEnd.isSessionEnd());
+        assertEquals(1, sessionEnd.session());
+        assertFalse(data.isSessionEnd());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testTakeWithoutShard() throws Exception {
+        queue.take();
+    }
+
+    private static PacketBuffer withDomain(byte[] packet, int observationDomainID) {
+        PacketBuffer buffer = PacketBuffer.wrap(packet.clone());
+        buffer.array()[15] = (byte) observationDomainID;
+        return buffer;
+    }
+}
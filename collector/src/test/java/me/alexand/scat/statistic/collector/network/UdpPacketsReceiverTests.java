@@ -0,0 +1,221 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.network;
+
+import me.alexand.scat.statistic.collector.service.StatCollector;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+
+import static me.alexand.scat.statistic.collector.entities.RawPacketsEntities.RAW_CS_REQ_DATA_PAYLOAD;
+import static me.alexand.scat.statistic.collector.entities.RawPacketsEntities.RAW_CS_REQ_TEMPLATE;
+import static me.alexand.scat.statistic.collector.utils.BytesConvertUtils.fourBytesToLong;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Тесты UDP-приемника пакетов
+ *
+ * @author asidorov84@gmail.com
+ */
+public class UdpPacketsReceiverTests {
+    private static final String ADDRESS = "127.0.0.1";
+
+    private final StatCollector statCollector = mock(StatCollector.class);
+    private final PacketBufferPool packetBufferPool = new PacketBufferPool(4);
+    private UdpPacketsReceiver receiver;
+    private int port;
+    //Датаграммы одного теста отправляются с одного порта, так как источником считается адрес и порт
+    private DatagramSocket socket;
+
+    @Before
+    public void before() throws IOException {
+        try (DatagramSocket socket = new DatagramSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        socket = new DatagramSocket();
+
+        receiver = createReceiver(60_000);
+        receiver.start();
+    }
+
+    @After
+    public void after() {
+        socket.close();
+        assertTrue(receiver.shutdown());
+        assertEquals(0, packetBufferPool.getUsedBuffersCount());
+    }
+
+    @Test
+    public void testReceiveDatagrams() throws Exception {
+        send(RAW_CS_REQ_TEMPLATE);
+        assertArrayEquals(RAW_CS_REQ_TEMPLATE, nextPacket());
+
+        send(RAW_CS_REQ_DATA_PAYLOAD);
+        assertArrayEquals(RAW_CS_REQ_DATA_PAYLOAD, nextPacket());
+        assertEquals(0, receiver.getRemainingPacketsCount());
+
+        long exportedRecords = fourBytesToLong(RAW_CS_REQ_DATA_PAYLOAD, 8) - fourBytesToLong(RAW_CS_REQ_TEMPLATE, 8);
+        verify(statCollector, timeout(1000)).registerExportedRecords(1L, exportedRecords);
+    }
+
+    @Test
+    public void testDropMalformedDatagram() throws Exception {
+        //длина в заголовке не совпадает с длиной датаграммы
+        byte[] truncated = new byte[RAW_CS_REQ_DATA_PAYLOAD.length - 1];
+        System.arraycopy(RAW_CS_REQ_DATA_PAYLOAD, 0, truncated, 0, truncated.length);
+        send(truncated);
+
+        verify(statCollector, timeout(1000)).registerMalformedPacket();
+
+        send(RAW_CS_REQ_TEMPLATE);
+        assertArrayEquals(RAW_CS_REQ_TEMPLATE, nextPacket());
+        assertEquals(0, receiver.getRemainingPacketsCount());
+    }
+
+    @Test
+    public void testRegisterOutOfOrderDatagram() throws Exception {
+        send(RAW_CS_REQ_DATA_PAYLOAD);
+        assertArrayEquals(RAW_CS_REQ_DATA_PAYLOAD, nextPacket());
+
+        send(RAW_CS_REQ_TEMPLATE);
+        assertArrayEquals(RAW_CS_REQ_TEMPLATE, nextPacket());
+
+        verify(statCollector, timeout(1000)).registerOutOfOrderPacket(anyString());
+    }
+
+    @Test
+    public void testRegisterLostRecords() throws Exception {
+        send(RAW_CS_REQ_DATA_PAYLOAD);
+        PacketBuffer packet = receiver.getNextPacket();
+        int session = packet.session();
+        packet.release();
+
+        long sequenceNumber = fourBytesToLong(RAW_CS_REQ_DATA_PAYLOAD, 8);
+        receiver.registerProcessedMessage(session, 1, sequenceNumber, 1);
+        //пропущено 5 записей после первого сообщения
+        receiver.registerProcessedMessage(session, 1, sequenceNumber + 6, 1);
+        verify(statCollector).registerLostRecords(ADDRESS, 1L, 5L);
+
+        //сообщение с двумя из пропущенных записей обработано позже
+        receiver.registerProcessedMessage(session, 1, sequenceNumber + 1, 2);
+        verify(statCollector).registerLostRecords(ADDRESS, 1L, -2L);
+
+        //сообщения TCP-сессий не учитываются
+        receiver.registerProcessedMessage(1, 1, sequenceNumber + 100, 1);
+        verify(statCollector, times(2)).registerLostRecords(anyString(), anyLong(), anyLong());
+    }
+
+    @Test
+    public void testSessionPerSourcePort() throws Exception {
+        send(RAW_CS_REQ_TEMPLATE);
+        PacketBuffer first = receiver.getNextPacket();
+
+        try (DatagramSocket other = new DatagramSocket()) {
+            other.send(new DatagramPacket(RAW_CS_REQ_TEMPLATE, RAW_CS_REQ_TEMPLATE.length,
+                    InetAddress.getByName(ADDRESS), port));
+        }
+
+        PacketBuffer second = receiver.getNextPacket();
+
+        try {
+            assertNotEquals(first.session(), second.session());
+            assertTrue((first.session() & PacketBuffer.UDP_SESSION) != 0);
+        } finally {
+            first.release();
+            second.release();
+        }
+    }
+
+    @Test
+    public void testIdleSourceExpired() throws Exception {
+        assertTrue(receiver.shutdown());
+        receiver = createReceiver(100);
+        receiver.start();
+
+        send(RAW_CS_REQ_TEMPLATE);
+        PacketBuffer packet = receiver.getNextPacket();
+        int session = packet.session();
+
+        //после закрытия сессии процессоры получают признак ее конца по домену источника
+        PacketBuffer sessionEnd = receiver.getNextPacket();
+        assertTrue(sessionEnd.isSessionEnd());
+        assertEquals(session, sessionEnd.session());
+        assertEquals(1L, fourBytesToLong(sessionEnd.array(), 12));
+
+        //шаблоны сессии удаляются только после обработки пакета, полученного до признака конца
+        assertFalse(receiver.completePacket(sessionEnd));
+        sessionEnd.release();
+        assertTrue(receiver.completePacket(packet));
+        packet.release();
+
+        //закрытый номер сессии не выдается повторно, пока есть неиспользованные номера
+        send(RAW_CS_REQ_DATA_PAYLOAD);
+        packet = receiver.getNextPacket();
+
+        try {
+            assertTrue(packet.session() != session && !packet.isSessionEnd());
+        } finally {
+            packet.release();
+        }
+
+        //учет потерянных записей закрытой сессии прекращается
+        receiver.registerProcessedMessage(session, 1, 1, 1);
+        receiver.registerProcessedMessage(session, 1, 10, 1);
+        verify(statCollector, never()).registerLostRecords(anyString(), anyLong(), anyLong());
+    }
+
+    private UdpPacketsReceiver createReceiver(long sourceIdleTimeoutMillis) throws IOException {
+        return new UdpPacketsReceiver(ADDRESS, port, new BlockingPacketQueue(16), 65535, 2, true,
+                sourceIdleTimeoutMillis, packetBufferPool, OverflowPolicy.drop(), statCollector);
+    }
+
+    private byte[] nextPacket() throws InterruptedException {
+        PacketBuffer packet = receiver.getNextPacket();
+
+        try {
+            return packet.toByteArray();
+        } finally {
+            packet.release();
+        }
+    }
+
+    private void send(byte[] packet) throws IOException {
+        socket.send(new DatagramPacket(packet, packet.length, InetAddress.getByName(ADDRESS), port));
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.repository;
+
+import me.alexand.scat.statistic.collector.TestConfig;
+import me.alexand.scat.statistic.collector.model.IANAAbstractDataTypes;
+import me.alexand.scat.statistic.collector.model.InfoModelEntity;
+import me.alexand.scat.statistic.collector.model.RecordsBatch;
+import me.alexand.scat.statistic.collector.repository.impls.CompactTransitionalBufferRepositoryImpl;
+import me.alexand.scat.statistic.common.entities.ClickCount;
+import me.alexand.scat.statistic.common.entities.TrackedDomainRequests;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.context.jdbc.SqlConfig;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.math.BigInteger;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static me.alexand.scat.statistic.collector.entities.DataRecordsTestEntities.CS_REQ_DATA_RECORD_1;
+import static me.alexand.scat.statistic.collector.model.TemplateType.CS_REQ;
+import static me.alexand.scat.statistic.collector.utils.BytesConvertUtils.ipv4ToInt;
+import static me.alexand.scat.statistic.collector.utils.DateTimeUtils.localDateTimeToEpochSeconds;
+import static me.alexand.scat.statistic.collector.utils.SCATDataTemplateEntities.CS_REQ_TEMPLATE;
+import static me.alexand.scat.statistic.common.data.DomainRegexTestEntities.TEST_MAIL_RU;
+import static me.alexand.scat.statistic.common.data.DomainRegexTestEntities.TEST_VK_COM;
+import static org.junit.Assert.*;
+import static org.springframework.test.context.jdbc.Sql.ExecutionPhase.AFTER_TEST_METHOD;
+import static org.springframework.test.context.jdbc.SqlConfig.TransactionMode.ISOLATED;
+
+/**
+ * Тесты временного буфера с компактным хранением значений
+ *
+ * @author asidorov84@gmail.com
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = TestConfig.class)
+@TestPropertySource(properties = {
+        "buffer.storage.mode=compact",
+        "db.hsqldb.url=jdbc:hsqldb:mem:compact-buffer"
+})
+@Sql(
+        scripts = "classpath:sql/clear.sql",
+        executionPhase = AFTER_TEST_METHOD,
+        config = @SqlConfig(transactionMode = ISOLATED)
+)
+public class CompactTransitionalBufferRepositoryTests {
+    private static final String POLYAKOV = "polyakov_al@setka.ru";
+    private static final String BEGOV = "begov_ra@setka.ru";
+
+    @Autowired
+    private TransitionalBufferRepository repository;
+
+    @Before
+    public void before() {
+        RecordsBatch batch = newCsReqBatch(4);
+
+        addCsReqRow(batch, LocalDateTime.parse("2018-04-01T17:06:17"), POLYAKOV, "176.221.0.224", "www.vk.com");
+        addCsReqRow(batch, LocalDateTime.parse("2018-04-01T17:06:19"), POLYAKOV, "176.221.0.224", "api.vk.com");
+        addCsReqRow(batch, LocalDateTime.parse("2018-04-01T17:06:20"), BEGOV, "92.246.155.49", "rs.mail.ru");
+        //в UTC это еще 1 апреля, но дата определяется в часовом поясе экспортера
+        addCsReqRow(batch, LocalDateTime.parse("2018-04-02T00:10:00"), BEGOV, "92.246.155.49", "www.vk.com");
+
+        assertEquals(4, repository.save(batch));
+    }
+
+    @Test
+    public void testCompactRepositoryIsConfigured() {
+        assertTrue(AopUtils.getTargetClass(repository) == CompactTransitionalBufferRepositoryImpl.class);
+        assertEquals(4, repository.getCount(CS_REQ));
+    }
+
+    @Test
+    public void testSaveRecord() {
+        assertTrue(repository.save(CS_REQ_DATA_RECORD_1));
+        assertEquals(LocalDateTime.parse("2018-04-01T17:06:09"), repository.getMinEventTime(CS_REQ));
+    }
+
+    @Test
+    public void testGetClickCount() {
+        List<ClickCount> actual = repository.getClickCount(LocalDateTime.of(2018, 3, 1, 0, 0, 0),
+                LocalDateTime.of(2018, 5, 1, 0, 0, 0));
+
+        assertEquals(2, actual.size());
+        assertTrue(actual.contains(ClickCount.builder()
+                .date(LocalDate.of(2018, 4, 1))
+                .count(BigInteger.valueOf(3))
+                .build()));
+        assertTrue(actual.contains(ClickCount.builder()
+                .date(LocalDate.of(2018, 4, 2))
+                .count(BigInteger.ONE)
+                .build()));
+    }
+
+    @Test
+    public void testGetTrackedResults() {
+        List<TrackedDomainRequests> actual = repository.getTrackedDomainRequests(
+                asList(TEST_MAIL_RU, TEST_VK_COM),
+                LocalDateTime.parse("2018-04-01T17:06:10"),
+                LocalDateTime.parse("2018-04-01T17:07:09"));
+
+        assertEquals(2, actual.size());
+        assertTrue(actual.contains(TrackedDomainRequests.builder()
+                .date(LocalDate.of(2018, 4, 1))
+                .domainRegex(TEST_VK_COM)
+                .address("176.221.0.224")
+                .login(POLYAKOV)
+                .firstTime(LocalTime.of(17, 6, 17))
+                .lastTime(LocalTime.of(17, 6, 19))
+                .count(BigInteger.valueOf(2))
+                .build()));
+    }
+
+    @Test
+    public void testDeleteAndEventTimeBounds() {
+        assertEquals(LocalDateTime.parse("2018-04-01T17:06:17"), repository.getMinEventTime(CS_REQ));
+        assertEquals(LocalDateTime.parse("2018-04-02T00:10:00"), repository.getMaxEventTime(CS_REQ));
+
+        assertEquals(2, repository.delete(CS_REQ, LocalDateTime.parse("2018-04-01T17:06:19")));
+        assertEquals(LocalDateTime.parse("2018-04-01T17:06:20"), repository.getMinEventTime(CS_REQ));
+    }
+
+    private static RecordsBatch newCsReqBatch(int capacity) {
+        List<InfoModelEntity> specifiers = CS_REQ_TEMPLATE.getSpecifiers();
+
+        return RecordsBatch.builder()
+                .type(CS_REQ)
+                .columnNames(specifiers.stream().map(InfoModelEntity::getName).toArray(String[]::new))
+                .columnTypes(specifiers.stream().map(InfoModelEntity::getType).toArray(IANAAbstractDataTypes[]::new))
+                .capacity(capacity)
+                .build();
+    }
+
+    private static void addCsReqRow(RecordsBatch batch, LocalDateTime eventTime, String login, String ipSrc,
+                                    String hostname) {
+        byte[] loginBytes = login.getBytes();
+        byte[] hostnameBytes = hostname.getBytes();
+
+        for (int column = 0; column < batch.getColumnCount(); column++) {
+            switch (batch.getColumnKind(column)) {
+                case LONG:
+                    batch.setLong(column, 0);
+                    break;
+                case INT:
+                    batch.setInt(column, 1);
+                    break;
+                case STRING:
+                    batch.setString(column, hostnameBytes, 0, 0);
+                    break;
+            }
+        }
+
+        batch.setLong(0, localDateTimeToEpochSeconds(eventTime));
+        batch.setString(1, loginBytes, 0, loginBytes.length);
+        batch.setInt(2, ipv4ToInt(ipSrc));
+        batch.setInt(3, ipv4ToInt("217.69.139.42"));
+        batch.setString(4, hostnameBytes, 0, hostnameBytes.length);
+        batch.endRow();
+    }
+}
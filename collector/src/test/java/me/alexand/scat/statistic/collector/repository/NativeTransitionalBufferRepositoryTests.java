@@ -0,0 +1,289 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.repository;
+
+import me.alexand.scat.statistic.collector.TestConfig;
+import me.alexand.scat.statistic.collector.model.IANAAbstractDataTypes;
+import me.alexand.scat.statistic.collector.model.InfoModelEntity;
+import me.alexand.scat.statistic.collector.model.RecordsBatch;
+import me.alexand.scat.statistic.collector.model.SCATDataTemplate;
+import me.alexand.scat.statistic.collector.model.TemplateType;
+import me.alexand.scat.statistic.collector.repository.impls.NativeTransitionalBufferRepositoryImpl;
+import me.alexand.scat.statistic.common.entities.ClickCount;
+import me.alexand.scat.statistic.common.entities.TrackedDomainRequests;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.context.jdbc.SqlConfig;
+import org.springframework.test.context.jdbc.SqlGroup;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static me.alexand.scat.statistic.collector.entities.DataRecordsTestEntities.CS_REQ_DATA_RECORD_1;
+import static me.alexand.scat.statistic.collector.model.TemplateType.*;
+import static me.alexand.scat.statistic.collector.utils.BytesConvertUtils.ipv4ToInt;
+import static me.alexand.scat.statistic.collector.utils.DateTimeUtils.localDateTimeToEpochMillis;
+import static me.alexand.scat.statistic.collector.utils.DateTimeUtils.localDateTimeToEpochSeconds;
+import static me.alexand.scat.statistic.collector.utils.SCATDataTemplateEntities.CS_REQ_TEMPLATE;
+import static me.alexand.scat.statistic.collector.utils.SCATDataTemplateEntities.GENERIC_TEMPLATE;
+import static me.alexand.scat.statistic.common.data.ClickCountTestEntities.COUNTER_20180401;
+import static me.alexand.scat.statistic.common.data.ClickCountTestEntities.COUNTER_20180402;
+import static me.alexand.scat.statistic.common.data.DomainRegexTestEntities.TEST_MAIL_RU;
+import static me.alexand.scat.statistic.common.data.DomainRegexTestEntities.TEST_VK_COM;
+import static org.junit.Assert.*;
+import static org.springframework.test.annotation.DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD;
+import static org.springframework.test.context.jdbc.Sql.ExecutionPhase.AFTER_TEST_METHOD;
+import static org.springframework.test.context.jdbc.Sql.ExecutionPhase.BEFORE_TEST_METHOD;
+import static org.springframework.test.context.jdbc.SqlConfig.TransactionMode.ISOLATED;
+
+/**
+ * Тесты временного буфера в памяти процесса.<br>
+ * Буфер заполняется теми же записями, что и в TransitionalBufferRepositoryTests: они загружаются скриптом
+ * populate.sql в базу данных и копируются в буфер пакетом.
+ *
+ * @author asidorov84@gmail.com
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@DirtiesContext(classMode = AFTER_EACH_TEST_METHOD)
+@ContextConfiguration(classes = TestConfig.class)
+@TestPropertySource(properties = {
+        "buffer.storage.mode=native",
+        "buffer.partition.seconds=10",
+        "db.hsqldb.url=jdbc:hsqldb:mem:native-buffer"
+})
+@SqlGroup({
+        @Sql(
+                scripts = "classpath:sql/populate.sql",
+                executionPhase = BEFORE_TEST_METHOD,
+                config = @SqlConfig(transactionMode = ISOLATED)
+        ),
+        @Sql(
+                scripts = "classpath:sql/clear.sql",
+                executionPhase = AFTER_TEST_METHOD,
+                config = @SqlConfig(transactionMode = ISOLATED)
+        )
+})
+public class NativeTransitionalBufferRepositoryTests {
+    private static final long EXPECTED_CS_REQ_RECORDS_COUNT = 22;
+    private static final LocalDateTime DELETE_BEFORE_DATE_TIME = LocalDateTime.parse("2018-04-01T17:06:10");
+    private static final long EXPECTED_DELETED_RECORDS_COUNT = 6;
+    private static final String POLYAKOV = "polyakov_al@setka.ru";
+
+    @Autowired
+    private TransitionalBufferRepository repository;
+
+    @Autowired
+    @Qualifier("bufferJDBCTemplate")
+    private JdbcTemplate jdbcTemplate;
+
+    @Before
+    public void before() {
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                "SELECT event_time, login, ip_src, ip_dst, hostname FROM cs_req");
+        RecordsBatch batch = newBatch(CS_REQ_TEMPLATE, rows.size());
+
+        for (Map<String, Object> row : rows) {
+            addCsReqRow(batch,
+                    ((Timestamp) row.get("event_time")).toLocalDateTime(),
+                    (String) row.get("login"),
+                    (String) row.get("ip_src"),
+                    (String) row.get("hostname"));
+        }
+
+        assertEquals(EXPECTED_CS_REQ_RECORDS_COUNT, repository.save(batch));
+    }
+
+    @After
+    public void after() {
+        for (TemplateType type : TemplateType.values()) {
+            repository.delete(type, LocalDateTime.parse("2100-01-01T00:00:00"));
+            assertEquals(0, repository.getCount(type));
+        }
+    }
+
+    @Test
+    public void testNativeRepositoryIsConfigured() {
+        assertTrue(AopUtils.getTargetClass(repository) == NativeTransitionalBufferRepositoryImpl.class);
+        assertEquals(EXPECTED_CS_REQ_RECORDS_COUNT, repository.getCount(CS_REQ));
+    }
+
+    @Test
+    public void testSaveCSReq() {
+        assertTrue(repository.save(CS_REQ_DATA_RECORD_1));
+        assertEquals(EXPECTED_CS_REQ_RECORDS_COUNT + 1, repository.getCount(CS_REQ));
+        assertEquals(LocalDateTime.parse("2018-04-01T17:06:08"), repository.getMinEventTime(CS_REQ));
+    }
+
+    @Test
+    public void testSaveBatchSpanningBuckets() {
+        RecordsBatch batch = newBatch(CS_REQ_TEMPLATE, 4);
+
+        addCsReqRow(batch, LocalDateTime.parse("2018-04-01T17:06:29"), POLYAKOV, "176.221.0.224", "www.vk.com");
+        addCsReqRow(batch, LocalDateTime.parse("2018-04-01T17:06:30"), POLYAKOV, "176.221.0.224", "www.vk.com");
+        addCsReqRow(batch, LocalDateTime.parse("2018-04-01T17:06:41"), POLYAKOV, "176.221.0.224", "www.vk.com");
+        //запись без отметки времени не попадает в выборки и не сохраняется
+        setDefaults(batch);
+        batch.setNull(0);
+        batch.endRow();
+
+        assertEquals(3, repository.save(batch));
+        assertEquals(EXPECTED_CS_REQ_RECORDS_COUNT + 3, repository.getCount(CS_REQ));
+        assertEquals(EXPECTED_DELETED_RECORDS_COUNT + 7,
+                repository.delete(CS_REQ, LocalDateTime.parse("2018-04-01T17:06:30")));
+        assertEquals(LocalDateTime.parse("2018-04-01T17:06:41"), repository.getMinEventTime(CS_REQ));
+    }
+
+    @Test
+    public void testDeleteBetween() {
+        assertEquals(EXPECTED_DELETED_RECORDS_COUNT, repository.delete(CS_REQ, DELETE_BEFORE_DATE_TIME));
+        assertEquals(0, repository.delete(CS_REQ, LocalDateTime.parse("2017-04-01T17:06:10")));
+        assertEquals(EXPECTED_CS_REQ_RECORDS_COUNT - EXPECTED_DELETED_RECORDS_COUNT, repository.getCount(CS_REQ));
+        assertEquals(LocalDateTime.parse("2018-04-01T17:06:17"), repository.getMinEventTime(CS_REQ));
+    }
+
+    @Test
+    public void testDeleteInsideBucket() {
+        //записи 17:06:17 и 17:06:18 удаляются, а 17:06:19 из того же интервала остаются
+        assertEquals(EXPECTED_DELETED_RECORDS_COUNT + 3,
+                repository.delete(CS_REQ, LocalDateTime.parse("2018-04-01T17:06:18")));
+        assertEquals(0, repository.delete(CS_REQ, LocalDateTime.parse("2018-04-01T17:06:18")));
+        assertEquals(LocalDateTime.parse("2018-04-01T17:06:19"), repository.getMinEventTime(CS_REQ));
+
+        List<ClickCount> actual = repository.getClickCount(LocalDateTime.of(2018, 4, 1, 0, 0, 0),
+                LocalDateTime.of(2018, 4, 2, 0, 0, 0));
+
+        assertEquals(1, actual.size());
+        assertEquals(BigInteger.valueOf(7), actual.get(0).getCount());
+    }
+
+    @Test
+    public void testGetTrackedResults() {
+        List<TrackedDomainRequests> actual = repository.getTrackedDomainRequests(
+                asList(TEST_MAIL_RU, TEST_VK_COM),
+                LocalDateTime.parse("2018-04-01T17:06:10"),
+                LocalDateTime.parse("2018-04-01T17:07:09"));
+
+        assertEquals(5, actual.size());
+        assertTrue(actual.contains(TrackedDomainRequests.builder()
+                .date(LocalDate.of(2018, 4, 1))
+                .domainRegex(TEST_VK_COM)
+                .address("176.221.0.224")
+                .login(POLYAKOV)
+                .firstTime(LocalTime.of(17, 6, 17))
+                .lastTime(LocalTime.of(17, 6, 19))
+                .count(BigInteger.valueOf(3))
+                .build()));
+    }
+
+    @Test
+    public void testGetClickCount() {
+        List<ClickCount> expected = asList(COUNTER_20180401, COUNTER_20180402);
+        List<ClickCount> actual = repository.getClickCount(LocalDateTime.of(2018, 3, 1, 0, 0, 0), LocalDateTime.of(2018, 5, 1, 0, 0, 0));
+        assertEquals(expected.size(), actual.size());
+        expected.forEach(cc -> assertTrue(actual.contains(cc)));
+    }
+
+    @Test
+    public void testGetEventTimeBounds() {
+        assertEquals(LocalDateTime.parse("2018-04-01T17:06:08"), repository.getMinEventTime(CS_REQ));
+        assertEquals(LocalDateTime.parse("2018-04-02T17:06:08"), repository.getMaxEventTime(CS_REQ));
+        assertNull(repository.getMinEventTime(CS_RESP));
+        assertNull(repository.getMaxEventTime(CS_RESP));
+    }
+
+    @Test
+    public void testGenericEventTimeBounds() {
+        RecordsBatch batch = newBatch(GENERIC_TEMPLATE, 2);
+
+        addGenericRow(batch, LocalDateTime.parse("2018-04-01T10:00:00"), LocalDateTime.parse("2018-04-01T10:00:30"));
+        addGenericRow(batch, LocalDateTime.parse("2018-04-01T10:00:20"), LocalDateTime.parse("2018-04-01T10:00:25"));
+
+        assertEquals(2, repository.save(batch));
+        //записи GENERIC удаляются по времени окончания потока, а максимальным считается время начала
+        assertEquals(LocalDateTime.parse("2018-04-01T10:00:25"), repository.getMinEventTime(GENERIC));
+        assertEquals(LocalDateTime.parse("2018-04-01T10:00:20"), repository.getMaxEventTime(GENERIC));
+        assertEquals(1, repository.delete(GENERIC, LocalDateTime.parse("2018-04-01T10:00:25")));
+        assertEquals(LocalDateTime.parse("2018-04-01T10:00:00"), repository.getMaxEventTime(GENERIC));
+    }
+
+    private static RecordsBatch newBatch(SCATDataTemplate template, int capacity) {
+        List<InfoModelEntity> specifiers = template.getSpecifiers();
+
+        return RecordsBatch.builder()
+                .type(template.getType())
+                .columnNames(specifiers.stream().map(InfoModelEntity::getName).toArray(String[]::new))
+                .columnTypes(specifiers.stream().map(InfoModelEntity::getType).toArray(IANAAbstractDataTypes[]::new))
+                .capacity(capacity)
+                .build();
+    }
+
+    private static void addCsReqRow(RecordsBatch batch, LocalDateTime eventTime, String login, String ipSrc,
+                                    String hostname) {
+        setDefaults(batch);
+        batch.setLong(0, localDateTimeToEpochSeconds(eventTime));
+        batch.setString(1, login);
+        batch.setInt(2, ipv4ToInt(ipSrc));
+        batch.setInt(3, ipv4ToInt("217.69.139.42"));
+        batch.setString(4, hostname);
+        batch.endRow();
+    }
+
+    private static void addGenericRow(RecordsBatch batch, LocalDateTime flowStart, LocalDateTime flowEnd) {
+        setDefaults(batch);
+        batch.setLong(10, localDateTimeToEpochMillis(flowStart));
+        batch.setLong(11, localDateTimeToEpochMillis(flowEnd));
+        batch.endRow();
+    }
+
+    private static void setDefaults(RecordsBatch batch) {
+        for (int column = 0; column < batch.getColumnCount(); column++) {
+            switch (batch.getColumnKind(column)) {
+                case LONG:
+                    batch.setLong(column, 0);
+                    break;
+                case INT:
+                    batch.setInt(column, 1);
+                    break;
+                case STRING:
+                    batch.setString(column, "");
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.repository;
+
+import me.alexand.scat.statistic.collector.TestConfig;
+import me.alexand.scat.statistic.collector.model.IANAAbstractDataTypes;
+import me.alexand.scat.statistic.collector.model.InfoModelEntity;
+import me.alexand.scat.statistic.collector.model.RecordsBatch;
+import me.alexand.scat.statistic.collector.model.TemplateType;
+import me.alexand.scat.statistic.common.entities.ClickCount;
+import me.alexand.scat.statistic.common.entities.TrackedDomainRequests;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.math.BigInteger;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static me.alexand.scat.statistic.collector.entities.DataRecordsTestEntities.CS_REQ_DATA_RECORD_1;
+import static me.alexand.scat.statistic.collector.model.TemplateType.CS_REQ;
+import static me.alexand.scat.statistic.collector.utils.BytesConvertUtils.ipv4ToInt;
+import static me.alexand.scat.statistic.collector.utils.DateTimeUtils.localDateTimeToEpochSeconds;
+import static me.alexand.scat.statistic.collector.utils.SCATDataTemplateEntities.CS_REQ_TEMPLATE;
+import static me.alexand.scat.statistic.common.data.DomainRegexTestEntities.TEST_MAIL_RU;
+import static me.alexand.scat.statistic.common.data.DomainRegexTestEntities.TEST_VK_COM;
+import static org.junit.Assert.*;
+import static org.springframework.test.annotation.DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD;
+
+/**
+ * Тесты временного буфера, таблицы которого разделены на секции по минутам
+ *
+ * @author asidorov84@gmail.com
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@DirtiesContext(classMode = AFTER_EACH_TEST_METHOD)
+@ContextConfiguration(classes = TestConfig.class)
+@TestPropertySource(properties = {
+        "buffer.storage.mode=compact",
+        "buffer.partition.seconds=60",
+        "db.hsqldb.url=jdbc:hsqldb:mem:partitioned-buffer"
+})
+public class PartitionedTransitionalBufferRepositoryTests {
+    private static final String POLYAKOV = "polyakov_al@setka.ru";
+    private static final String BEGOV = "begov_ra@setka.ru";
+
+    @Autowired
+    private TransitionalBufferRepository repository;
+
+    @Autowired
+    @Qualifier("bufferJDBCTemplate")
+    private JdbcTemplate jdbcTemplate;
+
+    @Before
+    public void before() {
+        RecordsBatch batch = newCsReqBatch(5, 0);
+
+        addCsReqRow(batch, LocalDateTime.parse("2018-04-01T17:06:17"), POLYAKOV, "176.221.0.224", "www.vk.com");
+        addCsReqRow(batch, LocalDateTime.parse("2018-04-01T17:06:19"), POLYAKOV, "176.221.0.224", "api.vk.com");
+        addCsReqRow(batch, LocalDateTime.parse("2018-04-01T17:07:20"), BEGOV, "92.246.155.49", "rs.mail.ru");
+        addCsReqRow(batch, LocalDateTime.parse("2018-04-01T17:08:05"), BEGOV, "92.246.155.49", "www.vk.com");
+        addCsReqRow(batch, LocalDateTime.parse("2018-04-02T00:10:00"), BEGOV, "92.246.155.49", "www.vk.com");
+
+        assertEquals(5, repository.save(batch));
+    }
+
+    @After
+    public void after() {
+        for (TemplateType type : TemplateType.values()) {
+            repository.delete(type, LocalDateTime.parse("2100-01-01T00:00:00"));
+            assertEquals(0, repository.getCount(type));
+        }
+
+        assertEquals(0, getPartitionsCount());
+    }
+
+    @Test
+    public void testRecordsArePartitioned() {
+        assertEquals(4, getPartitionsCount());
+        assertEquals(Long.valueOf(0), jdbcTemplate.queryForObject("SELECT count(*) FROM cs_req", Long.class));
+        assertEquals(5, repository.getCount(CS_REQ));
+        assertEquals(LocalDateTime.parse("2018-04-01T17:06:17"), repository.getMinEventTime(CS_REQ));
+        assertEquals(LocalDateTime.parse("2018-04-02T00:10:00"), repository.getMaxEventTime(CS_REQ));
+    }
+
+    @Test
+    public void testGetClickCount() {
+        List<ClickCount> actual = repository.getClickCount(LocalDateTime.of(2018, 3, 1, 0, 0, 0),
+                LocalDateTime.of(2018, 5, 1, 0, 0, 0));
+
+        assertEquals(2, actual.size());
+        assertTrue(actual.contains(ClickCount.builder()
+                .date(LocalDate.of(2018, 4, 1))
+                .count(BigInteger.valueOf(4))
+                .build()));
+
+        //период внутри одной секции
+        actual = repository.getClickCount(LocalDateTime.parse("2018-04-01T17:06:18"),
+                LocalDateTime.parse("2018-04-01T17:06:30"));
+
+        assertEquals(1, actual.size());
+        assertEquals(BigInteger.ONE, actual.get(0).getCount());
+    }
+
+    @Test
+    public void testGetTrackedResults() {
+        List<TrackedDomainRequests> actual = repository.getTrackedDomainRequests(
+                asList(TEST_MAIL_RU, TEST_VK_COM),
+                LocalDateTime.parse("2018-04-01T17:06:10"),
+                LocalDateTime.parse("2018-04-01T17:07:21"));
+
+        assertEquals(2, actual.size());
+        assertTrue(actual.contains(TrackedDomainRequests.builder()
+                .date(LocalDate.of(2018, 4, 1))
+                .domainRegex(TEST_VK_COM)
+                .address("176.221.0.224")
+                .login(POLYAKOV)
+                .firstTime(LocalTime.of(17, 6, 17))
+                .lastTime(LocalTime.of(17, 6, 19))
+                .count(BigInteger.valueOf(2))
+                .build()));
+    }
+
+    @Test
+    public void testDeleteDropsExpiredPartitions() {
+        //секции 17:06 и 17:07 истекли полностью
+        assertEquals(3, repository.delete(CS_REQ, LocalDateTime.parse("2018-04-01T17:07:59.999999999")));
+        assertEquals(2, getPartitionsCount());
+        assertEquals(LocalDateTime.parse("2018-04-01T17:08:05"), repository.getMinEventTime(CS_REQ));
+
+        //записи граничной секции удаляются построчно, а сама секция остается
+        assertEquals(0, repository.delete(CS_REQ, LocalDateTime.parse("2018-04-01T17:08:04")));
+        assertEquals(1, repository.delete(CS_REQ, LocalDateTime.parse("2018-04-01T17:08:05")));
+        assertEquals(2, getPartitionsCount());
+        assertEquals(1, repository.getCount(CS_REQ));
+    }
+
+    @Test
+    public void testExpiredRecordsRejected() {
+        assertEquals(3, repository.delete(CS_REQ, LocalDateTime.parse("2018-04-01T17:07:59.999999999")));
+        assertEquals(2, getPartitionsCount());
+
+        //запоздавшая запись удаленной секции не сохраняется и не создает секцию заново
+        assertFalse(repository.save(CS_REQ_DATA_RECORD_1));
+
+        RecordsBatch batch = newCsReqBatch(2, 0);
+        addCsReqRow(batch, LocalDateTime.parse("2018-04-01T17:07:30"), BEGOV, "92.246.155.49", "rs.mail.ru");
+        addCsReqRow(batch, LocalDateTime.parse("2018-04-01T17:08:30"), BEGOV, "92.246.155.49", "rs.mail.ru");
+
+        assertEquals(1, repository.save(batch));
+        assertEquals(2, getPartitionsCount());
+        assertEquals(3, repository.getCount(CS_REQ));
+        assertEquals(LocalDateTime.parse("2018-04-01T17:08:05"), repository.getMinEventTime(CS_REQ));
+    }
+
+    @Test
+    public void testSaveRecordAndBatchWithAddedColumn() {
+        assertTrue(repository.save(CS_REQ_DATA_RECORD_1));
+        assertEquals(LocalDateTime.parse("2018-04-01T17:06:09"), repository.getMinEventTime(CS_REQ));
+        assertEquals(4, getPartitionsCount());
+
+        RecordsBatch batch = newCsReqBatch(2, 1);
+        addCsReqRow(batch, LocalDateTime.parse("2018-04-01T17:06:30"), BEGOV, "92.246.155.49", "rs.mail.ru");
+        addCsReqRow(batch, LocalDateTime.parse("2018-04-01T17:09:30"), BEGOV, "92.246.155.49", "rs.mail.ru");
+
+        //столбец добавляется в основную таблицу и все секции, поэтому объединение секций остается корректным
+        assertEquals(2, repository.save(batch));
+        assertEquals(5, getPartitionsCount());
+        assertEquals(8, repository.getCount(CS_REQ));
+    }
+
+    private long getPartitionsCount() {
+        return jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME LIKE 'CS\\_REQ\\_P%' ESCAPE '\\'",
+                Long.class);
+    }
+
+    private static RecordsBatch newCsReqBatch(int capacity, int addedColumns) {
+        List<InfoModelEntity> specifiers = CS_REQ_TEMPLATE.getSpecifiers();
+        int columnCount = specifiers.size() + addedColumns;
+        String[] names = new String[columnCount];
+        IANAAbstractDataTypes[] types = new IANAAbstractDataTypes[columnCount];
+
+        for (int column = 0; column < columnCount; column++) {
+            boolean added = column >= specifiers.size();
+            names[column] = added ? "http_host_" + column : specifiers.get(column).getName();
+            types[column] = added ? IANAAbstractDataTypes.STRING : specifiers.get(column).getType();
+        }
+
+        return RecordsBatch.builder()
+                .type(CS_REQ)
+                .columnNames(names)
+                .columnTypes(types)
+                .capacity(capacity)
+                .build();
+    }
+
+    private static void addCsReqRow(RecordsBatch batch, LocalDateTime eventTime, String login, String ipSrc,
+                                    String hostname) {
+        for (int column = 0; column < batch.getColumnCount(); column++) {
+            switch (batch.getColumnKind(column)) {
+                case LONG:
+                    batch.setLong(column, 0);
+                    break;
+                case INT:
+                    batch.setInt(column, 1);
+                    break;
+                case STRING:
+                    batch.setString(column, "");
+                    break;
+            }
+        }
+
+        batch.setLong(0, localDateTimeToEpochSeconds(eventTime));
+        batch.setString(1, login);
+        batch.setInt(2, ipv4ToInt(ipSrc));
+        batch.setInt(3, ipv4ToInt("217.69.139.42"));
+        batch.setString(4, hostname);
+        batch.endRow();
+    }
+}
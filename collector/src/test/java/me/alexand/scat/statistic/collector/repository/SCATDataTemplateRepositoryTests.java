@@ -31,7 +31,12 @@ import org.slf4j.LoggerFactory;
 import java.util.Collection;
 
 import static me.alexand.scat.statistic.collector.utils.SCATDataTemplateEntities.DATA_TEMPLATE_LIST;
+import static me.alexand.scat.statistic.collector.model.TemplateType.CS_RESP;
+import static me.alexand.scat.statistic.collector.utils.FingerprintUtils.entitiesFingerprintOf;
+import static me.alexand.scat.statistic.collector.utils.SCATDataTemplateEntities.CS_RESP_TEMPLATE;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -57,4 +62,33 @@ public class SCATDataTemplateRepositoryTests {
         LOGGER.info("All SCAT templates acquisition time is {} ns ({} ms)", ns, ms);
         DATA_TEMPLATE_LIST.forEach(expected -> assertTrue(actual.contains(expected)));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testGetAllReturnsSnapshot() {
+        SCATDataTemplateRepository emptyRepository = new InMemorySCATDataTemplateRepositoryImpl();
+        Collection<SCATDataTemplate> before = emptyRepository.getAll();
+
+        emptyRepository.save(CS_RESP_TEMPLATE);
+
+        //ранее полученный снимок не меняется при сохранении шаблона
+        assertTrue(before.isEmpty());
+        assertEquals(1, emptyRepository.getAll().size());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testGetAllIsUnmodifiable() {
+        repository.getAll().clear();
+    }
+
+    @Test
+    public void testGetByType() {
+        assertEquals(CS_RESP_TEMPLATE, repository.getByType(CS_RESP));
+    }
+
+    @Test
+    public void testGetByFingerprint() {
+        DATA_TEMPLATE_LIST.forEach(expected ->
+                assertEquals(expected, repository.getByFingerprint(entitiesFingerprintOf(expected.getSpecifiers()))));
+        assertNull(repository.getByFingerprint(0));
+    }
+}
@@ -22,6 +22,9 @@
 package me.alexand.scat.statistic.collector.repository;
 
 import me.alexand.scat.statistic.collector.TestConfig;
+import me.alexand.scat.statistic.collector.model.IANAAbstractDataTypes;
+import me.alexand.scat.statistic.collector.model.InfoModelEntity;
+import me.alexand.scat.statistic.collector.model.RecordsBatch;
 import me.alexand.scat.statistic.common.entities.ClickCount;
 import me.alexand.scat.statistic.common.entities.TrackedDomainRequests;
 import org.junit.Test;
@@ -29,6 +32,8 @@ import org.junit.runner.RunWith;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.context.jdbc.SqlConfig;
@@ -41,6 +46,7 @@ import java.util.List;
 import static java.util.Arrays.asList;
 import static me.alexand.scat.statistic.collector.entities.DataRecordsTestEntities.CS_REQ_DATA_RECORD_1;
 import static me.alexand.scat.statistic.collector.model.TemplateType.*;
+import static me.alexand.scat.statistic.collector.utils.SCATDataTemplateEntities.CS_REQ_TEMPLATE;
 import static me.alexand.scat.statistic.common.data.ClickCountTestEntities.COUNTER_20180401;
 import static me.alexand.scat.statistic.common.data.ClickCountTestEntities.COUNTER_20180402;
 import static me.alexand.scat.statistic.common.data.DomainRegexTestEntities.TEST_MAIL_RU;
@@ -76,6 +82,10 @@ public class TransitionalBufferRepositoryTests {
     @Autowired
     private TransitionalBufferRepository repository;
 
+    @Autowired
+    @Qualifier("bufferJDBCTemplate")
+    private JdbcTemplate jdbcTemplate;
+
     @Test
     public void testGetCountCSReq() {
         assertEquals(EXPECTED_CS_REQ_RECORDS_COUNT, repository.getCount(CS_REQ));
@@ -86,6 +96,117 @@ public class TransitionalBufferRepositoryTests {
         assertTrue(repository.save(CS_REQ_DATA_RECORD_1));
     }
 
+    @Test
+    public void testSaveCSReqBatch() {
+        RecordsBatch batch = newCSReqBatch(2);
+
+        for (int i = 0; i < batch.getCapacity(); i++) {
+            for (int column = 0; column < batch.getColumnCount(); column++) {
+                switch (batch.getColumnKind(column)) {
+                    case LONG:
+                        batch.setLong(column, 1522591569L + i);
+                        break;
+                    case INT:
+                        batch.setInt(column, 1);
+                        break;
+                    case STRING:
+                        byte[] value = "rs.mail.ru".getBytes();
+                        batch.setString(column, value, 0, value.length);
+                        break;
+                }
+            }
+
+            batch.endRow();
+        }
+
+        assertEquals(2, repository.save(batch));
+        assertEquals(EXPECTED_CS_REQ_RECORDS_COUNT + 2, repository.getCount(CS_REQ));
+    }
+
+    @Test
+    public void testSaveUnsigned64ExceedingLongMaxValue() {
+        RecordsBatch batch = newCSReqBatch(2);
+
+        for (int i = 0; i < batch.getCapacity(); i++) {
+            for (int column = 0; column < batch.getColumnCount(); column++) {
+                switch (batch.getColumnKind(column)) {
+                    case LONG:
+                        //во второй строке значения UNSIGNED64 равны 2^64 - 1
+                        boolean unsigned64 = batch.getColumnType(column) == IANAAbstractDataTypes.UNSIGNED64;
+                        batch.setLong(column, unsigned64 && i == 1 ? -1L : 1522591569L);
+                        break;
+                    case INT:
+                        batch.setInt(column, 1);
+                        break;
+                }
+            }
+
+            batch.endRow();
+        }
+
+        assertEquals(2, repository.save(batch));
+        assertEquals(Long.valueOf(1), jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM cs_req WHERE session_id = 18446744073709551615", Long.class));
+        assertEquals(Long.valueOf(1), jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM cs_req WHERE session_id = 1522591569", Long.class));
+    }
+
+    @Test
+    public void testSaveBatchWithAddedColumn() {
+        List<InfoModelEntity> specifiers = CS_REQ_TEMPLATE.getSpecifiers();
+        int columnCount = specifiers.size() + 1;
+        String[] names = new String[columnCount];
+        IANAAbstractDataTypes[] types = new IANAAbstractDataTypes[columnCount];
+
+        for (int column = 0; column < specifiers.size(); column++) {
+            names[column] = specifiers.get(column).getName();
+            types[column] = specifiers.get(column).getType();
+        }
+
+        //столбец, обнаруженный в шаблоне экспортера, отсутствует в таблице и добавляется при сохранении
+        names[columnCount - 1] = "http_host_2001";
+        types[columnCount - 1] = IANAAbstractDataTypes.STRING;
+
+        RecordsBatch batch = RecordsBatch.builder()
+                .type(CS_REQ)
+                .columnNames(names)
+                .columnTypes(types)
+                .capacity(2)
+                .build();
+
+        for (int i = 0; i < batch.getCapacity(); i++) {
+            for (int column = 0; column < batch.getColumnCount(); column++) {
+                if (i == 1 && types[column] == IANAAbstractDataTypes.STRING) {
+                    batch.setNull(column);
+                    continue;
+                }
+
+                switch (batch.getColumnKind(column)) {
+                    case LONG:
+                        batch.setLong(column, 1522591569L);
+                        break;
+                    case INT:
+                        batch.setInt(column, 1);
+                        break;
+                    case STRING:
+                        byte[] value = "rs.mail.ru".getBytes();
+                        batch.setString(column, value, 0, value.length);
+                        break;
+                }
+            }
+
+            batch.endRow();
+        }
+
+        assertEquals(2, repository.save(batch));
+        assertEquals(Long.valueOf(1), jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM cs_req WHERE http_host_2001 = 'rs.mail.ru'", Long.class));
+        assertEquals(Long.valueOf(1), jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM cs_req WHERE login IS NULL AND http_host_2001 IS NULL", Long.class));
+        //пакеты с прежним набором столбцов сохраняются без изменений
+        assertTrue(repository.save(CS_REQ_DATA_RECORD_1));
+    }
+
     @Test
     public void testDeleteBetween() {
         assertEquals(EXPECTED_DELETED_RECORDS_COUNT, repository.delete(CS_REQ, DELETE_BEFORE_DATE_TIME));
@@ -137,4 +258,14 @@ public class TransitionalBufferRepositoryTests {
         assertEquals(expected.size(), actual.size());
         expected.forEach(cc -> assertTrue(actual.contains(cc)));
     }
+
+    private static RecordsBatch newCSReqBatch(int capacity) {
+        List<InfoModelEntity> specifiers = CS_REQ_TEMPLATE.getSpecifiers();
+        return RecordsBatch.builder()
+                .type(CS_REQ)
+                .columnNames(specifiers.stream().map(InfoModelEntity::getName).toArray(String[]::new))
+                .columnTypes(specifiers.stream().map(InfoModelEntity::getType).toArray(IANAAbstractDataTypes[]::new))
+                .capacity(capacity)
+                .build();
+    }
 }
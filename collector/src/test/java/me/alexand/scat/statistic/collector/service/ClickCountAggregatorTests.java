@@ -0,0 +1,189 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.service;
+
+import me.alexand.scat.statistic.collector.model.IANAAbstractDataTypes;
+import me.alexand.scat.statistic.collector.model.RecordsBatch;
+import me.alexand.scat.statistic.common.entities.ClickCount;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static me.alexand.scat.statistic.collector.model.IANAAbstractDataTypes.DATE_TIME_SECONDS;
+import static me.alexand.scat.statistic.collector.model.TemplateType.CS_REQ;
+import static me.alexand.scat.statistic.collector.model.TemplateType.CS_RESP;
+import static me.alexand.scat.statistic.collector.utils.DateTimeUtils.EXPORTER_ZONE_OFFSET;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Тесты подсчета веб-запросов при получении записей
+ *
+ * @author asidorov84@gmail.com
+ */
+public class ClickCountAggregatorTests {
+    private static final long T0 = LocalDateTime.parse("2018-04-01T23:58:00").toEpochSecond(EXPORTER_ZONE_OFFSET);
+
+    @Test
+    public void testCountsAreGroupedByExporterDay() {
+        ClickCountAggregator aggregator = new ClickCountAggregator(200);
+
+        aggregator.add(batch(T0 + 10, T0 + 70, T0 + 130, T0 + 150, T0 + 190));
+        //ни одна минута еще не закрыта
+        assertTrue(aggregator.flush().isEmpty());
+
+        aggregator.add(batch(T0 + 500));
+
+        assertEquals(Arrays.asList(
+                clickCount("2018-04-01", 2),
+                clickCount("2018-04-02", 3)), aggregator.flush());
+        //повторная выгрузка не возвращает уже выгруженные счетчики
+        assertTrue(aggregator.flush().isEmpty());
+    }
+
+    @Test
+    public void testOutOfOrderAndLateRecords() {
+        ClickCountAggregator aggregator = new ClickCountAggregator(120);
+
+        aggregator.add(batch(T0 + 200, T0 + 10, T0 + 150, T0 + 70));
+        //T0 + 10 закрыта: максимальное время опережает конец минуты больше, чем на 120 с
+        assertEquals(Arrays.asList(clickCount("2018-04-01", 1)), aggregator.flush());
+
+        //запись в пределах интервала опоздания учитывается, опоздавшая больше - нет
+        aggregator.add(batch(T0 + 100, T0 + 20));
+        aggregator.add(batch(T0 + 400));
+
+        assertEquals(Arrays.asList(
+                clickCount("2018-04-01", 2),
+                clickCount("2018-04-02", 2)), aggregator.flush());
+        assertEquals(1, aggregator.getLateRecordsNumber());
+    }
+
+    @Test
+    public void testSkewedExporterClock() {
+        long[] now = {T0 + 300};
+        ClickCountAggregator aggregator = new ClickCountAggregator(200, () -> now[0]);
+
+        aggregator.add(batch(T0 + 10, T0 + 70));
+        //часы одного экспортера ушли вперед на сутки: записи не учитываются и не закрывают минуты
+        aggregator.add(batch(T0 + 86400 + 10));
+        assertTrue(aggregator.flush().isEmpty());
+        assertEquals(1, aggregator.getFutureRecordsNumber());
+
+        //опережение в пределах интервала учитывается, но минуты закрываются не дальше часов коллектора
+        aggregator.add(batch(T0 + 450));
+        assertEquals(Arrays.asList(clickCount("2018-04-01", 1)), aggregator.flush());
+
+        //записи остальных экспортеров за незакрытые минуты по-прежнему учитываются
+        aggregator.add(batch(T0 + 80));
+        now[0] = T0 + 900;
+
+        assertEquals(Arrays.asList(clickCount("2018-04-01", 2)), aggregator.flush());
+        assertEquals(0, aggregator.getLateRecordsNumber());
+    }
+
+    @Test
+    public void testSkipsOtherTypesAndRecordsWithoutTime() {
+        ClickCountAggregator aggregator = new ClickCountAggregator(0);
+
+        RecordsBatch batch = RecordsBatch.builder()
+                .type(CS_RESP)
+                .columnNames(new String[]{"event_time"})
+                .columnTypes(new IANAAbstractDataTypes[]{DATE_TIME_SECONDS})
+                .capacity(1)
+                .build();
+        batch.setLong(0, T0);
+        batch.endRow();
+        aggregator.add(batch);
+
+        batch = batch(T0, T0 + 5);
+        batch.setNull(0);
+        batch.endRow();
+        aggregator.add(batch);
+        aggregator.add(batch(T0 + 60));
+
+        assertEquals(Arrays.asList(clickCount("2018-04-01", 2)), aggregator.flush());
+    }
+
+    @Test
+    public void testConcurrentAdd() throws Exception {
+        ClickCountAggregator aggregator = new ClickCountAggregator(3600);
+        int threads = 4;
+        int batches = 1000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < batches; j++) {
+                        aggregator.add(batch(T0 + j % 100, T0 + 200 + j % 100));
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        aggregator.add(batch(T0 + 7200));
+
+        assertEquals(Arrays.asList(
+                clickCount("2018-04-01", threads * batches),
+                clickCount("2018-04-02", threads * batches)), aggregator.flush());
+    }
+
+    private static RecordsBatch batch(long... eventTimes) {
+        RecordsBatch batch = RecordsBatch.builder()
+                .type(CS_REQ)
+                .columnNames(new String[]{"event_time"})
+                .columnTypes(new IANAAbstractDataTypes[]{DATE_TIME_SECONDS})
+                .capacity(eventTimes.length + 1)
+                .build();
+
+        for (long eventTime : eventTimes) {
+            batch.setLong(0, eventTime);
+            batch.endRow();
+        }
+
+        return batch;
+    }
+
+    private static ClickCount clickCount(String date, long count) {
+        return ClickCount.builder()
+                .date(LocalDate.parse(date))
+                .count(BigInteger.valueOf(count))
+                .build();
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.service;
+
+import me.alexand.scat.statistic.collector.model.IPFIXFieldSpecifier;
+import me.alexand.scat.statistic.collector.model.InfoModelEntity;
+import me.alexand.scat.statistic.collector.model.TemplateMapping;
+import me.alexand.scat.statistic.collector.repository.InfoModelRepository;
+import me.alexand.scat.statistic.collector.repository.SCATDataTemplateRepository;
+import me.alexand.scat.statistic.collector.repository.impls.InMemoryInfoModelRepositoryImpl;
+import me.alexand.scat.statistic.collector.repository.impls.InMemorySCATDataTemplateRepositoryImpl;
+import me.alexand.scat.statistic.collector.service.impls.DataTemplateServiceImpl;
+import me.alexand.scat.statistic.collector.utils.exceptions.UnknownInfoModelException;
+import me.alexand.scat.statistic.collector.utils.exceptions.UnknownTemplateTypeException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static me.alexand.scat.statistic.collector.model.IANAAbstractDataTypes.OCTET_ARRAY;
+import static me.alexand.scat.statistic.collector.model.TemplateType.CS_RESP;
+import static me.alexand.scat.statistic.collector.utils.InfoModelEntities.*;
+import static me.alexand.scat.statistic.collector.utils.SCATDataTemplateEntities.CS_REQ_TEMPLATE;
+import static me.alexand.scat.statistic.collector.utils.SCATDataTemplateEntities.CS_RESP_TEMPLATE;
+import static org.junit.Assert.*;
+
+/**
+ * Тесты определения типа записей по шаблону IPFIX
+ *
+ * @author asidorov84@gmail.com
+ */
+public class DataTemplateServiceTests {
+    private static final long TEST_ENTERPRISE_NUMBER = 32473;
+
+    private final SCATDataTemplateRepository templateRepository = new InMemorySCATDataTemplateRepositoryImpl();
+    private final InfoModelRepository infoModelRepository = new InMemoryInfoModelRepositoryImpl();
+    private DataTemplateService service;
+
+    @Before
+    public void before() {
+        service = new DataTemplateServiceImpl(templateRepository, infoModelRepository, true);
+        service.load();
+    }
+
+    @Test
+    public void testExactTemplate() throws Exception {
+        List<IPFIXFieldSpecifier> specifiers = toSpecifiers(CS_REQ_TEMPLATE.getSpecifiers());
+        TemplateMapping mapping = service.getMapping(specifiers);
+
+        assertEquals(TemplateMapping.identity(CS_REQ_TEMPLATE.getType(), CS_REQ_TEMPLATE.getSpecifiers()), mapping);
+        //Повторно объявленный шаблон разрешается из кэша
+        assertSame(mapping, service.getMapping(toSpecifiers(CS_REQ_TEMPLATE.getSpecifiers())));
+        assertEquals(CS_REQ_TEMPLATE.getType(), service.getTypeByIPFIXSpecifiers(specifiers));
+    }
+
+    @Test
+    public void testDiscoverExtendedTemplate() throws Exception {
+        //Поля CS_RESP в другом порядке, без content_type и с дополнительным полем httpHost
+        List<IPFIXFieldSpecifier> specifiers = toSpecifiers(asList(SESSION_ID, TIMESTAMP, LOGIN, SOURCE_IP,
+                DESTINATION_IP, HTTP_HOST, RESULT_CODE, CONTENT_LENGTH));
+
+        TemplateMapping mapping = service.getMapping(specifiers);
+        int baseColumnCount = CS_RESP_TEMPLATE.getSpecifiers().size();
+
+        assertEquals(CS_RESP, mapping.getType());
+        assertEquals(baseColumnCount + 1, mapping.getColumnCount());
+        assertEquals("http_host_2001", mapping.getColumns().get(baseColumnCount).getName());
+        assertEquals(5, mapping.getFieldIndex(baseColumnCount));
+        assertEquals(1, mapping.getFieldIndex(0));
+        assertEquals(0, mapping.getFieldIndex(baseColumnCount - 1));
+        assertEquals(-1, mapping.getFieldIndex(CS_RESP_TEMPLATE.getSpecifiers().indexOf(CONTENT_TYPE)));
+        assertEquals(mapping.getColumns(), templateRepository.getByType(CS_RESP).getSpecifiers());
+
+        //Исходный шаблон CS_RESP отображается на расширенную схему, дополнительный столбец остается без значения
+        TemplateMapping original = service.getMapping(toSpecifiers(CS_RESP_TEMPLATE.getSpecifiers()));
+        assertEquals(baseColumnCount + 1, original.getColumnCount());
+        assertEquals(-1, original.getFieldIndex(baseColumnCount));
+    }
+
+    @Test
+    public void testCachedMappingsRebuiltWhenSchemaExtended() throws Exception {
+        int baseColumnCount = CS_RESP_TEMPLATE.getSpecifiers().size();
+        List<IPFIXFieldSpecifier> original = toSpecifiers(CS_RESP_TEMPLATE.getSpecifiers());
+        List<IPFIXFieldSpecifier> withHttpHost = toSpecifiers(asList(SESSION_ID, TIMESTAMP, LOGIN, SOURCE_IP,
+                DESTINATION_IP, HTTP_HOST, RESULT_CODE, CONTENT_LENGTH));
+        List<IPFIXFieldSpecifier> withUserAgent = toSpecifiers(CS_RESP_TEMPLATE.getSpecifiers());
+        withUserAgent.add(toSpecifiers(asList(USER_AGENT)).get(0));
+
+        assertEquals(baseColumnCount, service.getMapping(original).getColumnCount());
+        assertEquals(baseColumnCount + 1, service.getMapping(withHttpHost).getColumnCount());
+        assertEquals(baseColumnCount + 2, service.getMapping(withUserAgent).getColumnCount());
+
+        //Шаблоны, определенные до дополнения схемы, отображаются на текущие столбцы
+        assertEquals(baseColumnCount + 2, service.getMapping(original).getColumnCount());
+        assertEquals(service.getMapping(withUserAgent).getColumns(), service.getMapping(withHttpHost).getColumns());
+    }
+
+    @Test
+    public void testDiscoverUnknownInformationElement() throws Exception {
+        List<IPFIXFieldSpecifier> specifiers = toSpecifiers(CS_RESP_TEMPLATE.getSpecifiers());
+        specifiers.add(IPFIXFieldSpecifier.builder()
+                .enterpriseBit(true)
+                .informationElementIdentifier(4000)
+                .fieldLength(8)
+                .enterpriseNumber(TEST_ENTERPRISE_NUMBER)
+                .build());
+
+        TemplateMapping mapping = service.getMapping(specifiers);
+        InfoModelEntity registered = infoModelRepository.getByEnterpriseNumberAndInformationElementIdentifier(
+                TEST_ENTERPRISE_NUMBER, 4000);
+
+        assertNotNull(registered);
+        assertEquals(OCTET_ARRAY, registered.getType());
+        assertEquals(CS_RESP, mapping.getType());
+        assertEquals(OCTET_ARRAY, mapping.getColumns().get(mapping.getColumnCount() - 1).getType());
+    }
+
+    @Test
+    public void testUnknownInformationElementsOfSameEnterprise() throws Exception {
+        List<IPFIXFieldSpecifier> specifiers = toSpecifiers(CS_RESP_TEMPLATE.getSpecifiers());
+
+        for (int id : new int[]{4002, 4003}) {
+            specifiers.add(IPFIXFieldSpecifier.builder()
+                    .enterpriseBit(true)
+                    .informationElementIdentifier(id)
+                    .fieldLength(4)
+                    .enterpriseNumber(TEST_ENTERPRISE_NUMBER)
+                    .build());
+        }
+
+        TemplateMapping mapping = service.getMapping(specifiers);
+        int columnCount = mapping.getColumnCount();
+
+        //Имена элементов одного предприятия различаются номером элемента
+        assertEquals("ie32473_4002", infoModelRepository
+                .getByEnterpriseNumberAndInformationElementIdentifier(TEST_ENTERPRISE_NUMBER, 4002).getName());
+        assertEquals("ie32473_4003", infoModelRepository
+                .getByEnterpriseNumberAndInformationElementIdentifier(TEST_ENTERPRISE_NUMBER, 4003).getName());
+        assertNotEquals(mapping.getColumns().get(columnCount - 2).getName(),
+                mapping.getColumns().get(columnCount - 1).getName());
+    }
+
+    @Test(expected = UnknownTemplateTypeException.class)
+    public void testUnrelatedTemplate() throws Exception {
+        service.getMapping(toSpecifiers(asList(TIMESTAMP, HTTP_HOST, CONTENT_TYPE)));
+    }
+
+    @Test(expected = UnknownTemplateTypeException.class)
+    public void testDiscoveryDisabled() throws Exception {
+        DataTemplateService strict = new DataTemplateServiceImpl(templateRepository, infoModelRepository);
+        strict.getMapping(toSpecifiers(asList(TIMESTAMP, LOGIN, SOURCE_IP, DESTINATION_IP, RESULT_CODE,
+                CONTENT_LENGTH, SESSION_ID)));
+    }
+
+    @Test(expected = UnknownInfoModelException.class)
+    public void testUnknownInformationElementWithDiscoveryDisabled() throws Exception {
+        DataTemplateService strict = new DataTemplateServiceImpl(templateRepository, infoModelRepository);
+        List<IPFIXFieldSpecifier> specifiers = toSpecifiers(CS_RESP_TEMPLATE.getSpecifiers());
+        specifiers.add(IPFIXFieldSpecifier.builder()
+                .enterpriseBit(true)
+                .informationElementIdentifier(4001)
+                .fieldLength(8)
+                .enterpriseNumber(TEST_ENTERPRISE_NUMBER)
+                .build());
+
+        strict.getMapping(specifiers);
+    }
+
+    private static List<IPFIXFieldSpecifier> toSpecifiers(List<InfoModelEntity> entities) {
+        List<IPFIXFieldSpecifier> specifiers = new ArrayList<>(entities.size());
+
+        for (InfoModelEntity entity : entities) {
+            specifiers.add(IPFIXFieldSpecifier.builder()
+                    .enterpriseBit(entity.getEnterpriseNumber() != 0)
+                    .informationElementIdentifier(entity.getInformationElementId())
+                    .fieldLength(entity.getType().getLength())
+                    .enterpriseNumber(entity.getEnterpriseNumber())
+                    .build());
+        }
+
+        return specifiers;
+    }
+}
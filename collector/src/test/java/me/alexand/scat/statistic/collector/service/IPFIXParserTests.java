@@ -22,12 +22,20 @@
 package me.alexand.scat.statistic.collector.service;
 
 import me.alexand.scat.statistic.collector.TestConfig;
+import me.alexand.scat.statistic.collector.model.IPFIXFieldSpecifier;
 import me.alexand.scat.statistic.collector.model.IPFIXMessage;
+import me.alexand.scat.statistic.collector.model.IPFIXRecord;
+import me.alexand.scat.statistic.collector.model.IPFIXTemplateRecord;
+import me.alexand.scat.statistic.collector.model.TemplateMapping;
 import me.alexand.scat.statistic.collector.repository.InfoModelRepository;
 import me.alexand.scat.statistic.collector.repository.SCATDataTemplateRepository;
 import me.alexand.scat.statistic.collector.utils.BytesConvertUtils;
+import me.alexand.scat.statistic.collector.utils.exceptions.IPFIXParseException;
 import me.alexand.scat.statistic.collector.utils.exceptions.MalformedMessageException;
+import me.alexand.scat.statistic.collector.utils.exceptions.UnknownDataRecordFormatException;
+import me.alexand.scat.statistic.collector.utils.exceptions.UnknownInfoModelException;
 import me.alexand.scat.statistic.collector.utils.exceptions.UnknownProtocolException;
+import me.alexand.scat.statistic.collector.utils.exceptions.UnknownTemplateTypeException;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -38,16 +46,18 @@ import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
 
 import static me.alexand.scat.statistic.collector.entities.IPFIXMessageTestEntities.IPFIX_MESSAGE_WITH_CS_REQ_DATA;
 import static me.alexand.scat.statistic.collector.entities.IPFIXMessageTestEntities.IPFIX_MESSAGE_WITH_CS_REQ_TEMPLATE;
 import static me.alexand.scat.statistic.collector.entities.RawPacketsEntities.*;
 import static me.alexand.scat.statistic.collector.utils.SCATDataTemplateEntities.DATA_TEMPLATE_LIST;
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.*;
 
 /**
  * Тесты IPFIX-парсера
@@ -63,6 +73,9 @@ public class IPFIXParserTests {
     @Autowired
     private IPFIXParser parser;
 
+    @Autowired
+    private DataTemplateService dataTemplateService;
+
     @Autowired
     private SCATDataTemplateRepository SCATDataTemplateRepository;
 
@@ -127,6 +140,121 @@ public class IPFIXParserTests {
         assertEquals(IPFIX_MESSAGE_WITH_CS_REQ_DATA, actual);
     }
 
+    @Test
+    public void testParseCSREQDataFromLargerArray() throws Exception {
+        assertNotNull(parser.parse(RAW_CS_REQ_TEMPLATE));
+
+        //буфер из пула длиннее сообщения и может содержать остатки предыдущих пакетов
+        byte[] payload = new byte[RAW_CS_REQ_DATA_PAYLOAD.length + 100];
+        Arrays.fill(payload, (byte) 0x7f);
+        System.arraycopy(RAW_CS_REQ_DATA_PAYLOAD, 0, payload, 0, RAW_CS_REQ_DATA_PAYLOAD.length);
+
+        assertEquals(IPFIX_MESSAGE_WITH_CS_REQ_DATA, parser.parse(payload, RAW_CS_REQ_DATA_PAYLOAD.length));
+    }
+
+    @Test
+    public void testReannouncedTemplateNotResolvedAgain() throws Exception {
+        int[] resolutions = new int[1];
+        DataTemplateService countingService = new DataTemplateService() {
+            @Override
+            public void load() {
+                dataTemplateService.load();
+            }
+
+            @Override
+            public TemplateMapping getMapping(List<IPFIXFieldSpecifier> specifiers)
+                    throws UnknownInfoModelException, UnknownTemplateTypeException {
+                resolutions[0]++;
+                return dataTemplateService.getMapping(specifiers);
+            }
+        };
+
+        IPFIXParser ownParser = new IPFIXParser(countingService, infoModelRepository);
+
+        //шаблон, повторно объявленный экспортером, не определяется заново, но возвращается в сообщении
+        assertEquals(IPFIX_MESSAGE_WITH_CS_REQ_TEMPLATE, ownParser.parse(RAW_CS_REQ_TEMPLATE));
+        assertEquals(IPFIX_MESSAGE_WITH_CS_REQ_TEMPLATE, ownParser.parse(RAW_CS_REQ_TEMPLATE));
+        assertEquals(1, resolutions[0]);
+        assertEquals(IPFIX_MESSAGE_WITH_CS_REQ_DATA, ownParser.parse(RAW_CS_REQ_DATA_PAYLOAD));
+    }
+
+    @Test(expected = UnknownDataRecordFormatException.class)
+    public void testTemplatesNotSharedWithOwnTemplatesParser() throws Exception {
+        assertNotNull(parser.parse(RAW_CS_REQ_TEMPLATE));
+        parser.newInstanceWithOwnTemplates().parse(RAW_CS_REQ_DATA_PAYLOAD);
+    }
+
+    @Test(expected = UnknownDataRecordFormatException.class)
+    public void testWithdrawnTemplateNotUsed() throws Exception {
+        IPFIXParser ownParser = parser.newInstanceWithOwnTemplates();
+        ownParser.parse(RAW_CS_REQ_TEMPLATE);
+        ownParser.parse(withdrawalMessage(2, 256));
+        ownParser.parse(RAW_CS_REQ_DATA_PAYLOAD);
+    }
+
+    @Test(expected = UnknownDataRecordFormatException.class)
+    public void testAllTemplatesWithdrawn() throws Exception {
+        IPFIXParser ownParser = parser.newInstanceWithOwnTemplates();
+        ownParser.parse(RAW_CS_REQ_TEMPLATE);
+        //отзыв шаблонов параметров не затрагивает шаблоны записей данных
+        ownParser.parse(withdrawalMessage(3, 3));
+        assertEquals(IPFIX_MESSAGE_WITH_CS_REQ_DATA, ownParser.parse(RAW_CS_REQ_DATA_PAYLOAD));
+
+        ownParser.parse(withdrawalMessage(2, 2));
+        ownParser.parse(RAW_CS_REQ_DATA_PAYLOAD);
+    }
+
+    @Test
+    public void testTemplateSetPaddingNotWithdrawal() throws Exception {
+        IPFIXParser ownParser = parser.newInstanceWithOwnTemplates();
+
+        //шаблон параметров 300 и 4-7 нулевых байт выравнивания
+        for (int padding = 4; padding < 8; padding++) {
+            byte[] records = Arrays.copyOf(new byte[]{0x01, 0x2c, 0x00, 0x01, 0x00, 0x01, 0x00, (byte) 0x95, 0x00, 0x04},
+                    10 + padding);
+
+            List<? extends IPFIXRecord> templates = ownParser.parse(message(3, records)).getSets().get(0).getRecords();
+            assertEquals(1, templates.size());
+            assertEquals(300, ((IPFIXTemplateRecord) templates.get(0)).getTemplateID());
+        }
+    }
+
+    @Test
+    public void testOptionsTemplateDataSkipped() throws Exception {
+        IPFIXParser ownParser = parser.newInstanceWithOwnTemplates();
+
+        //шаблон параметров 300: одно поле области действия observationDomainId (IE 149) длиной 4 байта
+        byte[] optionsTemplate = message(3, new byte[]{0x01, 0x2c, 0x00, 0x01, 0x00, 0x01, 0x00, (byte) 0x95, 0x00, 0x04});
+        byte[] optionsData = message(300, new byte[]{0x00, 0x00, 0x00, 0x01});
+
+        IPFIXMessage templateMessage = ownParser.parse(optionsTemplate);
+        assertEquals(1, templateMessage.getSets().get(0).getRecords().size());
+        assertTrue(ownParser.parse(optionsData).getSets().get(0).getRecords().isEmpty());
+
+        int[] handled = new int[1];
+        ownParser.parse(optionsData, optionsData.length, new IPFIXRecordCursor(), record -> handled[0]++);
+        assertEquals(0, handled[0]);
+        assertEquals(1, ownParser.getTemplateCache().getOptionsCount());
+    }
+
+    @Test
+    public void testTemplatesScopedBySession() throws Exception {
+        IPFIXParser ownParser = parser.newInstanceWithOwnTemplates();
+        IPFIXRecordCursor cursor = new IPFIXRecordCursor();
+        int[] handled = new int[1];
+
+        ownParser.parse(RAW_CS_REQ_TEMPLATE, RAW_CS_REQ_TEMPLATE.length, 1, cursor, record -> handled[0]++);
+        ownParser.parse(RAW_CS_REQ_DATA_PAYLOAD, RAW_CS_REQ_DATA_PAYLOAD.length, 1, cursor, record -> handled[0]++);
+        assertEquals(1, handled[0]);
+
+        //шаблон другой сессии с тем же доменом и идентификатором не используется
+        assertUnknownDataRecordFormat(ownParser, 2, cursor);
+
+        ownParser.closeSession(1);
+        assertUnknownDataRecordFormat(ownParser, 1, cursor);
+        assertEquals(0, ownParser.getTemplateCache().size());
+    }
+
     @Test
     public void testParser() throws Exception {
         parser.parse(RAW_TEMPLATES_PAYLOAD);
@@ -155,4 +283,33 @@ public class IPFIXParserTests {
         System.out.println("Flow end at: " + LocalDateTime.ofInstant(Instant.ofEpochMilli(flowEnd.longValue()), ZoneId.systemDefault()));
 
     }
-}
\ No newline at end of file
+
+    private static void assertUnknownDataRecordFormat(IPFIXParser parser, int session, IPFIXRecordCursor cursor) {
+        try {
+            parser.parse(RAW_CS_REQ_DATA_PAYLOAD, RAW_CS_REQ_DATA_PAYLOAD.length, session, cursor, record -> fail());
+            fail();
+        } catch (IPFIXParseException e) {
+            assertTrue(e instanceof UnknownDataRecordFormatException);
+        }
+    }
+
+    private static byte[] withdrawalMessage(int setID, int templateID) {
+        return message(setID, new byte[]{(byte) (templateID >> 8), (byte) templateID, 0x00, 0x00});
+    }
+
+    /**
+     * Сообщение домена 1 с одним сетом, время экспорта совпадает со временем сообщения RAW_CS_REQ_DATA_PAYLOAD
+     */
+    private static byte[] message(int setID, byte[] records) {
+        return ByteBuffer.allocate(20 + records.length)
+                .putShort((short) 10)
+                .putShort((short) (20 + records.length))
+                .putInt(0x59e48f62)
+                .putInt(0)
+                .putInt(1)
+                .putShort((short) setID)
+                .putShort((short) (4 + records.length))
+                .put(records)
+                .array();
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.service;
+
+import me.alexand.scat.statistic.collector.TestConfig;
+import me.alexand.scat.statistic.collector.model.IPFIXDataRecord;
+import me.alexand.scat.statistic.collector.model.IPFIXHeader;
+import me.alexand.scat.statistic.collector.model.IPFIXMessage;
+import me.alexand.scat.statistic.collector.model.IPFIXSet;
+import me.alexand.scat.statistic.collector.model.RecordsBatch;
+import me.alexand.scat.statistic.collector.repository.InfoModelRepository;
+import me.alexand.scat.statistic.collector.repository.SCATDataTemplateRepository;
+import me.alexand.scat.statistic.collector.utils.StringDictionary;
+import me.alexand.scat.statistic.collector.utils.exceptions.MalformedMessageException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.math.BigInteger;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static me.alexand.scat.statistic.collector.entities.IPFIXMessageTestEntities.IPFIX_CS_REQ_DATA_RECORD;
+import static me.alexand.scat.statistic.collector.entities.RawPacketsEntities.*;
+import static me.alexand.scat.statistic.collector.model.IANAAbstractDataTypes.IPV4_ADDRESS;
+import static me.alexand.scat.statistic.collector.model.TemplateType.CS_REQ;
+import static me.alexand.scat.statistic.collector.utils.SCATDataTemplateEntities.DATA_TEMPLATE_LIST;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Тесты курсора по записям данных IPFIX-сообщения
+ *
+ * @author asidorov84@gmail.com
+ */
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = TestConfig.class)
+public class IPFIXRecordCursorTests {
+    private static final int TIMESTAMP = 0;
+    private static final int LOGIN = 1;
+    private static final int IP_SRC = 2;
+    private static final int DOMAIN = 4;
+    private static final int SESSION_ID = 9;
+    private static final int HOST_TYPE = 11;
+
+    @Autowired
+    private IPFIXParser parser;
+
+    @Autowired
+    private SCATDataTemplateRepository SCATDataTemplateRepository;
+
+    @Autowired
+    private InfoModelRepository infoModelRepository;
+
+    private final IPFIXRecordCursor cursor = new IPFIXRecordCursor();
+
+    @Before
+    public void before() throws Exception {
+        DATA_TEMPLATE_LIST.forEach(dataTemplate -> {
+            SCATDataTemplateRepository.save(dataTemplate);
+            dataTemplate.getSpecifiers().forEach(infoModelRepository::save);
+        });
+
+        parser.parse(RAW_CS_REQ_TEMPLATE);
+        parser.parse(RAW_GENERIC_TEMPLATE);
+    }
+
+    @Test
+    public void testFieldAccessors() throws Exception {
+        List<String> checked = new ArrayList<>();
+
+        parser.parse(RAW_CS_REQ_DATA_PAYLOAD, RAW_CS_REQ_DATA_PAYLOAD.length, cursor, record -> {
+            assertEquals(CS_REQ, record.getType());
+            assertEquals(IPFIX_CS_REQ_DATA_RECORD.getFieldValues().size(), record.getFieldCount());
+            assertEquals("ipSrc", record.getFieldName(IP_SRC));
+            assertEquals(IPV4_ADDRESS, record.getFieldType(IP_SRC));
+
+            LocalDateTime timestamp = LocalDateTime.of(2017, 10, 16, 13, 52, 18);
+            assertEquals(timestamp.toEpochSecond(ZoneOffset.ofHours(3)), record.getLong(TIMESTAMP));
+            assertEquals(0x1FAAA8AB, record.getIPv4AsInt(IP_SRC));
+            assertEquals(new BigInteger("301089013125136674").longValue(), record.getLong(SESSION_ID));
+            assertEquals(1, record.getLong(HOST_TYPE));
+
+            assertEquals(0, record.getFieldLength(LOGIN));
+            assertEquals("yboss.yahooapis.com", record.getString(DOMAIN));
+
+            byte[] domain = new byte[64];
+            int length = record.getStringBytes(DOMAIN, domain, 1);
+            assertEquals("yboss.yahooapis.com", new String(domain, 1, length));
+
+            checked.add(record.getFieldName(DOMAIN));
+        });
+
+        assertEquals(1, checked.size());
+    }
+
+    @Test
+    public void testHeaderOfStreamingParse() throws Exception {
+        IPFIXHeader header = parser.parse(RAW_CS_REQ_DATA_PAYLOAD, RAW_CS_REQ_DATA_PAYLOAD.length, cursor, record -> {
+        });
+
+        assertEquals(parser.parse(RAW_CS_REQ_DATA_PAYLOAD).getHeader(), header);
+    }
+
+    @Test
+    public void testToDataRecordEqualsParsedRecords() throws Exception {
+        for (byte[] payload : Arrays.asList(RAW_CS_REQ_DATA_PAYLOAD, RAW_GENERIC_DATA)) {
+            List<IPFIXDataRecord> expected = new ArrayList<>();
+            IPFIXMessage message = parser.parse(payload);
+
+            for (IPFIXSet set : message.getSets()) {
+                set.getRecords().forEach(record -> expected.add((IPFIXDataRecord) record));
+            }
+
+            List<IPFIXDataRecord> actual = new ArrayList<>();
+            parser.parse(payload, payload.length, cursor, record -> actual.add(record.toDataRecord()));
+
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    public void testStringDictionary() throws Exception {
+        StringDictionary dictionary = new StringDictionary(16, 256);
+        cursor.setStringDictionary(dictionary, Collections.singleton("domain"));
+
+        List<String> domains = new ArrayList<>();
+        List<RecordsBatch> batches = new ArrayList<>();
+
+        for (int i = 0; i < 2; i++) {
+            parser.parse(RAW_CS_REQ_DATA_PAYLOAD, RAW_CS_REQ_DATA_PAYLOAD.length, cursor, record -> {
+                domains.add(record.getString(DOMAIN));
+
+                RecordsBatch batch = record.newBatch(1);
+                record.copyTo(batch);
+                batches.add(batch);
+            });
+        }
+
+        assertEquals("yboss.yahooapis.com", domains.get(0));
+        assertSame(domains.get(0), domains.get(1));
+        assertSame(domains.get(0), batches.get(1).getStringReference(0, DOMAIN));
+        assertSame(domains.get(0), batches.get(1).getValue(0, DOMAIN));
+        //значения полей, не указанных при задании словаря, копируются в пакет
+        assertNull(batches.get(1).getStringReference(0, LOGIN));
+        assertEquals(1, dictionary.size());
+        assertEquals(3, dictionary.getHits());
+        assertEquals(1, dictionary.getMisses());
+    }
+
+    @Test(expected = MalformedMessageException.class)
+    public void testRecordExceedsBoundsOfSet() throws Exception {
+        //сообщение и сет укорочены на 10 байт, запись выходит за границы сета
+        int length = RAW_CS_REQ_DATA_PAYLOAD.length - 10;
+        byte[] payload = Arrays.copyOf(RAW_CS_REQ_DATA_PAYLOAD, length);
+        payload[2] = (byte) (length >> 8);
+        payload[3] = (byte) length;
+        payload[18] = (byte) ((length - 16) >> 8);
+        payload[19] = (byte) (length - 16);
+
+        parser.parse(payload, payload.length, cursor, record -> {
+        });
+    }
+}
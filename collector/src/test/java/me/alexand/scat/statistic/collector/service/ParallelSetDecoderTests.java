@@ -0,0 +1,194 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.service;
+
+import me.alexand.scat.statistic.collector.TestConfig;
+import me.alexand.scat.statistic.collector.model.RecordsBatch;
+import me.alexand.scat.statistic.collector.repository.InfoModelRepository;
+import me.alexand.scat.statistic.collector.repository.SCATDataTemplateRepository;
+import me.alexand.scat.statistic.collector.utils.exceptions.MalformedMessageException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static me.alexand.scat.statistic.collector.entities.RawPacketsEntities.RAW_CS_REQ_DATA_PAYLOAD;
+import static me.alexand.scat.statistic.collector.entities.RawPacketsEntities.RAW_CS_REQ_TEMPLATE;
+import static me.alexand.scat.statistic.collector.utils.SCATDataTemplateEntities.DATA_TEMPLATE_LIST;
+import static org.junit.Assert.*;
+
+/**
+ * Тесты параллельного декодирования сетов IPFIX-сообщения
+ *
+ * @author asidorov84@gmail.com
+ */
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = TestConfig.class)
+public class ParallelSetDecoderTests {
+    private static final int HEADER_LENGTH = 16;
+
+    @Autowired
+    private IPFIXParser parser;
+
+    @Autowired
+    private SCATDataTemplateRepository SCATDataTemplateRepository;
+
+    @Autowired
+    private InfoModelRepository infoModelRepository;
+
+    private final ForkJoinPool pool = new ForkJoinPool(2);
+    private final ParallelSetDecoder decoder = new ParallelSetDecoder(pool, 1);
+    private final IPFIXRecordCursor cursor = new IPFIXRecordCursor();
+
+    private final List<RecordsBatch> batches = new ArrayList<>();
+    private final RecordsBatch[] merged = new RecordsBatch[1];
+
+    @Before
+    public void before() throws Exception {
+        DATA_TEMPLATE_LIST.forEach(dataTemplate -> {
+            SCATDataTemplateRepository.save(dataTemplate);
+            dataTemplate.getSpecifiers().forEach(infoModelRepository::save);
+        });
+
+        parser.parse(RAW_CS_REQ_TEMPLATE);
+    }
+
+    @After
+    public void after() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void testApplicableByMessageLength() {
+        assertFalse(new ParallelSetDecoder(pool, 0).isApplicable(65535));
+        assertFalse(new ParallelSetDecoder(pool, 1000).isApplicable(999));
+        assertTrue(new ParallelSetDecoder(pool, 1000).isApplicable(1000));
+    }
+
+    @Test
+    public void testParallelDecodingEqualsSequential() throws Exception {
+        byte[] set = dataSet(0);
+        byte[] message = message(set, set, set, set);
+
+        RecordsBatch[] sequential = new RecordsBatch[1];
+        parser.parse(message, message.length, cursor, record -> {
+            if (sequential[0] == null) {
+                sequential[0] = record.newBatch(10);
+            }
+
+            record.copyTo(sequential[0]);
+        });
+
+        decoder.parse(parser, message, message.length, 0, cursor, this::store, this::store);
+
+        //первый сет декодирован текущим потоком без пакета, остальные - в пакеты задач,
+        //записи объединены в порядке сетов
+        assertEquals(3, batches.size());
+        assertEquals(sequential[0].toDataRecords(), merged[0].toDataRecords());
+    }
+
+    @Test
+    public void testSingleSetDecodedByCurrentThread() throws Exception {
+        decoder.parse(parser, RAW_CS_REQ_DATA_PAYLOAD, RAW_CS_REQ_DATA_PAYLOAD.length, 0, cursor, this::store, this::store);
+
+        assertTrue(batches.isEmpty());
+        assertEquals(1, merged[0].size());
+    }
+
+    @Test
+    public void testRecordsBeforeMalformedSetStored() throws Exception {
+        byte[] set = dataSet(0);
+        byte[] message = message(set, set, dataSet(2), set);
+
+        try {
+            decoder.parse(parser, message, message.length, 0, cursor, this::store, this::store);
+            fail();
+        } catch (MalformedMessageException e) {
+            //записи сетов после ошибочного не сохраняются
+            assertEquals(1, batches.size());
+            assertEquals(2, merged[0].size());
+        }
+    }
+
+    @Test
+    public void testTaskBatchesReused() throws Exception {
+        byte[] set = dataSet(0);
+        byte[] message = message(set, set);
+
+        decoder.parse(parser, message, message.length, 0, cursor, this::store, this::store);
+        decoder.parse(parser, message, message.length, 0, cursor, this::store, this::store);
+
+        assertEquals(2, batches.size());
+        assertSame(batches.get(0), batches.get(1));
+        assertEquals(1, batches.get(1).size());
+        assertEquals(4, merged[0].size());
+    }
+
+    private void store(IPFIXRecordCursor record) {
+        if (merged[0] == null) {
+            merged[0] = record.newBatch(10);
+        }
+
+        record.copyTo(merged[0]);
+    }
+
+    private void store(RecordsBatch batch) {
+        batches.add(batch);
+
+        if (merged[0] == null) {
+            merged[0] = batch.newBatch(10);
+        }
+
+        merged[0].append(batch, 0);
+    }
+
+    /**
+     * Сет записей данных из сообщения RAW_CS_REQ_DATA_PAYLOAD, укороченный на {@code cut} байт
+     */
+    private static byte[] dataSet(int cut) {
+        byte[] set = Arrays.copyOfRange(RAW_CS_REQ_DATA_PAYLOAD, HEADER_LENGTH, RAW_CS_REQ_DATA_PAYLOAD.length - cut);
+        ByteBuffer.wrap(set).putShort(2, (short) set.length);
+        return set;
+    }
+
+    private static byte[] message(byte[]... sets) {
+        ByteBuffer message = ByteBuffer.allocate(HEADER_LENGTH + Arrays.stream(sets).mapToInt(set -> set.length).sum());
+        message.put(RAW_CS_REQ_DATA_PAYLOAD, 0, HEADER_LENGTH);
+
+        for (byte[] set : sets) {
+            message.put(set);
+        }
+
+        message.putShort(2, (short) message.capacity());
+        return message.array();
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.service;
+
+import me.alexand.scat.statistic.collector.model.IPFIXTemplateRecord;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static me.alexand.scat.statistic.collector.network.PacketBuffer.UDP_SESSION;
+import static org.junit.Assert.*;
+
+/**
+ * Тесты хранилища шаблонов
+ *
+ * @author asidorov84@gmail.com
+ */
+
+public class TemplateCacheTests {
+    private static final long DOMAIN = 1;
+    private static final int TCP_SESSION = 1;
+
+    @Test
+    public void testTemplatesScopedBySessionAndDomain() {
+        TemplateCache cache = new TemplateCache(16, 0, false);
+        cache.put(TCP_SESSION, DOMAIN, template(256, 100));
+
+        assertNotNull(cache.get(TCP_SESSION, DOMAIN, 256, 100));
+        assertNull(cache.get(TCP_SESSION + 1, DOMAIN, 256, 100));
+        assertNull(cache.get(TCP_SESSION, DOMAIN + 1, 256, 100));
+        assertNull(cache.get(TCP_SESSION, DOMAIN, 257, 100));
+    }
+
+    @Test
+    public void testOnlyNewerTemplateReplacesRegistered() {
+        TemplateCache cache = new TemplateCache(16, 0, false);
+        TemplateCache.Entry registered = template(256, 100);
+        cache.put(TCP_SESSION, DOMAIN, registered);
+
+        cache.put(TCP_SESSION, DOMAIN, template(256, 90));
+        assertSame(registered, cache.peek(TCP_SESSION, DOMAIN, 256));
+
+        TemplateCache.Entry newer = template(256, 110);
+        cache.put(TCP_SESSION, DOMAIN, newer);
+        assertSame(newer, cache.peek(TCP_SESSION, DOMAIN, 256));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvicted() {
+        TemplateCache cache = new TemplateCache(2, 0, false);
+        cache.put(TCP_SESSION, DOMAIN, template(256, 100));
+        cache.put(TCP_SESSION, DOMAIN, template(257, 100));
+
+        //шаблон 256 используется позже шаблона 257, поэтому вытесняется 257
+        assertNotNull(cache.get(TCP_SESSION, DOMAIN, 256, 100));
+        cache.put(TCP_SESSION, DOMAIN, template(258, 100));
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictedCount());
+        assertNotNull(cache.peek(TCP_SESSION, DOMAIN, 256));
+        assertNull(cache.peek(TCP_SESSION, DOMAIN, 257));
+        assertNotNull(cache.peek(TCP_SESSION, DOMAIN, 258));
+    }
+
+    @Test
+    public void testOnlyUdpTemplatesExpire() {
+        TemplateCache cache = new TemplateCache(16, 60, true);
+        cache.put(TCP_SESSION, DOMAIN, template(256, 100));
+        cache.put(UDP_SESSION | 1, DOMAIN, template(256, 100));
+        cache.put(UDP_SESSION | 1, DOMAIN, template(257, 100));
+
+        //повторное объявление продлевает время жизни шаблона
+        cache.peek(UDP_SESSION | 1, DOMAIN, 257).refresh(150);
+
+        assertNotNull(cache.get(TCP_SESSION, DOMAIN, 256, 200));
+        assertNotNull(cache.get(UDP_SESSION | 1, DOMAIN, 256, 160));
+        assertNull(cache.get(UDP_SESSION | 1, DOMAIN, 256, 161));
+        assertNotNull(cache.get(UDP_SESSION | 1, DOMAIN, 257, 210));
+
+        assertEquals(1, cache.getExpiredCount());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testWithdraw() {
+        TemplateCache cache = new TemplateCache(16, 0, false);
+        cache.put(TCP_SESSION, DOMAIN, template(256, 100));
+        cache.put(TCP_SESSION, DOMAIN, template(257, 100));
+        cache.put(TCP_SESSION, DOMAIN + 1, template(256, 100));
+
+        assertTrue(cache.withdraw(TCP_SESSION, DOMAIN, 256));
+        assertFalse(cache.withdraw(TCP_SESSION, DOMAIN, 256));
+
+        //отзыв шаблонов записей данных не затрагивает шаблоны параметров
+        assertEquals(0, cache.withdrawAll(TCP_SESSION, DOMAIN, false));
+        assertEquals(1, cache.withdrawAll(TCP_SESSION, DOMAIN, true));
+
+        assertEquals(2, cache.getWithdrawnCount());
+        assertNotNull(cache.peek(TCP_SESSION, DOMAIN + 1, 256));
+    }
+
+    @Test
+    public void testCloseSession() {
+        TemplateCache cache = new TemplateCache(16, 0, true);
+        cache.put(TCP_SESSION, DOMAIN, template(256, 100));
+        cache.put(TCP_SESSION, DOMAIN + 1, template(257, 100));
+        cache.put(TCP_SESSION + 1, DOMAIN, template(256, 100));
+
+        assertEquals(2, cache.closeSession(TCP_SESSION));
+        assertEquals(1, cache.size());
+        assertEquals(2, cache.getClosedCount());
+        assertNotNull(cache.peek(TCP_SESSION + 1, DOMAIN, 256));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalMaxSize() {
+        new TemplateCache(0, 0, false);
+    }
+
+    /**
+     * Шаблон параметров: для проверки хранилища декодер записей не нужен
+     */
+    private static TemplateCache.Entry template(int templateID, long exportTime) {
+        return TemplateCache.Entry.options(IPFIXTemplateRecord.builder()
+                .templateID(templateID)
+                .exportTime(exportTime)
+                .fieldSpecifiers(Collections.emptyList())
+                .build());
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.service;
+
+import me.alexand.scat.statistic.collector.model.IANAAbstractDataTypes;
+import me.alexand.scat.statistic.collector.model.IPFIXFieldSpecifier;
+import me.alexand.scat.statistic.collector.model.IPFIXFieldValue;
+import me.alexand.scat.statistic.collector.model.IPFIXTemplateRecord;
+import me.alexand.scat.statistic.collector.model.InfoModelEntity;
+import me.alexand.scat.statistic.collector.model.RecordsBatch;
+import me.alexand.scat.statistic.collector.model.TemplateMapping;
+import me.alexand.scat.statistic.collector.repository.InfoModelRepository;
+import me.alexand.scat.statistic.collector.repository.impls.InMemoryInfoModelRepositoryImpl;
+import me.alexand.scat.statistic.collector.utils.exceptions.MalformedMessageException;
+import me.alexand.scat.statistic.collector.utils.exceptions.UnknownInfoModelException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static me.alexand.scat.statistic.collector.entities.IPFIXMessageTestEntities.IPFIX_CS_REQ_DATA_RECORD;
+import static me.alexand.scat.statistic.collector.entities.IPFIXMessageTestEntities.IPFIX_MESSAGE_WITH_CS_REQ_TEMPLATE;
+import static me.alexand.scat.statistic.collector.entities.RawPacketsEntities.RAW_CS_REQ_DATA_PAYLOAD;
+import static me.alexand.scat.statistic.collector.model.IANAAbstractDataTypes.*;
+import static me.alexand.scat.statistic.collector.model.TemplateType.CS_REQ;
+import static me.alexand.scat.statistic.collector.model.TemplateType.GENERIC;
+import static me.alexand.scat.statistic.collector.utils.InfoModelEntities.HTTP_HOST;
+import static me.alexand.scat.statistic.collector.utils.InfoModelEntities.LOGIN;
+import static me.alexand.scat.statistic.collector.utils.InfoModelEntities.TIMESTAMP;
+import static me.alexand.scat.statistic.collector.utils.SCATDataTemplateEntities.DATA_TEMPLATE_LIST;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Тесты декодера записей данных шаблона
+ *
+ * @author asidorov84@gmail.com
+ */
+public class TemplateDecoderTests {
+    //Запись данных начинается после заголовка сообщения и заголовка сета
+    private static final int CS_REQ_RECORD_OFFSET = 20;
+    private static final long TEST_ENTERPRISE_NUMBER = 32473;
+    private static final int VARIABLE_LENGTH = 65535;
+    private static final long NTP_EPOCH_OFFSET = 2_208_988_800L;
+    private static final LocalDateTime NTP_TIME = LocalDateTime.of(2018, 4, 1, 12, 30, 15);
+
+    private final InfoModelRepository infoModelRepository = new InMemoryInfoModelRepositoryImpl();
+    private IPFIXTemplateRecord csReqTemplate;
+
+    @Before
+    public void before() {
+        DATA_TEMPLATE_LIST.forEach(dataTemplate -> dataTemplate.getSpecifiers().forEach(infoModelRepository::save));
+        csReqTemplate = (IPFIXTemplateRecord) IPFIX_MESSAGE_WITH_CS_REQ_TEMPLATE.getSets().get(0).getRecords().get(0);
+    }
+
+    @Test
+    public void testDecodeRecord() throws Exception {
+        TemplateDecoder decoder = TemplateDecoder.compile(csReqTemplate, infoModelRepository);
+
+        assertEquals(CS_REQ, decoder.getType());
+        assertEquals(csReqTemplate.getFieldCount(), decoder.getFieldCount());
+        assertEquals(csReqTemplate.getMinDataRecordSize(), decoder.getMinRecordLength());
+
+        int[] offsets = new int[decoder.getFieldCount()];
+        int[] lengths = new int[decoder.getFieldCount()];
+        int end = decoder.position(RAW_CS_REQ_DATA_PAYLOAD, CS_REQ_RECORD_OFFSET, offsets, lengths);
+
+        List<IPFIXFieldValue> values = new ArrayList<>();
+
+        for (int i = 0; i < decoder.getFieldCount(); i++) {
+            values.add(IPFIXFieldValue.builder()
+                    .name(decoder.getFieldName(i))
+                    .type(decoder.getFieldType(i))
+                    .value(decoder.read(i, RAW_CS_REQ_DATA_PAYLOAD, offsets[i], lengths[i]))
+                    .build());
+        }
+
+        assertEquals(IPFIX_CS_REQ_DATA_RECORD.getFieldValues(), values);
+        assertEquals(RAW_CS_REQ_DATA_PAYLOAD.length, end);
+    }
+
+    @Test
+    public void testDecodeAllDataTypes() throws Exception {
+        long ntpSeconds = NTP_TIME.atZone(ZoneId.systemDefault()).toEpochSecond() + NTP_EPOCH_OFFSET;
+
+        ByteBuffer payload = ByteBuffer.allocate(128);
+        List<IPFIXFieldSpecifier> specifiers = new ArrayList<>();
+        List<Object> expected = new ArrayList<>();
+
+        payload.put((byte) 0xFF);
+        addField(specifiers, expected, UNSIGNED8, 1, 255);
+        payload.put((byte) 0x80);
+        addField(specifiers, expected, UNSIGNED16, 1, 128);
+        payload.putShort((short) 0xFFFE);
+        addField(specifiers, expected, UNSIGNED32, 2, 65534L);
+        payload.putInt(-1);
+        addField(specifiers, expected, UNSIGNED64, 4, 4294967295L);
+        payload.putLong(-1);
+        addField(specifiers, expected, UNSIGNED64, 8, new BigInteger("18446744073709551615"));
+        payload.put((byte) -2);
+        addField(specifiers, expected, SIGNED8, 1, -2);
+        payload.put((byte) 0x80);
+        addField(specifiers, expected, SIGNED16, 1, -128);
+        payload.putShort((short) -123);
+        addField(specifiers, expected, SIGNED32, 2, -123L);
+        payload.put((byte) 1).putShort((short) 0);
+        addField(specifiers, expected, SIGNED64, 3, 65536L);
+        payload.putFloat(1.5f);
+        addField(specifiers, expected, FLOAT32, 4, 1.5f);
+        payload.putFloat(0.25f);
+        addField(specifiers, expected, FLOAT64, 4, 0.25d);
+        payload.putDouble(-2.5d);
+        addField(specifiers, expected, FLOAT64, 8, -2.5d);
+        payload.put((byte) 1);
+        addField(specifiers, expected, BOOLEAN, 1, true);
+        payload.put((byte) 2);
+        addField(specifiers, expected, BOOLEAN, 1, false);
+        payload.put(new byte[]{0x00, 0x1A, 0x2B, 0x3C, 0x4D, (byte) 0xFF});
+        addField(specifiers, expected, MAC_ADDRESS, 6, "00:1a:2b:3c:4d:ff");
+        payload.put((byte) 3).put(new byte[]{(byte) 0xCA, (byte) 0xFE, 0x01});
+        addField(specifiers, expected, OCTET_ARRAY, VARIABLE_LENGTH, "cafe01");
+        payload.putLong(0x20010DB800000000L).putLong(0x00000000FF000042L);
+        addField(specifiers, expected, IPV6_ADDRESS, 16, "2001:db8:0:0:0:0:ff00:42");
+        //младшие 11 бит доли секунды в микросекундах отбрасываются
+        payload.putInt((int) ntpSeconds).putInt(0x800007FF);
+        addField(specifiers, expected, DATE_TIME_MICROSECONDS, 8, NTP_TIME.withNano(500_000_000));
+        payload.putInt((int) ntpSeconds).putInt(0x40000000);
+        addField(specifiers, expected, DATE_TIME_NANOSECONDS, 8, NTP_TIME.withNano(250_000_000));
+
+        TemplateDecoder decoder = TemplateDecoder.compile(createTemplate(specifiers), infoModelRepository);
+        byte[] record = new byte[payload.position()];
+        System.arraycopy(payload.array(), 0, record, 0, record.length);
+
+        int[] offsets = new int[decoder.getFieldCount()];
+        int[] lengths = new int[decoder.getFieldCount()];
+        assertEquals(record.length, decoder.position(record, 0, offsets, lengths));
+
+        for (int i = 0; i < decoder.getFieldCount(); i++) {
+            assertEquals(decoder.getFieldName(i), expected.get(i), decoder.read(i, record, offsets[i], lengths[i]));
+        }
+
+        //значения, скопированные в пакет записей, совпадают с декодированными
+        IPFIXRecordCursor cursor = new IPFIXRecordCursor();
+        cursor.reset(decoder, record, 0, record.length);
+        assertTrue(cursor.next());
+
+        RecordsBatch batch = cursor.newBatch(1);
+        cursor.copyTo(batch);
+
+        for (int i = 0; i < decoder.getFieldCount(); i++) {
+            assertEquals(decoder.getFieldName(i), expected.get(i), batch.getValue(0, i));
+        }
+    }
+
+    @Test
+    public void testCopyRecordToMappedColumns() throws Exception {
+        //столбцы схемы в другом порядке и столбец, для которого в шаблоне нет поля
+        TemplateMapping mapping = TemplateMapping.builder()
+                .type(CS_REQ)
+                .columns(asList(LOGIN, TIMESTAMP, HTTP_HOST))
+                .fieldIndexes(new int[]{1, 0, -1})
+                .build();
+
+        TemplateDecoder decoder = TemplateDecoder.compile(csReqTemplate, mapping, infoModelRepository);
+        IPFIXRecordCursor cursor = new IPFIXRecordCursor();
+        cursor.reset(decoder, RAW_CS_REQ_DATA_PAYLOAD, CS_REQ_RECORD_OFFSET, RAW_CS_REQ_DATA_PAYLOAD.length);
+        assertTrue(cursor.next());
+
+        RecordsBatch batch = cursor.newBatch(1);
+        cursor.copyTo(batch);
+
+        List<IPFIXFieldValue> fieldValues = IPFIX_CS_REQ_DATA_RECORD.getFieldValues();
+        assertEquals(csReqTemplate.getFieldCount(), cursor.getFieldCount());
+        assertEquals(3, cursor.getColumnCount());
+        assertEquals(HTTP_HOST.getName(), batch.getColumnName(2));
+        assertEquals(fieldValues.get(1).getValue(), batch.getValue(0, 0));
+        assertEquals(fieldValues.get(0).getValue(), batch.getValue(0, 1));
+        assertTrue(batch.isNull(0, 2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCompileWithMismatchedMapping() throws Exception {
+        TemplateMapping mapping = TemplateMapping.builder()
+                .type(CS_REQ)
+                .columns(asList(LOGIN, TIMESTAMP))
+                .fieldIndexes(new int[]{0, 1})
+                .build();
+
+        TemplateDecoder.compile(csReqTemplate, mapping, infoModelRepository);
+    }
+
+    @Test(expected = MalformedMessageException.class)
+    public void testCompileTemplateWithIllegalFieldLength() throws Exception {
+        List<IPFIXFieldSpecifier> specifiers = new ArrayList<>();
+        addField(specifiers, new ArrayList<>(), UNSIGNED32, 8, null);
+
+        TemplateDecoder.compile(createTemplate(specifiers), infoModelRepository);
+    }
+
+    @Test(expected = UnknownInfoModelException.class)
+    public void testCompileTemplateWithUnknownInformationElement() throws Exception {
+        IPFIXTemplateRecord template = IPFIXTemplateRecord.builder()
+                .templateID(256)
+                .fieldCount(1)
+                .fieldSpecifiers(asList(IPFIXFieldSpecifier.builder()
+                        .informationElementIdentifier(32767)
+                        .fieldLength(4)
+                        .build()))
+                .build();
+
+        TemplateDecoder.compile(template, infoModelRepository);
+    }
+
+    private void addField(List<IPFIXFieldSpecifier> specifiers,
+                          List<Object> expected,
+                          IANAAbstractDataTypes type,
+                          int length,
+                          Object value) {
+        int id = specifiers.size() + 1;
+
+        infoModelRepository.save(InfoModelEntity.builder()
+                .enterpriseNumber(TEST_ENTERPRISE_NUMBER)
+                .informationElementId(id)
+                .name(type.name().toLowerCase() + "_" + id)
+                .type(type)
+                .build());
+
+        specifiers.add(IPFIXFieldSpecifier.builder()
+                .enterpriseBit(true)
+                .informationElementIdentifier(id)
+                .fieldLength(length)
+                .enterpriseNumber(TEST_ENTERPRISE_NUMBER)
+                .build());
+
+        expected.add(value);
+    }
+
+    private static IPFIXTemplateRecord createTemplate(List<IPFIXFieldSpecifier> specifiers) {
+        return IPFIXTemplateRecord.builder()
+                .templateID(256)
+                .fieldCount(specifiers.size())
+                .type(GENERIC)
+                .fieldSpecifiers(specifiers)
+                .build();
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.service;
+
+import me.alexand.scat.statistic.collector.model.IANAAbstractDataTypes;
+import me.alexand.scat.statistic.collector.model.RecordsBatch;
+import me.alexand.scat.statistic.collector.model.TemplateType;
+import me.alexand.scat.statistic.common.entities.DomainRegex;
+import me.alexand.scat.statistic.common.entities.TrackedDomainRequests;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static me.alexand.scat.statistic.collector.model.IANAAbstractDataTypes.*;
+import static me.alexand.scat.statistic.collector.model.TemplateType.CS_REQ;
+import static me.alexand.scat.statistic.collector.model.TemplateType.CS_RESP;
+import static me.alexand.scat.statistic.collector.utils.BytesConvertUtils.ipv4ToInt;
+import static me.alexand.scat.statistic.collector.utils.DateTimeUtils.EXPORTER_ZONE_OFFSET;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Тесты учета запросов на отслеживаемые доменные имена при получении записей
+ *
+ * @author asidorov84@gmail.com
+ */
+public class TrackedDomainsAggregatorTests {
+    private static final LocalDateTime DATE_ADDED = LocalDateTime.parse("2018-03-01T10:00:00.123");
+    private static final DomainRegex MAIL_RU = domainRegex(1, " Mail\\.RU ", true);
+    private static final DomainRegex ANY_VK = domainRegex(2, ".*vk\\.com", true);
+
+    private static final List<DomainRegex> DOMAIN_REGEXPS = Arrays.asList(
+            MAIL_RU,
+            ANY_VK,
+            domainRegex(3, ".*", false),
+            domainRegex(4, "(broken", true));
+
+    @Test
+    public void testRequestsAreAggregated() {
+        TrackedDomainsAggregator aggregator = new TrackedDomainsAggregator();
+        aggregator.setDomainRegexps(DOMAIN_REGEXPS);
+
+        aggregator.add(batch(CS_REQ,
+                row("2018-04-01T23:59:50", "user1", "10.0.0.1", "MAIL.ru"),
+                row("2018-04-01T23:59:40", "user1", "10.0.0.1", "mail.ru"),
+                row("2018-04-01T23:59:55", "user1", "10.0.0.1", "sub.mail.ru"),
+                row("2018-04-02T00:00:05", "user1", "10.0.0.1", "mail.ru"),
+                row("2018-04-01T12:00:00", "user2", "10.0.0.2", "m.vk.com"),
+                row("2018-04-01T12:00:00", null, null, "vk.com"),
+                row("2018-04-01T12:00:00", "user2", "10.0.0.2", null)));
+
+        assertEquals(new HashSet<>(Arrays.asList(
+                requests("2018-04-01", 1, "10.0.0.1", "user1", "23:59:40", "23:59:50", 2),
+                requests("2018-04-02", 1, "10.0.0.1", "user1", "00:00:05", "00:00:05", 1),
+                requests("2018-04-01", 2, "10.0.0.2", "user2", "12:00:00", "12:00:00", 1),
+                requests("2018-04-01", 2, null, null, "12:00:00", "12:00:00", 1))),
+                new HashSet<>(aggregator.flush()));
+    }
+
+    @Test
+    public void testFlushReturnsIncrements() {
+        TrackedDomainsAggregator aggregator = new TrackedDomainsAggregator();
+        aggregator.add(batch(CS_REQ, row("2018-04-01T10:00:00", "user1", "10.0.0.1", "mail.ru")));
+        //шаблоны еще не заданы
+        assertTrue(aggregator.flush().isEmpty());
+
+        aggregator.setDomainRegexps(DOMAIN_REGEXPS);
+        aggregator.add(batch(CS_RESP, row("2018-04-01T10:00:00", "user1", "10.0.0.1", "mail.ru")));
+        aggregator.add(batch(CS_REQ, row("2018-04-01T10:00:00", "user1", "10.0.0.1", "mail.ru")));
+
+        assertEquals(Arrays.asList(requests("2018-04-01", 1, "10.0.0.1", "user1", "10:00:00", "10:00:00", 1)),
+                aggregator.flush());
+        assertTrue(aggregator.flush().isEmpty());
+
+        aggregator.add(batch(CS_REQ, row("2018-04-01T10:00:30", "user1", "10.0.0.1", "mail.ru")));
+
+        assertEquals(Arrays.asList(requests("2018-04-01", 1, "10.0.0.1", "user1", "10:00:30", "10:00:30", 1)),
+                aggregator.flush());
+    }
+
+    @Test
+    public void testConcurrentAdd() throws Exception {
+        TrackedDomainsAggregator aggregator = new TrackedDomainsAggregator();
+        aggregator.setDomainRegexps(DOMAIN_REGEXPS);
+        int threads = 4;
+        int batches = 1000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<TrackedDomainRequests> results = new ArrayList<>();
+
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+
+            for (int i = 0; i < threads; i++) {
+                int thread = i;
+
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < batches; j++) {
+                        aggregator.add(batch(CS_REQ,
+                                row(String.format("2018-04-01T10:%02d:00", thread), "user1", "10.0.0.1", "mail.ru"),
+                                row("2018-04-01T11:00:00", "user2", "10.0.0.2", "vk.com")));
+                    }
+                }));
+            }
+
+            //выгрузка во время учета не должна терять запросы
+            for (int i = 0; i < 10; i++) {
+                results.addAll(aggregator.flush());
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        results.addAll(aggregator.flush());
+
+        long mailRuCount = 0;
+        long vkCount = 0;
+
+        for (TrackedDomainRequests result : results) {
+            if (result.getDomainRegex().getId() == 1) {
+                mailRuCount += result.getCount().longValue();
+            } else {
+                vkCount += result.getCount().longValue();
+            }
+        }
+
+        assertEquals(threads * batches, mailRuCount);
+        assertEquals(threads * batches, vkCount);
+    }
+
+    private static DomainRegex domainRegex(long id, String pattern, boolean active) {
+        return DomainRegex.builder()
+                .id(id)
+                .pattern(pattern)
+                .dateAdded(DATE_ADDED)
+                .active(active)
+                .build();
+    }
+
+    private static Object[] row(String eventTime, String login, String address, String hostname) {
+        return new Object[]{eventTime, login, address, hostname};
+    }
+
+    private static RecordsBatch batch(TemplateType type, Object[]... rows) {
+        RecordsBatch batch = RecordsBatch.builder()
+                .type(type)
+                .columnNames(new String[]{"event_time", "login", "ip_src", "ip_dst", "hostname"})
+                .columnTypes(new IANAAbstractDataTypes[]{DATE_TIME_SECONDS, STRING, IPV4_ADDRESS, IPV4_ADDRESS, STRING})
+                .capacity(rows.length)
+                .build();
+
+        for (Object[] row : rows) {
+            batch.setLong(0, LocalDateTime.parse((String) row[0]).toEpochSecond(EXPORTER_ZONE_OFFSET));
+
+            if (row[1] == null) {
+                batch.setNull(1);
+            } else {
+                batch.setString(1, (String) row[1]);
+            }
+
+            if (row[2] == null) {
+                batch.setNull(2);
+            } else {
+                batch.setInt(2, ipv4ToInt((String) row[2]));
+            }
+
+            batch.setNull(3);
+
+            if (row[3] == null) {
+                batch.setNull(4);
+            } else {
+                batch.setString(4, (String) row[3]);
+            }
+
+            batch.endRow();
+        }
+
+        return batch;
+    }
+
+    private static TrackedDomainRequests requests(String date, long domainId, String address, String login,
+                                                  String firstTime, String lastTime, long count) {
+        DomainRegex domainRegex = domainId == 1 ? MAIL_RU : ANY_VK;
+
+        return TrackedDomainRequests.builder()
+                .date(LocalDate.parse(date))
+                .domainRegex(DomainRegex.builder()
+                        .id(domainId)
+                        .pattern(domainRegex.getPattern().toLowerCase().trim())
+                        .dateAdded(DATE_ADDED.withNano(0))
+                        .active(true)
+                        .build())
+                .address(address)
+                .login(login)
+                .firstTime(LocalTime.parse(firstTime))
+                .lastTime(LocalTime.parse(lastTime))
+                .count(BigInteger.valueOf(count))
+                .build();
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.service;
+
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Тесты границы удаления записей временного буфера
+ *
+ * @author asidorov84@gmail.com
+ */
+public class TransitionalBufferCleanerTests {
+    private static final LocalDateTime NOW = LocalDateTime.parse("2018-04-01T17:12:34.567");
+
+    @Test
+    public void testBeforeEventTimeWithoutPartitions() {
+        TransitionalBufferCleaner cleaner = new TransitionalBufferCleaner(null, 5, 0);
+        assertEquals(LocalDateTime.parse("2018-04-01T17:07:34.567"), cleaner.getBeforeEventTime(NOW));
+    }
+
+    @Test
+    public void testBeforeEventTimeIsAlignedToPartition() {
+        TransitionalBufferCleaner cleaner = new TransitionalBufferCleaner(null, 5, 60);
+        //удаляются только секции, истекшие целиком
+        assertEquals(LocalDateTime.parse("2018-04-01T17:06:59.999999999"), cleaner.getBeforeEventTime(NOW));
+
+        cleaner = new TransitionalBufferCleaner(null, 10, 3600);
+        assertEquals(LocalDateTime.parse("2018-04-01T16:59:59.999999999"), cleaner.getBeforeEventTime(NOW));
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.spill;
+
+import me.alexand.scat.statistic.collector.model.IANAAbstractDataTypes;
+import me.alexand.scat.statistic.collector.model.RecordsBatch;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static me.alexand.scat.statistic.collector.model.IANAAbstractDataTypes.*;
+import static me.alexand.scat.statistic.collector.model.TemplateType.CS_REQ;
+import static me.alexand.scat.statistic.collector.model.TemplateType.CS_RESP;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Тесты журнала для временного хранения данных на диске
+ *
+ * @author asidorov84@gmail.com
+ */
+public class SegmentLogTests {
+    private static final int SEGMENT_SIZE = 64;
+    private static final int MAX_SEGMENTS = 2;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+    private SegmentLog log;
+
+    @Before
+    public void before() throws Exception {
+        directory = folder.getRoot().toPath();
+        log = new SegmentLog(directory, "test", SEGMENT_SIZE, MAX_SEGMENTS);
+    }
+
+    @After
+    public void after() throws Exception {
+        log.close();
+    }
+
+    @Test
+    public void testReadInAppendOrder() {
+        assertTrue(log.isEmpty());
+        assertEquals(-1, log.peekLength());
+
+        assertTrue(log.append(new byte[]{1, 2, 3}, 0, 3));
+        assertTrue(log.append(new byte[]{9, 4, 5, 9}, 1, 2));
+        assertFalse(log.isEmpty());
+
+        byte[] target = new byte[8];
+        assertEquals(3, log.peekLength());
+        assertEquals(3, log.read(target));
+        assertArrayEquals(new byte[]{1, 2, 3}, Arrays.copyOf(target, 3));
+
+        //без удаления запись читается повторно
+        assertEquals(3, log.read(target));
+        log.remove();
+
+        assertEquals(2, log.read(target));
+        assertArrayEquals(new byte[]{4, 5}, Arrays.copyOf(target, 2));
+        log.remove();
+
+        assertTrue(log.isEmpty());
+        assertEquals(5, log.getSpilledBytes());
+        assertEquals(5, log.getReplayedBytes());
+    }
+
+    @Test
+    public void testRotationAndBoundedSize() throws Exception {
+        byte[] record = new byte[28];
+
+        //в сегмент помещается две записи по 32 байта вместе с длиной
+        for (int i = 0; i < 4; i++) {
+            assertTrue(log.append(record, 0, record.length));
+        }
+
+        assertEquals(2, log.getSegmentsCount());
+        assertEquals(2, Files.list(directory).count());
+
+        assertFalse(log.append(record, 0, record.length));
+        assertFalse(log.append(new byte[SEGMENT_SIZE], 0, SEGMENT_SIZE));
+        assertEquals(2, log.getRejectedRecords());
+
+        //прочитанный сегмент освобождает место и заполняется заново, новые файлы не создаются
+        log.remove();
+        log.remove();
+        assertEquals(28, log.peekLength());
+        assertEquals(1, log.getSegmentsCount());
+        assertTrue(log.append(record, 0, record.length));
+        assertEquals(2, log.getSegmentsCount());
+        assertEquals(2, Files.list(directory).count());
+    }
+
+    @Test
+    public void testSegmentFilesRecycled() throws Exception {
+        byte[] record = new byte[28];
+        byte[] target = new byte[28];
+
+        for (int i = 0; i < 20; i++) {
+            record[0] = (byte) i;
+            assertTrue(log.append(record, 0, record.length));
+
+            //чтение отстает от записи на одну запись, поэтому заняты оба сегмента поочередно
+            if (i > 0) {
+                assertEquals(28, log.read(target));
+                assertEquals((byte) (i - 1), target[0]);
+                log.remove();
+            }
+        }
+
+        assertEquals(0, log.getRejectedRecords());
+        assertEquals(MAX_SEGMENTS, Files.list(directory).count());
+    }
+
+    @Test
+    public void testStaleSegmentsDeleted() throws Exception {
+        log.append(new byte[1], 0, 1);
+        assertEquals(1, Files.list(directory).count());
+
+        new SegmentLog(directory, "test", SEGMENT_SIZE, MAX_SEGMENTS).close();
+        assertEquals(0, Files.list(directory).count());
+    }
+
+    @Test
+    public void testRecordsBatchRoundTrip() throws Exception {
+        RecordsBatch batch = RecordsBatch.builder()
+                .type(CS_REQ)
+                .columnNames(new String[]{"timestamp", "login", "ipSrc", "sessionID", "hostType", "unsupported"})
+                .columnTypes(new IANAAbstractDataTypes[]{DATE_TIME_SECONDS, STRING, IPV4_ADDRESS, UNSIGNED64,
+                        UNSIGNED8, FLOAT64})
+                .capacity(4)
+                .build();
+
+        for (int i = 0; i < 3; i++) {
+            byte[] login = ("user" + i + "@example.com").getBytes();
+            batch.setLong(0, 1522591569L + i);
+            batch.setString(1, login, 0, login.length);
+            batch.setInt(2, 0x5CF69B31 + i);
+            batch.setLong(3, -1L - i);
+            batch.setInt(4, i);
+            batch.endRow();
+        }
+
+        byte[] data = RecordsBatchCodec.encode(batch);
+        RecordsBatch decoded = RecordsBatchCodec.decode(data, data.length);
+
+        assertEquals(batch.size(), decoded.size());
+        assertEquals(batch.toDataRecords(), decoded.toDataRecords());
+    }
+
+    @Test
+    public void testRecordsBatchWithNullsRoundTrip() throws Exception {
+        RecordsBatch batch = RecordsBatch.builder()
+                .type(CS_RESP)
+                .columnNames(new String[]{"timestamp", "contentType", "http_host_2001"})
+                .columnTypes(new IANAAbstractDataTypes[]{DATE_TIME_SECONDS, STRING, STRING})
+                .capacity(2)
+                .build();
+
+        byte[] host = "vk.com".getBytes();
+        batch.setLong(0, 1522591569L);
+        batch.setNull(1);
+        batch.setString(2, host, 0, host.length);
+        batch.endRow();
+        batch.setLong(0, 1522591570L);
+        batch.setNull(1);
+        batch.setNull(2);
+        batch.endRow();
+
+        byte[] data = RecordsBatchCodec.encode(batch);
+        RecordsBatch decoded = RecordsBatchCodec.decode(data, data.length);
+
+        assertTrue(decoded.isNull(0, 1));
+        assertFalse(decoded.isNull(0, 2));
+        assertTrue(decoded.isNull(1, 2));
+        assertEquals(batch.toDataRecords(), decoded.toDataRecords());
+    }
+}
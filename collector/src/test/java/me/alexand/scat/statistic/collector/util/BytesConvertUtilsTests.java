@@ -24,6 +24,7 @@ package me.alexand.scat.statistic.collector.util;
 import org.junit.Test;
 
 import java.math.BigInteger;
+import java.net.Inet6Address;
 import java.nio.ByteBuffer;
 
 import static me.alexand.scat.statistic.collector.utils.BytesConvertUtils.*;
@@ -105,6 +106,89 @@ public class BytesConvertUtilsTests {
         assertEquals(new BigInteger("9223372036854775807"), eightBytesToBigInteger(bytes, 0));
     }
 
+    @Test
+    public void testConvertEightBytesToLong() {
+        byte[] bytes = {0x00, 0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, (byte) 0xff, (byte) 0xff,
+                (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff};
+
+        assertEquals(0x0001020304050607L, eightBytesToLong(bytes, 0));
+        //unsigned значение больше Long.MAX_VALUE интерпретируется как отрицательное
+        assertEquals(-1L, eightBytesToLong(bytes, 8));
+    }
+
+    @Test
+    public void testConvertUnsignedLongToNumber() {
+        byte[] bytes = {0x04, 0x2D, (byte) 0x9B, 0x6B, 0x55, 0x41, 0x02, 0x22,
+                (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff};
+
+        assertEquals(Long.valueOf(Long.MAX_VALUE), unsignedLongToNumber(Long.MAX_VALUE));
+        //BigInteger создается только для значений больше Long.MAX_VALUE
+        assertEquals(new BigInteger("9223372036854775808"), unsignedLongToNumber(Long.MIN_VALUE));
+        assertEquals(Long.valueOf(0x042D9B6B55410222L), eightBytesToUnsignedNumber(bytes, 0));
+        assertEquals(new BigInteger("18446744073709551615"), eightBytesToUnsignedNumber(bytes, 8));
+    }
+
+    @Test
+    public void testConvertReducedSizeUnsigned() {
+        byte[] bytes = {(byte) 0xff, (byte) 0xfe, 0x01};
+
+        assertEquals(0xff, bytesToUnsignedLong(bytes, 0, 1));
+        assertEquals(0xfffe, bytesToUnsignedLong(bytes, 0, 2));
+        assertEquals(0xfffe01, bytesToUnsignedLong(bytes, 0, 3));
+    }
+
+    @Test
+    public void testConvertReducedSizeSigned() {
+        byte[] bytes = {(byte) 0xff, (byte) 0x85, 0x7f, 0x00};
+
+        assertEquals(-1, bytesToSignedLong(bytes, 0, 1));
+        assertEquals(-123, bytesToSignedLong(bytes, 0, 2));
+        assertEquals(0x7f00, bytesToSignedLong(bytes, 2, 2));
+        assertEquals(Long.MIN_VALUE, bytesToSignedLong(ByteBuffer.allocate(8).putLong(Long.MIN_VALUE).array(), 0, 8));
+    }
+
+    @Test
+    public void testConvertFloat() {
+        byte[] bytes = ByteBuffer.allocate(12).putFloat(-0.75f).putDouble(Math.PI).array();
+
+        assertEquals(-0.75f, fourBytesToFloat(bytes, 0), 0);
+        assertEquals(-0.75d, bytesToDouble(bytes, 0, 4), 0);
+        assertEquals(Math.PI, bytesToDouble(bytes, 4, 8), 0);
+    }
+
+    @Test
+    public void testConvertByteToBoolean() {
+        assertEquals(Boolean.TRUE, byteToBoolean((byte) 1));
+        assertEquals(Boolean.FALSE, byteToBoolean((byte) 2));
+        assertNull(byteToBoolean((byte) 0));
+    }
+
+    @Test
+    public void testConvertSixBytesToMacAddress() {
+        byte[] bytes = {0x00, 0x00, 0x1a, 0x2b, 0x3c, 0x4d, (byte) 0xef, 0x0f};
+        assertEquals("00:1a:2b:3c:4d:ef", sixBytesToMacAddress(bytes, 1));
+    }
+
+    @Test
+    public void testConvertBytesToHexString() {
+        byte[] bytes = {0x00, (byte) 0xca, (byte) 0xfe, 0x01};
+        assertEquals("cafe01", bytesToHexString(bytes, 1, 3));
+        assertEquals("", bytesToHexString(bytes, 1, 0));
+    }
+
+    @Test
+    public void testConvertSixteenBytesToIPv6() throws Exception {
+        byte[][] addresses = {
+                ByteBuffer.allocate(16).putLong(0x20010DB800000000L).putLong(0x00000000FF000042L).array(),
+                ByteBuffer.allocate(16).putLong(-1L).putLong(-1L).array(),
+                new byte[16]
+        };
+
+        for (byte[] address : addresses) {
+            assertEquals(Inet6Address.getByAddress(address).getHostAddress(), sixteenBytesToIPv6(address, 0));
+        }
+    }
+
     @Test
     public void testIsHighBitSet() {
         assertTrue(isHighBitSet((byte) 0xff));
@@ -128,4 +212,18 @@ public class BytesConvertUtilsTests {
         assertEquals("31.170.168.171", fourBytesToIPv4(bytes, 0));
         assertEquals("31.170.168.171", fourBytesToIPv4(bytes));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testConvertIPv4ToIntAndBack() {
+        assertEquals(0x1FAAA8AB, ipv4ToInt("31.170.168.171"));
+        assertEquals(0xFFFFFFFF, ipv4ToInt("255.255.255.255"));
+        assertEquals("31.170.168.171", intToIPv4(0x1FAAA8AB));
+        assertEquals("217.12.15.96", intToIPv4(ipv4ToInt("217.12.15.96")));
+    }
+
+    @Test
+    public void testConvertUnsignedLongToBigInteger() {
+        assertEquals(BigInteger.valueOf(301089013125136674L), unsignedLongToBigInteger(301089013125136674L));
+        assertEquals(new BigInteger("18446744073709551615"), unsignedLongToBigInteger(-1L));
+    }
+}
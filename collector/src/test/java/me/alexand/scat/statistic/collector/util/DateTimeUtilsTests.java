@@ -25,9 +25,11 @@ package me.alexand.scat.statistic.collector.util;
 import org.junit.Test;
 
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 
 import static me.alexand.scat.statistic.collector.utils.DateTimeUtils.getFormattedDateTime;
 import static me.alexand.scat.statistic.collector.utils.DateTimeUtils.getFormattedDifferenceBetweenLocalDateTime;
+import static me.alexand.scat.statistic.collector.utils.DateTimeUtils.ntpTimestampToLocalDateTime;
 import static org.junit.Assert.assertEquals;
 
 public class DateTimeUtilsTests {
@@ -45,4 +47,12 @@ public class DateTimeUtilsTests {
         String actual = getFormattedDifferenceBetweenLocalDateTime(LOCAL_DATE_TIME_1, LOCAL_DATE_TIME_2);
         assertEquals(expected, actual);
     }
+
+    @Test
+    public void testNtpTimestampToLocalDateTime() {
+        long seconds = LOCAL_DATE_TIME_1.atZone(ZoneId.systemDefault()).toEpochSecond() + 2_208_988_800L;
+
+        assertEquals(LOCAL_DATE_TIME_1, ntpTimestampToLocalDateTime(seconds << 32));
+        assertEquals(LOCAL_DATE_TIME_1.withNano(750_000_000), ntpTimestampToLocalDateTime((seconds << 32) | 0xC0000000L));
+    }
 }
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.util;
+
+import me.alexand.scat.statistic.collector.utils.DomainPatternsMatcher;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Тесты одновременной проверки имени хоста по набору шаблонов доменных имен
+ *
+ * @author asidorov84@gmail.com
+ */
+public class DomainPatternsMatcherTests {
+    private static final String[] PATTERNS = {
+            "mail\\.ru",
+            ".*\\.mail\\.ru",
+            "(.*\\.)?vk\\.com",
+            "^yandex\\.ru$",
+            ".*ya.*",
+            "ok\\.ru|odnoklassniki\\.ru",
+            "[a-z]+\\.google\\.com",
+            "\\w+\\.ru",
+            "(?i)facebook\\.com",
+            "\\Qtwitter.com\\E",
+            "www\\.mail\\.ru",
+            "a\\\\b",
+            "m\\.vk\\.com$",
+            ".*\\u002ecom",
+            ".*\\x2eorg",
+            ".*\\0101\\.net",
+            "a\\cJb\\.info",
+            ".*\\d\\.io",
+            ".*"
+    };
+
+    private static final String[] HOSTNAMES = {
+            "mail.ru",
+            "e.mail.ru",
+            "gmail.ru",
+            "www.mail.ru",
+            "vk.com",
+            "m.vk.com",
+            "xvk.com",
+            "yandex.ru",
+            "ya.ru",
+            "ok.ru",
+            "odnoklassniki.ru",
+            "maps.google.com",
+            "google.com",
+            "facebook.com",
+            "twitter.com",
+            "twitterxcom",
+            "a\\b",
+            "",
+            "ru",
+            "a\nb.mail.ru",
+            "a\nb.vk.com",
+            "example.com",
+            "example002ecom",
+            "x.org",
+            "x2eorg",
+            "A.net",
+            "0101.net",
+            "a\nb.info",
+            "acJb.info",
+            "1.io",
+            "d.io"
+    };
+
+    @Test
+    public void testMatchesSameAsRegex() {
+        Pattern[] patterns = Arrays.stream(PATTERNS).map(Pattern::compile).toArray(Pattern[]::new);
+        DomainPatternsMatcher matcher = new DomainPatternsMatcher(patterns);
+        int[] matches = new int[matcher.size()];
+
+        for (String hostname : HOSTNAMES) {
+            List<Integer> expected = new ArrayList<>();
+
+            for (int i = 0; i < patterns.length; i++) {
+                if (patterns[i].matcher(hostname).matches()) {
+                    expected.add(i);
+                }
+            }
+
+            int count = matcher.match(hostname, matches);
+            int[] actual = Arrays.copyOf(matches, count);
+            Arrays.sort(actual);
+
+            assertArrayEquals(hostname, expected.stream().mapToInt(Integer::intValue).toArray(), actual);
+        }
+    }
+
+    @Test
+    public void testSuffixesOfManyPatterns() {
+        int patternsCount = 1000;
+        Pattern[] patterns = new Pattern[patternsCount];
+
+        for (int i = 0; i < patternsCount; i++) {
+            patterns[i] = Pattern.compile(String.format(".*\\.domain%d\\.ru", i));
+        }
+
+        DomainPatternsMatcher matcher = new DomainPatternsMatcher(patterns);
+        int[] matches = new int[matcher.size()];
+
+        assertEquals(1, matcher.match("www.domain42.ru", matches));
+        assertEquals(42, matches[0]);
+        assertEquals(0, matcher.match("domain42.ru", matches));
+        assertEquals(0, matcher.match("www.domain1000.ru", matches));
+    }
+
+    @Test
+    public void testEmptyPatterns() {
+        DomainPatternsMatcher matcher = new DomainPatternsMatcher(new Pattern[0]);
+        assertEquals(0, matcher.size());
+        assertEquals(0, matcher.match("mail.ru", new int[0]));
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.util;
+
+import me.alexand.scat.statistic.collector.model.IPFIXFieldSpecifier;
+import me.alexand.scat.statistic.collector.model.InfoModelEntity;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static me.alexand.scat.statistic.collector.utils.FingerprintUtils.*;
+import static me.alexand.scat.statistic.collector.utils.SCATDataTemplateEntities.CS_REQ_TEMPLATE;
+import static me.alexand.scat.statistic.collector.utils.SCATDataTemplateEntities.CS_RESP_TEMPLATE;
+import static me.alexand.scat.statistic.collector.utils.SCATDataTemplateEntities.GENERIC_TEMPLATE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Тесты отпечатков последовательностей полей шаблонов
+ *
+ * @author asidorov84@gmail.com
+ */
+public class FingerprintUtilsTests {
+    @Test
+    public void testElementsFingerprintMatchesEntities() {
+        for (List<InfoModelEntity> entities : asList(CS_REQ_TEMPLATE.getSpecifiers(),
+                CS_RESP_TEMPLATE.getSpecifiers(),
+                GENERIC_TEMPLATE.getSpecifiers())) {
+            assertEquals(entitiesFingerprintOf(entities), elementsFingerprintOf(toSpecifiers(entities, 4)));
+        }
+    }
+
+    @Test
+    public void testFingerprintDependsOnOrderAndLength() {
+        List<InfoModelEntity> entities = CS_RESP_TEMPLATE.getSpecifiers();
+        List<InfoModelEntity> reordered = new ArrayList<>(entities);
+        reordered.add(0, reordered.remove(reordered.size() - 1));
+
+        assertNotEquals(entitiesFingerprintOf(entities), entitiesFingerprintOf(reordered));
+        assertNotEquals(fingerprintOf(toSpecifiers(entities, 4)), fingerprintOf(toSpecifiers(entities, 8)));
+        assertEquals(elementsFingerprintOf(toSpecifiers(entities, 4)), elementsFingerprintOf(toSpecifiers(entities, 8)));
+        assertNotEquals(entitiesFingerprintOf(CS_REQ_TEMPLATE.getSpecifiers()),
+                entitiesFingerprintOf(CS_RESP_TEMPLATE.getSpecifiers()));
+    }
+
+    private static List<IPFIXFieldSpecifier> toSpecifiers(List<InfoModelEntity> entities, int fieldLength) {
+        List<IPFIXFieldSpecifier> specifiers = new ArrayList<>(entities.size());
+
+        for (InfoModelEntity entity : entities) {
+            specifiers.add(IPFIXFieldSpecifier.builder()
+                    .enterpriseBit(entity.getEnterpriseNumber() != 0)
+                    .informationElementIdentifier(entity.getInformationElementId())
+                    .fieldLength(fieldLength)
+                    .enterpriseNumber(entity.getEnterpriseNumber())
+                    .build());
+        }
+
+        return specifiers;
+    }
+}
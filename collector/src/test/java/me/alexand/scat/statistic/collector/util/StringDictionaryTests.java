@@ -0,0 +1,101 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.util;
+
+import me.alexand.scat.statistic.collector.utils.StringDictionary;
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.*;
+
+/**
+ * Тесты словаря строк
+ *
+ * @author asidorov84@gmail.com
+ */
+
+public class StringDictionaryTests {
+    private static final byte[] PAYLOAD = "#yandex.ru#mail.ru#yandex.ru#".getBytes(Charset.defaultCharset());
+
+    @Test
+    public void testRepeatedValueReturnsSameString() {
+        StringDictionary dictionary = new StringDictionary(16, 256);
+
+        String first = dictionary.get(PAYLOAD, 1, 9);
+        String second = dictionary.get(PAYLOAD, 19, 9);
+
+        assertEquals("yandex.ru", first);
+        assertSame(first, second);
+        assertEquals("mail.ru", dictionary.get(PAYLOAD, 11, 7));
+        assertEquals(2, dictionary.size());
+        assertEquals(1, dictionary.getHits());
+        assertEquals(2, dictionary.getMisses());
+        assertEquals(1.0 / 3, dictionary.getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void testGetId() {
+        StringDictionary dictionary = new StringDictionary(16, 256);
+
+        int id = dictionary.getId(PAYLOAD, 1, 9);
+
+        assertEquals(id, dictionary.getId(PAYLOAD, 19, 9));
+        assertNotEquals(id, dictionary.getId(PAYLOAD, 11, 7));
+        assertEquals("yandex.ru", dictionary.getString(id));
+        assertEquals("", dictionary.getString(dictionary.getId(PAYLOAD, 0, 0)));
+    }
+
+    @Test
+    public void testLongValueIsBypassed() {
+        StringDictionary dictionary = new StringDictionary(16, 8);
+
+        assertNull(dictionary.get(PAYLOAD, 1, 9));
+        assertEquals(-1, dictionary.getId(PAYLOAD, 1, 9));
+        assertEquals("mail.ru", dictionary.get(PAYLOAD, 11, 7));
+        assertEquals(1, dictionary.size());
+        assertEquals(2, dictionary.getBypassed());
+    }
+
+    @Test
+    public void testClearWhenFull() {
+        StringDictionary dictionary = new StringDictionary(1, 256);
+
+        String first = dictionary.get(PAYLOAD, 1, 9);
+        assertEquals(0, dictionary.getGeneration());
+
+        assertEquals("mail.ru", dictionary.get(PAYLOAD, 11, 7));
+        assertEquals(1, dictionary.getGeneration());
+        assertEquals(1, dictionary.size());
+
+        //значение первого поколения создается заново
+        String second = dictionary.get(PAYLOAD, 19, 9);
+        assertEquals(first, second);
+        assertNotSame(first, second);
+        assertEquals(2, dictionary.getGeneration());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testUnknownId() {
+        new StringDictionary(16, 256).getString(0);
+    }
+}
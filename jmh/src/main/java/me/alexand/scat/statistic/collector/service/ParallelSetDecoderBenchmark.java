@@ -0,0 +1,155 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.collector.service;
+
+import me.alexand.scat.statistic.collector.model.IPFIXHeader;
+import me.alexand.scat.statistic.collector.model.RecordsBatch;
+import me.alexand.scat.statistic.collector.utils.exceptions.IPFIXParseException;
+import me.alexand.scat.statistic.jmh.BenchmarkPayloads;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static me.alexand.scat.statistic.collector.entities.RawPacketsEntities.RAW_TEMPLATES_PAYLOAD;
+
+/**
+ * Бенчмарки декодирования сообщения с несколькими сетами записей CS_RESP: последовательно потоком процессора
+ * (sequential) и с распределением сетов между потоками пула (parallel, см. ParallelSetDecoder).
+ * <p>
+ * Сообщение имеет длину около 64 КБ и делится на {@code sets} сетов. В обоих случаях записи копируются в пакет
+ * так же, как в IPFIXMessageProcessor, поэтому операция включает объединение пакетов сетов.
+ * Класс находится в пакете декодера, так как ParallelSetDecoder недоступен вне его.
+ *
+ * @author asidorov84@gmail.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ParallelSetDecoderBenchmark {
+    private static final int MESSAGE_HEADER_LENGTH = 16;
+    private static final int SET_HEADER_LENGTH = 4;
+    private static final int MAX_MESSAGE_LENGTH = 65000;
+    private static final int POOL_THREADS = 4;
+
+    @Param({"2", "4", "8"})
+    private int sets;
+
+    private IPFIXParser parser;
+    private ForkJoinPool pool;
+    private ParallelSetDecoder decoder;
+    private byte[] message;
+
+    private final IPFIXRecordCursor cursor = new IPFIXRecordCursor();
+    private final IPFIXParser.DataRecordHandler recordHandler = this::store;
+    private final ParallelSetDecoder.BatchHandler batchHandler = this::store;
+    private RecordsBatch batch;
+
+    @Setup
+    public void setup() throws IPFIXParseException {
+        parser = BenchmarkPayloads.createParser();
+        parser.parse(RAW_TEMPLATES_PAYLOAD);
+
+        pool = new ForkJoinPool(POOL_THREADS);
+        decoder = new ParallelSetDecoder(pool, 1);
+        message = createMessage(BenchmarkPayloads.createCsRespDataMessage(RAW_TEMPLATES_PAYLOAD), sets);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Benchmark
+    public int sequential() throws IPFIXParseException {
+        clearBatch();
+        IPFIXHeader header = parser.parse(message, message.length, 0, cursor, recordHandler);
+        return header.getLength() + batch.size();
+    }
+
+    @Benchmark
+    public int parallel() throws IPFIXParseException {
+        clearBatch();
+        IPFIXHeader header = decoder.parse(parser, message, message.length, 0, cursor, recordHandler, batchHandler);
+        return header.getLength() + batch.size();
+    }
+
+    private void clearBatch() {
+        if (batch != null) {
+            batch.clear();
+        }
+    }
+
+    private void store(IPFIXRecordCursor record) {
+        if (batch == null) {
+            batch = record.newBatch(MAX_MESSAGE_LENGTH);
+        }
+
+        record.copyTo(batch);
+    }
+
+    private void store(RecordsBatch records) {
+        batch.append(records, 0);
+    }
+
+    /**
+     * Сформировать сообщение из {@code sets} сетов, каждый из которых содержит одинаковое количество
+     * записей из сообщения {@code single} с одной записью
+     */
+    private static byte[] createMessage(byte[] single, int sets) {
+        int headersLength = MESSAGE_HEADER_LENGTH + SET_HEADER_LENGTH;
+        byte[] record = Arrays.copyOfRange(single, headersLength, single.length);
+        int recordsPerSet = (MAX_MESSAGE_LENGTH - MESSAGE_HEADER_LENGTH) / sets / record.length;
+        int setLength = SET_HEADER_LENGTH + recordsPerSet * record.length;
+
+        ByteBuffer message = ByteBuffer.allocate(MESSAGE_HEADER_LENGTH + sets * setLength);
+        message.put(single, 0, MESSAGE_HEADER_LENGTH);
+        message.putShort(2, (short) message.capacity());
+
+        for (int i = 0; i < sets; i++) {
+            message.put(single, MESSAGE_HEADER_LENGTH, 2);
+            message.putShort((short) setLength);
+
+            for (int j = 0; j < recordsPerSet; j++) {
+                message.put(record);
+            }
+        }
+
+        return message.array();
+    }
+}
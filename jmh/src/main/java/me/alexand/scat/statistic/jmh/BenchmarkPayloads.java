@@ -0,0 +1,104 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.jmh;
+
+import me.alexand.scat.statistic.collector.repository.InfoModelRepository;
+import me.alexand.scat.statistic.collector.repository.impls.InMemoryInfoModelRepositoryImpl;
+import me.alexand.scat.statistic.collector.repository.impls.InMemorySCATDataTemplateRepositoryImpl;
+import me.alexand.scat.statistic.collector.service.DataTemplateService;
+import me.alexand.scat.statistic.collector.service.IPFIXParser;
+import me.alexand.scat.statistic.collector.service.impls.DataTemplateServiceImpl;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static me.alexand.scat.statistic.collector.utils.BytesConvertUtils.fourBytesToLong;
+
+/**
+ * Данные для бенчмарков.
+ * <p>
+ * Для шаблона CS_RESP в тестовых данных коллектора нет сообщения с записью данных, поэтому оно формируется здесь,
+ * по шаблону 258 из RawPacketsEntities.RAW_TEMPLATES_PAYLOAD.
+ *
+ * @author asidorov84@gmail.com
+ */
+public interface BenchmarkPayloads {
+    int CS_RESP_TEMPLATE_ID = 258;
+
+    /**
+     * Создать парсер с загруженными шаблонами СКАТ, без контекста Spring.
+     */
+    static IPFIXParser createParser() {
+        InfoModelRepository infoModelRepository = new InMemoryInfoModelRepositoryImpl();
+        return new IPFIXParser(createDataTemplateService(infoModelRepository), infoModelRepository);
+    }
+
+    /**
+     * Создать сервис шаблонов СКАТ, без контекста Spring.
+     *
+     * @param infoModelRepository репозиторий, в который загружаются элементы информационной модели шаблонов
+     */
+    static DataTemplateService createDataTemplateService(InfoModelRepository infoModelRepository) {
+        DataTemplateService dataTemplateService = new DataTemplateServiceImpl(
+                new InMemorySCATDataTemplateRepositoryImpl(),
+                infoModelRepository);
+        dataTemplateService.load();
+        return dataTemplateService;
+    }
+
+    /**
+     * Сформировать сообщение с одной записью CS_RESP.
+     *
+     * @param templates сообщение с шаблонами, из которого берутся время экспорта и домен наблюдения
+     */
+    static byte[] createCsRespDataMessage(byte[] templates) {
+        byte[] login = "user@example.org".getBytes(StandardCharsets.UTF_8);
+        byte[] contentType = "text/html; charset=utf-8".getBytes(StandardCharsets.UTF_8);
+
+        int recordLength = 4 + 1 + login.length + 4 + 4 + 4 + 8 + 1 + contentType.length + 8;
+        int setLength = 4 + recordLength;
+        int messageLength = 16 + setLength;
+
+        ByteBuffer message = ByteBuffer.allocate(messageLength);
+
+        //Заголовок сообщения: время экспорта и домен наблюдения совпадают с сообщением шаблонов
+        message.putShort((short) 0x0a);
+        message.putShort((short) messageLength);
+        message.putInt((int) fourBytesToLong(templates, 4));
+        message.putInt(0);
+        message.putInt((int) fourBytesToLong(templates, 12));
+
+        message.putShort((short) CS_RESP_TEMPLATE_ID);
+        message.putShort((short) setLength);
+
+        message.putInt((int) fourBytesToLong(templates, 4));
+        message.put((byte) login.length).put(login);
+        message.put(new byte[]{10, 0, 0, 1});
+        message.put(new byte[]{(byte) 93, (byte) 184, (byte) 216, (byte) 34});
+        message.putInt(200);
+        message.putLong(65536);
+        message.put((byte) contentType.length).put(contentType);
+        message.putLong(0x1234567890L);
+
+        return message.array();
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.jmh;
+
+import me.alexand.scat.statistic.collector.utils.BytesConvertUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+import static me.alexand.scat.statistic.collector.entities.RawPacketsEntities.RAW_CS_REQ_DATA_PAYLOAD;
+import static me.alexand.scat.statistic.collector.entities.RawPacketsEntities.RAW_GENERIC_DATA;
+
+/**
+ * Бенчмарки преобразования значений полей записей данных.
+ * <p>
+ * Смещения соответствуют полям тестовых сообщений: идентификатор набора и домен наблюдения, счетчик октетов записи
+ * GENERIC, IP-адрес источника и доменное имя записи CS_REQ.
+ * <p>
+ * Бенчмарки eightBytes* сравнивают способы чтения UNSIGNED64: в виде BigInteger, в виде Long (BigInteger только для
+ * значений больше Long.MAX_VALUE) и в виде примитива; разницу в выделении памяти показывает gc.alloc.rate.norm.
+ *
+ * @author asidorov84@gmail.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BytesConvertUtilsBenchmark {
+    private static final int DOMAIN_ID_OFFSET = 12;
+    private static final int SET_ID_OFFSET = 16;
+    private static final int OCTET_DELTA_COUNT_OFFSET = 20;
+    private static final int SOURCE_IP_OFFSET = 27;
+    private static final int HOSTNAME_OFFSET = 38;
+    private static final int HOSTNAME_LENGTH = 19;
+
+    private byte[] csReqData;
+    private byte[] genericData;
+
+    @Setup
+    public void setup() {
+        csReqData = RAW_CS_REQ_DATA_PAYLOAD.clone();
+        genericData = RAW_GENERIC_DATA.clone();
+    }
+
+    @Benchmark
+    public int twoBytesToInt() {
+        return BytesConvertUtils.twoBytesToInt(genericData, SET_ID_OFFSET);
+    }
+
+    @Benchmark
+    public long fourBytesToLong() {
+        return BytesConvertUtils.fourBytesToLong(genericData, DOMAIN_ID_OFFSET);
+    }
+
+    @Benchmark
+    public BigInteger eightBytesToBigInteger() {
+        return BytesConvertUtils.eightBytesToBigInteger(genericData, OCTET_DELTA_COUNT_OFFSET);
+    }
+
+    @Benchmark
+    public Number eightBytesToUnsignedNumber() {
+        return BytesConvertUtils.eightBytesToUnsignedNumber(genericData, OCTET_DELTA_COUNT_OFFSET);
+    }
+
+    @Benchmark
+    public long eightBytesToLong() {
+        return BytesConvertUtils.eightBytesToLong(genericData, OCTET_DELTA_COUNT_OFFSET);
+    }
+
+    @Benchmark
+    public String fourBytesToIPv4() {
+        return BytesConvertUtils.fourBytesToIPv4(csReqData, SOURCE_IP_OFFSET);
+    }
+
+    @Benchmark
+    public String bytesToString() {
+        return BytesConvertUtils.bytesToString(csReqData, HOSTNAME_OFFSET, HOSTNAME_LENGTH);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.jmh;
+
+import me.alexand.scat.statistic.collector.model.IPFIXFieldSpecifier;
+import me.alexand.scat.statistic.collector.model.IPFIXMessage;
+import me.alexand.scat.statistic.collector.model.IPFIXTemplateRecord;
+import me.alexand.scat.statistic.collector.model.TemplateType;
+import me.alexand.scat.statistic.collector.repository.impls.InMemoryInfoModelRepositoryImpl;
+import me.alexand.scat.statistic.collector.service.DataTemplateService;
+import me.alexand.scat.statistic.collector.utils.exceptions.UnknownInfoModelException;
+import me.alexand.scat.statistic.collector.utils.exceptions.UnknownTemplateTypeException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static me.alexand.scat.statistic.collector.entities.IPFIXMessageTestEntities.IPFIX_MESSAGE_WITH_CS_REQ_TEMPLATE;
+import static me.alexand.scat.statistic.collector.entities.RawPacketsEntities.RAW_GENERIC_TEMPLATE;
+import static me.alexand.scat.statistic.collector.entities.RawPacketsEntities.RAW_TEMPLATES_PAYLOAD;
+
+/**
+ * Бенчмарки определения типа шаблона СКАТ по списку спецификаторов полей.
+ * <p>
+ * Спецификаторы CS_RESP и GENERIC берутся из результатов декодирования тестовых сообщений с шаблонами.
+ *
+ * @author asidorov84@gmail.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DataTemplateServiceBenchmark {
+    private DataTemplateService dataTemplateService;
+    private List<IPFIXFieldSpecifier> csReqSpecifiers;
+    private List<IPFIXFieldSpecifier> csRespSpecifiers;
+    private List<IPFIXFieldSpecifier> genericSpecifiers;
+
+    @Setup
+    public void setup() throws Exception {
+        dataTemplateService = BenchmarkPayloads.createDataTemplateService(new InMemoryInfoModelRepositoryImpl());
+
+        csReqSpecifiers = getFieldSpecifiers(IPFIX_MESSAGE_WITH_CS_REQ_TEMPLATE, 0);
+        csRespSpecifiers = getFieldSpecifiers(
+                BenchmarkPayloads.createParser().parse(RAW_TEMPLATES_PAYLOAD),
+                1);
+        genericSpecifiers = getFieldSpecifiers(
+                BenchmarkPayloads.createParser().parse(RAW_GENERIC_TEMPLATE),
+                0);
+    }
+
+    @Benchmark
+    public TemplateType csReq() throws UnknownInfoModelException, UnknownTemplateTypeException {
+        return dataTemplateService.getTypeByIPFIXSpecifiers(csReqSpecifiers);
+    }
+
+    @Benchmark
+    public TemplateType csResp() throws UnknownInfoModelException, UnknownTemplateTypeException {
+        return dataTemplateService.getTypeByIPFIXSpecifiers(csRespSpecifiers);
+    }
+
+    @Benchmark
+    public TemplateType generic() throws UnknownInfoModelException, UnknownTemplateTypeException {
+        return dataTemplateService.getTypeByIPFIXSpecifiers(genericSpecifiers);
+    }
+
+    private static List<IPFIXFieldSpecifier> getFieldSpecifiers(IPFIXMessage message, int setIndex) {
+        return ((IPFIXTemplateRecord) message.getSets().get(setIndex).getRecords().get(0)).getFieldSpecifiers();
+    }
+}
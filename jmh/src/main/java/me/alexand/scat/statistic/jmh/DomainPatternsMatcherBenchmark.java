@@ -0,0 +1,135 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.jmh;
+
+import me.alexand.scat.statistic.collector.utils.DomainPatternsMatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Бенчмарки проверки имени хоста по набору шаблонов доменных имен: каждым шаблоном по отдельности
+ * (java.util.regex) и всеми шаблонами сразу ({@link DomainPatternsMatcher}).
+ * <p>
+ * Шаблоны имеют вид, типичный для отслеживаемых доменов: {@code .*\.domainN\.ru}, {@code domainN\.com} и
+ * {@code (.*\.)?siteN\.org}. Каждая операция проверяет одно имя хоста; четверть имен не совпадает ни с одним
+ * шаблоном.
+ *
+ * @author asidorov84@gmail.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DomainPatternsMatcherBenchmark {
+    private static final int HOSTNAMES_COUNT = 1024;
+
+    @Param({"10", "100", "1000"})
+    private int patternsCount;
+
+    private Matcher[] matchers;
+    private DomainPatternsMatcher domainPatternsMatcher;
+    private int[] matches;
+    private String[] hostnames;
+    private int index;
+
+    @Setup
+    public void setup() {
+        Pattern[] patterns = new Pattern[patternsCount];
+
+        for (int i = 0; i < patternsCount; i++) {
+            switch (i % 3) {
+                case 0:
+                    patterns[i] = Pattern.compile(String.format(".*\\.domain%d\\.ru", i));
+                    break;
+                case 1:
+                    patterns[i] = Pattern.compile(String.format("domain%d\\.com", i));
+                    break;
+                default:
+                    patterns[i] = Pattern.compile(String.format("(.*\\.)?site%d\\.org", i));
+            }
+        }
+
+        matchers = new Matcher[patternsCount];
+
+        for (int i = 0; i < patternsCount; i++) {
+            matchers[i] = patterns[i].matcher("");
+        }
+
+        domainPatternsMatcher = new DomainPatternsMatcher(patterns);
+        matches = new int[domainPatternsMatcher.size()];
+
+        hostnames = new String[HOSTNAMES_COUNT];
+
+        for (int i = 0; i < HOSTNAMES_COUNT; i++) {
+            int pattern = i % patternsCount;
+
+            if (i % 4 == 3) {
+                hostnames[i] = String.format("cdn%d.example.net", i);
+            } else if (pattern % 3 == 0) {
+                hostnames[i] = String.format("www.domain%d.ru", pattern);
+            } else if (pattern % 3 == 1) {
+                hostnames[i] = String.format("domain%d.com", pattern);
+            } else {
+                hostnames[i] = String.format("m.site%d.org", pattern);
+            }
+        }
+    }
+
+    @Benchmark
+    public int regexPerPattern() {
+        String hostname = nextHostname();
+        int count = 0;
+
+        for (Matcher matcher : matchers) {
+            if (matcher.reset(hostname).matches()) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    @Benchmark
+    public int combined() {
+        return domainPatternsMatcher.match(nextHostname(), matches);
+    }
+
+    private String nextHostname() {
+        index = (index + 1) & (HOSTNAMES_COUNT - 1);
+        return hostnames[index];
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.jmh;
+
+import me.alexand.scat.statistic.collector.utils.BytesConvertUtils;
+import me.alexand.scat.statistic.collector.utils.DateTimeUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Бенчмарки чтения значений каждого из типов IANA, в том числе закодированных с уменьшенным размером.
+ * <p>
+ * Значения читаются из одного массива теми же методами, что использует декодер шаблона (TemplateDecoder).
+ *
+ * @author asidorov84@gmail.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class IANADataTypesBenchmark {
+    private static final int LONG_OFFSET = 0;
+    private static final int DOUBLE_OFFSET = 8;
+    private static final int NTP_OFFSET = 16;
+    private static final int ADDRESS_OFFSET = 24;
+    private static final int STRING_OFFSET = 40;
+    private static final int STRING_LENGTH = 19;
+
+    private byte[] payload;
+
+    @Setup
+    public void setup() {
+        payload = ByteBuffer.allocate(64)
+                .putLong(0x042D9B6B55410222L)
+                .putDouble(Math.PI)
+                .putLong(0xDE6B9A8D80000000L)
+                .putLong(0x20010DB800000000L).putLong(0x00000000FF000042L)
+                .put("yboss.yahooapis.com".getBytes())
+                .array();
+    }
+
+    @Benchmark
+    public int unsigned8() {
+        return BytesConvertUtils.oneByteToInt(payload[LONG_OFFSET]);
+    }
+
+    @Benchmark
+    public long unsigned16() {
+        return BytesConvertUtils.bytesToUnsignedLong(payload, LONG_OFFSET, 2);
+    }
+
+    @Benchmark
+    public long unsigned32() {
+        return BytesConvertUtils.bytesToUnsignedLong(payload, LONG_OFFSET, 4);
+    }
+
+    @Benchmark
+    public long unsigned32Reduced() {
+        return BytesConvertUtils.bytesToUnsignedLong(payload, LONG_OFFSET, 2);
+    }
+
+    @Benchmark
+    public Number unsigned64() {
+        return BytesConvertUtils.unsignedLongToNumber(BytesConvertUtils.bytesToUnsignedLong(payload, LONG_OFFSET, 8));
+    }
+
+    @Benchmark
+    public long signed8() {
+        return BytesConvertUtils.bytesToSignedLong(payload, LONG_OFFSET, 1);
+    }
+
+    @Benchmark
+    public long signed16() {
+        return BytesConvertUtils.bytesToSignedLong(payload, LONG_OFFSET, 2);
+    }
+
+    @Benchmark
+    public long signed32() {
+        return BytesConvertUtils.bytesToSignedLong(payload, LONG_OFFSET, 4);
+    }
+
+    @Benchmark
+    public long signed64() {
+        return BytesConvertUtils.bytesToSignedLong(payload, LONG_OFFSET, 8);
+    }
+
+    @Benchmark
+    public long signed64Reduced() {
+        return BytesConvertUtils.bytesToSignedLong(payload, LONG_OFFSET, 3);
+    }
+
+    @Benchmark
+    public float float32() {
+        return BytesConvertUtils.fourBytesToFloat(payload, DOUBLE_OFFSET);
+    }
+
+    @Benchmark
+    public double float64() {
+        return BytesConvertUtils.bytesToDouble(payload, DOUBLE_OFFSET, 8);
+    }
+
+    @Benchmark
+    public double float64Reduced() {
+        return BytesConvertUtils.bytesToDouble(payload, DOUBLE_OFFSET, 4);
+    }
+
+    @Benchmark
+    public Boolean booleanValue() {
+        return BytesConvertUtils.byteToBoolean(payload[LONG_OFFSET]);
+    }
+
+    @Benchmark
+    public String macAddress() {
+        return BytesConvertUtils.sixBytesToMacAddress(payload, ADDRESS_OFFSET);
+    }
+
+    @Benchmark
+    public String octetArray() {
+        return BytesConvertUtils.bytesToHexString(payload, LONG_OFFSET, 8);
+    }
+
+    @Benchmark
+    public String string() {
+        return BytesConvertUtils.bytesToString(payload, STRING_OFFSET, STRING_LENGTH);
+    }
+
+    @Benchmark
+    public LocalDateTime dateTimeSeconds() {
+        return DateTimeUtils.epochSecondsToLocalDateTime(BytesConvertUtils.fourBytesToLong(payload, LONG_OFFSET));
+    }
+
+    @Benchmark
+    public LocalDateTime dateTimeMilliseconds() {
+        return DateTimeUtils.epochMillisToLocalDateTime(BytesConvertUtils.eightBytesToLong(payload, LONG_OFFSET));
+    }
+
+    @Benchmark
+    public LocalDateTime dateTimeMicroseconds() {
+        return DateTimeUtils.ntpTimestampToLocalDateTime(BytesConvertUtils.eightBytesToLong(payload, NTP_OFFSET) & ~0x7FFL);
+    }
+
+    @Benchmark
+    public LocalDateTime dateTimeNanoseconds() {
+        return DateTimeUtils.ntpTimestampToLocalDateTime(BytesConvertUtils.eightBytesToLong(payload, NTP_OFFSET));
+    }
+
+    @Benchmark
+    public String ipv4Address() {
+        return BytesConvertUtils.fourBytesToIPv4(payload, ADDRESS_OFFSET);
+    }
+
+    @Benchmark
+    public String ipv6Address() {
+        return BytesConvertUtils.sixteenBytesToIPv6(payload, ADDRESS_OFFSET);
+    }
+}
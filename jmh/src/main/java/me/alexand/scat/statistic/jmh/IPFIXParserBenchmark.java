@@ -0,0 +1,126 @@
+/*
+ * Copyright 2018 Alexander Sidorov (asidorov84@gmail.com)
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package me.alexand.scat.statistic.jmh;
+
+import me.alexand.scat.statistic.collector.model.IPFIXMessage;
+import me.alexand.scat.statistic.collector.service.IPFIXParser;
+import me.alexand.scat.statistic.collector.service.IPFIXRecordCursor;
+import me.alexand.scat.statistic.collector.utils.exceptions.IPFIXParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static me.alexand.scat.statistic.collector.entities.RawPacketsEntities.RAW_CS_REQ_DATA_PAYLOAD;
+import static me.alexand.scat.statistic.collector.entities.RawPacketsEntities.RAW_CS_REQ_TEMPLATE;
+import static me.alexand.scat.statistic.collector.entities.RawPacketsEntities.RAW_GENERIC_DATA;
+import static me.alexand.scat.statistic.collector.entities.RawPacketsEntities.RAW_GENERIC_TEMPLATE;
+import static me.alexand.scat.statistic.collector.entities.RawPacketsEntities.RAW_TEMPLATES_PAYLOAD;
+
+/**
+ * Бенчмарки декодирования IPFIX-сообщений.
+ * <p>
+ * Декодирование записей данных (parseDataRecords) закрыто внутри парсера, поэтому измеряется через parse()
+ * сообщения с одной записью данных соответствующего шаблона: CS_REQ, CS_RESP и GENERIC.
+ * Бенчмарки stream* измеряют потоковое декодирование тех же сообщений курсором, без создания записей.
+ *
+ * @author asidorov84@gmail.com
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class IPFIXParserBenchmark {
+    private IPFIXParser parser;
+    private byte[] csRespData;
+
+    private final IPFIXRecordCursor cursor = new IPFIXRecordCursor();
+    private final IPFIXParser.DataRecordHandler handler = this::consume;
+    private long consumed;
+
+    @Setup
+    public void setup() throws IPFIXParseException {
+        parser = BenchmarkPayloads.createParser();
+
+        parser.parse(RAW_CS_REQ_TEMPLATE);
+        parser.parse(RAW_TEMPLATES_PAYLOAD);
+        parser.parse(RAW_GENERIC_TEMPLATE);
+
+        csRespData = BenchmarkPayloads.createCsRespDataMessage(RAW_TEMPLATES_PAYLOAD);
+    }
+
+    @Benchmark
+    public IPFIXMessage parseTemplates() throws IPFIXParseException {
+        return parser.parse(RAW_TEMPLATES_PAYLOAD);
+    }
+
+    @Benchmark
+    public IPFIXMessage parseCsReqData() throws IPFIXParseException {
+        return parser.parse(RAW_CS_REQ_DATA_PAYLOAD);
+    }
+
+    @Benchmark
+    public IPFIXMessage parseCsRespData() throws IPFIXParseException {
+        return parser.parse(csRespData);
+    }
+
+    @Benchmark
+    public IPFIXMessage parseGenericData() throws IPFIXParseException {
+        return parser.parse(RAW_GENERIC_DATA);
+    }
+
+    @Benchmark
+    public long streamCsReqData() throws IPFIXParseException {
+        return stream(RAW_CS_REQ_DATA_PAYLOAD);
+    }
+
+    @Benchmark
+    public long streamCsRespData() throws IPFIXParseException {
+        return stream(csRespData);
+    }
+
+    @Benchmark
+    public long streamGenericData() throws IPFIXParseException {
+        return stream(RAW_GENERIC_DATA);
+    }
+
+    private long stream(byte[] payload) throws IPFIXParseException {
+        consumed = 0;
+        parser.parse(payload, payload.length, cursor, handler);
+        return consumed;
+    }
+
+    //Чтение первого поля и длины последнего, чтобы обработка записи не была исключена компилятором
+    private void consume(IPFIXRecordCursor record) {
+        consumed += record.getLong(0) + record.getFieldLength(record.getFieldCount() - 1);
+    }
+}